@@ -16,8 +16,10 @@
 
 package org.nzbhydra;
 
+import org.nzbhydra.searching.db.SearchResultIdCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -35,6 +37,8 @@ public class DevEndpoint {
 
     @PersistenceContext
     private EntityManager entityManager;
+    @Autowired
+    private SearchResultIdCache searchResultIdCache;
 
     private static final Logger logger = LoggerFactory.getLogger(DevEndpoint.class);
 
@@ -50,7 +54,9 @@ public class DevEndpoint {
     @Transactional
     @RequestMapping(value = "/dev/deleteDanglingIndexersearches", method = RequestMethod.GET)
     public String deleteDanglingIndexersearches() throws Exception {
-        return "Deleted " + entityManager.createNativeQuery("delete from SEARCHRESULT where INDEXERSEARCHENTITY not in (select y.id from INDEXERSEARCH y)").executeUpdate() + " entries";
+        int deleted = entityManager.createNativeQuery("delete from SEARCHRESULT where INDEXERSEARCHENTITY not in (select y.id from INDEXERSEARCH y)").executeUpdate();
+        searchResultIdCache.removeAllRecent();
+        return "Deleted " + deleted + " entries";
     }
 
 }
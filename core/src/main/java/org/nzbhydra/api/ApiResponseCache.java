@@ -0,0 +1,155 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+/**
+ * Caches rendered responses of API searches with a cache time (see {@link ExternalApi}), so that clients polling the same search don't cause
+ * new searches and the response doesn't need to be rendered again.
+ * <p>
+ * Responses are stored in the database so they survive restarts. The most recently used ones are also kept in memory. Responses are
+ * identified by the complete key (and not by its hash) so that a response is never returned for a different request.
+ */
+@Component
+public class ApiResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiResponseCache.class);
+
+    static final int MAX_ENTRIES = 1000;
+    private static final int MAX_MEMORY_BYTES = 32 * 1024 * 1024;
+    private static final int CLEANUP_INTERVAL_MINUTES = 10;
+
+    private static final String SELECT = "SELECT CONTENT_TYPE, LAST_UPDATE, BODY FROM APIRESPONSECACHE WHERE CACHE_KEY = ?";
+    private static final String MERGE = "MERGE INTO APIRESPONSECACHE (CACHE_KEY, CONTENT_TYPE, LAST_UPDATE, BODY) KEY (CACHE_KEY) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_OLD = "DELETE FROM APIRESPONSECACHE WHERE LAST_UPDATE < ?";
+    private static final String DELETE_EXCEEDING = "DELETE FROM APIRESPONSECACHE WHERE CACHE_KEY NOT IN (SELECT CACHE_KEY FROM APIRESPONSECACHE ORDER BY LAST_UPDATE DESC LIMIT " + MAX_ENTRIES + ")";
+
+    @Autowired
+    protected DataSource dataSource;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Cache<String, CachedApiResponse> memoryCache = Caffeine.newBuilder()
+            .maximumWeight(MAX_MEMORY_BYTES)
+            .weigher((String key, CachedApiResponse value) -> value.getBody().length)
+            .recordStats()
+            .build();
+    private volatile Instant lastCleanup = Instant.EPOCH;
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry != null) {
+            Gauge.builder("hydra.api.cache.hitratio", this, x -> x.getMemoryCacheStats().hitRate()).description("Ratio of cached API responses found in memory").register(meterRegistry);
+        }
+    }
+
+    /**
+     * Returns the response cached for the given key if it was updated after the given instant.
+     */
+    public Optional<CachedApiResponse> get(String cacheKey, Instant notUpdatedBefore) {
+        CachedApiResponse cachedApiResponse = memoryCache.getIfPresent(cacheKey);
+        if (cachedApiResponse == null) {
+            cachedApiResponse = load(cacheKey);
+            if (cachedApiResponse != null) {
+                memoryCache.put(cacheKey, cachedApiResponse);
+            }
+        }
+        if (cachedApiResponse == null || cachedApiResponse.getLastUpdate().isBefore(notUpdatedBefore)) {
+            return Optional.empty();
+        }
+        return Optional.of(cachedApiResponse);
+    }
+
+    public void put(String cacheKey, CachedApiResponse cachedApiResponse) {
+        memoryCache.put(cacheKey, cachedApiResponse);
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(MERGE)) {
+            statement.setString(1, cacheKey);
+            statement.setString(2, cachedApiResponse.getContentType());
+            statement.setTimestamp(3, Timestamp.from(cachedApiResponse.getLastUpdate()));
+            statement.setBytes(4, cachedApiResponse.getBody());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Error while executing SQL", e);
+        }
+    }
+
+    /**
+     * Removes responses last updated before the given instant and the oldest responses exceeding the limit. Only executed every few
+     * minutes.
+     */
+    public void removeOlderThan(Instant notUpdatedBefore, Instant now) {
+        if (lastCleanup.isAfter(now.minus(CLEANUP_INTERVAL_MINUTES, ChronoUnit.MINUTES))) {
+            return;
+        }
+        lastCleanup = now;
+        memoryCache.asMap().values().removeIf(x -> x.getLastUpdate().isBefore(notUpdatedBefore));
+        try (Connection connection = dataSource.getConnection()) {
+            int deleted;
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_OLD)) {
+                statement.setTimestamp(1, Timestamp.from(notUpdatedBefore));
+                deleted = statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_EXCEEDING)) {
+                deleted += statement.executeUpdate();
+            }
+            if (deleted > 0) {
+                logger.debug("Removed {} old API responses from cache", deleted);
+            }
+        } catch (SQLException e) {
+            logger.error("Error while executing SQL", e);
+        }
+    }
+
+    public CacheStats getMemoryCacheStats() {
+        return memoryCache.stats();
+    }
+
+    private CachedApiResponse load(String cacheKey) {
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(SELECT)) {
+            statement.setString(1, cacheKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return new CachedApiResponse(resultSet.getString(1), resultSet.getTimestamp(2).toInstant(), resultSet.getBytes(3));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error while executing SQL", e);
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.api;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * A rendered API search response as it was returned to the client.
+ */
+@Value
+public class CachedApiResponse {
+
+    String contentType;
+    Instant lastUpdate;
+    byte[] body;
+
+    public String getETag() {
+        return "\"" + Long.toHexString(lastUpdate.toEpochMilli()) + "-" + Integer.toHexString(body.length) + "\"";
+    }
+
+}
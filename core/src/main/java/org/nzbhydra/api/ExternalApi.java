@@ -3,8 +3,6 @@ package org.nzbhydra.api;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
-import lombok.AllArgsConstructor;
-import lombok.Data;
 import org.apache.catalina.connector.ClientAbortException;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.category.CategoriesConfig;
@@ -27,7 +25,10 @@ import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.nzbhydra.searching.searchrequests.SearchRequestFactory;
+import org.nzbhydra.web.AsyncRequestExecutor;
+import org.nzbhydra.web.NewznabResponseRenderer;
 import org.nzbhydra.web.SessionStorage;
+import org.nzbhydra.web.TooManyRequestsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -41,26 +42,23 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 @RestController
 public class ExternalApi {
 
-    private static final int MAX_CACHE_SIZE = 5;
     private static final int MAX_CACHE_AGE_HOURS = 24;
 
     private static final Logger logger = LoggerFactory.getLogger(ExternalApi.class);
@@ -84,14 +82,29 @@ public class ExternalApi {
     private CategoryProvider categoryProvider;
     @Autowired
     private CapsGenerator capsGenerator;
+    @Autowired
+    protected ApiResponseCache apiResponseCache;
+    @Autowired
+    protected NewznabResponseRenderer newznabResponseRenderer;
+    @Autowired
+    protected AsyncRequestExecutor asyncRequestExecutor;
     protected Clock clock = Clock.systemUTC();
     private Random random = new Random();
 
-    private ConcurrentMap<Integer, CacheEntryValue> cache = new ConcurrentHashMap<>();
-
 
+    /**
+     * Searches and NZB downloads are executed asynchronously so that the request thread is released while they're running. All other
+     * calls are quick and handled right away.
+     */
     @RequestMapping(value = {"/api", "/rss", "/torznab/api"}, consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<? extends Object> api(NewznabParameters params) throws Exception {
+    public CompletableFuture<ResponseEntity<? extends Object>> api(NewznabParameters params) throws Exception {
+        if (params.getT() != null && (params.getT().isSearch() || params.getT() == ActionAttribute.GET)) {
+            return asyncRequestExecutor.submit(() -> handleApiRequest(params));
+        }
+        return CompletableFuture.completedFuture(handleApiRequest(params));
+    }
+
+    protected ResponseEntity<? extends Object> handleApiRequest(NewznabParameters params) throws Exception {
         int searchRequestId = random.nextInt(100000);
         if (params.getT() != null && params.getT().isSearch()) {
             MDC.put("SEARCH", String.valueOf(searchRequestId));
@@ -136,39 +149,37 @@ public class ExternalApi {
         return httpHeaders;
     }
 
-    protected ResponseEntity<?> handleCachingSearch(NewznabParameters params, NewznabResponse.SearchType searchType, int searchRequestId) {
+    protected ResponseEntity<?> handleCachingSearch(NewznabParameters params, NewznabResponse.SearchType searchType, int searchRequestId) throws IOException {
+        Instant now = clock.instant();
         //Remove old entries
-        cache.entrySet().removeIf(x -> x.getValue().getLastUpdate().isBefore(clock.instant().minus(MAX_CACHE_AGE_HOURS, ChronoUnit.HOURS)));
-
-        CacheEntryValue cacheEntryValue;
-        int cacheKey = params.cacheKey(searchType);
-        if (cache.containsKey(cacheKey)) {
-            cacheEntryValue = cache.get(cacheKey);
-            int cachetime = params.getCachetime() == null ? configProvider.getBaseConfig().getSearching().getGlobalCacheTimeMinutes().get() : params.getCachetime();
-            if (cacheEntryValue.getLastUpdate().isAfter(clock.instant().minus(cachetime, ChronoUnit.MINUTES))) {
-                Instant nextUpdate = cacheEntryValue.getLastUpdate().plus(cachetime, ChronoUnit.MINUTES);
-                logger.info("Returning cached search result. Next update of search will be done at {}", LocalDateTime.ofInstant(nextUpdate, ZoneId.systemDefault()));
-                NewznabResponse searchResult = cacheEntryValue.getSearchResult();
-
-                HttpHeaders httpHeaders = setSearchTypeAndGetHeaders(params, searchResult);
-                return new ResponseEntity<>(searchResult, httpHeaders, HttpStatus.OK);
-            } else {
-                logger.info("Updating search because cache time is exceeded");
-            }
-        }
-        //Remove oldest entry when max size is reached
-        if (cache.size() == MAX_CACHE_SIZE) {
-            Optional<Entry<Integer, CacheEntryValue>> keyToEvict = cache.entrySet().stream().min(Comparator.comparing(o -> o.getValue().getLastUpdate()));
-            //Should always be the case anyway
-            logger.info("Removing oldest entry from cache because its limit of {} is reached", MAX_CACHE_SIZE);
-            keyToEvict.ifPresent(newznabParametersCacheEntryValueEntry -> cache.remove(newznabParametersCacheEntryValueEntry.getKey()));
+        apiResponseCache.removeOlderThan(now.minus(MAX_CACHE_AGE_HOURS, ChronoUnit.HOURS), now);
+
+        String cacheKey = params.fullCacheKey(searchType);
+        int cachetime = params.getCachetime() == null ? configProvider.getBaseConfig().getSearching().getGlobalCacheTimeMinutes().get() : params.getCachetime();
+        Optional<CachedApiResponse> cachedApiResponse = apiResponseCache.get(cacheKey, now.minus(cachetime, ChronoUnit.MINUTES));
+        if (cachedApiResponse.isPresent()) {
+            Instant nextUpdate = cachedApiResponse.get().getLastUpdate().plus(cachetime, ChronoUnit.MINUTES);
+            logger.info("Returning cached search result. Next update of search will be done at {}", LocalDateTime.ofInstant(nextUpdate, ZoneId.systemDefault()));
+            return getCachedResponseEntity(cachedApiResponse.get());
         }
 
         NewznabResponse searchResult = search(params, searchRequestId);
+        //Sets the search type which is needed for rendering
+        setSearchTypeAndGetHeaders(params, searchResult);
+        CachedApiResponse newCachedApiResponse = new CachedApiResponse(searchResult.getContentHeader(), now, newznabResponseRenderer.render(searchResult));
         logger.info("Putting search result into cache");
-        cache.put(cacheKey, new CacheEntryValue(params, clock.instant(), searchResult));
-        HttpHeaders httpHeaders = setSearchTypeAndGetHeaders(params, searchResult);
-        return new ResponseEntity<>(searchResult, httpHeaders, HttpStatus.OK);
+        apiResponseCache.put(cacheKey, newCachedApiResponse);
+        return getCachedResponseEntity(newCachedApiResponse);
+    }
+
+    /**
+     * Returns the rendered response. Spring will return "304 Not Modified" instead if the client sends the response's ETag in "If-None-Match".
+     */
+    private ResponseEntity<byte[]> getCachedResponseEntity(CachedApiResponse cachedApiResponse) {
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.set(HttpHeaders.CONTENT_TYPE, cachedApiResponse.getContentType());
+        httpHeaders.setETag(cachedApiResponse.getETag());
+        return new ResponseEntity<>(cachedApiResponse.getBody(), httpHeaders, HttpStatus.OK);
     }
 
 
@@ -216,6 +227,13 @@ public class ExternalApi {
         return error;
     }
 
+    @ExceptionHandler(value = TooManyRequestsException.class)
+    public ResponseEntity<NewznabXmlError> handleTooManyRequests(TooManyRequestsException e) {
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.set(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        return new ResponseEntity<>(new NewznabXmlError("900", e.getMessage()), httpHeaders, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
     @ExceptionHandler(value = Exception.class)
     public ResponseEntity handleUnexpectedError(Exception e) {
         if (e instanceof ClientAbortException || Throwables.getCausalChain(e).stream().anyMatch(x -> x instanceof ClientAbortException)) {
@@ -242,9 +260,9 @@ public class ExternalApi {
         NewznabResponse response;
         int total = searchResult.getNumberOfTotalAvailableResults() - searchResult.getNumberOfRejectedResults() - searchResult.getNumberOfRemovedDuplicates();
         if (params.getO() == OutputType.JSON) {
-            response = newznabJsonTransformer.transformToRoot(searchResult.getSearchResultItems(), params.getOffset(), total, searchRequest);
+            response = newznabJsonTransformer.transformToRenderedRoot(searchResult.getSearchResultItems(), params.getOffset(), total, searchRequest);
         } else {
-            response = newznabXmlTransformer.getRssRoot(searchResult.getSearchResultItems(), params.getOffset(), total, searchRequest);
+            response = newznabXmlTransformer.getRenderedRssRoot(searchResult.getSearchResultItems(), params.getOffset(), total, searchRequest);
         }
         logger.debug(LoggingMarkers.PERFORMANCE, "Transforming results took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return response;
@@ -299,32 +317,4 @@ public class ExternalApi {
         return searchRequest;
     }
 
-
-    @Data
-    @AllArgsConstructor
-    private static class CacheEntryValue {
-        private final NewznabParameters params;
-        private final Instant lastUpdate;
-        private final NewznabResponse searchResult;
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
-            }
-            CacheEntryValue that = (CacheEntryValue) o;
-            return com.google.common.base.Objects.equal(params, that.params) &&
-                com.google.common.base.Objects.equal(lastUpdate, that.lastUpdate) &&
-                com.google.common.base.Objects.equal(searchResult, that.searchResult);
-        }
-
-        @Override
-        public int hashCode() {
-            return com.google.common.base.Objects.hashCode(super.hashCode(), params, lastUpdate, searchResult);
-        }
-    }
-
 }
@@ -0,0 +1,111 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import org.nzbhydra.config.ConfigChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the rendered XML and JSON fragments of search result items returned by the API. The same items are often returned by multiple
+ * requests (e.g. for different pages or by multiple clients searching the same), so they only need to be rendered once.
+ * <p>
+ * Fragments are keyed by the search result ID, the format and the item's link, which contains everything that depends on the request
+ * (like the base URL and the NZB access type). Everything else depending on the config (like the category) is handled by clearing the
+ * cache when the config is changed.
+ * <p>
+ * Some of an item's data (like the number of grabs or comments) changes over time while its ID stays the same, so fragments expire
+ * after the same time as cached searches. Newer data is returned no later than when the search would have been executed again.
+ */
+@Component
+public class NewznabItemFragmentCache {
+
+    private static final int MAX_SIZE_BYTES = 32 * 1024 * 1024;
+    private static final int EXPIRATION_MINUTES = 5;
+
+    public enum Format {
+        NEWZNAB_XML,
+        TORZNAB_XML,
+        NEWZNAB_JSON,
+        TORZNAB_JSON
+    }
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Cache<FragmentKey, byte[]> cache;
+
+    public NewznabItemFragmentCache() {
+        this(Ticker.systemTicker());
+    }
+
+    NewznabItemFragmentCache(Ticker ticker) {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(MAX_SIZE_BYTES)
+                .weigher((FragmentKey key, byte[] value) -> value.length)
+                .expireAfterWrite(EXPIRATION_MINUTES, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry != null) {
+            Gauge.builder("hydra.api.fragments.hitratio", this, x -> x.getStats().hitRate()).description("Ratio of search result items returned by the API which were already rendered").register(meterRegistry);
+        }
+    }
+
+    /**
+     * Returns the cached fragment or renders and caches it. Items without search result ID are always rendered.
+     */
+    public byte[] get(Long searchResultId, Format format, String link, Supplier<byte[]> renderer) {
+        if (searchResultId == null) {
+            return renderer.get();
+        }
+        return cache.get(new FragmentKey(searchResultId, format, link), key -> renderer.get());
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @EventListener
+    public void handleNewConfig(ConfigChangedEvent configChangedEvent) {
+        cache.invalidateAll();
+    }
+
+    @Value
+    public static class FragmentKey {
+        long searchResultId;
+        Format format;
+        String link;
+    }
+
+}
@@ -16,6 +16,8 @@
 
 package org.nzbhydra.api;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.nzbhydra.api.NewznabItemFragmentCache.Format;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.downloading.FileHandler;
 import org.nzbhydra.mapping.newznab.json.NewznabJsonChannel;
@@ -34,6 +36,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -48,6 +51,8 @@ public class NewznabJsonTransformer {
     protected FileHandler nzbHandler;
     @Autowired
     protected ConfigProvider configProvider;
+    @Autowired
+    protected NewznabItemFragmentCache fragmentCache;
 
     NewznabJsonRoot transformToRoot(List<SearchResultItem> searchResultItems, Integer offset, int total, SearchRequest searchRequest) {
         NewznabJsonRoot rssRoot = new NewznabJsonRoot();
@@ -71,9 +76,27 @@ public class NewznabJsonTransformer {
         return rssRoot;
     }
 
+    /**
+     * Like {@link #transformToRoot(List, Integer, int, SearchRequest)} but returns the items as (possibly cached) rendered fragments.
+     */
+    RenderedNewznabResponse transformToRenderedRoot(List<SearchResultItem> searchResultItems, Integer offset, int total, SearchRequest searchRequest) {
+        NewznabJsonRoot rssRoot = transformToRoot(Collections.emptyList(), offset, total, searchRequest);
+        boolean isNzb = searchRequest.getDownloadType() == org.nzbhydra.searching.dtoseventsenums.DownloadType.NZB;
+        Format format = isNzb ? Format.NEWZNAB_JSON : Format.TORZNAB_JSON;
+        List<byte[]> itemFragments = new ArrayList<>(searchResultItems.size());
+        for (SearchResultItem searchResultItem : searchResultItems) {
+            String link = getLink(searchResultItem);
+            itemFragments.add(fragmentCache.get(searchResultItem.getSearchResultId(), format, link, () -> renderItem(buildRssItem(searchResultItem, searchRequest, link))));
+        }
+        return new RenderedNewznabResponse(rssRoot, itemFragments);
+    }
+
     NewznabJsonItem buildRssItem(SearchResultItem searchResultItem, SearchRequest searchRequest) {
+        return buildRssItem(searchResultItem, searchRequest, getLink(searchResultItem));
+    }
+
+    private NewznabJsonItem buildRssItem(SearchResultItem searchResultItem, SearchRequest searchRequest, String link) {
         NewznabJsonItem rssItem = new NewznabJsonItem();
-        String link = nzbHandler.getDownloadLink(searchResultItem.getSearchResultId(), false, DownloadType.NZB);
         rssItem.setLink(link);
         rssItem.setTitle(searchResultItem.getTitle());
         rssItem.setGuid(String.valueOf(searchResultItem.getGuid()));
@@ -102,4 +125,16 @@ public class NewznabJsonTransformer {
         rssItem.setCategory(configProvider.getBaseConfig().getSearching().isUseOriginalCategories() ? searchResultItem.getOriginalCategory() : searchResultItem.getCategory().getName());
         return rssItem;
     }
+
+    private String getLink(SearchResultItem searchResultItem) {
+        return nzbHandler.getDownloadLink(searchResultItem.getSearchResultId(), false, DownloadType.NZB);
+    }
+
+    private byte[] renderItem(NewznabJsonItem rssItem) {
+        try {
+            return RenderedNewznabResponse.renderJsonItem(rssItem);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unable to render item " + rssItem.getTitle(), e);
+        }
+    }
 }
@@ -16,6 +16,7 @@
 
 package org.nzbhydra.api;
 
+import org.nzbhydra.api.NewznabItemFragmentCache.Format;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.downloading.FileHandler;
 import org.nzbhydra.mapping.newznab.xml.NewznabAttribute;
@@ -25,15 +26,18 @@ import org.nzbhydra.mapping.newznab.xml.NewznabXmlGuid;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlItem;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlResponse;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlStreamWriter;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem.DownloadType;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.xml.stream.XMLStreamException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -48,6 +52,8 @@ public class NewznabXmlTransformer {
     protected FileHandler nzbHandler;
     @Autowired
     protected ConfigProvider configProvider;
+    @Autowired
+    protected NewznabItemFragmentCache fragmentCache;
 
     NewznabXmlRoot getRssRoot(List<SearchResultItem> searchResultItems, Integer offset, int total, SearchRequest searchRequest) {
         NewznabXmlRoot rssRoot = new NewznabXmlRoot();
@@ -72,10 +78,29 @@ public class NewznabXmlTransformer {
         return rssRoot;
     }
 
+    /**
+     * Like {@link #getRssRoot(List, Integer, int, SearchRequest)} but returns the items as (possibly cached) rendered fragments.
+     */
+    RenderedNewznabResponse getRenderedRssRoot(List<SearchResultItem> searchResultItems, Integer offset, int total, SearchRequest searchRequest) {
+        NewznabXmlRoot rssRoot = getRssRoot(Collections.emptyList(), offset, total, searchRequest);
+        boolean isNzb = searchRequest.getDownloadType() == org.nzbhydra.searching.dtoseventsenums.DownloadType.NZB;
+        Format format = isNzb ? Format.NEWZNAB_XML : Format.TORZNAB_XML;
+        List<byte[]> itemFragments = new ArrayList<>(searchResultItems.size());
+        for (SearchResultItem searchResultItem : searchResultItems) {
+            String link = getLink(searchResultItem, isNzb);
+            itemFragments.add(fragmentCache.get(searchResultItem.getSearchResultId(), format, link, () -> renderItem(buildRssItem(searchResultItem, searchRequest, link))));
+        }
+        return new RenderedNewznabResponse(rssRoot, itemFragments);
+    }
+
     NewznabXmlItem buildRssItem(SearchResultItem searchResultItem, SearchRequest searchRequest) {
+        boolean isNzb = searchRequest.getDownloadType() == org.nzbhydra.searching.dtoseventsenums.DownloadType.NZB;
+        return buildRssItem(searchResultItem, searchRequest, getLink(searchResultItem, isNzb));
+    }
+
+    private NewznabXmlItem buildRssItem(SearchResultItem searchResultItem, SearchRequest searchRequest, String link) {
         NewznabXmlItem rssItem = new NewznabXmlItem();
         boolean isNzb = searchRequest.getDownloadType() == org.nzbhydra.searching.dtoseventsenums.DownloadType.NZB;
-        String link = nzbHandler.getDownloadLink(searchResultItem.getSearchResultId(), false, isNzb ? DownloadType.NZB : DownloadType.TORRENT);
         rssItem.setLink(link);
         rssItem.setTitle(searchResultItem.getTitle());
         rssItem.setRssGuid(new NewznabXmlGuid(String.valueOf(searchResultItem.getGuid()), false));
@@ -105,6 +130,18 @@ public class NewznabXmlTransformer {
         return rssItem;
     }
 
+    private String getLink(SearchResultItem searchResultItem, boolean isNzb) {
+        return nzbHandler.getDownloadLink(searchResultItem.getSearchResultId(), false, isNzb ? DownloadType.NZB : DownloadType.TORRENT);
+    }
+
+    private byte[] renderItem(NewznabXmlItem rssItem) {
+        try {
+            return NewznabXmlStreamWriter.writeItem(rssItem);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Unable to render item " + rssItem.getTitle(), e);
+        }
+    }
+
     private String getIndexerHost(SearchResultItem searchResultItem) {
         try {
             return String.valueOf(new URI(searchResultItem.getIndexer().getConfig().getHost()).getHost());
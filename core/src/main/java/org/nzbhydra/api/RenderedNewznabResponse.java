@@ -0,0 +1,115 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.nzbhydra.mapping.newznab.NewznabResponse;
+import org.nzbhydra.mapping.newznab.json.NewznabJsonRoot;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlStreamWriter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A newznab response of which the items were already rendered (see {@link NewznabItemFragmentCache}). It's written by copying the fragments
+ * into the output stream instead of marshalling an object tree.
+ */
+public class RenderedNewznabResponse extends NewznabResponse {
+
+    private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().indentOutput(true).build();
+
+    private final NewznabResponse root;
+    private final List<byte[]> itemFragments;
+
+    /**
+     * @param root          The root (either XML or JSON) containing everything but the items
+     * @param itemFragments The rendered items, see {@link NewznabXmlStreamWriter#writeItem} and {@link #renderJsonItem(Object)}
+     */
+    public RenderedNewznabResponse(NewznabResponse root, List<byte[]> itemFragments) {
+        this.root = root;
+        this.itemFragments = itemFragments;
+    }
+
+    public static byte[] renderJsonItem(Object item) throws JsonProcessingException {
+        return OBJECT_MAPPER.writeValueAsBytes(item);
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (root instanceof NewznabJsonRoot) {
+            ObjectNode rootNode = OBJECT_MAPPER.valueToTree(root);
+            if (rootNode.get("channel") instanceof ObjectNode) {
+                ArrayNode itemsNode = OBJECT_MAPPER.createArrayNode();
+                for (byte[] itemFragment : itemFragments) {
+                    itemsNode.addRawValue(new RawValue(new String(itemFragment, StandardCharsets.UTF_8)));
+                }
+                ((ObjectNode) rootNode.get("channel")).set("item", itemsNode);
+            }
+            OBJECT_MAPPER.writeValue(outputStream, rootNode);
+        } else {
+            try {
+                NewznabXmlStreamWriter.write((NewznabXmlRoot) root, itemFragments, outputStream);
+            } catch (XMLStreamException e) {
+                throw new IOException("Unable to write XML", e);
+            }
+        }
+    }
+
+    public List<byte[]> getItemFragments() {
+        return itemFragments;
+    }
+
+    public NewznabResponse getRoot() {
+        return root;
+    }
+
+    @Override
+    public String getContentHeader() {
+        return root.getContentHeader();
+    }
+
+    @Override
+    public SearchType getSearchType() {
+        return root.getSearchType();
+    }
+
+    @Override
+    public void setSearchType(SearchType searchType) {
+        root.setSearchType(searchType);
+    }
+
+    @Override
+    public String toXmlString() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            writeTo(bos);
+        } catch (IOException e) {
+            return null;
+        }
+        return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
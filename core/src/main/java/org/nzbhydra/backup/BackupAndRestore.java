@@ -9,6 +9,7 @@ import org.nzbhydra.GenericResponse;
 import org.nzbhydra.NzbHydra;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.ConfigReaderWriter;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.update.UpdateManager;
 import org.slf4j.Logger;
@@ -61,6 +62,8 @@ public class BackupAndRestore {
     private ConfigProvider configProvider;
     @Autowired
     private UpdateManager updateManager;
+    @Autowired
+    private IndexerApiAccessStore indexerApiAccessStore;
     private final ConfigReaderWriter configReaderWriter = new ConfigReaderWriter();
 
     @PostConstruct
@@ -100,6 +103,7 @@ public class BackupAndRestore {
                 writer.write(configReaderWriter.getAsYamlString(configProvider.getBaseConfig()));
                 logger.debug("Successfully wrote config to backup ZIP");
                 backupCertificates(fs);
+                backupApiAccesses(fs);
             }
         }
 
@@ -182,6 +186,13 @@ public class BackupAndRestore {
         }
     }
 
+    private void backupApiAccesses(FileSystem fileSystem) throws IOException {
+        //The API accesses are not stored in the database so the database backup doesn't contain them
+        logger.info("Backing up API accesses");
+        Path apiAccessFolder = Files.createDirectory(fileSystem.getPath("apiaccess"));
+        indexerApiAccessStore.copySegmentsTo(apiAccessFolder);
+    }
+
     public GenericResponse restore(String filename) {
         try {
             File backupFile = new File(getBackupFolder(), filename);
@@ -222,6 +233,11 @@ public class BackupAndRestore {
             }
         }
         extractZip(backupFile, restoreFolder);
+        try {
+            restoreApiAccesses(restoreFolder);
+        } catch (IOException e) {
+            logger.error("Unable to restore API accesses", e);
+        }
         logger.info("Successfully extracted backup file for wrapper. Restarting.");
         updateManager.exitWithReturnCode(UpdateManager.RESTORE_RETURN_CODE);
     }
@@ -261,6 +277,16 @@ public class BackupAndRestore {
         }
     }
 
+    private void restoreApiAccesses(File targetFolder) throws IOException {
+        //API accesses are not restored by the wrapper as they're not part of the database
+        final File apiAccessBackupFolder = new File(targetFolder, "apiaccess");
+        if (apiAccessBackupFolder.exists()) {
+            logger.info("Restoring API accesses");
+            indexerApiAccessStore.restoreSegmentsFrom(apiAccessBackupFolder);
+            FileUtils.deleteDirectory(apiAccessBackupFolder);
+        }
+    }
+
     @Data
     @AllArgsConstructor
     @NoArgsConstructor
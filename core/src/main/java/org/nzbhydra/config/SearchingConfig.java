@@ -19,6 +19,7 @@ import java.util.Optional;
 @ConfigurationProperties
 public class SearchingConfig extends ValidatingConfig<SearchingConfig> {
 
+    private boolean adaptiveTimeouts = false;
     @JsonFormat(shape = Shape.STRING)
     private SearchSourceRestriction applyRestrictions = SearchSourceRestriction.BOTH;
     private int coverSize = 128;
@@ -44,11 +45,23 @@ public class SearchingConfig extends ValidatingConfig<SearchingConfig> {
     private boolean loadAllCachedOnInternal;
     private int loadLimitInternal = 100;
     private Integer maxAge;
+    @RestartRequired
+    private int maxConcurrentIndexerCalls = 50;
+    @RestartRequired
+    private int maxConcurrentCallsPerIndexer = 5;
+    @RestartRequired
+    private int maxConcurrentSearchRequests = 10;
+    @RestartRequired
+    private int maxQueuedIndexerCalls = 500;
+    @RestartRequired
+    private int maxQueuedSearchRequests = 50;
     private Integer minSeeders;
     @JsonSetter()
     private List<String> removeTrailing = new ArrayList<>();
     private String requiredRegex;
     private List<String> requiredWords = new ArrayList<>();
+    private int searchCacheSizeMb = 64;
+    private Integer searchDeadlineSeconds;
     private boolean sendTorznabCategories = true;
     private boolean showQuickFilterButtons = true;
     private Integer timeout = 30;
@@ -56,6 +69,8 @@ public class SearchingConfig extends ValidatingConfig<SearchingConfig> {
     private String userAgent = "NZBHydra2";
     private List<String> userAgents = new ArrayList<>(Arrays.asList("Mozilla", "Sonarr", "Radarr", "CouchPotato", "LazyLibrarian", "NZBGet", "sabNZBd"));
     private boolean useOriginalCategories = false;
+    @RestartRequired
+    private boolean useVirtualThreadsForIndexerCalls = false;
     private boolean wrapApiErrors = false;
 
     public SearchingConfig() {
@@ -65,6 +80,10 @@ public class SearchingConfig extends ValidatingConfig<SearchingConfig> {
         return Optional.ofNullable(globalCacheTimeMinutes);
     }
 
+    public Optional<Integer> getSearchDeadlineSeconds() {
+        return Optional.ofNullable(searchDeadlineSeconds);
+    }
+
     public Optional<Integer> getMaxAge() {
         return Optional.ofNullable(maxAge);
     }
@@ -102,7 +121,23 @@ public class SearchingConfig extends ValidatingConfig<SearchingConfig> {
             }
         }
 
-        return new ConfigValidationResult(errors.isEmpty(), false, errors, warnings);
+        if (maxConcurrentIndexerCalls < 1 || maxConcurrentCallsPerIndexer < 1 || maxQueuedIndexerCalls < 1) {
+            errors.add("The number of concurrent and queued indexer calls in \"Searching\" must be at least 1");
+        }
+
+        if (maxConcurrentSearchRequests < 1 || maxQueuedSearchRequests < 1) {
+            errors.add("The number of concurrent and queued search requests in \"Searching\" must be at least 1");
+        }
+
+        if (searchDeadlineSeconds != null) {
+            if (searchDeadlineSeconds < 1) {
+                errors.add("The search deadline in \"Searching\" must be at least 1 second");
+            } else if (timeout != null && searchDeadlineSeconds >= timeout) {
+                warnings.add("The search deadline in \"Searching\" is not shorter than the indexer timeout and will have no effect");
+            }
+        }
+
+        return new ConfigValidationResult(errors.isEmpty(), isRestartNeeded(oldConfig.getSearching()), errors, warnings);
     }
 
     @Override
@@ -72,6 +72,7 @@ public class IndexerConfig extends ValidatingConfig<IndexerConfig> {
     private Integer hitLimit = null;
     private Integer hitLimitResetTime = null;
     private String host;
+    private boolean jsonSupported;
     @SensitiveData //May contain API key in called URL
     private String lastError;
     private Long disabledUntil = null;
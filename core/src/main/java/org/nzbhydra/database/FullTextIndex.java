@@ -0,0 +1,107 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Provides access to H2's native full text index on the queries of searches (see migration V5). The index is maintained by triggers on
+ * every insert, update and delete so it's always up to date.
+ * <p>
+ * The titles of search results are not indexed. The triggers made inserting search results about 10 times slower and the database
+ * about 20 times bigger.
+ * <p>
+ * The index only knows whole words (separated by spaces, dots, dashes, underscores, etc.), case insensitive. When the database doesn't
+ * contain the index (e.g. when it was created without the migrations) the callers fall back to LIKE queries.
+ */
+@Component
+public class FullTextIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(FullTextIndex.class);
+
+    public static final String SEARCH = "SEARCH";
+
+    @Autowired
+    protected DataSource dataSource;
+
+    private volatile Set<String> indexedTables;
+
+    public boolean isIndexed(String tableName) {
+        if (indexedTables == null) {
+            indexedTables = loadIndexedTables();
+        }
+        return indexedTables.contains(tableName);
+    }
+
+    /**
+     * Returns a query selecting the IDs of all rows of the given table with all words of the text bound to the given parameter.
+     */
+    public String getIdsSubquery(String tableName, String parameterName) {
+        return "SELECT CAST(ARRAY_GET(KEYS, 1) AS BIGINT) FROM FT_SEARCH_DATA(:" + parameterName + ", 0, 0) WHERE \"TABLE\" = '" + tableName + "'";
+    }
+
+    /**
+     * @return true if any row of the given table contains all words of the text. False if the index couldn't be queried, so callers use
+     * their queries without the index
+     */
+    public boolean hasMatches(String tableName, String text) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM FT_SEARCH_DATA(?, 0, 0) WHERE \"TABLE\" = ? LIMIT 1")) {
+            statement.setString(1, text);
+            statement.setString(2, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            logger.error("Unable to query full text index", e);
+            return false;
+        }
+    }
+
+    private Set<String> loadIndexedTables() {
+        Set<String> tables = new HashSet<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'FT' AND TABLE_NAME = 'INDEXES'")) {
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next() || resultSet.getInt(1) == 0) {
+                    logger.info("Full text index not found in database. Will use slower queries");
+                    return tables;
+                }
+            }
+            try (PreparedStatement indexesStatement = connection.prepareStatement("SELECT \"TABLE\" FROM FT.INDEXES"); ResultSet resultSet = indexesStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    tables.add(resultSet.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Unable to determine full text indexes. Will use slower queries", e);
+        }
+        return tables;
+    }
+
+}
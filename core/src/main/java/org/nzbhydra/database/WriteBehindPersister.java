@@ -0,0 +1,452 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.database;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Iterables;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.nzbhydra.ShutdownEvent;
+import org.nzbhydra.indexers.IndexerApiAccessEntityShort;
+import org.nzbhydra.indexers.status.IndexerHitCounter;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.nzbhydra.searching.SearchResultIdCalculator;
+import org.nzbhydra.searching.db.SearchResultEntity;
+import org.nzbhydra.searching.db.SearchResultIdCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Writes search results and short API accesses to the database in the background so that searches don't have to wait for the database.
+ * Entities are collected in memory and written by a dedicated thread using JDBC batches, either when enough have been collected or when
+ * the oldest one has been waiting for {@value #FLUSH_INTERVAL_MILLIS}ms.
+ * <p>
+ * Search results are identified by the ID calculated by {@link SearchResultIdCalculator}, so a result found again before it was written
+ * is only written once. Results which already exist in the database are not touched (and keep their first found date). The
+ * {@link SearchResultIdCache} is used to skip results which were written recently and to insert results which are definitely new without
+ * merging them.
+ * <p>
+ * If a batch can't be written the entities are written one by one so that only the ones which can't be written at all are lost.
+ * <p>
+ * The number of entities held in memory is limited; callers are blocked until the writer has caught up when the limit is reached.
+ * Code which needs a search result in the database (e.g. to download it) must call {@link #waitForSearchResult(long)} first.
+ */
+@Component
+public class WriteBehindPersister {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindPersister.class);
+
+    static final int MAX_PENDING = 20_000;
+    static final int BATCH_SIZE = 500;
+    static final long FLUSH_INTERVAL_MILLIS = 500;
+    private static final long MAX_WAIT_MILLIS = 10_000;
+
+    private static final String MERGE_SEARCH_RESULT = "MERGE INTO SEARCHRESULT T USING (SELECT CAST(? AS BIGINT) AS ID) S ON T.ID = S.ID " +
+            "WHEN NOT MATCHED THEN INSERT (ID, DETAILS, DOWNLOAD_TYPE, FIRST_FOUND, INDEXERGUID, LINK, PUB_DATE, TITLE, INDEXER_ID, INDEXERSEARCHENTITY) " +
+            "VALUES (S.ID, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_SEARCH_RESULT = "INSERT INTO SEARCHRESULT (ID, DETAILS, DOWNLOAD_TYPE, FIRST_FOUND, INDEXERGUID, LINK, PUB_DATE, TITLE, INDEXER_ID, INDEXERSEARCHENTITY) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_API_ACCESS = "INSERT INTO INDEXERAPIACCESS_SHORT (ID, INDEXER_ID, TIME, SUCCESSFUL, API_ACCESS_TYPE) VALUES (HIBERNATE_SEQUENCE.NEXTVAL, ?, ?, ?, ?)";
+
+    @Autowired
+    protected DataSource dataSource;
+    @Autowired
+    protected SearchResultIdCache searchResultIdCache;
+    @Autowired
+    protected IndexerHitCounter indexerHitCounter;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private Map<Long, SearchResultEntity> pendingSearchResults = new LinkedHashMap<>();
+    private List<IndexerApiAccessEntityShort> pendingApiAccesses = new ArrayList<>();
+    private Map<Long, SearchResultEntity> writingSearchResults = Collections.emptyMap();
+    private int writingApiAccesses;
+    private long oldestPendingNanos;
+    private boolean flushRequested;
+    private boolean shutdown;
+    private Thread writerThread;
+
+    @PostConstruct
+    public void init() {
+        writerThread = new Thread(this::runWriter, "WriteBehindPersister");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        if (meterRegistry != null) {
+            Gauge.builder("hydra.db.writebehind.pending", this, WriteBehindPersister::getNumberOfPendingEntities).description("Entities waiting to be written to the database").register(meterRegistry);
+        }
+    }
+
+    /**
+     * Queues the given search results to be written. Their IDs are set to the calculated search result IDs.
+     */
+    public void saveSearchResults(Collection<SearchResultEntity> searchResults) {
+        if (searchResults.isEmpty()) {
+            return;
+        }
+        for (SearchResultEntity searchResult : searchResults) {
+            searchResult.setId(SearchResultIdCalculator.calculateSearchResultId(searchResult));
+        }
+        lock.lock();
+        try {
+            for (SearchResultEntity searchResult : searchResults) {
+                if (searchResultIdCache.isKnownToExist(searchResult.getId()) || writingSearchResults.containsKey(searchResult.getId())) {
+                    continue;
+                }
+                awaitSpace();
+                if (shutdown) {
+                    //Writer thread has already finished
+                    write(searchResults, Collections.emptyList());
+                    return;
+                }
+                if (pendingSearchResults.putIfAbsent(searchResult.getId(), searchResult) == null) {
+                    entityAdded();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void saveApiAccess(IndexerApiAccessEntityShort apiAccess) {
+        indexerHitCounter.register(apiAccess);
+        lock.lock();
+        try {
+            awaitSpace();
+            if (shutdown) {
+                write(Collections.emptyList(), Collections.singletonList(apiAccess));
+            } else {
+                pendingApiAccesses.add(apiAccess);
+                entityAdded();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the search result with the given ID is written to the database (if it's waiting to be written at all).
+     */
+    public void waitForSearchResult(long searchResultId) {
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+            while (!shutdown && (pendingSearchResults.containsKey(searchResultId) || writingSearchResults.containsKey(searchResultId))) {
+                logger.debug(LoggingMarkers.PERFORMANCE, "Waiting for search result with ID {} to be written", searchResultId);
+                flushRequested = true;
+                workAvailable.signal();
+                if (!awaitWritten(deadline)) {
+                    logger.warn("Search result with ID {} was not written to the database in time", searchResultId);
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until all entities queued so far are written to the database.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+            while (writerThread.isAlive() && (getNumberOfPendingEntities() > 0 || !writingSearchResults.isEmpty() || writingApiAccesses > 0)) {
+                flushRequested = true;
+                workAvailable.signal();
+                if (!awaitWritten(deadline)) {
+                    logger.warn("Unable to write {} entities to the database in time", getNumberOfPendingEntities());
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getNumberOfPendingEntities() {
+        return pendingSearchResults.size() + pendingApiAccesses.size();
+    }
+
+    @EventListener
+    public void onShutdown(ShutdownEvent event) {
+        lock.lock();
+        try {
+            if (getNumberOfPendingEntities() > 0) {
+                logger.debug("Writing {} entities to the database before shutdown", getNumberOfPendingEntities());
+            }
+            shutdown = true;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join(MAX_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for entities to be written to the database");
+        }
+    }
+
+    private void entityAdded() {
+        int pending = getNumberOfPendingEntities();
+        if (pending == 1) {
+            oldestPendingNanos = System.nanoTime();
+            workAvailable.signal();
+        } else if (pending >= BATCH_SIZE) {
+            workAvailable.signal();
+        }
+    }
+
+    private void awaitSpace() {
+        while (!shutdown && getNumberOfPendingEntities() >= MAX_PENDING) {
+            flushRequested = true;
+            workAvailable.signal();
+            written.awaitUninterruptibly();
+        }
+    }
+
+    private boolean awaitWritten(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return false;
+        }
+        try {
+            written.awaitNanos(remaining);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            Map<Long, SearchResultEntity> searchResults;
+            List<IndexerApiAccessEntityShort> apiAccesses;
+            lock.lock();
+            try {
+                while (!shutdown && !isFlushDue()) {
+                    if (getNumberOfPendingEntities() == 0) {
+                        workAvailable.awaitUninterruptibly();
+                    } else {
+                        try {
+                            workAvailable.awaitNanos(oldestPendingNanos + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS) - System.nanoTime());
+                        } catch (InterruptedException e) {
+                            logger.debug("Writer thread interrupted");
+                        }
+                    }
+                }
+                if (shutdown && getNumberOfPendingEntities() == 0) {
+                    written.signalAll();
+                    return;
+                }
+                searchResults = pendingSearchResults;
+                apiAccesses = pendingApiAccesses;
+                pendingSearchResults = new LinkedHashMap<>();
+                pendingApiAccesses = new ArrayList<>();
+                writingSearchResults = searchResults;
+                writingApiAccesses = apiAccesses.size();
+                flushRequested = false;
+            } finally {
+                lock.unlock();
+            }
+
+            write(searchResults.values(), apiAccesses);
+
+            lock.lock();
+            try {
+                writingSearchResults = Collections.emptyMap();
+                writingApiAccesses = 0;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean isFlushDue() {
+        int pending = getNumberOfPendingEntities();
+        if (pending == 0) {
+            return false;
+        }
+        return flushRequested || pending >= BATCH_SIZE || System.nanoTime() - oldestPendingNanos >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+    }
+
+    private void write(Collection<SearchResultEntity> searchResults, List<IndexerApiAccessEntityShort> apiAccesses) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<SearchResultEntity> newSearchResults = new ArrayList<>();
+        List<SearchResultEntity> possiblyExistingSearchResults = new ArrayList<>();
+        for (SearchResultEntity searchResult : searchResults) {
+            if (searchResultIdCache.mightExist(searchResult.getId())) {
+                possiblyExistingSearchResults.add(searchResult);
+            } else {
+                newSearchResults.add(searchResult);
+            }
+        }
+        try {
+            try {
+                searchResultIdCache.recordFalsePositives(writeToDatabase(newSearchResults, possiblyExistingSearchResults, apiAccesses));
+            } catch (SQLException e) {
+                if (newSearchResults.isEmpty()) {
+                    throw e;
+                }
+                //Should not happen but we don't want to lose any results if the ID cache is wrong
+                logger.warn("Error while inserting new search results. Will try to merge them", e);
+                List<SearchResultEntity> allSearchResults = new ArrayList<>(possiblyExistingSearchResults);
+                allSearchResults.addAll(newSearchResults);
+                writeToDatabase(Collections.emptyList(), allSearchResults, apiAccesses);
+            }
+        } catch (SQLException e) {
+            logger.warn("Error while writing {} search results and {} API accesses to the database. Will write them one by one", searchResults.size(), apiAccesses.size(), e);
+            writeOneByOne(newSearchResults, possiblyExistingSearchResults, apiAccesses);
+            return;
+        }
+        searchResultIdCache.addAll(searchResults.stream().map(SearchResultEntity::getId).collect(Collectors.toList()));
+        logger.debug(LoggingMarkers.PERFORMANCE, "Writing {} new and {} possibly existing search results and {} API accesses took {}ms", newSearchResults.size(), possiblyExistingSearchResults.size(), apiAccesses.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Writes every entity in its own transaction so that a single entity which can't be written (e.g. because of a constraint violation)
+     * doesn't cause all the others from the same batch to be lost. Only the entities which fail on their own are dropped.
+     */
+    private void writeOneByOne(List<SearchResultEntity> newSearchResults, List<SearchResultEntity> possiblyExistingSearchResults, List<IndexerApiAccessEntityShort> apiAccesses) {
+        List<Long> writtenIds = new ArrayList<>();
+        int failed = 0;
+        SQLException lastException = null;
+        int index = 0;
+        for (SearchResultEntity searchResult : Iterables.concat(newSearchResults, possiblyExistingSearchResults)) {
+            boolean possiblyExisting = index++ >= newSearchResults.size();
+            try {
+                //Always merge in case the ID cache is wrong
+                int inserted = writeToDatabase(Collections.emptyList(), Collections.singletonList(searchResult), Collections.emptyList());
+                if (possiblyExisting) {
+                    searchResultIdCache.recordFalsePositives(inserted);
+                }
+                writtenIds.add(searchResult.getId());
+            } catch (SQLException e) {
+                logger.debug("Unable to write search result with ID {}", searchResult.getId(), e);
+                failed++;
+                lastException = e;
+            }
+        }
+        for (IndexerApiAccessEntityShort apiAccess : apiAccesses) {
+            try {
+                writeToDatabase(Collections.emptyList(), Collections.emptyList(), Collections.singletonList(apiAccess));
+            } catch (SQLException e) {
+                logger.debug("Unable to write API access for indexer with ID {}", apiAccess.getIndexerId(), e);
+                failed++;
+                lastException = e;
+            }
+        }
+        searchResultIdCache.addAll(writtenIds);
+        if (failed > 0) {
+            logger.error("Unable to write {} of {} entities to the database", failed, newSearchResults.size() + possiblyExistingSearchResults.size() + apiAccesses.size(), lastException);
+        }
+    }
+
+    /**
+     * @return The number of inserted rows of the possibly existing search results
+     */
+    private int writeToDatabase(List<SearchResultEntity> newSearchResults, List<SearchResultEntity> possiblyExistingSearchResults, List<IndexerApiAccessEntityShort> apiAccesses) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                writeSearchResults(connection, INSERT_SEARCH_RESULT, newSearchResults);
+                int insertedPossiblyExisting = writeSearchResults(connection, MERGE_SEARCH_RESULT, possiblyExistingSearchResults);
+                if (!apiAccesses.isEmpty()) {
+                    try (PreparedStatement statement = connection.prepareStatement(INSERT_API_ACCESS)) {
+                        for (IndexerApiAccessEntityShort apiAccess : apiAccesses) {
+                            statement.setInt(1, apiAccess.getIndexerId());
+                            statement.setTimestamp(2, toTimestamp(apiAccess.getTime()));
+                            statement.setBoolean(3, apiAccess.isSuccessful());
+                            statement.setString(4, apiAccess.getApiAccessType() == null ? null : apiAccess.getApiAccessType().name());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                connection.commit();
+                return insertedPossiblyExisting;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return The number of inserted rows
+     */
+    private int writeSearchResults(Connection connection, String sql, List<SearchResultEntity> searchResults) throws SQLException {
+        if (searchResults.isEmpty()) {
+            return 0;
+        }
+        int inserted = 0;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < searchResults.size(); i++) {
+                SearchResultEntity searchResult = searchResults.get(i);
+                statement.setLong(1, searchResult.getId());
+                statement.setString(2, searchResult.getDetails());
+                statement.setString(3, searchResult.getDownloadType() == null ? null : searchResult.getDownloadType().name());
+                statement.setTimestamp(4, toTimestamp(searchResult.getFirstFound()));
+                statement.setString(5, searchResult.getIndexerGuid());
+                statement.setString(6, searchResult.getLink());
+                statement.setTimestamp(7, toTimestamp(searchResult.getPubDate()));
+                statement.setString(8, searchResult.getTitle());
+                statement.setInt(9, searchResult.getIndexer().getId());
+                statement.setObject(10, searchResult.getIndexerSearchEntity() == null ? null : searchResult.getIndexerSearchEntity().getId(), Types.INTEGER);
+                statement.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0 || i == searchResults.size() - 1) {
+                    for (int updateCount : statement.executeBatch()) {
+                        inserted += updateCount;
+                    }
+                }
+            }
+        }
+        return inserted;
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant == null ? null : Timestamp.from(instant);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.database.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.nzbhydra.NzbHydra;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Moves the indexer API accesses from the database to the {@link IndexerApiAccessStore}. Their stats are calculated from the store.
+ */
+public class V8__MOVE_API_ACCESSES_TO_STORE extends BaseJavaMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(V8__MOVE_API_ACCESSES_TO_STORE.class);
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        File directory = new File(NzbHydra.getDataFolder(), "apiaccess");
+        //Segments can only exist if a previous attempt failed. The accesses would be contained twice
+        File[] existingSegments = directory.listFiles();
+        if (existingSegments != null) {
+            for (File segment : existingSegments) {
+                if (!segment.delete()) {
+                    throw new IllegalStateException("Unable to delete " + segment);
+                }
+            }
+        }
+        IndexerApiAccessStore store = new IndexerApiAccessStore(directory);
+        int count = 0;
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.setFetchSize(10_000);
+            try (ResultSet resultSet = statement.executeQuery("select TIME, INDEXER_ID, RESULT, ACCESS_TYPE, RESPONSE_TIME from INDEXERAPIACCESS where TIME is not null order by TIME")) {
+                while (resultSet.next()) {
+                    Long responseTime = resultSet.getLong(5);
+                    if (resultSet.wasNull()) {
+                        responseTime = null;
+                    }
+                    store.append(resultSet.getTimestamp(1).toInstant(), resultSet.getInt(2), resultSet.getString(3), resultSet.getString(4), responseTime);
+                    count++;
+                }
+            }
+            store.flush();
+            statement.executeUpdate("truncate table INDEXERAPIACCESS");
+        }
+        logger.info("Moved {} indexer API accesses to {}", count, directory);
+    }
+}
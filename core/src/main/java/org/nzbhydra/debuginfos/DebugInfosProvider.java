@@ -13,10 +13,13 @@ import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.ConfigReaderWriter;
 import org.nzbhydra.config.category.CategoriesConfig;
 import org.nzbhydra.config.category.Category;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
 import org.nzbhydra.logging.LogAnonymizer;
 import org.nzbhydra.logging.LogContentProvider;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.problemdetection.OutdatedWrapperDetector;
+import org.nzbhydra.searching.SearchCache;
+import org.nzbhydra.searching.db.SearchResultIdCache;
 import org.nzbhydra.update.UpdateManager;
 import org.nzbhydra.webaccess.HydraOkHttp3ClientHttpRequestFactory;
 import org.nzbhydra.webaccess.Ssl;
@@ -84,6 +87,12 @@ public class DebugInfosProvider {
     private OutdatedWrapperDetector wrapperDetector;
     @Autowired
     private Ssl ssl;
+    @Autowired
+    private SearchResultIdCache searchResultIdCache;
+    @Autowired
+    private SearchCache searchCache;
+    @Autowired
+    private IndexerApiAccessStore indexerApiAccessStore;
 
     @Value("spring.datasource.url")
     private String datasourceUrl;
@@ -191,9 +200,12 @@ public class DebugInfosProvider {
         logNumberOfTableRows("SEARCH");
         logNumberOfTableRows("SEARCHRESULT");
         logNumberOfTableRows("INDEXERSEARCH");
-        logNumberOfTableRows("INDEXERAPIACCESS");
+        long[] apiAccessSegments = indexerApiAccessStore.getSegmentsCountAndSize();
+        logger.info("Indexer API accesses: {} segments with {}KB", apiAccessSegments[0], apiAccessSegments[1] / 1024);
         logNumberOfTableRows("INDEXERAPIACCESS_SHORT");
         logNumberOfTableRows("INDEXERNZBDOWNLOAD");
+        logger.info("Search result ID cache: {}", searchResultIdCache.getStatistics());
+        logger.info("Search cache: {}", searchCache.getStatistics());
         logDatabaseFolderSize();
         if (isRunInDocker()) {
             logger.info("Apparently run in docker");
@@ -9,9 +9,9 @@ import org.nzbhydra.GenericResponse;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.MainConfig;
 import org.nzbhydra.config.downloading.FileDownloadAccessType;
+import org.nzbhydra.database.WriteBehindPersister;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerApiAccessEntityShort;
-import org.nzbhydra.indexers.IndexerApiAccessEntityShortRepository;
 import org.nzbhydra.indexers.IndexerApiAccessType;
 import org.nzbhydra.indexers.NfoResult;
 import org.nzbhydra.searching.SearchModuleProvider;
@@ -61,7 +61,7 @@ public class FileHandler {
     @Autowired
     protected FileDownloadRepository downloadRepository;
     @Autowired
-    private IndexerApiAccessEntityShortRepository shortRepository;
+    private WriteBehindPersister writeBehindPersister;
     @Autowired
     protected SearchModuleProvider searchModuleProvider;
     @Autowired
@@ -73,6 +73,7 @@ public class FileHandler {
 
     @Transactional
     public DownloadResult getFileByGuid(long guid, FileDownloadAccessType fileDownloadAccessType, SearchSource accessSource) throws InvalidSearchResultIdException {
+        writeBehindPersister.waitForSearchResult(guid);
         Optional<SearchResultEntity> optionalResult = searchResultRepository.findById(guid);
         if (!optionalResult.isPresent()) {
             logger.error("Download request with invalid/outdated GUID {}", guid);
@@ -136,7 +137,7 @@ public class FileHandler {
             if (configProvider.getBaseConfig().getMain().isKeepHistory()) {
                 downloadRepository.save(downloadEntity);
             }
-            shortRepository.save(new IndexerApiAccessEntityShort(result.getIndexer(), false, IndexerApiAccessType.NZB));
+            writeBehindPersister.saveApiAccess(new IndexerApiAccessEntityShort(result.getIndexer(), false, IndexerApiAccessType.NZB));
 
             eventPublisher.publishEvent(new FileDownloadEvent(downloadEntity, result));
             return DownloadResult.createErrorResult("An error occurred while downloading " + result.getTitle() + " from indexer " + result.getIndexer().getName(), HttpStatus.valueOf(e.getStatus()), downloadEntity);
@@ -150,7 +151,7 @@ public class FileHandler {
         if (configProvider.getBaseConfig().getMain().isKeepHistory()) {
             downloadRepository.save(downloadEntity);
         }
-        shortRepository.save(new IndexerApiAccessEntityShort(result.getIndexer(), true, IndexerApiAccessType.NZB));
+        writeBehindPersister.saveApiAccess(new IndexerApiAccessEntityShort(result.getIndexer(), true, IndexerApiAccessType.NZB));
         eventPublisher.publishEvent(new FileDownloadEvent(downloadEntity, result));
 
         return DownloadResult.createSuccessfulDownloadResult(result.getTitle(), fileContent, downloadEntity);
@@ -163,7 +164,7 @@ public class FileHandler {
         if (configProvider.getBaseConfig().getMain().isKeepHistory()) {
             downloadRepository.save(downloadEntity);
         }
-        shortRepository.save(new IndexerApiAccessEntityShort(result.getIndexer(), true, IndexerApiAccessType.NZB));
+        writeBehindPersister.saveApiAccess(new IndexerApiAccessEntityShort(result.getIndexer(), true, IndexerApiAccessType.NZB));
         eventPublisher.publishEvent(new FileDownloadEvent(downloadEntity, result));
 
         return DownloadResult.createSuccessfulRedirectResult(result.getTitle(), result.getLink(), downloadEntity);
@@ -279,6 +280,7 @@ public class FileHandler {
     }
 
     public NfoResult getNfo(Long searchResultId) {
+        writeBehindPersister.waitForSearchResult(searchResultId);
         Optional<SearchResultEntity> optionalResult = searchResultRepository.findById(searchResultId);
         if (!optionalResult.isPresent()) {
             logger.error("Download request with invalid/outdated search result ID " + searchResultId);
@@ -301,7 +303,7 @@ public class FileHandler {
         Request request = new Request.Builder().url(result.getLink()).build();
         Indexer indexerByName = searchModuleProvider.getIndexerByName(result.getIndexer().getName());
         Integer timeout = indexerByName.getConfig().getTimeout().orElse(configProvider.getBaseConfig().getSearching().getTimeout());
-        try (Response response = clientHttpRequestFactory.getOkHttpClientBuilder(request.url().uri()).readTimeout(timeout, TimeUnit.SECONDS).connectTimeout(timeout, TimeUnit.SECONDS).followRedirects(true).build().newCall(request).execute()) {
+        try (Response response = clientHttpRequestFactory.getOkHttpClient(request.url().uri(), timeout).newCall(request).execute()) {
             if (response.isRedirect()) {
                 return handleRedirect(result, response);
             }
@@ -26,6 +26,7 @@ import org.nzbhydra.GenericResponse;
 import org.nzbhydra.config.downloading.DownloaderConfig;
 import org.nzbhydra.config.downloading.FileDownloadAccessType;
 import org.nzbhydra.config.downloading.NzbAddingType;
+import org.nzbhydra.database.WriteBehindPersister;
 import org.nzbhydra.downloading.AddFilesRequest;
 import org.nzbhydra.downloading.DownloadResult;
 import org.nzbhydra.downloading.FileDownloadEntity;
@@ -76,6 +77,8 @@ public abstract class Downloader {
     protected FileHandler nzbHandler;
     @Autowired
     protected SearchResultRepository searchResultRepository;
+    @Autowired
+    protected WriteBehindPersister writeBehindPersister;
 
     protected DownloaderConfig downloaderConfig;
     protected List<Long> downloadRates = new ArrayList<>();
@@ -127,6 +130,7 @@ public abstract class Downloader {
                             missedNzbs.add(searchResult);
                         }
                     } else if (addingType == NzbAddingType.SEND_LINK) {
+                        writeBehindPersister.waitForSearchResult(guid);
                         searchResult = searchResultRepository.getOne(guid);
                         String externalId = addLink(nzbHandler.getDownloadLink(guid, false, DownloadType.NZB), searchResult.getTitle(), categoryToSend);
                         guidExternalIds.put(guid, externalId);
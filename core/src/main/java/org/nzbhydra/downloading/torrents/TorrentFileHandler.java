@@ -19,6 +19,7 @@ package org.nzbhydra.downloading.torrents;
 import com.google.common.io.Files;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.downloading.FileDownloadAccessType;
+import org.nzbhydra.database.WriteBehindPersister;
 import org.nzbhydra.downloading.DownloadResult;
 import org.nzbhydra.downloading.FileHandler;
 import org.nzbhydra.downloading.InvalidSearchResultIdException;
@@ -54,10 +55,13 @@ public class TorrentFileHandler {
     protected ConfigProvider configProvider;
     @Autowired
     private SearchResultRepository searchResultRepository;
+    @Autowired
+    private WriteBehindPersister writeBehindPersister;
 
     @Transactional
     public DownloadResult getTorrentByGuid(long guid, FileDownloadAccessType accessType, SearchRequest.SearchSource accessSource) throws InvalidSearchResultIdException {
         //Get result. if link contains magnet: return redirect to magnet URI. otherwise return file
+        writeBehindPersister.waitForSearchResult(guid);
         Optional<SearchResultEntity> optionalResult = searchResultRepository.findById(guid);
         if (!optionalResult.isPresent()) {
             logger.error("Download request with invalid/outdated GUID {}", guid);
@@ -1,8 +1,12 @@
 package org.nzbhydra.historystats;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.nzbhydra.database.FullTextIndex;
+import org.nzbhydra.downloading.FileDownloadEntity;
 import org.nzbhydra.historystats.stats.HistoryRequest;
 import org.nzbhydra.indexers.IndexerSearchEntity;
 import org.nzbhydra.indexers.IndexerSearchRepository;
@@ -20,7 +24,10 @@ import org.springframework.stereotype.Component;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
-import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -30,6 +37,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("unchecked")
 @Component
@@ -38,12 +47,23 @@ public class History {
     public static final String DOWNLOAD_TABLE = "INDEXERNZBDOWNLOAD left join SEARCHRESULT on INDEXERNZBDOWNLOAD.SEARCH_RESULT_ID = SEARCHRESULT.ID LEFT JOIN INDEXER ON SEARCHRESULT.INDEXER_ID = INDEXER.ID";
     public static final String SEARCH_TABLE = "SEARCH";
 
+    private static final int MAX_PAGE_CURSORS = 1000;
+    private static final int MAX_COUNTS = 200;
+    private static final Duration COUNT_MAX_AGE = Duration.ofMinutes(10);
+    private static final Duration FILTERED_COUNT_MAX_AGE = Duration.ofMinutes(1);
+
     @PersistenceContext
     private EntityManager entityManager;
     @Autowired
     private SearchRepository searchRepository;
     @Autowired
     private IndexerSearchRepository indexerSearchRepository;
+    @Autowired
+    private FullTextIndex fullTextIndex;
+
+    protected Clock clock = Clock.systemUTC();
+    private final Cache<String, PageCursor> pageCursors = CacheBuilder.newBuilder().maximumSize(MAX_PAGE_CURSORS).expireAfterAccess(30, TimeUnit.MINUTES).build();
+    private final Cache<String, CachedCount> counts = CacheBuilder.newBuilder().maximumSize(MAX_COUNTS).build();
 
     public <T> Page<T> getHistory(HistoryRequest requestData, String tableName, Class<T> resultClass) {
         Map<String, Object> parameters = new HashMap<>();
@@ -58,6 +78,12 @@ public class History {
             if (filterType.equals("freetext")) {
                 wheres.add(String.format("LOWER(%s) LIKE :%s", columnName, columnName));
                 parameters.put(columnName, "%" + filterValue.toString().toLowerCase() + "%");
+                Optional<String> fullTextTable = getFullTextIndexedTable(tableName, columnName);
+                if (fullTextTable.isPresent() && fullTextIndex.hasMatches(fullTextTable.get(), filterValue.toString())) {
+                    //Only check the rows containing all the words. If no row contains them the filter probably contains partial words
+                    wheres.add(String.format("%s.ID IN (%s)", fullTextTable.get(), fullTextIndex.getIdsSubquery(fullTextTable.get(), columnName + "FullText")));
+                    parameters.put(columnName + "FullText", filterValue.toString());
+                }
             } else if (filterType.equals("text")) {
                 wheres.add(String.format("LOWER(%s) = :%s", columnName, columnName));
                 parameters.put(columnName, filterValue.toString().toLowerCase());
@@ -82,6 +108,10 @@ public class History {
         SortModel sortModel = requestData.getSortModel();
         boolean useNullsLast = true;
         boolean useLower = true;
+        Optional<String> idColumn = getIdColumn(tableName);
+        boolean ascending = sortModel != null && sortModel.getSortMode() == 1;
+        //Only the time column is never null and backed by a (time, id) index so only time sorted pages can be seeked
+        boolean useKeyset = sortModel != null && "time".equalsIgnoreCase(sortModel.getColumn()) && idColumn.isPresent();
         if (sortModel != null) {
             String column = sortModel.getColumn();
             if ("time".equalsIgnoreCase(column) || "age".equalsIgnoreCase(column)) {
@@ -91,11 +121,13 @@ public class History {
             if (useLower) {
                 column = "lower(" + column + ")";
             }
-            sort = String.format(" order by %s %s %s ", column, sortModel.getSortMode() == 1 ? "ASC" : "DESC", useNullsLast ? "nulls last" : "");
+            sort = String.format(" order by %s %s %s ", column, ascending ? "ASC" : "DESC", useNullsLast ? "nulls last" : "");
         }
         //Always sort by newest next so order remains stable
         if (!"time".equalsIgnoreCase(sortModel.getColumn())) {
             sort += ", time desc";
+        } else if (idColumn.isPresent()) {
+            sort += String.format(", %s %s", idColumn.get(), ascending ? "ASC" : "DESC");
         }
 
 
@@ -104,29 +136,127 @@ public class History {
             whereConditions = " WHERE " + String.join(" AND ", wheres);
         }
 
-        String paging = String.format(" LIMIT %d OFFSET %d", requestData.getLimit(), (requestData.getPage() - 1) * requestData.getLimit());
+        CachedCount countAndMaxId = getCountAndMaxId(tableName, whereConditions, parameters, idColumn);
+        String querySignature = tableName + whereConditions + new TreeMap<>(parameters) + sort + requestData.getLimit();
+        PageCursor previousPageCursor = useKeyset && requestData.getPage() > 1 ? pageCursors.getIfPresent(querySignature + "|" + (requestData.getPage() - 1)) : null;
+        if (previousPageCursor != null && previousPageCursor.getMaxId() != countAndMaxId.getMaxId()) {
+            //Rows were added since the cursor was created so the previous page doesn't end with the same row anymore
+            previousPageCursor = null;
+        }
 
+        String selectWhereConditions = whereConditions;
+        Map<String, Object> selectParameters = new HashMap<>(parameters);
+        String paging;
+        if (previousPageCursor != null) {
+            //Seek directly to the rows after the last one of the previous page instead of reading and skipping all rows before
+            String comparator = ascending ? ">" : "<";
+            selectWhereConditions = (whereConditions.isEmpty() ? " WHERE " : whereConditions + " AND ") + String.format("time %s= :cursorTime AND (time %s :cursorTime OR %s %s :cursorId)", comparator, comparator, idColumn.get(), comparator);
+            selectParameters.put("cursorTime", Timestamp.from(previousPageCursor.getTime()));
+            selectParameters.put("cursorId", previousPageCursor.getId());
+            paging = String.format(" LIMIT %d", requestData.getLimit());
+        } else {
+            paging = String.format(" LIMIT %d OFFSET %d", requestData.getLimit(), (requestData.getPage() - 1) * requestData.getLimit());
+        }
 
-        String selectQuerySql = "SELECT * FROM " + tableName + whereConditions + sort + paging;
-        String countQuerySql = "SELECT COUNT(*) FROM " + tableName + whereConditions;
+        String selectQuerySql = "SELECT * FROM " + tableName + selectWhereConditions + sort + paging;
 
         Query selectQuery = entityManager.createNativeQuery(selectQuerySql, resultClass);
-        Query countQuery = entityManager.createNativeQuery(countQuerySql);
-        for (Entry<String, Object> entry : parameters.entrySet()) {
+        for (Entry<String, Object> entry : selectParameters.entrySet()) {
             selectQuery.setParameter(entry.getKey(), entry.getValue());
-            countQuery.setParameter(entry.getKey(), entry.getValue());
         }
 
         List resultList = selectQuery.getResultList();
+        if (useKeyset && !resultList.isEmpty()) {
+            getPageCursor(resultList.get(resultList.size() - 1), countAndMaxId.getMaxId()).ifPresent(x -> pageCursors.put(querySignature + "|" + requestData.getPage(), x));
+        }
         Pageable pageable;
         if (sortModel == null) {
             pageable = PageRequest.of(requestData.getPage() - 1, requestData.getLimit());
         } else {
-            pageable = PageRequest.of(requestData.getPage() - 1, requestData.getLimit(), sortModel.getSortMode() == 1 ? Sort.Direction.ASC : Sort.Direction.DESC, sortModel.getColumn());
+            pageable = PageRequest.of(requestData.getPage() - 1, requestData.getLimit(), ascending ? Sort.Direction.ASC : Sort.Direction.DESC, sortModel.getColumn());
+        }
+
+        return new PageImpl<>(resultList, pageable, countAndMaxId.getCount());
+    }
+
+    /**
+     * Removes all cached counts and page cursors. Must be called after history entries were deleted.
+     */
+    public void invalidateCounts() {
+        counts.invalidateAll();
+        pageCursors.invalidateAll();
+    }
+
+    /**
+     * Returns the number of rows matching the given conditions. Counting all rows of the history tables takes a while so the counts are
+     * cached and only the rows added since (i.e. with a higher ID) are counted on later calls. Deleted rows are only taken into account
+     * when the counts are invalidated or recounted after a while. Filtered counts are recounted more often because downloads may change
+     * their status.
+     */
+    protected long getCount(String tableName, String whereConditions, Map<String, Object> parameters, Optional<String> idColumn) {
+        return getCountAndMaxId(tableName, whereConditions, parameters, idColumn).getCount();
+    }
+
+    private CachedCount getCountAndMaxId(String tableName, String whereConditions, Map<String, Object> parameters, Optional<String> idColumn) {
+        if (!idColumn.isPresent()) {
+            return queryCountAndMaxId(tableName, whereConditions, parameters, "NULL");
+        }
+        String key = tableName + whereConditions + new TreeMap<>(parameters);
+        Duration maxAge = whereConditions.isEmpty() ? COUNT_MAX_AGE : FILTERED_COUNT_MAX_AGE;
+        Instant now = clock.instant();
+        CachedCount cachedCount = counts.getIfPresent(key);
+        if (cachedCount == null || cachedCount.getCountedAt().plus(maxAge).isBefore(now)) {
+            CachedCount newCount = queryCountAndMaxId(tableName, whereConditions, parameters, idColumn.get());
+            cachedCount = new CachedCount(newCount.getCount(), newCount.getMaxId(), now);
+        } else {
+            Map<String, Object> newRowsParameters = new HashMap<>(parameters);
+            newRowsParameters.put("countedMaxId", cachedCount.getMaxId());
+            String newRowsWhereConditions = (whereConditions.isEmpty() ? " WHERE " : whereConditions + " AND ") + idColumn.get() + " > :countedMaxId";
+            CachedCount newRows = queryCountAndMaxId(tableName, newRowsWhereConditions, newRowsParameters, idColumn.get());
+            if (newRows.getCount() == 0) {
+                return cachedCount;
+            }
+            cachedCount = new CachedCount(cachedCount.getCount() + newRows.getCount(), newRows.getMaxId(), cachedCount.getCountedAt());
+        }
+        counts.put(key, cachedCount);
+        return cachedCount;
+    }
+
+    private CachedCount queryCountAndMaxId(String tableName, String whereConditions, Map<String, Object> parameters, String idColumn) {
+        Query countQuery = entityManager.createNativeQuery("SELECT COUNT(*), MAX(" + idColumn + ") FROM " + tableName + whereConditions);
+        for (Entry<String, Object> entry : parameters.entrySet()) {
+            countQuery.setParameter(entry.getKey(), entry.getValue());
+        }
+        Object[] countAndMaxId = (Object[]) countQuery.getSingleResult();
+        int maxId = countAndMaxId[1] == null ? 0 : ((Number) countAndMaxId[1]).intValue();
+        return new CachedCount(((Number) countAndMaxId[0]).longValue(), maxId, null);
+    }
+
+    private static Optional<String> getIdColumn(String tableName) {
+        if (SEARCH_TABLE.equals(tableName)) {
+            return Optional.of("SEARCH.ID");
+        }
+        if (DOWNLOAD_TABLE.equals(tableName)) {
+            return Optional.of("INDEXERNZBDOWNLOAD.ID");
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<PageCursor> getPageCursor(Object entity, int maxId) {
+        if (entity instanceof SearchEntity) {
+            return Optional.of(new PageCursor(((SearchEntity) entity).getTime(), ((SearchEntity) entity).getId(), maxId));
         }
+        if (entity instanceof FileDownloadEntity) {
+            return Optional.of(new PageCursor(((FileDownloadEntity) entity).getTime(), ((FileDownloadEntity) entity).getId(), maxId));
+        }
+        return Optional.empty();
+    }
 
-        BigInteger count = (BigInteger) countQuery.getSingleResult();
-        return new PageImpl<>(resultList, pageable, count.longValue());
+    private Optional<String> getFullTextIndexedTable(String tableName, String columnName) {
+        if (SEARCH_TABLE.equals(tableName) && "query".equalsIgnoreCase(columnName) && fullTextIndex.isIndexed(FullTextIndex.SEARCH)) {
+            return Optional.of(FullTextIndex.SEARCH);
+        }
+        return Optional.empty();
     }
 
     public List<SearchEntity> getHistoryForSearching() {
@@ -171,6 +301,26 @@ public class History {
         List<IndexerSearchTO> indexerSearches;
     }
 
+    /**
+     * Sort key and ID of the last row of a page sorted by time and the highest ID of all rows matching the query when the page was loaded.
+     * New rows move all rows down by one so the cursor may only be used as long as no rows with higher IDs exist.
+     */
+    @Data
+    @AllArgsConstructor
+    private static class PageCursor {
+        private final Instant time;
+        private final int id;
+        private final int maxId;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class CachedCount {
+        private final long count;
+        private final int maxId;
+        private final Instant countedAt;
+    }
+
     @Data
     @AllArgsConstructor
     @NoArgsConstructor
@@ -5,6 +5,7 @@ import org.nzbhydra.config.indexer.IndexerConfig;
 import org.nzbhydra.config.indexer.SearchModuleType;
 import org.nzbhydra.historystats.stats.*;
 import org.nzbhydra.indexers.*;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.searching.SearchModuleProvider;
 import org.nzbhydra.searching.db.SearchResultRepository;
@@ -20,6 +21,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import java.math.BigInteger;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
@@ -31,6 +33,10 @@ public class Stats {
 
     private static final Logger logger = LoggerFactory.getLogger(Stats.class);
     private static final int TIMEOUT = 120;
+    /**
+     * The rollup tables only know the hour of an access so the stats are calculated for full hours.
+     */
+    private static final String ROLLUP_TIME_COLUMN = "HOUR_START";
 
     @Autowired
     private SearchModuleProvider searchModuleProvider;
@@ -44,6 +50,10 @@ public class Stats {
     private SearchResultRepository searchResultRepository;
     @Autowired
     private IndexerUniquenessScoreEntityRepository uniquenessScoreEntityRepository;
+    @Autowired
+    private StatsRollups statsRollups;
+    @Autowired
+    private IndexerApiAccessStore indexerApiAccessStore;
 
     @Transactional(readOnly = true)
     public StatsResponse getAllStats(StatsRequest statsRequest) throws InterruptedException {
@@ -53,6 +63,9 @@ public class Stats {
         StatsResponse statsResponse = new StatsResponse();
         statsResponse.setAfter(statsRequest.getAfter());
         statsResponse.setBefore(statsRequest.getBefore());
+        //Make sure the latest accesses, searches and downloads are included
+        statsRollups.flush();
+        indexerApiAccessStore.flush();
 
         ExecutorService executor = Executors.newFixedThreadPool(1); //Multithreading doesn't improve performance but it allows us to stop calculation when the time is over
 
@@ -70,17 +83,17 @@ public class Stats {
         }
 
         if (statsRequest.isSearchesPerDayOfWeek()) {
-            futures.add(executor.submit(() -> statsResponse.setSearchesPerDayOfWeek(countPerDayOfWeek("SEARCH", statsRequest))));
+            futures.add(executor.submit(() -> statsResponse.setSearchesPerDayOfWeek(countPerDayOfWeek(StatsRollups.SEARCH, statsRequest))));
         }
         if (statsRequest.isDownloadsPerDayOfWeek()) {
-            futures.add(executor.submit(() -> statsResponse.setDownloadsPerDayOfWeek(countPerDayOfWeek("INDEXERNZBDOWNLOAD", statsRequest))));
+            futures.add(executor.submit(() -> statsResponse.setDownloadsPerDayOfWeek(countPerDayOfWeek(StatsRollups.DOWNLOAD, statsRequest))));
         }
 
         if (statsRequest.isSearchesPerHourOfDay()) {
-            futures.add(executor.submit(() -> statsResponse.setSearchesPerHourOfDay(countPerHourOfDay("SEARCH", statsRequest))));
+            futures.add(executor.submit(() -> statsResponse.setSearchesPerHourOfDay(countPerHourOfDay(StatsRollups.SEARCH, statsRequest))));
         }
         if (statsRequest.isDownloadsPerHourOfDay()) {
-            futures.add(executor.submit(() -> statsResponse.setDownloadsPerHourOfDay(countPerHourOfDay("INDEXERNZBDOWNLOAD", statsRequest))));
+            futures.add(executor.submit(() -> statsResponse.setDownloadsPerHourOfDay(countPerHourOfDay(StatsRollups.DOWNLOAD, statsRequest))));
         }
 
         if (statsRequest.isIndexerDownloadShares()) {
@@ -106,27 +119,23 @@ public class Stats {
 
 
         if (statsRequest.isSearchSharesPerUser()) {
-            BigInteger countSearchesWithData = (BigInteger) entityManager.createNativeQuery("SELECT count(*) FROM SEARCH t WHERE t.USERNAME IS NOT NULL").getSingleResult();
-            if (countSearchesWithData.intValue() > 0) {
-                futures.add(executor.submit(() -> statsResponse.setSearchSharesPerUser(downloadsOrSearchesPerUserOrIp(statsRequest, "SEARCH", "USERNAME"))));
+            if (hasActivities(StatsRollups.SEARCH, StatsRollups.USERNAME)) {
+                futures.add(executor.submit(() -> statsResponse.setSearchSharesPerUser(downloadsOrSearchesPerUserOrIp(statsRequest, StatsRollups.SEARCH, StatsRollups.USERNAME))));
             }
         }
         if (statsRequest.isDownloadSharesPerUser()) {
-            BigInteger countDownloadsWithData = (BigInteger) entityManager.createNativeQuery("SELECT count(*) FROM INDEXERNZBDOWNLOAD t WHERE t.USERNAME IS NOT NULL").getSingleResult();
-            if (countDownloadsWithData.intValue() > 0) {
-                futures.add(executor.submit(() -> statsResponse.setDownloadSharesPerUser(downloadsOrSearchesPerUserOrIp(statsRequest, "INDEXERNZBDOWNLOAD", "USERNAME"))));
+            if (hasActivities(StatsRollups.DOWNLOAD, StatsRollups.USERNAME)) {
+                futures.add(executor.submit(() -> statsResponse.setDownloadSharesPerUser(downloadsOrSearchesPerUserOrIp(statsRequest, StatsRollups.DOWNLOAD, StatsRollups.USERNAME))));
             }
         }
         if (statsRequest.isSearchSharesPerIp()) {
-            BigInteger countSearchesWithData = (BigInteger) entityManager.createNativeQuery("SELECT count(*) FROM SEARCH t WHERE t.IP IS NOT NULL").getSingleResult();
-            if (countSearchesWithData.intValue() > 0) {
-                futures.add(executor.submit(() -> statsResponse.setSearchSharesPerIp(downloadsOrSearchesPerUserOrIp(statsRequest, "SEARCH", "IP"))));
+            if (hasActivities(StatsRollups.SEARCH, StatsRollups.IP)) {
+                futures.add(executor.submit(() -> statsResponse.setSearchSharesPerIp(downloadsOrSearchesPerUserOrIp(statsRequest, StatsRollups.SEARCH, StatsRollups.IP))));
             }
         }
         if (statsRequest.isDownloadSharesPerIp()) {
-            BigInteger countDownloadsWithData = (BigInteger) entityManager.createNativeQuery("SELECT count(*) FROM INDEXERNZBDOWNLOAD t WHERE t.IP IS NOT NULL").getSingleResult();
-            if (countDownloadsWithData.intValue() > 0) {
-                futures.add(executor.submit(() -> statsResponse.setDownloadSharesPerIp(downloadsOrSearchesPerUserOrIp(statsRequest, "INDEXERNZBDOWNLOAD", "IP"))));
+            if (hasActivities(StatsRollups.DOWNLOAD, StatsRollups.IP)) {
+                futures.add(executor.submit(() -> statsResponse.setDownloadSharesPerIp(downloadsOrSearchesPerUserOrIp(statsRequest, StatsRollups.DOWNLOAD, StatsRollups.IP))));
             }
         }
 
@@ -165,24 +174,11 @@ public class Stats {
 
         List<IndexerDownloadShare> indexerDownloadShares = new ArrayList<>();
 
-        String sqlQueryByIndexer =
-            "SELECT\n" +
-                "  indexer.name,\n" +
-                "  count(*) AS total,\n" +
-                "  countall.countall\n" +
-                "FROM\n" +
-                "  indexernzbdownload dl LEFT JOIN SEARCHRESULT ON dl.SEARCH_RESULT_ID = SEARCHRESULT.ID\n" +
-                "  LEFT JOIN indexer ON SEARCHRESULT.INDEXER_ID = INDEXER.ID\n" +
-                "  ,\n" +
-                "  (SELECT count(*) AS countall\n" +
-                "   FROM\n" +
-                "     indexernzbdownload dl LEFT JOIN SEARCHRESULT ON dl.SEARCH_RESULT_ID = SEARCHRESULT.ID\n" +
-                buildWhereFromStatsRequest(false, statsRequest) +
-                ")\n" +
-                "  countall\n" +
-                buildWhereFromStatsRequest(false, statsRequest) +
-                "GROUP BY\n" +
-                "  INDEXER.NAME";
+        String sqlQueryByIndexer = "SELECT DIMENSION_VALUE, SUM(ACCESS_COUNT) FROM STATS_ACTIVITY_HOURLY\n" +
+            "WHERE ACTIVITY = '" + StatsRollups.DOWNLOAD + "' AND DIMENSION = '" + StatsRollups.INDEXER + "'\n" +
+            buildWhereFromStatsRequest(true, statsRequest, ROLLUP_TIME_COLUMN) +
+            "GROUP BY DIMENSION_VALUE";
+        long countAll = sumActivities(StatsRollups.DOWNLOAD, StatsRollups.TOTAL, statsRequest);
 
         Query query = entityManager.createNativeQuery(sqlQueryByIndexer);
         Set<String> indexerNamesToInclude = searchModuleProvider.getIndexers().stream().filter(x -> x.getConfig().getState() == IndexerConfig.State.ENABLED || statsRequest.isIncludeDisabled()).map(Indexer::getName).collect(Collectors.toSet());
@@ -193,8 +189,7 @@ public class Stats {
             if (!indexerNamesToInclude.contains(indexerName)) {
                 continue;
             }
-            long total = ((BigInteger) resultSet[1]).longValue();
-            long countAll = ((BigInteger) resultSet[2]).longValue();
+            long total = ((Number) resultSet[1]).longValue();
             float share = total > 0 ? (100F / ((float) countAll / total)) : 0F;
             indexerDownloadShares.add(new IndexerDownloadShare(indexerName, total, share));
         }
@@ -207,30 +202,19 @@ public class Stats {
         Stopwatch stopwatch = Stopwatch.createStarted();
         logger.debug("Calculating average response times for indexers");
         List<AverageResponseTime> averageResponseTimes = new ArrayList<>();
-        String sql = "SELECT\n" +
-            "  NAME,\n" +
-            "  avg(RESPONSE_TIME) AS avg\n" +
-            "FROM INDEXERAPIACCESS\n" +
-            "  LEFT JOIN indexer i ON INDEXERAPIACCESS.INDEXER_ID = i.ID\n" +
-            buildWhereFromStatsRequest(false, statsRequest) +
-            "GROUP BY INDEXER_ID\n" +
-            "ORDER BY avg ASC";
-
-        Query query = entityManager.createNativeQuery(sql);
-        List resultList = query.getResultList();
-        Set<String> indexerNamesToInclude = searchModuleProvider.getIndexers().stream().filter(x -> x.getConfig().getState() == IndexerConfig.State.ENABLED || statsRequest.isIncludeDisabled()).map(Indexer::getName).collect(Collectors.toSet());
-        OptionalDouble overallAverage = resultList.stream().filter(x -> ((Object[]) x)[1] != null).mapToLong(x -> ((BigInteger) ((Object[]) x)[1]).longValue()).average();
-
-        for (Object result : resultList) {
-            Object[] resultSet = (Object[]) result;
-            String indexerName = (String) resultSet[0];
+        Map<Integer, Long> averagesPerIndexerId = indexerApiAccessStore.getAverageResponseTimes(statsRequest.getAfter(), statsRequest.getBefore());
+        Map<Integer, String> indexerNamesToInclude = searchModuleProvider.getIndexers().stream().filter(x -> x.getConfig().getState() == IndexerConfig.State.ENABLED || statsRequest.isIncludeDisabled()).collect(Collectors.toMap(x -> x.getIndexerEntity().getId(), Indexer::getName, (a, b) -> a));
+        OptionalDouble overallAverage = averagesPerIndexerId.values().stream().mapToLong(Long::longValue).average();
 
-            if (resultSet[0] == null || resultSet[1] == null || !indexerNamesToInclude.contains(indexerName)) {
+        for (Entry<Integer, Long> entry : averagesPerIndexerId.entrySet()) {
+            String indexerName = indexerNamesToInclude.get(entry.getKey());
+            if (indexerName == null) {
                 continue;
             }
-            long averageResponseTime = ((BigInteger) resultSet[1]).longValue();
+            long averageResponseTime = entry.getValue();
             averageResponseTimes.add(new AverageResponseTime(indexerName, averageResponseTime, averageResponseTime - overallAverage.orElse(0D)));
         }
+        averageResponseTimes.sort(Comparator.comparingDouble(AverageResponseTime::getAvgResponseTime));
         logger.debug(LoggingMarkers.PERFORMANCE, "Calculated average response times for indexers. Took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return averageResponseTimes;
     }
@@ -283,68 +267,33 @@ public class Stats {
         logger.debug("Calculating indexer API stats");
         Set<Integer> indexerIdsToInclude = searchModuleProvider.getIndexers().stream().filter(x -> x.getConfig().getState() == IndexerConfig.State.ENABLED || statsRequest.isIncludeDisabled()).map(x -> x.getIndexerEntity().getId()).filter(id -> indexerRepository.findById(id) != null).collect(Collectors.toSet());
 
-        String averageIndexerAccessesPerDay = "SELECT\n" +
-            "  indexer_id,\n" +
-            "  avg(count)\n" +
-            "FROM (\n" +
-            "  (SELECT\n" +
-            "     INDEXER_ID,\n" +
-            "     cast(count(INDEXER_ID) AS FLOAT) AS count" +
-            "   FROM INDEXERAPIACCESS\n" +
-            buildWhereFromStatsRequest(false, statsRequest) +
-            "   GROUP BY INDEXER_ID,\n" +
-            "     truncate(time)))\n" +
-            "GROUP BY INDEXER_ID";
-
         Map<Integer, Double> accessesPerDayCountMap = new HashMap<>();
-        Query query = entityManager.createNativeQuery(averageIndexerAccessesPerDay);
-        //query = query.setParameter("indexerIds", indexerIdsToInclude);
-        List results = query.getResultList();
-        for (Object resultObject : results) {
-            Object[] array = (Object[]) resultObject;
-            Integer indexerId = (Integer) array[0];
-            if (!indexerIdsToInclude.contains(indexerId)) {
-                continue;
+        for (Entry<Integer, Map<LocalDate, Integer>> countsPerDay : indexerApiAccessStore.getCountsPerDay(statsRequest.getAfter(), statsRequest.getBefore()).entrySet()) {
+            if (indexerIdsToInclude.contains(countsPerDay.getKey())) {
+                accessesPerDayCountMap.put(countsPerDay.getKey(), countsPerDay.getValue().values().stream().mapToInt(Integer::intValue).average().orElse(0));
             }
-            Double avg = (Double) array[1];
-            accessesPerDayCountMap.put(indexerId, avg);
         }
         logger.debug(LoggingMarkers.PERFORMANCE, "Calculating accesses per day took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
         stopwatch.reset();
         stopwatch.start();
 
-        String countByResultSql = "SELECT\n" +
-            "     INDEXER_ID,\n" +
-            "     RESULT,\n" +
-            "     count(result) AS count\n" +
-            "   FROM INDEXERAPIACCESS\n" +
-            buildWhereFromStatsRequest(false, statsRequest) +
-            "   GROUP BY INDEXER_ID, RESULT\n" +
-            "   ORDER BY INDEXER_ID, RESULT";
-
         Map<Integer, Integer> successCountMap = new HashMap<>();
         Map<Integer, Integer> connectionErrorCountMap = new HashMap<>();
         Map<Integer, Integer> allAccessesCountMap = new HashMap<>();
-        query = entityManager.createNativeQuery(countByResultSql);
-        //query = query.setParameter("indexerIds", indexerIdsToInclude);
-        results = query.getResultList();
-        for (Object resultObject : results) {
-            Object[] array = (Object[]) resultObject;
-            Integer indexerId = (Integer) array[0];
+        for (Entry<Integer, Map<String, Integer>> countsPerResult : indexerApiAccessStore.getCountsPerResult(statsRequest.getAfter(), statsRequest.getBefore()).entrySet()) {
+            Integer indexerId = countsPerResult.getKey();
             if (!indexerIdsToInclude.contains(indexerId)) {
                 continue;
             }
-            String result = (String) array[1];
-            int count = ((BigInteger) array[2]).intValue();
-            if (result.equals(IndexerAccessResult.SUCCESSFUL.name())) {
-                successCountMap.put(indexerId, count);
-            } else if (result.equals(IndexerAccessResult.CONNECTION_ERROR.name())) {
-                connectionErrorCountMap.put(indexerId, count);
-            }
-            if (allAccessesCountMap.containsKey(indexerId)) {
-                allAccessesCountMap.put(indexerId, allAccessesCountMap.get(indexerId) + count);
-            } else {
-                allAccessesCountMap.put(indexerId, count);
+            for (Entry<String, Integer> countPerResult : countsPerResult.getValue().entrySet()) {
+                String result = countPerResult.getKey();
+                int count = countPerResult.getValue();
+                if (IndexerAccessResult.SUCCESSFUL.name().equals(result)) {
+                    successCountMap.put(indexerId, count);
+                } else if (IndexerAccessResult.CONNECTION_ERROR.name().equals(result)) {
+                    connectionErrorCountMap.put(indexerId, count);
+                }
+                allAccessesCountMap.merge(indexerId, count, Integer::sum);
             }
         }
 
@@ -376,15 +325,16 @@ public class Stats {
         return indexerApiAccessStatsEntries;
     }
 
-    List<CountPerDayOfWeek> countPerDayOfWeek(final String table, final StatsRequest statsRequest) {
+    List<CountPerDayOfWeek> countPerDayOfWeek(final String activity, final StatsRequest statsRequest) {
         Stopwatch stopwatch = Stopwatch.createStarted();
-        logger.debug("Calculating count for day of week for table {}", table);
+        logger.debug("Calculating count for day of week for {}", activity);
         String sql = "SELECT \n" +
-            "  DAYOFWEEK(time) AS dayofweek, \n" +
-            "  count(*)        AS counter \n" +
-            "FROM " + table + " \n" +
-            buildWhereFromStatsRequest(false, statsRequest) +
-            "GROUP BY DAYOFWEEK(time)";
+            "  DAYOFWEEK(HOUR_START) AS dayofweek, \n" +
+            "  sum(ACCESS_COUNT)     AS counter \n" +
+            "FROM STATS_ACTIVITY_HOURLY \n" +
+            "WHERE ACTIVITY = '" + activity + "' AND DIMENSION = '" + StatsRollups.TOTAL + "'\n" +
+            buildWhereFromStatsRequest(true, statsRequest, ROLLUP_TIME_COLUMN) +
+            "GROUP BY DAYOFWEEK(HOUR_START)";
 
         List<CountPerDayOfWeek> dayOfWeekCounts = new ArrayList<>();
         for (int i = 0; i < 7; i++) {
@@ -402,24 +352,25 @@ public class Stats {
 
             //want      6   0   1   2   3   4   5
             //          S   M   T   W   T   F   S
-            BigInteger counter = (BigInteger) resultSet[1];
+            Number counter = (Number) resultSet[1];
             int indexInList = (index + 5) % 7;
             dayOfWeekCounts.get(indexInList).setCount(counter.intValue());
         }
-        logger.debug(LoggingMarkers.PERFORMANCE, "Calculated count for day of week for table {}. Took {}ms", table, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        logger.debug(LoggingMarkers.PERFORMANCE, "Calculated count for day of week for {}. Took {}ms", activity, stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return dayOfWeekCounts;
     }
 
 
-    List<CountPerHourOfDay> countPerHourOfDay(final String table, final StatsRequest statsRequest) {
+    List<CountPerHourOfDay> countPerHourOfDay(final String activity, final StatsRequest statsRequest) {
         Stopwatch stopwatch = Stopwatch.createStarted();
-        logger.debug("Calculating count for hour of day for table {}", table);
+        logger.debug("Calculating count for hour of day for {}", activity);
         String sql = "SELECT \n" +
-            "  HOUR(time) AS hourofday, \n" +
-            "  count(*)        AS counter \n" +
-            "FROM " + table + " \n" +
-            buildWhereFromStatsRequest(false, statsRequest) +
-            "GROUP BY HOUR(time)";
+            "  HOUR(HOUR_START)  AS hourofday, \n" +
+            "  sum(ACCESS_COUNT) AS counter \n" +
+            "FROM STATS_ACTIVITY_HOURLY \n" +
+            "WHERE ACTIVITY = '" + activity + "' AND DIMENSION = '" + StatsRollups.TOTAL + "'\n" +
+            buildWhereFromStatsRequest(true, statsRequest, ROLLUP_TIME_COLUMN) +
+            "GROUP BY HOUR(HOUR_START)";
 
         List<CountPerHourOfDay> hourOfDayCounts = new ArrayList<>();
         for (int i = 0; i < 24; i++) {
@@ -430,11 +381,11 @@ public class Stats {
         for (Object o : resultList) {
             Object[] o2 = (Object[]) o;
             Integer index = (Integer) o2[0];
-            BigInteger counter = (BigInteger) o2[1];
+            Number counter = (Number) o2[1];
             hourOfDayCounts.get(index).setCount(counter.intValue());
         }
 
-        logger.debug(LoggingMarkers.PERFORMANCE, "Calculated count for hour of day for table {}. Took {}ms", table, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        logger.debug(LoggingMarkers.PERFORMANCE, "Calculated count for hour of day for {}. Took {}ms", activity, stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return hourOfDayCounts;
     }
 
@@ -514,64 +465,25 @@ public class Stats {
         return result;
     }
 
-    List<DownloadOrSearchSharePerUserOrIp> downloadsOrSearchesPerUserOrIp(final StatsRequest statsRequest, String tablename, final String column) {
+    List<DownloadOrSearchSharePerUserOrIp> downloadsOrSearchesPerUserOrIp(final StatsRequest statsRequest, final String activity, final String dimension) {
         Stopwatch stopwatch = Stopwatch.createStarted();
-        logger.debug("Calculating download or search shares for table {} and column {}", tablename, column);
-        String sql = "" +
-            "SELECT\n" +
-            "  " + column + ",\n" +
-            "  count(*) AS peruser,\n" +
-            "  (SELECT count(*)\n" +
-            "   FROM " + tablename + "\n" +
-            "   WHERE " + column + " IS NOT NULL AND " + column + " != ''" +
-            buildWhereFromStatsRequest(true, statsRequest) +
-            ") AS countall\n" +
-            "FROM " + tablename + "\n" +
-            " WHERE " + column + " IS NOT NULL AND " + column + " != ''\n" +
-            buildWhereFromStatsRequest(true, statsRequest) +
-            "GROUP BY " + column;
-        Query query = entityManager.createNativeQuery(sql);
-        List<Object> resultList = query.getResultList();
+        logger.debug("Calculating {} shares per {}", activity, dimension);
         List<DownloadOrSearchSharePerUserOrIp> result = new ArrayList<>();
-        for (Object o : resultList) {
-            Object[] o2 = (Object[]) o;
-            String usernameOrIp = (String) o2[0];
-            int countForUser = ((BigInteger) o2[1]).intValue();
-            float percentSuccessful = 100F / (((BigInteger) o2[2]).floatValue() / ((BigInteger) o2[1]).floatValue());
-            result.add(new DownloadOrSearchSharePerUserOrIp(usernameOrIp, countForUser, percentSuccessful));
+        long countAll = sumActivities(activity, dimension, statsRequest);
+        for (Entry<String, Long> countPerUserOrIp : countActivitiesPerValue(activity, dimension, statsRequest).entrySet()) {
+            int countForUser = countPerUserOrIp.getValue().intValue();
+            float percentSuccessful = 100F / ((float) countAll / countForUser);
+            result.add(new DownloadOrSearchSharePerUserOrIp(countPerUserOrIp.getKey(), countForUser, percentSuccessful));
         }
         result.sort(Comparator.comparingDouble(DownloadOrSearchSharePerUserOrIp::getPercentage).reversed());
-        logger.debug(LoggingMarkers.PERFORMANCE, "Calculated download or search shares for table {} and column {}. Took {}ms", tablename, column, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        logger.debug(LoggingMarkers.PERFORMANCE, "Calculated {} shares per {}. Took {}ms", activity, dimension, stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return result;
     }
 
     List<UserAgentShare> userAgentSearchShares(final StatsRequest statsRequest) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         logger.debug("Calculating user agent search shares");
-        String sql = "SELECT\n" +
-            "  user_agent,\n" +
-            "  count(*)\n" +
-            "FROM SEARCH\n" +
-            "WHERE user_agent IS NOT NULL\n" +
-            "AND SOURCE = 'API'" +
-            buildWhereFromStatsRequest(true, statsRequest) +
-            "GROUP BY user_agent";
-        Query query = entityManager.createNativeQuery(sql);
-        List<Object> resultList = query.getResultList();
-        List<UserAgentShare> result = new ArrayList<>();
-        int countAll = 0;
-        for (Object o : resultList) {
-            Object[] o2 = (Object[]) o;
-            String userAgent = (String) o2[0];
-            int countForUserAgent = ((BigInteger) o2[1]).intValue();
-            countAll += countForUserAgent;
-            result.add(new UserAgentShare(userAgent, countForUserAgent));
-        }
-        for (UserAgentShare userAgentShare : result) {
-            userAgentShare.setPercentage(100F / ((float) countAll / userAgentShare.getCount()));
-        }
-
-        result.sort(Comparator.comparingDouble(UserAgentShare::getPercentage).reversed());
+        List<UserAgentShare> result = userAgentShares(StatsRollups.SEARCH, statsRequest);
         logger.debug(LoggingMarkers.PERFORMANCE, "Calculated user agent search shares. Took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return result;
     }
@@ -579,34 +491,50 @@ public class Stats {
     List<UserAgentShare> userAgentDownloadShares(final StatsRequest statsRequest) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         logger.debug("Calculating user agent download shares");
-        String sql = "SELECT\n" +
-            "  user_agent,\n" +
-            "  count(*)\n" +
-            "FROM INDEXERNZBDOWNLOAD\n" +
-            "WHERE user_agent IS NOT NULL\n" +
-            "and ACCESS_SOURCE = 'API' \n" +
-            buildWhereFromStatsRequest(true, statsRequest) +
-            "GROUP BY user_agent";
-        Query query = entityManager.createNativeQuery(sql);
-        List<Object> resultList = query.getResultList();
+        List<UserAgentShare> result = userAgentShares(StatsRollups.DOWNLOAD, statsRequest);
+        logger.debug(LoggingMarkers.PERFORMANCE, "Calculated user agent download shares. Took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        return result;
+    }
+
+    private List<UserAgentShare> userAgentShares(final String activity, final StatsRequest statsRequest) {
         List<UserAgentShare> result = new ArrayList<>();
         int countAll = 0;
-        for (Object o : resultList) {
-            Object[] o2 = (Object[]) o;
-            String userAgent = (String) o2[0];
-            int countForUserAgent = ((BigInteger) o2[1]).intValue();
+        for (Entry<String, Long> countPerUserAgent : countActivitiesPerValue(activity, StatsRollups.USER_AGENT, statsRequest).entrySet()) {
+            int countForUserAgent = countPerUserAgent.getValue().intValue();
             countAll += countForUserAgent;
-            result.add(new UserAgentShare(userAgent, countForUserAgent));
+            result.add(new UserAgentShare(countPerUserAgent.getKey(), countForUserAgent));
         }
         for (UserAgentShare userAgentShare : result) {
             userAgentShare.setPercentage(100F / ((float) countAll / userAgentShare.getCount()));
         }
 
         result.sort(Comparator.comparingDouble(UserAgentShare::getPercentage).reversed());
-        logger.debug(LoggingMarkers.PERFORMANCE, "Calculated user agent download shares. Took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return result;
     }
 
+    private boolean hasActivities(String activity, String dimension) {
+        return !entityManager.createNativeQuery("SELECT 1 FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = '" + activity + "' AND DIMENSION = '" + dimension + "' LIMIT 1").getResultList().isEmpty();
+    }
+
+    private long sumActivities(String activity, String dimension, StatsRequest statsRequest) {
+        Object sum = entityManager.createNativeQuery("SELECT SUM(ACCESS_COUNT) FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = '" + activity + "' AND DIMENSION = '" + dimension + "'" +
+            buildWhereFromStatsRequest(true, statsRequest, ROLLUP_TIME_COLUMN)).getSingleResult();
+        return sum == null ? 0 : ((Number) sum).longValue();
+    }
+
+    private Map<String, Long> countActivitiesPerValue(String activity, String dimension, StatsRequest statsRequest) {
+        String sql = "SELECT DIMENSION_VALUE, SUM(ACCESS_COUNT) FROM STATS_ACTIVITY_HOURLY\n" +
+            "WHERE ACTIVITY = '" + activity + "' AND DIMENSION = '" + dimension + "'\n" +
+            buildWhereFromStatsRequest(true, statsRequest, ROLLUP_TIME_COLUMN) +
+            "GROUP BY DIMENSION_VALUE";
+        Map<String, Long> counts = new HashMap<>();
+        for (Object o : entityManager.createNativeQuery(sql).getResultList()) {
+            Object[] o2 = (Object[]) o;
+            counts.put((String) o2[0], ((Number) o2[1]).longValue());
+        }
+        return counts;
+    }
+
     List<DownloadPerAge> downloadsPerAge() {
         Stopwatch stopwatch = Stopwatch.createStarted();
         logger.debug("Calculating downloads per age");
@@ -669,13 +597,17 @@ public class Stats {
 
 
     private String buildWhereFromStatsRequest(boolean useAnd, StatsRequest statsRequest) {
+        return buildWhereFromStatsRequest(useAnd, statsRequest, "TIME");
+    }
+
+    private String buildWhereFromStatsRequest(boolean useAnd, StatsRequest statsRequest, String timeColumn) {
         if (statsRequest.getAfter() == null && statsRequest.getBefore() == null) {
             return " ";
         }
         return (useAnd ? " AND " : " WHERE ") +
-            (statsRequest.getAfter() != null ? " TIME > DATEADD('SECOND', " + statsRequest.getAfter().getEpochSecond() + ", DATE '1970-01-01') " : "") +
+            (statsRequest.getAfter() != null ? " " + timeColumn + " > DATEADD('SECOND', " + statsRequest.getAfter().getEpochSecond() + ", DATE '1970-01-01') " : "") +
             ((statsRequest.getBefore() != null && statsRequest.getAfter() != null) ? " AND " : " ") +
-            (statsRequest.getBefore() != null ? " TIME < DATEADD('SECOND', " + statsRequest.getBefore().getEpochSecond() + ", DATE '1970-01-01') " : "");
+            (statsRequest.getBefore() != null ? " " + timeColumn + " < DATEADD('SECOND', " + statsRequest.getBefore().getEpochSecond() + ", DATE '1970-01-01') " : "");
     }
 
 
@@ -0,0 +1,211 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.historystats;
+
+import com.google.common.base.Stopwatch;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.nzbhydra.ShutdownEvent;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.downloading.FileDownloadEntity;
+import org.nzbhydra.downloading.FileDownloadEvent;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.nzbhydra.searching.db.SearchEntity;
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maintains the pre-aggregated stats table (see V7__STATS_ROLLUPS.sql) which contains the number of searches and downloads per hour, so
+ * that the stats don't have to be calculated from the whole history. The table was filled from the history once by the migration. New
+ * searches and downloads are counted in memory and added to the table every few seconds. API accesses are kept in the
+ * {@link org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore}.
+ * <p>
+ * Like the history entries they're only counted when the history is kept.
+ */
+@Component
+public class StatsRollups {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsRollups.class);
+
+    public static final String SEARCH = "SEARCH";
+    public static final String DOWNLOAD = "DOWNLOAD";
+
+    public static final String TOTAL = "TOTAL";
+    public static final String INDEXER = "INDEXER";
+    public static final String USERNAME = "USERNAME";
+    public static final String IP = "IP";
+    public static final String USER_AGENT = "USER_AGENT";
+
+    private static final long FLUSH_INTERVAL_MILLIS = 10_000;
+
+    private static final String MERGE_ACTIVITY = "MERGE INTO STATS_ACTIVITY_HOURLY T USING (SELECT CAST(? AS TIMESTAMP) AS HOUR_START, CAST(? AS VARCHAR) AS ACTIVITY, CAST(? AS VARCHAR) AS DIMENSION, " +
+            "CAST(? AS VARCHAR) AS DIMENSION_VALUE, CAST(? AS BIGINT) AS ACCESS_COUNT) S " +
+            "ON T.HOUR_START = S.HOUR_START AND T.ACTIVITY = S.ACTIVITY AND T.DIMENSION = S.DIMENSION AND T.DIMENSION_VALUE = S.DIMENSION_VALUE " +
+            "WHEN MATCHED THEN UPDATE SET T.ACCESS_COUNT = T.ACCESS_COUNT + S.ACCESS_COUNT " +
+            "WHEN NOT MATCHED THEN INSERT (HOUR_START, ACTIVITY, DIMENSION, DIMENSION_VALUE, ACCESS_COUNT) VALUES (S.HOUR_START, S.ACTIVITY, S.DIMENSION, S.DIMENSION_VALUE, S.ACCESS_COUNT)";
+
+    @Autowired
+    protected DataSource dataSource;
+    @Autowired
+    protected ConfigProvider configProvider;
+
+    //Timestamps are written in the system's time zone so the hours must be determined in the same one
+    protected ZoneId zoneId = ZoneId.systemDefault();
+    private final Object lock = new Object();
+    private Map<ActivityKey, Long> pendingActivities = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Timer timer = new Timer("statsRollupFlush", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS);
+    }
+
+    public void registerSearch(SearchEntity search) {
+        Timestamp hourStart = getHourStart(search.getTime());
+        synchronized (lock) {
+            addActivity(hourStart, SEARCH, TOTAL, "");
+            addActivity(hourStart, SEARCH, USERNAME, search.getUsername());
+            addActivity(hourStart, SEARCH, IP, search.getIp());
+            if (search.getSource() == SearchSource.API) {
+                addActivity(hourStart, SEARCH, USER_AGENT, search.getUserAgent());
+            }
+        }
+    }
+
+    @EventListener
+    public void onDownload(FileDownloadEvent downloadEvent) {
+        if (!configProvider.getBaseConfig().getMain().isKeepHistory()) {
+            return;
+        }
+        registerDownload(downloadEvent.getFileDownloadEntity());
+    }
+
+    public void registerDownload(FileDownloadEntity download) {
+        Timestamp hourStart = getHourStart(download.getTime());
+        String indexerName = download.getSearchResult() != null && download.getSearchResult().getIndexer() != null ? download.getSearchResult().getIndexer().getName() : null;
+        synchronized (lock) {
+            addActivity(hourStart, DOWNLOAD, TOTAL, "");
+            addActivity(hourStart, DOWNLOAD, INDEXER, indexerName);
+            addActivity(hourStart, DOWNLOAD, USERNAME, download.getUsername());
+            addActivity(hourStart, DOWNLOAD, IP, download.getIp());
+            if (download.getAccessSource() == SearchSource.API) {
+                addActivity(hourStart, DOWNLOAD, USER_AGENT, download.getUserAgent());
+            }
+        }
+    }
+
+    @EventListener
+    public void onShutdown(ShutdownEvent event) {
+        flush();
+    }
+
+    /**
+     * Writes all counts collected so far to the database.
+     */
+    public void flush() {
+        Map<ActivityKey, Long> activities;
+        synchronized (lock) {
+            if (pendingActivities.isEmpty()) {
+                return;
+            }
+            activities = pendingActivities;
+            pendingActivities = new HashMap<>();
+        }
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                writeActivities(connection, activities);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("Error while writing stats to the database. Will retry later", e);
+            synchronized (lock) {
+                activities.forEach((key, count) -> pendingActivities.merge(key, count, Long::sum));
+            }
+            return;
+        }
+        logger.debug(LoggingMarkers.PERFORMANCE, "Writing {} activity stats took {}ms", activities.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    private void writeActivities(Connection connection, Map<ActivityKey, Long> activities) throws SQLException {
+        if (activities.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(MERGE_ACTIVITY)) {
+            for (Entry<ActivityKey, Long> entry : activities.entrySet()) {
+                statement.setTimestamp(1, entry.getKey().getHourStart());
+                statement.setString(2, entry.getKey().getActivity());
+                statement.setString(3, entry.getKey().getDimension());
+                statement.setString(4, entry.getKey().getDimensionValue());
+                statement.setLong(5, entry.getValue());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private void addActivity(Timestamp hourStart, String activity, String dimension, String dimensionValue) {
+        if (dimensionValue == null || (!TOTAL.equals(dimension) && dimensionValue.isEmpty())) {
+            return;
+        }
+        pendingActivities.merge(new ActivityKey(hourStart, activity, dimension, dimensionValue), 1L, Long::sum);
+    }
+
+    protected Timestamp getHourStart(Instant time) {
+        return Timestamp.valueOf(LocalDateTime.ofInstant(time, zoneId).truncatedTo(ChronoUnit.HOURS));
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class ActivityKey {
+        private final Timestamp hourStart;
+        private final String activity;
+        private final String dimension;
+        private final String dimensionValue;
+    }
+
+}
@@ -201,6 +201,7 @@ public class Binsearch extends Indexer<String> {
         item.setIndexer(this);
         item.setDownloadType(DownloadType.NZB);
         item.setIndexerScore(config.getScore().orElse(0));
+        item.computeDuplicateKey();
         return item;
     }
 
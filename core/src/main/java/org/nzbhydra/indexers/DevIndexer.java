@@ -19,12 +19,20 @@ import org.springframework.stereotype.Component;
 import java.net.URI;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Getter
 @Setter
 @Component
 public class DevIndexer extends Newznab {
 
+    @Override
+    protected CompletableFuture<Xml> getAndStoreResultToDatabaseAsync(URI uri, IndexerApiAccessType apiAccessType, Executor executor) {
+        //Responses are generated, the indexer must not be called
+        return getAndStoreResultToDatabaseUsingExecutor(uri, apiAccessType, executor);
+    }
+
     protected Xml getAndStoreResultToDatabase(URI uri, IndexerApiAccessType apiAccessType) throws IndexerAccessException {
         NewznabXmlRoot rssRoot = new NewznabXmlRoot();
         if (uri.toString().contains("oneduplicate")) {
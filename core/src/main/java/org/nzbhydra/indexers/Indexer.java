@@ -6,6 +6,8 @@ import joptsimple.internal.Strings;
 import org.nzbhydra.config.ConfigChangedEvent;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.database.WriteBehindPersister;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
 import org.nzbhydra.indexers.exceptions.IndexerAccessException;
 import org.nzbhydra.indexers.exceptions.IndexerAuthException;
 import org.nzbhydra.indexers.exceptions.IndexerErrorCodeException;
@@ -13,14 +15,15 @@ import org.nzbhydra.indexers.exceptions.IndexerParsingException;
 import org.nzbhydra.indexers.exceptions.IndexerSearchAbortedException;
 import org.nzbhydra.indexers.exceptions.IndexerUnreachableException;
 import org.nzbhydra.indexers.status.IndexerLimitRepository;
+import org.nzbhydra.indexers.status.IndexerStateStore;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.mediainfo.InfoProvider;
 import org.nzbhydra.searching.CategoryProvider;
 import org.nzbhydra.searching.SearchResultAcceptor;
 import org.nzbhydra.searching.SearchResultAcceptor.AcceptorResult;
 import org.nzbhydra.searching.SearchResultIdCalculator;
+import org.nzbhydra.searching.Searcher;
 import org.nzbhydra.searching.db.SearchResultEntity;
-import org.nzbhydra.searching.db.SearchResultRepository;
 import org.nzbhydra.searching.dtoseventsenums.FallbackSearchInitiatedEvent;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchFinishedEvent;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
@@ -35,22 +38,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import javax.persistence.EntityExistsException;
 import java.net.URI;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -71,8 +75,6 @@ public abstract class Indexer<T> {
 
     private static final List<DateTimeFormatter> DATE_FORMATs = Arrays.asList(DateTimeFormatter.RFC_1123_DATE_TIME, DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH));
 
-    private final Object dbLock = "";
-
     protected IndexerEntity indexer;
     protected IndexerConfig config;
     private Pattern cleanupPattern;
@@ -82,16 +84,18 @@ public abstract class Indexer<T> {
     @Autowired
     protected IndexerRepository indexerRepository;
     @Autowired
-    protected SearchResultRepository searchResultRepository;
-    @Autowired
-    protected IndexerApiAccessRepository indexerApiAccessRepository;
-    @Autowired
-    protected IndexerApiAccessEntityShortRepository indexerApiAccessShortRepository;
+    protected WriteBehindPersister writeBehindPersister;
     @Autowired
     private IndexerLimitRepository indexerStatusRepository;
     @Autowired
     protected IndexerWebAccess indexerWebAccess;
     @Autowired
+    protected IndexerLatencyTracker indexerLatencyTracker;
+    @Autowired
+    protected IndexerStateStore indexerStateStore;
+    @Autowired
+    protected IndexerApiAccessStore indexerApiAccessStore;
+    @Autowired
     protected SearchResultAcceptor resultAcceptor;
     @Autowired
     protected CategoryProvider categoryProvider;
@@ -119,14 +123,7 @@ public abstract class Indexer<T> {
             indexerSearchResult = searchInternal(searchRequest, offset, limit);
 
             if (isFallbackRequired(searchRequest, indexerSearchResult)) {
-                info("No results found for ID based search. Will do a fallback search using a generated query");
-
-                //Search should be shown as successful (albeit empty) and should result in the number of expected finished searches to be increased
-                eventPublisher.publishEvent(new IndexerSearchFinishedEvent(searchRequest));
-                eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Indexer " + getName() + " did not return any results. Will do a fallback search"));
-                eventPublisher.publishEvent(new FallbackSearchInitiatedEvent(searchRequest));
-
-                searchRequest.getInternalData().setFallbackStateByIndexer(getName(), FallbackState.REQUESTED);
+                initiateFallbackSearch(searchRequest);
                 indexerSearchResult = searchInternal(searchRequest, offset, limit);
                 eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Indexer " + getName() + " completed fallback search successfully with " + indexerSearchResult.getTotalResults() + " total results"));
             } else {
@@ -134,34 +131,79 @@ public abstract class Indexer<T> {
 
             }
 
-        } catch (IndexerSearchAbortedException e) {
-            warn("Unexpected error while preparing search: " + e.getMessage());
-            indexerSearchResult = new IndexerSearchResult(this, e.getMessage());
-            eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Unexpected error while preparing search for indexer " + getName()));
-        } catch (IndexerAccessException e) {
-            handleIndexerAccessException(e, IndexerApiAccessType.SEARCH);
-            indexerSearchResult = new IndexerSearchResult(this, e.getMessage());
-            eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Error while accessing indexer " + getName()));
         } catch (Exception e) {
-            if (e.getCause() instanceof InterruptedException) {
-                debug("Hydra was shut down, ignoring InterruptedException");
-                indexerSearchResult = new IndexerSearchResult(this, e.getMessage());
-            } else {
-                error("Unexpected error while searching", e);
-                eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Unexpected error while searching indexer " + getName()));
-                try {
-                    handleFailure(e.getMessage(), false, IndexerApiAccessType.SEARCH, null, IndexerAccessResult.CONNECTION_ERROR); //LATER depending on type of error, perhaps not at all because it might be a bug
-                } catch (Exception e1) {
-                    error("Error while handling indexer failure. API access was not saved to database", e1);
-                }
-                indexerSearchResult = new IndexerSearchResult(this, e.getMessage());
-            }
+            indexerSearchResult = handleSearchException(searchRequest, e);
         }
         eventPublisher.publishEvent(new IndexerSearchFinishedEvent(searchRequest));
 
         return indexerSearchResult;
     }
 
+    /**
+     * Executes the search like {@link #search(SearchRequest, int, Integer)} but without blocking a thread while waiting for the indexer's
+     * response. Should be called by the {@link org.nzbhydra.searching.IndexerSearchExecutor} (see {@link org.nzbhydra.searching.IndexerSearchExecutor#submitAsync})
+     * so that the indexer's concurrency limit applies before the indexer is called. The processing of the response (and possibly required
+     * fallback searches) is done by the given executor.
+     */
+    public CompletableFuture<IndexerSearchResult> searchAsync(SearchRequest searchRequest, int offset, Integer limit, Executor executor) {
+        return searchInternalAsync(searchRequest, offset, limit, executor)
+                .thenCompose(indexerSearchResult -> {
+                    if (isFallbackRequired(searchRequest, indexerSearchResult)) {
+                        initiateFallbackSearch(searchRequest);
+                        return searchInternalAsync(searchRequest, offset, limit, executor).thenApply(fallbackResult -> {
+                            eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Indexer " + getName() + " completed fallback search successfully with " + fallbackResult.getTotalResults() + " total results"));
+                            return fallbackResult;
+                        });
+                    }
+                    eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Indexer " + getName() + " completed search successfully with " + indexerSearchResult.getTotalResults() + " total results"));
+                    return CompletableFuture.completedFuture(indexerSearchResult);
+                })
+                .handle((indexerSearchResult, throwable) -> {
+                    if (throwable != null) {
+                        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                        indexerSearchResult = handleSearchException(searchRequest, cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+                    }
+                    eventPublisher.publishEvent(new IndexerSearchFinishedEvent(searchRequest));
+                    return indexerSearchResult;
+                });
+    }
+
+    private void initiateFallbackSearch(SearchRequest searchRequest) {
+        info("No results found for ID based search. Will do a fallback search using a generated query");
+
+        //Search should be shown as successful (albeit empty) and should result in the number of expected finished searches to be increased
+        eventPublisher.publishEvent(new IndexerSearchFinishedEvent(searchRequest));
+        eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Indexer " + getName() + " did not return any results. Will do a fallback search"));
+        eventPublisher.publishEvent(new FallbackSearchInitiatedEvent(searchRequest));
+
+        searchRequest.getInternalData().setFallbackStateByIndexer(getName(), FallbackState.REQUESTED);
+    }
+
+    private IndexerSearchResult handleSearchException(SearchRequest searchRequest, Exception e) {
+        if (e instanceof IndexerSearchAbortedException) {
+            warn("Unexpected error while preparing search: " + e.getMessage());
+            eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Unexpected error while preparing search for indexer " + getName()));
+            return new IndexerSearchResult(this, e.getMessage());
+        }
+        if (e instanceof IndexerAccessException) {
+            handleIndexerAccessException((IndexerAccessException) e, IndexerApiAccessType.SEARCH);
+            eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Error while accessing indexer " + getName()));
+            return new IndexerSearchResult(this, e.getMessage());
+        }
+        if (e.getCause() instanceof InterruptedException) {
+            debug("Hydra was shut down, ignoring InterruptedException");
+            return new IndexerSearchResult(this, e.getMessage());
+        }
+        error("Unexpected error while searching", e);
+        eventPublisher.publishEvent(new SearchMessageEvent(searchRequest, "Unexpected error while searching indexer " + getName()));
+        try {
+            handleFailure(e.getMessage(), false, IndexerApiAccessType.SEARCH, null, IndexerAccessResult.CONNECTION_ERROR); //LATER depending on type of error, perhaps not at all because it might be a bug
+        } catch (Exception e1) {
+            error("Error while handling indexer failure. API access was not saved to database", e1);
+        }
+        return new IndexerSearchResult(this, e.getMessage());
+    }
+
     private boolean isFallbackRequired(SearchRequest searchRequest, IndexerSearchResult indexerSearchResult) {
         final FallbackState fallbackStateByIndexer = searchRequest.getInternalData().getFallbackStateByIndexer(getName());
         return indexerSearchResult.getTotalResults() == 0 && !searchRequest.getIdentifiers().isEmpty() && fallbackStateByIndexer != FallbackState.USED && configProvider.getBaseConfig().getSearching().getIdFallbackToQueryGeneration().meets(searchRequest);
@@ -178,8 +220,33 @@ public abstract class Indexer<T> {
         response = getAndStoreResultToDatabase(url, IndexerApiAccessType.SEARCH);
         long responseTime = stopwatch.elapsed(TimeUnit.MILLISECONDS);
 
-        stopwatch.reset();
-        stopwatch.start();
+        return processSearchResponse(response, responseTime, searchRequest, offset, limit);
+    }
+
+    protected CompletableFuture<IndexerSearchResult> searchInternalAsync(SearchRequest searchRequest, int offset, Integer limit, Executor executor) {
+        URI url;
+        try {
+            url = buildSearchUrl(searchRequest, offset, limit).build().toUri();
+        } catch (IndexerSearchAbortedException e) {
+            CompletableFuture<IndexerSearchResult> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        info("Calling {}", url.toString());
+
+        return getAndStoreResultToDatabaseAsync(url, IndexerApiAccessType.SEARCH, executor).thenApply(response -> {
+            try {
+                return processSearchResponse(response, stopwatch.elapsed(TimeUnit.MILLISECONDS), searchRequest, offset, limit);
+            } catch (IndexerAccessException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private IndexerSearchResult processSearchResponse(T response, long responseTime, SearchRequest searchRequest, int offset, Integer limit) throws IndexerAccessException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
         IndexerSearchResult indexerSearchResult = new IndexerSearchResult(this, true);
         List<SearchResultItem> searchResultItems = getSearchResultItems(response, searchRequest);
         debug(LoggingMarkers.PERFORMANCE, "Parsing of results took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
@@ -230,42 +297,37 @@ public abstract class Indexer<T> {
         return query;
     }
 
-    @Transactional
+    /**
+     * Sets the search result IDs of the items and creates the entities to be persisted. They're written to the database by the {@link Searcher}
+     * using the {@link WriteBehindPersister} which also takes care of results which already exist in the database.
+     */
     protected List<SearchResultItem> persistSearchResults(List<SearchResultItem> searchResultItems, IndexerSearchResult indexerSearchResult) {
         Stopwatch stopwatch = Stopwatch.createStarted();
-        synchronized (dbLock) { //Locking per indexer prevents multiple threads trying to save the same "new" results to the database
-            ArrayList<SearchResultEntity> searchResultEntities = new ArrayList<>();
-            Set<Long> alreadySavedIds = searchResultRepository.findAllIdsByIdIn(searchResultItems.stream().map(SearchResultIdCalculator::calculateSearchResultId).collect(Collectors.toList()));
-            for (SearchResultItem item : searchResultItems) {
-                long guid = SearchResultIdCalculator.calculateSearchResultId(item);
-                if (!alreadySavedIds.contains(guid)) {
-                    SearchResultEntity searchResultEntity = new SearchResultEntity();
-
-                    //Set all entity relevant data
-                    searchResultEntity.setIndexer(indexer);
-                    searchResultEntity.setTitle(item.getTitle());
-                    searchResultEntity.setLink(item.getLink());
-                    searchResultEntity.setDetails(item.getDetails());
-                    searchResultEntity.setIndexerGuid(item.getIndexerGuid());
-                    searchResultEntity.setFirstFound(Instant.now());
-                    searchResultEntity.setDownloadType(item.getDownloadType());
-                    searchResultEntity.setPubDate(item.getPubDate());
-                    searchResultEntities.add(searchResultEntity);
-                }
-                //LATER Unify guid and searchResultId which are the same
-                item.setGuid(guid);
-                item.setSearchResultId(guid);
-            }
-            debug("Found {} results which were already in the database and {} new ones", alreadySavedIds.size(), searchResultEntities.size());
-            try {
-                searchResultRepository.saveAll(searchResultEntities);
-                indexerSearchResult.setSearchResultEntities(new HashSet<>(searchResultEntities));
-            } catch (EntityExistsException e) {
-                error("Unable to save the search results to the database", e);
+        Map<Long, SearchResultEntity> searchResultEntities = new LinkedHashMap<>();
+        for (SearchResultItem item : searchResultItems) {
+            long guid = SearchResultIdCalculator.calculateSearchResultId(item);
+            if (!searchResultEntities.containsKey(guid)) {
+                SearchResultEntity searchResultEntity = new SearchResultEntity();
+
+                //Set all entity relevant data
+                searchResultEntity.setId(guid);
+                searchResultEntity.setIndexer(indexer);
+                searchResultEntity.setTitle(item.getTitle());
+                searchResultEntity.setLink(item.getLink());
+                searchResultEntity.setDetails(item.getDetails());
+                searchResultEntity.setIndexerGuid(item.getIndexerGuid());
+                searchResultEntity.setFirstFound(Instant.now());
+                searchResultEntity.setDownloadType(item.getDownloadType());
+                searchResultEntity.setPubDate(item.getPubDate());
+                searchResultEntities.put(guid, searchResultEntity);
             }
+            //LATER Unify guid and searchResultId which are the same
+            item.setGuid(guid);
+            item.setSearchResultId(guid);
         }
+        indexerSearchResult.setSearchResultEntities(new HashSet<>(searchResultEntities.values()));
 
-        getLogger().debug(LoggingMarkers.PERFORMANCE, "Persisting {} search results took {}ms", searchResultItems.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        getLogger().debug(LoggingMarkers.PERFORMANCE, "Creating {} search result entities took {}ms", searchResultEntities.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return searchResultItems;
     }
 
@@ -274,11 +336,14 @@ public abstract class Indexer<T> {
         if (getConfig().getDisabledLevel() > 0) {
             debug("Indexer was successfully called after {} failed attempts in a row", getConfig().getDisabledLevel());
         }
-        getConfig().setState(IndexerConfig.State.ENABLED);
-        getConfig().setLastError(null);
-        getConfig().setDisabledUntil(null);
-        getConfig().setDisabledLevel(0);
-        configProvider.getBaseConfig().save(false);
+        //Usually nothing changes so nothing needs to be saved
+        if (getConfig().getState() != IndexerConfig.State.ENABLED || getConfig().getLastError() != null || getConfig().getDisabledUntil() != null || getConfig().getDisabledLevel() != 0) {
+            getConfig().setState(IndexerConfig.State.ENABLED);
+            getConfig().setLastError(null);
+            getConfig().setDisabledUntil(null);
+            getConfig().setDisabledLevel(0);
+            indexerStateStore.markDirty();
+        }
         saveApiAccess(accessType, responseTime, IndexerAccessResult.SUCCESSFUL, true);
     }
 
@@ -296,7 +361,7 @@ public abstract class Indexer<T> {
             getLogger().warn("Because an error occurred {} will be temporarily disabled until {}. This is error number {} in a row", indexer.getName(), disabledUntil, getConfig().getDisabledLevel());
         }
         getConfig().setLastError(reason);
-        configProvider.getBaseConfig().save(false);
+        indexerStateStore.markDirty();
 
         saveApiAccess(accessType, responseTime, accessResult, false);
     }
@@ -308,10 +373,10 @@ public abstract class Indexer<T> {
         apiAccess.setResult(accessResult);
         apiAccess.setTime(Instant.now());
         if (configProvider.getBaseConfig().getMain().isKeepHistory()) {
-            indexerApiAccessRepository.save(apiAccess);
+            indexerApiAccessStore.append(apiAccess);
         }
 
-        indexerApiAccessShortRepository.save(new IndexerApiAccessEntityShort(indexer, successful, accessType));
+        writeBehindPersister.saveApiAccess(new IndexerApiAccessEntityShort(indexer, successful, accessType));
     }
 
     protected void handleIndexerAccessException(IndexerAccessException e, IndexerApiAccessType accessType) {
@@ -362,10 +427,56 @@ public abstract class Indexer<T> {
 
         long responseTime = stopwatch.elapsed(TimeUnit.MILLISECONDS);
         debug(LoggingMarkers.PERFORMANCE, "Call to {} took {}ms", uri, responseTime);
+        indexerLatencyTracker.recordResponseTime(getName(), responseTime);
         handleSuccess(apiAccessType, responseTime);
         return result;
     }
 
+    /**
+     * Asynchronous variant of {@link #getAndStoreResultToDatabase(URI, IndexerApiAccessType)}. The returned future must be completed using
+     * the given executor.
+     * <p>
+     * Implementations which can call the indexer without blocking should override this method. By default the synchronous variant is
+     * executed by the given executor so that anything implementations do in {@link #getAndStoreResultToDatabase(URI, IndexerApiAccessType)}
+     * is also done for asynchronous searches.
+     */
+    protected CompletableFuture<T> getAndStoreResultToDatabaseAsync(URI uri, IndexerApiAccessType apiAccessType, Executor executor) {
+        return getAndStoreResultToDatabaseUsingExecutor(uri, apiAccessType, executor);
+    }
+
+    /**
+     * Executes {@link #getAndStoreResultToDatabase(URI, IndexerApiAccessType)} using the given executor. For implementations which override
+     * the synchronous variant in a way the asynchronous variant of their super class doesn't know about.
+     */
+    protected final CompletableFuture<T> getAndStoreResultToDatabaseUsingExecutor(URI uri, IndexerApiAccessType apiAccessType, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getAndStoreResultToDatabase(uri, apiAccessType);
+            } catch (IndexerAccessException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Asynchronous variant of {@link #getAndStoreResultToDatabase(URI, Class, IndexerApiAccessType)}. The indexer is called without blocking
+     * a thread, the access result is handled using the given executor.
+     */
+    protected <T> CompletableFuture<T> getAndStoreResultToDatabaseAsync(URI uri, Class<T> responseType, IndexerApiAccessType apiAccessType, Executor executor) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        //Failures are also handled using the executor so that no processing is done by the thread which completed the call
+        return indexerWebAccess.<T>getAsync(uri, config, responseType).handleAsync((result, throwable) -> {
+            if (throwable != null) {
+                throw throwable instanceof CompletionException ? (CompletionException) throwable : new CompletionException(throwable);
+            }
+            long responseTime = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            debug(LoggingMarkers.PERFORMANCE, "Call to {} took {}ms", uri, responseTime);
+            indexerLatencyTracker.recordResponseTime(getName(), responseTime);
+            handleSuccess(apiAccessType, responseTime);
+            return result;
+        }, executor);
+    }
+
     <T> T callInderWebAccess(URI uri, Class<T> responseType) throws IndexerAccessException {
         return indexerWebAccess.get(uri, config, responseType);
     }
@@ -0,0 +1,264 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers;
+
+import com.google.common.base.Stopwatch;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Value;
+import org.HdrHistogram.Histogram;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps histograms of the response times of every indexer. They're used to derive adaptive timeouts and to recognize indexers which
+ * are currently responding much slower than usual.
+ * <p>
+ * Every histogram covers the last 12 to 24 hours: response times are recorded in the current window which replaces the previous one
+ * every 12 hours. The response times are already stored in the {@link IndexerApiAccessStore} (as long as the history is kept) so the
+ * histograms are rebuilt from there on startup instead of being persisted separately.
+ */
+@Component
+public class IndexerLatencyTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerLatencyTracker.class);
+
+    static final Duration WINDOW = Duration.ofHours(12);
+    static final int MIN_SAMPLES = 20;
+    static final int RECENT_RESPONSES = 5;
+    static final double TIMEOUT_FACTOR = 3;
+    static final int MIN_TIMEOUT_SECONDS = 5;
+    static final double DEGRADED_FACTOR = 3;
+    static final long DEGRADED_MIN_MILLIS = 1000;
+    private static final long HIGHEST_TRACKABLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    @Autowired
+    protected DataSource dataSource;
+    @Autowired
+    protected IndexerApiAccessStore indexerApiAccessStore;
+
+    protected Clock clock = Clock.systemUTC();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Thread thread = new Thread(this::loadPreviousResponseTimes, "IndexerLatencyLoader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void recordResponseTime(String indexerName, long responseTimeMillis) {
+        getHistogram(indexerName).record(responseTimeMillis, clock.instant());
+    }
+
+    /**
+     * Returns the timeout to use for the given indexer: the 99th percentile of its response times multiplied by a factor, but never longer
+     * than the configured timeout. The configured timeout is returned as long as not enough response times are known.
+     */
+    public int getTimeout(String indexerName, int configuredTimeoutSeconds) {
+        Optional<Percentiles> percentiles = getPercentiles(indexerName);
+        if (!percentiles.isPresent()) {
+            return configuredTimeoutSeconds;
+        }
+        int adaptiveTimeout = (int) Math.ceil(percentiles.get().getPercentile99() * TIMEOUT_FACTOR / 1000);
+        return Math.min(configuredTimeoutSeconds, Math.max(MIN_TIMEOUT_SECONDS, adaptiveTimeout));
+    }
+
+    /**
+     * @return true if the median of the indexer's last responses is much higher than the median of all its known responses
+     */
+    public boolean isDegraded(String indexerName) {
+        LatencyHistogram latencyHistogram = histograms.get(indexerName);
+        if (latencyHistogram == null) {
+            return false;
+        }
+        Optional<Percentiles> percentiles = getPercentiles(indexerName);
+        Optional<Long> recentMedian = latencyHistogram.getRecentMedian();
+        if (!percentiles.isPresent() || !recentMedian.isPresent()) {
+            return false;
+        }
+        return recentMedian.get() >= DEGRADED_MIN_MILLIS && recentMedian.get() > percentiles.get().getMedian() * DEGRADED_FACTOR;
+    }
+
+    public LatencySummary getSummary(String indexerName, int configuredTimeoutSeconds) {
+        LatencySummary summary = new LatencySummary();
+        LatencyHistogram latencyHistogram = histograms.get(indexerName);
+        if (latencyHistogram == null) {
+            summary.setTimeout(configuredTimeoutSeconds);
+            return summary;
+        }
+        Percentiles percentiles = latencyHistogram.getPercentiles(clock.instant());
+        summary.setSamples(percentiles.getSamples());
+        if (percentiles.getSamples() > 0) {
+            summary.setMedian(percentiles.getMedian());
+            summary.setPercentile90(percentiles.getPercentile90());
+            summary.setPercentile99(percentiles.getPercentile99());
+            summary.setMax(percentiles.getMax());
+        }
+        summary.setTimeout(getTimeout(indexerName, configuredTimeoutSeconds));
+        summary.setDegraded(isDegraded(indexerName));
+        return summary;
+    }
+
+    private Optional<Percentiles> getPercentiles(String indexerName) {
+        LatencyHistogram latencyHistogram = histograms.get(indexerName);
+        if (latencyHistogram == null) {
+            return Optional.empty();
+        }
+        Percentiles percentiles = latencyHistogram.getPercentiles(clock.instant());
+        return percentiles.getSamples() < MIN_SAMPLES ? Optional.empty() : Optional.of(percentiles);
+    }
+
+    private LatencyHistogram getHistogram(String indexerName) {
+        return histograms.computeIfAbsent(indexerName, x -> new LatencyHistogram(clock.instant()));
+    }
+
+    protected void loadPreviousResponseTimes() {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        Map<Integer, String> indexerNames = new HashMap<>();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT ID, NAME FROM INDEXER")) {
+            while (resultSet.next()) {
+                indexerNames.put(resultSet.getInt(1), resultSet.getString(2));
+            }
+        } catch (SQLException e) {
+            logger.error("Unable to load indexers from database", e);
+            return;
+        }
+        AtomicInteger count = new AtomicInteger();
+        indexerApiAccessStore.scanSuccessfulResponseTimes(clock.instant().minus(WINDOW), (indexerId, responseTime) -> {
+            String indexerName = indexerNames.get(indexerId);
+            if (indexerName != null) {
+                getHistogram(indexerName).recordPrevious(responseTime);
+                count.incrementAndGet();
+            }
+        });
+        logger.debug(LoggingMarkers.PERFORMANCE, "Loaded {} previous indexer response times in {}ms", count.get(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    private static class LatencyHistogram {
+        private Histogram current = createHistogram();
+        private Histogram previous = createHistogram();
+        private Instant currentStart;
+        private final long[] recent = new long[RECENT_RESPONSES];
+        private int recentCount;
+        //Calculated when needed after a response time was recorded or the window was rotated
+        private Percentiles percentiles;
+
+        LatencyHistogram(Instant now) {
+            currentStart = now;
+        }
+
+        synchronized void record(long responseTimeMillis, Instant now) {
+            rotate(now);
+            current.recordValue(clamp(responseTimeMillis));
+            recent[recentCount++ % RECENT_RESPONSES] = responseTimeMillis;
+            percentiles = null;
+        }
+
+        synchronized void recordPrevious(long responseTimeMillis) {
+            previous.recordValue(clamp(responseTimeMillis));
+            percentiles = null;
+        }
+
+        synchronized Percentiles getPercentiles(Instant now) {
+            rotate(now);
+            if (percentiles == null) {
+                Histogram histogram = current.copy();
+                histogram.add(previous);
+                percentiles = new Percentiles(histogram.getTotalCount(), histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99), histogram.getMaxValue());
+            }
+            return percentiles;
+        }
+
+        synchronized Optional<Long> getRecentMedian() {
+            if (recentCount < RECENT_RESPONSES) {
+                return Optional.empty();
+            }
+            long[] sorted = recent.clone();
+            Arrays.sort(sorted);
+            return Optional.of(sorted[RECENT_RESPONSES / 2]);
+        }
+
+        private void rotate(Instant now) {
+            if (now.isBefore(currentStart.plus(WINDOW))) {
+                return;
+            }
+            if (now.isBefore(currentStart.plus(WINDOW.multipliedBy(2)))) {
+                previous = current;
+            } else {
+                //Nothing was recorded during the last window
+                previous = createHistogram();
+            }
+            current = createHistogram();
+            currentStart = now;
+            percentiles = null;
+        }
+
+        private static long clamp(long responseTimeMillis) {
+            return Math.max(0, Math.min(HIGHEST_TRACKABLE_MILLIS, responseTimeMillis));
+        }
+
+        private static Histogram createHistogram() {
+            return new Histogram(HIGHEST_TRACKABLE_MILLIS, 2);
+        }
+    }
+
+    @Value
+    private static class Percentiles {
+        long samples;
+        long median;
+        long percentile90;
+        long percentile99;
+        long max;
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class LatencySummary {
+        private long samples;
+        private Long median;
+        private Long percentile90;
+        private Long percentile99;
+        private Long max;
+        private int timeout;
+        private boolean degraded;
+    }
+
+}
@@ -19,6 +19,7 @@ package org.nzbhydra.indexers;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.ConfigReaderWriter;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.status.IndexerStateStore;
 import org.nzbhydra.tasks.HydraTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,11 +35,13 @@ public class IndexerStatusesCleanupTask {
     private static final long MINUTE = 1000 * 60;
 
     private ConfigProvider configProvider;
+    private IndexerStateStore indexerStateStore;
     ConfigReaderWriter configReaderWriter = new ConfigReaderWriter();
 
     @Autowired
-    public IndexerStatusesCleanupTask(ConfigProvider configProvider) {
+    public IndexerStatusesCleanupTask(ConfigProvider configProvider, IndexerStateStore indexerStateStore) {
         this.configProvider = configProvider;
+        this.indexerStateStore = indexerStateStore;
     }
 
     @HydraTask(configId = "cleanUpIndexerStatuses", name = "Clean up indexer statuses", interval = MINUTE)
@@ -56,7 +59,7 @@ public class IndexerStatusesCleanupTask {
             }
         }
         if (anyChanges) {
-            configProvider.getBaseConfig().save(false);
+            indexerStateStore.markDirty();
         }
     }
 }
@@ -7,9 +7,11 @@ import lombok.Data;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.indexer.IndexerConfig;
 import org.nzbhydra.indexers.exceptions.IndexerAccessException;
-import org.nzbhydra.indexers.exceptions.IndexerProgramErrorException;
+import org.nzbhydra.indexers.exceptions.IndexerParsingException;
 import org.nzbhydra.indexers.exceptions.IndexerUnreachableException;
-import org.nzbhydra.logging.MdcThreadPoolExecutor;
+import org.nzbhydra.mapping.newznab.json.NewznabJsonStreamReader;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlStreamReader;
+import org.nzbhydra.mapping.newznab.xml.Xml;
 import org.nzbhydra.web.WebConfiguration;
 import org.nzbhydra.webaccess.WebAccess;
 import org.slf4j.Logger;
@@ -20,7 +22,10 @@ import org.springframework.oxm.UnmarshallingFailureException;
 import org.springframework.stereotype.Component;
 import org.xml.sax.SAXParseException;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.StringReader;
 import java.net.SocketTimeoutException;
 import java.net.URI;
@@ -28,12 +33,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Component
 public class IndexerWebAccess {
@@ -44,6 +45,8 @@ public class IndexerWebAccess {
     protected ConfigProvider configProvider;
     @Autowired
     protected WebAccess webAccess;
+    @Autowired
+    protected IndexerLatencyTracker indexerLatencyTracker;
     protected Unmarshaller unmarshaller = new WebConfiguration().marshaller();
 
 
@@ -54,7 +57,106 @@ public class IndexerWebAccess {
 
     @SuppressWarnings("unchecked")
     public <T> T get(URI uri, IndexerConfig indexerConfig, Class responseType) throws IndexerAccessException {
+        int timeout = getTimeout(indexerConfig);
+        String response;
+        try {
+            response = webAccess.callUrl(uri.toString(), getHeaders(indexerConfig), timeout);
+        } catch (IOException e) {
+            throw mapCallException(e, indexerConfig, timeout);
+        } catch (Exception e) {
+            throw new RuntimeException("Unexpected error while accessing indexer", e);
+        }
+        return parse(response, responseType);
+    }
+
+    public <T> CompletableFuture<T> getAsync(URI uri, IndexerConfig indexerConfig) {
+        return getAsync(uri, indexerConfig, null);
+    }
+
+    /**
+     * Calls the indexer without blocking a thread while waiting for the response. The returned future is completed exceptionally with an
+     * {@link IndexerAccessException} if the call failed or the response could not be parsed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getAsync(URI uri, IndexerConfig indexerConfig, Class responseType) {
+        int timeout = getTimeout(indexerConfig);
+        return webAccess.callUrlAsync(uri.toString(), getHeaders(indexerConfig), timeout).handle((response, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                throw new CompletionException(cause instanceof IOException ? mapCallException((IOException) cause, indexerConfig, timeout) : cause);
+            }
+            try {
+                return (T) parse(response, responseType);
+            } catch (IndexerAccessException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Converts the raw indexer response to the given type. Strings are returned as they are, newznab JSON responses are read using Jackson's
+     * streaming parser, newznab and torznab XML responses are read using StAX and anything else (or anything StAX cannot handle) is
+     * unmarshalled from XML using JAXB.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T parse(String response, Class responseType) throws IndexerAccessException {
+        if (responseType == String.class) {
+            return (T) response;
+        }
+        if ((responseType == null || Xml.class.isAssignableFrom(responseType)) && isJson(response)) {
+            try {
+                return (T) NewznabJsonStreamReader.read(response);
+            } catch (IOException e) {
+                throw new IndexerParsingException("Unable to parse indexer JSON output: " + e.getMessage(), e);
+            }
+        }
+        if (responseType == null || Xml.class.isAssignableFrom(responseType)) {
+            Optional<Xml> xml = readWithStax(response);
+            if (xml.isPresent()) {
+                return (T) xml.get();
+            }
+        }
+        try {
+            return (T) unmarshaller.unmarshal(new StreamSource(new StringReader(response)));
+        } catch (UnmarshallingFailureException e) {
+            if (!response.toLowerCase().contains("function not available")) {
+                //Some indexers like Animetosho don't return a proper error code. This error may happen during caps check and we don't want to log it
+                logParseException(response, e);
+            }
+            throw new IndexerAccessException("Unable to parse indexer output", new HydraUnmarshallingFailureException(e, response));
+        } catch (IOException e) {
+            throw new IndexerAccessException("Unable to parse indexer output", e);
+        }
+    }
+
+    private boolean isJson(String response) {
+        for (int i = 0; i < response.length(); i++) {
+            char c = response.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '{';
+            }
+        }
+        return false;
+    }
+
+    private Optional<Xml> readWithStax(String response) {
+        try {
+            return NewznabXmlStreamReader.read(response);
+        } catch (XMLStreamException e) {
+            logger.debug("Unable to read indexer response using StAX, falling back to JAXB: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private int getTimeout(IndexerConfig indexerConfig) {
         int timeout = indexerConfig.getTimeout().orElse(configProvider.getBaseConfig().getSearching().getTimeout());
+        if (configProvider.getBaseConfig().getSearching().isAdaptiveTimeouts()) {
+            return indexerLatencyTracker.getTimeout(indexerConfig.getName(), timeout);
+        }
+        return timeout;
+    }
+
+    private Map<String, String> getHeaders(IndexerConfig indexerConfig) {
         String userAgent = indexerConfig.getUserAgent().orElse(configProvider.getBaseConfig().getSearching().getUserAgent().orElse("NZBHydra2"));
 
         Map<String, String> headers = new HashMap<>();
@@ -63,48 +165,18 @@ public class IndexerWebAccess {
         if (indexerConfig.getUsername().isPresent() && indexerConfig.getPassword().isPresent()) {
             headers.put("Authorization", "Basic " + BaseEncoding.base64().encode((indexerConfig.getUsername().get() + ":" + indexerConfig.getPassword().get()).getBytes()));
         }
+        return headers;
+    }
 
-        Future<T> future;
-        ExecutorService executorService = MdcThreadPoolExecutor.newWithInheritedMdc(1);
-        try {
-            future = executorService.submit(() -> {
-                String response = webAccess.callUrl(uri.toString(), headers, timeout);
-                if (responseType == String.class) {
-                    return (T) response;
-                }
-                try {
-                    T unmarshalled = (T) unmarshaller.unmarshal(new StreamSource(new StringReader(response)));
-                    return unmarshalled;
-                } catch (UnmarshallingFailureException e) {
-                    if (!response.toLowerCase().contains("function not available")) {
-                        //Some indexers like Animetosho don't return a proper error code. This error may happen during caps check and we don't want to log it
-                        logParseException(response, e);
-                    }
-                    throw new HydraUnmarshallingFailureException(e, response);
-                }
-            });
-        } catch (RejectedExecutionException e) {
-            logger.error("Unexpected execution exception while executing call for indexer " + indexerConfig.getName() + ". This will hopefully be fixed soon", e);
-            throw new IndexerProgramErrorException("Unexpected error in hydra code. Sorry...");
-        } finally {
-            executorService.shutdown();
+    private IndexerAccessException mapCallException(IOException e, IndexerConfig indexerConfig, int timeout) {
+        if (e instanceof SocketTimeoutException) {
+            return new IndexerUnreachableException("Connection with indexer timed out with a time out of " + timeout + " seconds: " + e.getMessage());
         }
-        try {
-            return future.get(timeout + 1, TimeUnit.SECONDS); //Give it one second more than the actual timeout
-        } catch (ExecutionException e) {
-            if (e.getCause() instanceof SocketTimeoutException) {
-                throw new IndexerUnreachableException("Connection with indexer timed out with a time out of " + timeout + " seconds: " + e.getCause().getMessage());
-            }
-            if (e.getCause() instanceof HydraUnmarshallingFailureException) {
-                throw new IndexerAccessException("Unable to parse indexer output", e.getCause());
-            }
-
-            throw new IndexerUnreachableException("Error while communicating with indexer " + indexerConfig.getName() + ". Server returned: " + e.getMessage(), e.getCause());
-        } catch (TimeoutException e) {
-            throw new IndexerAccessException("Indexer did not complete request within " + timeout + " seconds");
-        } catch (Exception e) {
-            throw new RuntimeException("Unexpected error while accessing indexer", e);
+        if (e instanceof InterruptedIOException) {
+            //Thrown when the call timeout is reached
+            return new IndexerAccessException("Indexer did not complete request within " + timeout + " seconds");
         }
+        return new IndexerUnreachableException("Error while communicating with indexer " + indexerConfig.getName() + ". Server returned: " + e.getMessage(), e);
     }
 
     protected void logParseException(String response, UnmarshallingFailureException e) {
@@ -13,6 +13,7 @@ import org.nzbhydra.config.indexer.SearchModuleType;
 import org.nzbhydra.indexers.exceptions.IndexerAccessException;
 import org.nzbhydra.indexers.exceptions.IndexerAuthException;
 import org.nzbhydra.indexers.exceptions.IndexerErrorCodeException;
+import org.nzbhydra.indexers.exceptions.IndexerParsingException;
 import org.nzbhydra.indexers.exceptions.IndexerProgramErrorException;
 import org.nzbhydra.indexers.exceptions.IndexerSearchAbortedException;
 import org.nzbhydra.indexers.status.IndexerLimit;
@@ -64,7 +65,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -126,6 +130,9 @@ public class Newznab extends Indexer<Xml> {
             searchType = SearchType.SEARCH;
         }
         componentsBuilder = componentsBuilder.queryParam("t", searchType.name().toLowerCase()).queryParam("extended", "1");
+        if (config.isJsonSupported()) {
+            componentsBuilder.queryParam("o", "json");
+        }
 
         String query = "";
 
@@ -357,14 +364,63 @@ public class Newznab extends Indexer<Xml> {
     }
 
     protected Xml getAndStoreResultToDatabase(URI uri, IndexerApiAccessType apiAccessType) throws IndexerAccessException {
-        Xml response = getAndStoreResultToDatabase(uri, Xml.class, apiAccessType);
+        Xml response;
+        try {
+            response = getAndStoreResultToDatabase(uri, Xml.class, apiAccessType);
+        } catch (IndexerParsingException e) {
+            if (!isJsonFallbackPossible(uri)) {
+                throw e;
+            }
+            response = getAndStoreResultToDatabase(switchToXml(uri, e), Xml.class, apiAccessType);
+        }
+        checkResponse(response, uri);
+        return response;
+    }
+
+    @Override
+    protected CompletableFuture<Xml> getAndStoreResultToDatabaseAsync(URI uri, IndexerApiAccessType apiAccessType, Executor executor) {
+        return getAndStoreResultToDatabaseAsync(uri, Xml.class, apiAccessType, executor)
+                .handle((response, throwable) -> {
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof IndexerParsingException && isJsonFallbackPossible(uri)) {
+                        return getAndStoreResultToDatabaseAsync(switchToXml(uri, (IndexerParsingException) cause), Xml.class, apiAccessType, executor);
+                    }
+                    if (throwable != null) {
+                        CompletableFuture<Xml> future = new CompletableFuture<>();
+                        future.completeExceptionally(cause);
+                        return future;
+                    }
+                    return CompletableFuture.completedFuture(response);
+                })
+                .thenCompose(x -> x)
+                .thenApply(response -> {
+                    try {
+                        checkResponse(response, uri);
+                    } catch (IndexerAccessException e) {
+                        throw new CompletionException(e);
+                    }
+                    return response;
+                });
+    }
+
+    private boolean isJsonFallbackPossible(URI uri) {
+        return config.isJsonSupported() && UriComponentsBuilder.fromUri(uri).build().getQueryParams().containsKey("o");
+    }
+
+    private URI switchToXml(URI uri, IndexerParsingException e) {
+        warn("Unable to parse JSON response: " + e.getMessage() + ". Will use XML for this indexer from now on");
+        config.setJsonSupported(false);
+        indexerStateStore.markDirty();
+        return UriComponentsBuilder.fromUri(uri).replaceQueryParam("o").build(true).toUri();
+    }
+
+    private void checkResponse(Xml response, URI uri) throws IndexerAccessException {
         if (response instanceof NewznabXmlError) {
             //Base class doesn't know any RssErrors so we must handle this case specially
             handleRssError((NewznabXmlError) response, uri.toString());
         } else if (!(response instanceof NewznabXmlRoot)) {
             throw new UnknownResponseException("Indexer returned unknown response");
         }
-        return response;
     }
 
 
@@ -538,6 +594,7 @@ public class Newznab extends Indexer<Xml> {
         searchResultItem.setCommentsLink(item.getComments());
         searchResultItem.setOriginalCategory(item.getCategory()); //May be overwritten by mapping in attributes
         parseAttributes(item, searchResultItem);
+        searchResultItem.computeDuplicateKey();
 
         return searchResultItem;
     }
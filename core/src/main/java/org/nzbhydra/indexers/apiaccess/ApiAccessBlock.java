@@ -0,0 +1,264 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers.apiaccess;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A block of API accesses stored column by column. The block is written as a whole after its length so that a reader can skip it or
+ * recognize that it was not written completely. Encoding of the columns:
+ * <ul>
+ *     <li>Times: the first one as varlong, the following ones as zig-zag encoded varlong differences to the previous one</li>
+ *     <li>Indexer IDs, results and access types: a dictionary of the distinct values followed by the varint index of every row</li>
+ *     <li>Response times: varlong of the response time + 1 or 0 if no response time is known</li>
+ * </ul>
+ * Decoded blocks keep every column in a primitive array so that the scans can run over them in tight loops.
+ */
+class ApiAccessBlock {
+
+    private final int size;
+    private final long[] times;
+    private final int[] indexerIds;
+    private final int[] resultCodes;
+    private final String[] results;
+    private final int[] accessTypeCodes;
+    private final String[] accessTypes;
+    private final long[] responseTimes;
+
+    private ApiAccessBlock(int size, long[] times, int[] indexerIds, int[] resultCodes, String[] results, int[] accessTypeCodes, String[] accessTypes, long[] responseTimes) {
+        this.size = size;
+        this.times = times;
+        this.indexerIds = indexerIds;
+        this.resultCodes = resultCodes;
+        this.results = results;
+        this.accessTypeCodes = accessTypeCodes;
+        this.accessTypes = accessTypes;
+        this.responseTimes = responseTimes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getTime(int row) {
+        return times[row];
+    }
+
+    int getIndexerId(int row) {
+        return indexerIds[row];
+    }
+
+    String getResult(int row) {
+        return results[resultCodes[row]];
+    }
+
+    /**
+     * @return the code of the given result in this block or -1 if no row has that result
+     */
+    int findResultCode(String result) {
+        return Arrays.asList(results).indexOf(result);
+    }
+
+    int getResultCode(int row) {
+        return resultCodes[row];
+    }
+
+    String getAccessType(int row) {
+        return accessTypes[accessTypeCodes[row]];
+    }
+
+    /**
+     * @return the response time or -1 if none is known
+     */
+    long getResponseTime(int row) {
+        return responseTimes[row];
+    }
+
+    /**
+     * Reads a block from the given buffer which must be positioned after the block's length.
+     */
+    static ApiAccessBlock decode(ByteBuffer buffer) {
+        int size = readVarInt(buffer);
+        long[] times = new long[size];
+        long time = readVarLong(buffer);
+        times[0] = time;
+        for (int i = 1; i < size; i++) {
+            time += decodeZigZag(readVarLong(buffer));
+            times[i] = time;
+        }
+
+        int[] indexerIdDictionary = new int[readVarInt(buffer)];
+        for (int i = 0; i < indexerIdDictionary.length; i++) {
+            indexerIdDictionary[i] = readVarInt(buffer);
+        }
+        String[] results = readStrings(buffer);
+        String[] accessTypes = readStrings(buffer);
+
+        int[] indexerIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            indexerIds[i] = indexerIdDictionary[readVarInt(buffer)];
+        }
+        int[] resultCodes = readVarInts(buffer, size);
+        int[] accessTypeCodes = readVarInts(buffer, size);
+        long[] responseTimes = new long[size];
+        for (int i = 0; i < size; i++) {
+            responseTimes[i] = readVarLong(buffer) - 1;
+        }
+        return new ApiAccessBlock(size, times, indexerIds, resultCodes, results, accessTypeCodes, accessTypes, responseTimes);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        String[] strings = new String[readVarInt(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readVarInt(buffer)];
+            buffer.get(bytes);
+            strings[i] = bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static int[] readVarInts(ByteBuffer buffer, int size) {
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = readVarInt(buffer);
+        }
+        return values;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        return (int) readVarLong(buffer);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Collects API accesses and encodes them to a block.
+     */
+    static class Builder {
+        private final List<Long> times = new ArrayList<>();
+        private final List<Integer> indexerIds = new ArrayList<>();
+        private final List<String> results = new ArrayList<>();
+        private final List<String> accessTypes = new ArrayList<>();
+        private final List<Long> responseTimes = new ArrayList<>();
+
+        void add(long time, int indexerId, String result, String accessType, Long responseTime) {
+            times.add(time);
+            indexerIds.add(indexerId);
+            results.add(result);
+            accessTypes.add(accessType);
+            responseTimes.add(responseTime);
+        }
+
+        int size() {
+            return times.size();
+        }
+
+        /**
+         * @return the block prefixed by its length
+         */
+        byte[] encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16 * times.size());
+            writeVarLong(out, times.size());
+            writeVarLong(out, times.get(0));
+            for (int i = 1; i < times.size(); i++) {
+                writeVarLong(out, encodeZigZag(times.get(i) - times.get(i - 1)));
+            }
+
+            Map<Integer, Integer> indexerIdCodes = new HashMap<>();
+            List<Integer> indexerIdDictionary = new ArrayList<>();
+            for (Integer indexerId : indexerIds) {
+                if (indexerIdCodes.putIfAbsent(indexerId, indexerIdDictionary.size()) == null) {
+                    indexerIdDictionary.add(indexerId);
+                }
+            }
+            writeVarLong(out, indexerIdDictionary.size());
+            for (Integer indexerId : indexerIdDictionary) {
+                writeVarLong(out, indexerId);
+            }
+            Map<String, Integer> resultCodes = writeDictionary(out, results);
+            Map<String, Integer> accessTypeCodes = writeDictionary(out, accessTypes);
+
+            for (Integer indexerId : indexerIds) {
+                writeVarLong(out, indexerIdCodes.get(indexerId));
+            }
+            for (String result : results) {
+                writeVarLong(out, resultCodes.get(result));
+            }
+            for (String accessType : accessTypes) {
+                writeVarLong(out, accessTypeCodes.get(accessType));
+            }
+            for (Long responseTime : responseTimes) {
+                writeVarLong(out, responseTime == null ? 0 : responseTime + 1);
+            }
+
+            byte[] block = out.toByteArray();
+            return ByteBuffer.allocate(4 + block.length).putInt(block.length).put(block).array();
+        }
+
+        private static Map<String, Integer> writeDictionary(ByteArrayOutputStream out, List<String> values) {
+            Map<String, Integer> codes = new HashMap<>();
+            List<String> dictionary = new ArrayList<>();
+            for (String value : values) {
+                if (!codes.containsKey(value)) {
+                    codes.put(value, dictionary.size());
+                    dictionary.add(value);
+                }
+            }
+            writeVarLong(out, dictionary.size());
+            for (String value : dictionary) {
+                byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(out, bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+            return codes;
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private static long encodeZigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+}
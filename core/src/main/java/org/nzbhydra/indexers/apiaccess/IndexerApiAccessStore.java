@@ -0,0 +1,376 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers.apiaccess;
+
+import com.google.common.base.Stopwatch;
+import org.nzbhydra.NzbHydra;
+import org.nzbhydra.ShutdownEvent;
+import org.nzbhydra.indexers.IndexerAccessResult;
+import org.nzbhydra.indexers.IndexerApiAccessEntity;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Stores the API accesses of the indexers (time, indexer, result, access type, response time) in append-only files instead of the
+ * database. There's one file (segment) per day, containing blocks of accesses stored column by column (see {@link ApiAccessBlock}).
+ * Accesses are collected in memory and appended to the segment of their day every few seconds or when a block is full.
+ * <p>
+ * Segments are memory mapped for reading. The scans decode one block at a time and aggregate its columns; only the segments of the
+ * requested days are read. Old accesses are removed by deleting whole segments.
+ */
+@Component
+public class IndexerApiAccessStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerApiAccessStore.class);
+
+    static final int BLOCK_SIZE = 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 5_000;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    protected File directory;
+    //Days are determined in the system's time zone like the days in the other stats
+    protected ZoneId zoneId = ZoneId.systemDefault();
+    private final Map<LocalDate, ApiAccessBlock.Builder> pendingBlocks = new HashMap<>();
+    private final Set<LocalDate> checkedSegments = new HashSet<>();
+
+    public IndexerApiAccessStore() {
+    }
+
+    public IndexerApiAccessStore(File directory) {
+        this.directory = directory;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (directory == null) {
+            directory = new File(NzbHydra.getDataFolder(), "apiaccess");
+        }
+        Timer timer = new Timer("indexerApiAccessFlush", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS);
+    }
+
+    public void append(IndexerApiAccessEntity apiAccess) {
+        append(apiAccess.getTime(), apiAccess.getIndexer().getId(), apiAccess.getResult() == null ? null : apiAccess.getResult().name(), apiAccess.getAccessType() == null ? null : apiAccess.getAccessType().name(), apiAccess.getResponseTime());
+    }
+
+    public void append(Instant time, int indexerId, String result, String accessType, Long responseTime) {
+        LocalDate day = getDay(time.toEpochMilli());
+        synchronized (pendingBlocks) {
+            ApiAccessBlock.Builder builder = pendingBlocks.computeIfAbsent(day, x -> new ApiAccessBlock.Builder());
+            builder.add(time.toEpochMilli(), indexerId, result, accessType, responseTime);
+            if (builder.size() >= BLOCK_SIZE) {
+                write(day, builder);
+                pendingBlocks.remove(day);
+            }
+        }
+    }
+
+    @EventListener
+    public void onShutdown(ShutdownEvent event) {
+        flush();
+    }
+
+    /**
+     * Writes all collected accesses to the segments.
+     */
+    public void flush() {
+        synchronized (pendingBlocks) {
+            for (Entry<LocalDate, ApiAccessBlock.Builder> entry : pendingBlocks.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            pendingBlocks.clear();
+        }
+    }
+
+    /**
+     * Deletes the segments of all days before the day of the given time.
+     */
+    public void deleteBefore(Instant deleteOlderThan) {
+        LocalDate firstDayToKeep = getDay(deleteOlderThan.toEpochMilli());
+        synchronized (pendingBlocks) {
+            pendingBlocks.keySet().removeIf(day -> day.isBefore(firstDayToKeep));
+            for (Entry<LocalDate, File> segment : getSegments().headMap(firstDayToKeep).entrySet()) {
+                //Might fail on windows while the segment is still mapped. It will be deleted the next time
+                if (segment.getValue().delete()) {
+                    logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleted API accesses of {}", segment.getKey());
+                } else {
+                    logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Unable to delete API access segment {}", segment.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all collected accesses and copies all segments to the given folder (e.g. in a backup ZIP). No accesses are written while the
+     * segments are copied.
+     */
+    public void copySegmentsTo(Path targetFolder) throws IOException {
+        synchronized (pendingBlocks) {
+            flush();
+            for (File segment : getSegments().values()) {
+                Files.copy(segment.toPath(), targetFolder.resolve(segment.getName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Replaces all segments with the ones from the given folder (e.g. from an extracted backup). Accesses not yet written are discarded.
+     */
+    public void restoreSegmentsFrom(File sourceFolder) throws IOException {
+        synchronized (pendingBlocks) {
+            pendingBlocks.clear();
+            checkedSegments.clear();
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Unable to create folder " + directory);
+            }
+            for (File segment : getSegments().values()) {
+                Files.delete(segment.toPath());
+            }
+            File[] restoredSegments = sourceFolder.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+            if (restoredSegments == null) {
+                return;
+            }
+            for (File segment : restoredSegments) {
+                Files.move(segment.toPath(), new File(directory, segment.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * @return the number of segments and their total size in bytes
+     */
+    public long[] getSegmentsCountAndSize() {
+        Map<LocalDate, File> segments = getSegments();
+        return new long[]{segments.size(), segments.values().stream().mapToLong(File::length).sum()};
+    }
+
+    /**
+     * @return the average response time per indexer ID of all accesses in the given time range with known response times
+     */
+    public Map<Integer, Long> getAverageResponseTimes(Instant after, Instant before) {
+        Map<Integer, long[]> sumsAndCounts = new HashMap<>();
+        scan(after, before, (day, block) -> {
+            long afterMillis = toMillis(after, Long.MIN_VALUE);
+            long beforeMillis = toMillis(before, Long.MAX_VALUE);
+            for (int i = 0; i < block.size(); i++) {
+                long responseTime = block.getResponseTime(i);
+                if (responseTime >= 0 && block.getTime(i) > afterMillis && block.getTime(i) < beforeMillis) {
+                    long[] sumAndCount = sumsAndCounts.computeIfAbsent(block.getIndexerId(i), x -> new long[2]);
+                    sumAndCount[0] += responseTime;
+                    sumAndCount[1]++;
+                }
+            }
+        });
+        Map<Integer, Long> averages = new HashMap<>();
+        sumsAndCounts.forEach((indexerId, sumAndCount) -> averages.put(indexerId, sumAndCount[0] / sumAndCount[1]));
+        return averages;
+    }
+
+    /**
+     * @return the number of accesses per indexer ID and result in the given time range
+     */
+    public Map<Integer, Map<String, Integer>> getCountsPerResult(Instant after, Instant before) {
+        Map<Integer, Map<String, Integer>> counts = new HashMap<>();
+        scan(after, before, (day, block) -> {
+            long afterMillis = toMillis(after, Long.MIN_VALUE);
+            long beforeMillis = toMillis(before, Long.MAX_VALUE);
+            for (int i = 0; i < block.size(); i++) {
+                if (block.getTime(i) > afterMillis && block.getTime(i) < beforeMillis) {
+                    counts.computeIfAbsent(block.getIndexerId(i), x -> new HashMap<>()).merge(block.getResult(i), 1, Integer::sum);
+                }
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * @return the number of accesses per indexer ID and day in the given time range
+     */
+    public Map<Integer, Map<LocalDate, Integer>> getCountsPerDay(Instant after, Instant before) {
+        Map<Integer, Map<LocalDate, Integer>> counts = new HashMap<>();
+        scan(after, before, (day, block) -> {
+            long afterMillis = toMillis(after, Long.MIN_VALUE);
+            long beforeMillis = toMillis(before, Long.MAX_VALUE);
+            for (int i = 0; i < block.size(); i++) {
+                if (block.getTime(i) > afterMillis && block.getTime(i) < beforeMillis) {
+                    counts.computeIfAbsent(block.getIndexerId(i), x -> new TreeMap<>()).merge(day, 1, Integer::sum);
+                }
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Calls the given consumer with the indexer ID and response time of every successful access since the given time.
+     */
+    public void scanSuccessfulResponseTimes(Instant after, ResponseTimeConsumer consumer) {
+        long afterMillis = after.toEpochMilli();
+        scan(after, null, (day, block) -> {
+            int successfulCode = block.findResultCode(IndexerAccessResult.SUCCESSFUL.name());
+            if (successfulCode == -1) {
+                return;
+            }
+            for (int i = 0; i < block.size(); i++) {
+                if (block.getResultCode(i) == successfulCode && block.getResponseTime(i) >= 0 && block.getTime(i) > afterMillis) {
+                    consumer.accept(block.getIndexerId(i), block.getResponseTime(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * Calls the given visitor with every block of the segments for the given time range. The blocks may contain accesses outside the
+     * time range. Accesses which were not written yet are not included, call {@link #flush()} before if needed.
+     */
+    protected void scan(Instant after, Instant before, BiConsumer<LocalDate, ApiAccessBlock> visitor) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        LocalDate firstDay = after == null ? LocalDate.MIN : getDay(after.toEpochMilli());
+        LocalDate lastDay = before == null ? LocalDate.MAX : getDay(before.toEpochMilli());
+        int countBlocks = 0;
+        for (Entry<LocalDate, File> segment : getSegments().subMap(firstDay, true, lastDay, true).entrySet()) {
+            try (FileChannel channel = FileChannel.open(segment.getValue().toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= 4) {
+                    int length = buffer.getInt();
+                    if (length > buffer.remaining()) {
+                        //Block is being written or was not written completely
+                        break;
+                    }
+                    ByteBuffer blockBuffer = buffer.slice();
+                    blockBuffer.limit(length);
+                    visitor.accept(segment.getKey(), ApiAccessBlock.decode(blockBuffer));
+                    buffer.position(buffer.position() + length);
+                    countBlocks++;
+                }
+            } catch (IOException e) {
+                logger.error("Unable to read API accesses from " + segment.getValue(), e);
+            }
+        }
+        logger.debug(LoggingMarkers.PERFORMANCE, "Scanning {} blocks of API accesses took {}ms", countBlocks, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    private void write(LocalDate day, ApiAccessBlock.Builder builder) {
+        File segment = getSegmentFile(day);
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Unable to create folder " + directory);
+            }
+            try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (checkedSegments.add(day)) {
+                    truncateIncompleteBlock(channel, segment);
+                }
+                channel.position(channel.size());
+                ByteBuffer block = ByteBuffer.wrap(builder.encode());
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to write " + builder.size() + " API accesses to " + segment, e);
+        }
+    }
+
+    /**
+     * If the program was killed while writing a block the segment ends with an incomplete block which must be removed before any other
+     * block is appended.
+     */
+    private void truncateIncompleteBlock(FileChannel channel, File segment) throws IOException {
+        long position = 0;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 4 <= channel.size()) {
+            lengthBuffer.clear();
+            channel.read(lengthBuffer, position);
+            lengthBuffer.flip();
+            int length = lengthBuffer.getInt();
+            if (position + 4 + length > channel.size()) {
+                break;
+            }
+            position += 4 + length;
+        }
+        if (position < channel.size()) {
+            logger.warn("Removing incomplete block of API accesses from {}", segment);
+            channel.truncate(position);
+        }
+    }
+
+    private TreeMap<LocalDate, File> getSegments() {
+        TreeMap<LocalDate, File> segments = new TreeMap<>();
+        File[] files = directory == null ? null : directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            try {
+                segments.put(LocalDate.parse(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length())), file);
+            } catch (DateTimeParseException e) {
+                logger.warn("Unexpected file in API access folder: {}", file);
+            }
+        }
+        return segments;
+    }
+
+    private File getSegmentFile(LocalDate day) {
+        return new File(directory, day + SEGMENT_SUFFIX);
+    }
+
+    private LocalDate getDay(long epochMilli) {
+        return Instant.ofEpochMilli(epochMilli).atZone(zoneId).toLocalDate();
+    }
+
+    private static long toMillis(Instant instant, long defaultValue) {
+        return instant == null ? defaultValue : instant.toEpochMilli();
+    }
+
+    @FunctionalInterface
+    public interface ResponseTimeConsumer {
+        void accept(int indexerId, long responseTime);
+    }
+
+}
@@ -33,8 +33,8 @@ import org.nzbhydra.indexers.IndexerWebAccess;
 import org.nzbhydra.indexers.capscheck.CapsCheckRequest.CheckType;
 import org.nzbhydra.indexers.exceptions.IndexerAccessException;
 import org.nzbhydra.logging.LoggingMarkers;
-import org.nzbhydra.logging.MdcThreadPoolExecutor;
 import org.nzbhydra.mapping.newznab.ActionAttribute;
+import org.nzbhydra.mapping.newznab.json.NewznabJsonStreamReader;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlApilimits;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlError;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
@@ -50,6 +50,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -59,10 +60,13 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
@@ -181,22 +185,20 @@ public class IndexerChecker {
         boolean configComplete = true;
         int timeout = indexerConfig.getTimeout().orElse(configProvider.getBaseConfig().getSearching().getTimeout()) + 1;
         CapsCheckLimit capsCheckLimit = CAPS_CHECK_LIMITS.stream().filter(x -> indexerConfig.getHost().toLowerCase().contains(x.urlContains)).findFirst().orElse(new CapsCheckLimit(MAX_CONNECTIONS, PAUSE_BETWEEN_CALLS, null));
-        List<Callable<SingleCheckCapsResponse>> callables = new ArrayList<>();
-        for (CheckCapsRequest request : requests) {
-            callables.add(() -> {
-                Thread.sleep(capsCheckLimit.delayInMiliseconds); //Give indexer some time to breathe
-                return singleCheckCaps(request, indexerConfig);
-            });
-        }
-
         Set<SingleCheckCapsResponse> responses = new HashSet<>();
         Set<MediaIdType> supportedIds;
         String backend = null;
-        ExecutorService executor = MdcThreadPoolExecutor.newWithInheritedMdc(capsCheckLimit.maxConnections);
+        //The calls are made asynchronously, the semaphore only limits the number of concurrent connections
+        Semaphore connections = new Semaphore(capsCheckLimit.maxConnections);
         try {
             logger.info("Will check capabilities of indexer {} using {} concurrent connections and a delay of {}ms", indexerConfig.getName(), capsCheckLimit.maxConnections, capsCheckLimit.delayInMiliseconds);
-            List<Future<SingleCheckCapsResponse>> futures = executor.invokeAll(callables);
-            for (Future<SingleCheckCapsResponse> future : futures) {
+            List<CompletableFuture<SingleCheckCapsResponse>> futures = new ArrayList<>();
+            for (CheckCapsRequest request : requests) {
+                connections.acquire();
+                Thread.sleep(capsCheckLimit.delayInMiliseconds); //Give indexer some time to breathe
+                futures.add(singleCheckCaps(request, indexerConfig).whenComplete((response, throwable) -> connections.release()));
+            }
+            for (CompletableFuture<SingleCheckCapsResponse> future : futures) {
                 try {
                     SingleCheckCapsResponse response = future.get(timeout, TimeUnit.SECONDS);
                     if (response.getBackend() != null) {
@@ -236,8 +238,6 @@ public class IndexerChecker {
         } catch (InterruptedException e) {
             logger.error("Unexpected error while checking caps", e);
             allChecked = false;
-        } finally {
-            executor.shutdown();
         }
 
         try {
@@ -252,6 +252,9 @@ public class IndexerChecker {
             configComplete = false;
         }
 
+        if (indexerConfig.getSearchModuleType() == SearchModuleType.NEWZNAB) {
+            indexerConfig.setJsonSupported(isJsonSupported(indexerConfig));
+        }
 
         BackendType backendType = BackendType.NEWZNAB;
         if (backend == null && indexerConfig.getSearchModuleType() == SearchModuleType.NEWZNAB) {
@@ -272,6 +275,28 @@ public class IndexerChecker {
         return new CheckCapsResponse(indexerConfig, allChecked, configComplete);
     }
 
+    /**
+     * Executes a search requesting JSON output. JSON is only used if the indexer actually returns results in JSON which can be parsed.
+     */
+    protected boolean isJsonSupported(IndexerConfig indexerConfig) {
+        URI uri = getBaseUri(indexerConfig).queryParam("t", "search").queryParam("o", "json").build().toUri();
+        try {
+            String response = indexerWebAccess.get(uri, indexerConfig, String.class);
+            searchModuleProvider.registerApiHitLimits(indexerConfig.getName(), 1);
+            if (!Strings.isNullOrEmpty(response)) {
+                Xml xml = NewznabJsonStreamReader.read(response);
+                if (xml instanceof NewznabXmlRoot && !((NewznabXmlRoot) xml).getRssChannel().getItems().isEmpty()) {
+                    logger.info("Indexer {} supports JSON output", indexerConfig.getName());
+                    return true;
+                }
+            }
+        } catch (IndexerAccessException | IOException e) {
+            logger.debug("Unable to read JSON output of indexer {}: {}", indexerConfig.getName(), e.getMessage());
+        }
+        logger.info("Indexer {} doesn't support JSON output. Will use XML", indexerConfig.getName());
+        return false;
+    }
+
     private List<CheckCapsResponse> checkCaps(CapsCheckRequest.CheckType checkType) {
         Predicate<IndexerConfig> isToBeCheckedPredicate = x ->
             x.getState() == IndexerConfig.State.ENABLED
@@ -380,21 +405,29 @@ public class IndexerChecker {
         return categories;
     }
 
-    private SingleCheckCapsResponse singleCheckCaps(CheckCapsRequest request, IndexerConfig indexerConfig) throws IndexerAccessException {
+    private CompletableFuture<SingleCheckCapsResponse> singleCheckCaps(CheckCapsRequest request, IndexerConfig indexerConfig) {
         URI uri = getBaseUri(request.getIndexerConfig()).queryParam("t", request.getTMode()).queryParam(request.getKey(), request.getValue()).build().toUri();
         logger.debug("Calling URL {}", uri);
-        Xml response = null;
-        try {
-            response = indexerWebAccess.get(uri, indexerConfig);
-        } catch (IndexerAccessException e) {
-            if (e.getCause() instanceof IndexerWebAccess.HydraUnmarshallingFailureException) {
-                String indexerResponse = ((IndexerWebAccess.HydraUnmarshallingFailureException) e.getCause()).getResponse();
-                if (indexerResponse != null && indexerResponse.toLowerCase().contains("function not available")) {
-                    return new SingleCheckCapsResponse(request.getKey(), request.getIdType(), false, null, null, null);
+        return indexerWebAccess.<Xml>getAsync(uri, indexerConfig).handle((response, throwable) -> {
+            try {
+                if (throwable != null) {
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause.getCause() instanceof IndexerWebAccess.HydraUnmarshallingFailureException) {
+                        String indexerResponse = ((IndexerWebAccess.HydraUnmarshallingFailureException) cause.getCause()).getResponse();
+                        if (indexerResponse != null && indexerResponse.toLowerCase().contains("function not available")) {
+                            return new SingleCheckCapsResponse(request.getKey(), request.getIdType(), false, null, null, null);
+                        }
+                    }
+                    throw new CompletionException(cause);
                 }
+                return handleSingleCheckCapsResponse(request, indexerConfig, response);
+            } catch (IndexerAccessException e) {
+                throw new CompletionException(e);
             }
-            throw e;
-        }
+        });
+    }
+
+    private SingleCheckCapsResponse handleSingleCheckCapsResponse(CheckCapsRequest request, IndexerConfig indexerConfig, Xml response) throws IndexerAccessException {
         searchModuleProvider.registerApiHitLimits(indexerConfig.getName(), 1);
 
         if (response instanceof NewznabXmlError) {
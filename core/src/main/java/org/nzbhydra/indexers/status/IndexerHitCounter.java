@@ -0,0 +1,237 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers.status;
+
+import com.google.common.base.Stopwatch;
+import org.nzbhydra.indexers.IndexerApiAccessEntityShort;
+import org.nzbhydra.indexers.IndexerApiAccessType;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the times of all API accesses of the last 24 hours in memory, per indexer and access type, so that hit limits can be checked
+ * without querying the database. The times are loaded from the short term storage when first needed and then updated with every API
+ * access saved using the {@link org.nzbhydra.database.WriteBehindPersister}.
+ */
+@Component
+public class IndexerHitCounter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerHitCounter.class);
+
+    static final Duration WINDOW = Duration.ofHours(24);
+    private static final int INITIAL_CAPACITY = 16;
+
+    @Autowired
+    protected DataSource dataSource;
+
+    protected Clock clock = Clock.systemUTC();
+    private final Map<Integer, AccessTimes[]> accessTimesByIndexer = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public void register(IndexerApiAccessEntityShort apiAccess) {
+        if (apiAccess.getApiAccessType() == null) {
+            return;
+        }
+        register(apiAccess.getIndexerId(), apiAccess.getApiAccessType(), apiAccess.getTime());
+    }
+
+    public void register(int indexerId, IndexerApiAccessType accessType, Instant time) {
+        ensureLoaded();
+        getAccessTimes(indexerId, accessType).add(time.toEpochMilli(), getCutoff());
+    }
+
+    /**
+     * @return the number of accesses of the last 24 hours
+     */
+    public int count(int indexerId, IndexerApiAccessType accessType) {
+        ensureLoaded();
+        long cutoff = getCutoff();
+        return getAccessTimes(indexerId, accessType).countSince(cutoff, cutoff);
+    }
+
+    /**
+     * @return the number of accesses since the given time (but at most of the last 24 hours)
+     */
+    public int countSince(int indexerId, IndexerApiAccessType accessType, Instant since) {
+        ensureLoaded();
+        return getAccessTimes(indexerId, accessType).countSince(since.toEpochMilli(), getCutoff());
+    }
+
+    /**
+     * @return the oldest access since the given time (but at most of the last 24 hours)
+     */
+    public Optional<Instant> getOldestSince(int indexerId, IndexerApiAccessType accessType, Instant since) {
+        ensureLoaded();
+        return toInstant(getAccessTimes(indexerId, accessType).getOldestSince(since.toEpochMilli(), getCutoff()));
+    }
+
+    /**
+     * @return the n-th newest access of the last 24 hours or the oldest one if fewer accesses were made
+     */
+    public Optional<Instant> getNthNewest(int indexerId, IndexerApiAccessType accessType, int n) {
+        ensureLoaded();
+        return toInstant(getAccessTimes(indexerId, accessType).getNthNewest(n, getCutoff()));
+    }
+
+    private AccessTimes getAccessTimes(int indexerId, IndexerApiAccessType accessType) {
+        return accessTimesByIndexer.computeIfAbsent(indexerId, x -> {
+            AccessTimes[] accessTimes = new AccessTimes[IndexerApiAccessType.values().length];
+            for (int i = 0; i < accessTimes.length; i++) {
+                accessTimes[i] = new AccessTimes();
+            }
+            return accessTimes;
+        })[accessType.ordinal()];
+    }
+
+    private long getCutoff() {
+        return clock.millis() - WINDOW.toMillis();
+    }
+
+    private static Optional<Instant> toInstant(long epochMilli) {
+        return epochMilli == Long.MIN_VALUE ? Optional.empty() : Optional.of(Instant.ofEpochMilli(epochMilli));
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                loadFromDatabase();
+                loaded = true;
+            }
+        }
+    }
+
+    protected void loadFromDatabase() {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int count = 0;
+        long cutoff = getCutoff();
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement("SELECT INDEXER_ID, API_ACCESS_TYPE, TIME FROM INDEXERAPIACCESS_SHORT WHERE TIME > ? AND API_ACCESS_TYPE IS NOT NULL ORDER BY TIME")) {
+            statement.setTimestamp(1, new Timestamp(cutoff));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    getAccessTimes(resultSet.getInt(1), IndexerApiAccessType.valueOf(resultSet.getString(2))).add(resultSet.getTimestamp(3).getTime(), cutoff);
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Unable to load API accesses from database. Hit limits will only take API accesses made from now on into account", e);
+            return;
+        }
+        logger.debug(LoggingMarkers.PERFORMANCE, "Loaded {} API accesses from database in {}ms", count, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Ring buffer of access times (epoch millis) sorted from oldest to newest. Times older than the cutoff given with every call are
+     * dropped. The buffer only grows when more accesses than ever before are made in the window so usually no memory is allocated.
+     */
+    static class AccessTimes {
+        private long[] times = new long[INITIAL_CAPACITY];
+        private int head;
+        private int size;
+
+        synchronized void add(long time, long cutoff) {
+            evict(cutoff);
+            if (time <= cutoff) {
+                return;
+            }
+            if (size == times.length) {
+                long[] grown = new long[times.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = get(i);
+                }
+                times = grown;
+                head = 0;
+            }
+            //Accesses are registered roughly in order so the new time usually belongs at the end
+            int index = size;
+            while (index > 0 && get(index - 1) > time) {
+                set(index, get(index - 1));
+                index--;
+            }
+            set(index, time);
+            size++;
+        }
+
+        synchronized int countSince(long since, long cutoff) {
+            evict(cutoff);
+            return size - firstIndexNotBefore(since);
+        }
+
+        synchronized long getOldestSince(long since, long cutoff) {
+            evict(cutoff);
+            int index = firstIndexNotBefore(since);
+            return index == size ? Long.MIN_VALUE : get(index);
+        }
+
+        synchronized long getNthNewest(int n, long cutoff) {
+            evict(cutoff);
+            if (size == 0) {
+                return Long.MIN_VALUE;
+            }
+            return get(Math.max(0, size - n));
+        }
+
+        private void evict(long cutoff) {
+            while (size > 0 && times[head] <= cutoff) {
+                head = (head + 1) % times.length;
+                size--;
+            }
+        }
+
+        private int firstIndexNotBefore(long since) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (get(middle) < since) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private long get(int index) {
+            return times[(head + index) % times.length];
+        }
+
+        private void set(int index, long time) {
+            times[(head + index) % times.length] = time;
+        }
+    }
+
+}
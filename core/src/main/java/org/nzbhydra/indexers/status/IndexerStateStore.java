@@ -0,0 +1,168 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers.status;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nzbhydra.Jackson;
+import org.nzbhydra.NzbHydra;
+import org.nzbhydra.ShutdownEvent;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigChangedEvent;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persists the runtime state of the indexers (state, last error, disabled until and level and whether JSON output is used) separately from
+ * the config. The state is changed after indexer accesses and used to be saved by writing the whole config. Now it's only kept in the indexer configs in memory
+ * and written to a small JSON file in the data folder every few seconds if it was changed. On startup the saved states are applied to
+ * the loaded indexer configs.
+ */
+@Component
+public class IndexerStateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerStateStore.class);
+
+    private static final long SAVE_INTERVAL_MILLIS = 10_000;
+    private static final TypeReference<HashMap<String, IndexerState>> STATES_TYPE_REFERENCE = new TypeReference<HashMap<String, IndexerState>>() {
+    };
+
+    @Autowired
+    protected ConfigProvider configProvider;
+
+    protected File stateFile;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final Object saveLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        if (!BaseConfig.isProductive) {
+            return;
+        }
+        stateFile = new File(NzbHydra.getDataFolder(), "indexerStates.json");
+        load();
+        Timer timer = new Timer("indexerStateSave", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                saveIfDirty();
+            }
+        }, SAVE_INTERVAL_MILLIS, SAVE_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Must be called after the runtime state of any indexer config was changed.
+     */
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    @EventListener
+    public void onConfigChange(ConfigChangedEvent event) {
+        //The user may have reenabled an indexer. Save right away so that an older state isn't restored after a restart
+        markDirty();
+        saveIfDirty();
+    }
+
+    @EventListener
+    public void onShutdown(ShutdownEvent event) {
+        saveIfDirty();
+    }
+
+    protected void load() {
+        if (stateFile == null || !stateFile.exists()) {
+            logger.debug(LoggingMarkers.CONFIG_READ_WRITE, "No indexer state file found. Using states from config");
+            return;
+        }
+        Map<String, IndexerState> states;
+        try {
+            states = Jackson.JSON_MAPPER.readValue(stateFile, STATES_TYPE_REFERENCE);
+        } catch (IOException e) {
+            logger.error("Unable to read indexer states from " + stateFile + ". Using states from config", e);
+            return;
+        }
+        for (IndexerConfig indexerConfig : configProvider.getBaseConfig().getIndexers()) {
+            IndexerState state = states.get(indexerConfig.getName());
+            if (state != null && state.getJsonSupported() != null) {
+                indexerConfig.setJsonSupported(state.getJsonSupported());
+            }
+            //The user's decision to disable an indexer is part of the config and always wins
+            if (state == null || state.getState() == null || state.getState() == IndexerConfig.State.DISABLED_USER || indexerConfig.getState() == IndexerConfig.State.DISABLED_USER) {
+                continue;
+            }
+            indexerConfig.setState(state.getState());
+            indexerConfig.setLastError(state.getLastError());
+            indexerConfig.setDisabledUntil(state.getDisabledUntil());
+            indexerConfig.setDisabledLevel(state.getDisabledLevel());
+        }
+    }
+
+    protected void saveIfDirty() {
+        if (stateFile == null) {
+            return;
+        }
+        synchronized (saveLock) {
+            if (!dirty.getAndSet(false)) {
+                return;
+            }
+            Map<String, IndexerState> states = new HashMap<>();
+            for (IndexerConfig indexerConfig : configProvider.getBaseConfig().getIndexers()) {
+                states.put(indexerConfig.getName(), new IndexerState(indexerConfig.getState(), indexerConfig.getLastError(), indexerConfig.getDisabledUntil(), indexerConfig.getDisabledLevel(), indexerConfig.isJsonSupported()));
+            }
+            try {
+                File tempFile = new File(stateFile.getAbsolutePath() + ".tmp");
+                Jackson.JSON_MAPPER.writeValue(tempFile, states);
+                Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.debug(LoggingMarkers.CONFIG_READ_WRITE, "Saved states of {} indexers", states.size());
+            } catch (IOException e) {
+                logger.error("Unable to save indexer states to " + stateFile, e);
+                dirty.set(true);
+            }
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class IndexerState {
+        private IndexerConfig.State state;
+        private String lastError;
+        private Long disabledUntil;
+        private int disabledLevel;
+        private Boolean jsonSupported;
+    }
+
+}
@@ -21,14 +21,14 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.IndexerApiAccessType;
 import org.nzbhydra.indexers.IndexerEntity;
+import org.nzbhydra.indexers.IndexerLatencyTracker;
+import org.nzbhydra.indexers.IndexerLatencyTracker.LatencySummary;
 import org.nzbhydra.searching.SearchModuleProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import javax.persistence.EntityManager;
-import javax.persistence.Query;
-import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -38,22 +38,24 @@ import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Component
 public class IndexerStatusesAndLimits {
 
-    private static final DateTimeFormatter DATE_PATTERN = DateTimeFormatter.ofPattern("dd.MM.yyyy-HH:mm:ss:SSS");
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     @Autowired
     private ConfigProvider configProvider;
     @Autowired
-    private EntityManager entityManager;
+    private IndexerHitCounter indexerHitCounter;
     @Autowired
     private IndexerLimitRepository indexerLimitRepository;
     @Autowired
     private SearchModuleProvider searchModuleProvider;
+    @Autowired
+    private IndexerLatencyTracker indexerLatencyTracker;
 
     public List<IndexerStatus> getSortedStatuses() {
         return configProvider.getBaseConfig().getIndexers().stream()
@@ -76,6 +78,7 @@ public class IndexerStatusesAndLimits {
         indexerStatus.setDisabledUntil(x.getDisabledUntil() == null ? null : Instant.ofEpochMilli(x.getDisabledUntil()));
         indexerStatus.setVipExpirationDate(x.getVipExpirationDate() == null ? null : DATE_TIME_FORMATTER.format(x.getVipExpirationDate()));
         indexerStatus.setLastError(x.getLastError());
+        indexerStatus.setLatency(getLatency(x));
 
         setLimitRelatedValues(x, indexerStatus);
 
@@ -86,6 +89,15 @@ public class IndexerStatusesAndLimits {
         return indexerStatus;
     }
 
+    private LatencySummary getLatency(IndexerConfig x) {
+        int configuredTimeout = x.getTimeout().orElse(configProvider.getBaseConfig().getSearching().getTimeout());
+        LatencySummary latency = indexerLatencyTracker.getSummary(x.getName(), configuredTimeout);
+        if (!configProvider.getBaseConfig().getSearching().isAdaptiveTimeouts()) {
+            latency.setTimeout(configuredTimeout);
+        }
+        return latency;
+    }
+
     private void setLimitRelatedValues(IndexerConfig x, IndexerStatus indexerStatus) {
         IndexerEntity indexerEntity = searchModuleProvider.getIndexerByName(x.getName()).getIndexerEntity();
         IndexerLimit limitEntity = indexerLimitRepository.findByIndexer(indexerEntity);
@@ -166,6 +178,7 @@ public class IndexerStatusesAndLimits {
         private Integer downloadHits;
         private Integer downloadHitLimit;
         private String vipExpirationDate;
+        private LatencySummary latency;
 
     }
 
@@ -199,39 +212,31 @@ public class IndexerStatusesAndLimits {
         }
 
         public LimitsRetrieval invoke() {
-            String sqlString = "SELECT * FROM INDEXERAPIACCESS_SHORT x WHERE x.INDEXER_ID = :indexerId";
+            Instant windowStart;
             if (indexerConfig.getHitLimitResetTime().isPresent()) {
                 //Fixed point in time where API resets
                 LocalDateTime lastResetTime = LocalDateTime.now(ZoneId.of("UTC")).truncatedTo(ChronoUnit.HOURS).with(ChronoField.HOUR_OF_DAY, indexerConfig.getHitLimitResetTime().get());
                 if (lastResetTime.isAfter(LocalDateTime.now())) {
                     lastResetTime = lastResetTime.minus(1, ChronoUnit.DAYS);
                 }
-                sqlString += " AND x.time > PARSEDATETIME('" + DATE_PATTERN.format(lastResetTime) + "', 'dd.MM.yyyy-HH:mm:ss:SSS')";
+                windowStart = lastResetTime.toInstant(ZoneOffset.UTC);
             } else {
                 //Rolling window, last 24 hours count
-                sqlString += " AND x.TIME > DATEADD('HOUR', -24, CURRENT_TIMESTAMP())";
+                windowStart = Instant.now().minus(24, ChronoUnit.HOURS);
             }
-            sqlString += " ORDER BY TIME ASC";
-            Query query = entityManager.createNativeQuery(sqlString);
-            query.setParameter("indexerId", indexerEntity.getId());
-
-            List resultList = query.getResultList();
+            int indexerId = indexerEntity.getId();
+            countDownloads = indexerHitCounter.countSince(indexerId, IndexerApiAccessType.NZB, windowStart);
+            earliestDownload = indexerHitCounter.getOldestSince(indexerId, IndexerApiAccessType.NZB, windowStart).orElse(null);
             countApiHits = 0;
-            countDownloads = 0;
             earliestApiHit = null;
-            earliestDownload = null;
-            for (Object o : resultList) {
-                Object[] array = ((Object[]) o);
-                if ("NZB".equals(array[4])) {
-                    countDownloads += 1;
-                    if (earliestDownload == null) {
-                        earliestDownload = ((Timestamp) array[2]).toInstant();
-                    }
-                } else {
-                    countApiHits += 1;
-                    if (earliestApiHit == null) {
-                        earliestApiHit = ((Timestamp) array[2]).toInstant();
-                    }
+            for (IndexerApiAccessType accessType : IndexerApiAccessType.values()) {
+                if (accessType == IndexerApiAccessType.NZB) {
+                    continue;
+                }
+                countApiHits += indexerHitCounter.countSince(indexerId, accessType, windowStart);
+                Optional<Instant> oldestAccess = indexerHitCounter.getOldestSince(indexerId, accessType, windowStart);
+                if (oldestAccess.isPresent() && (earliestApiHit == null || oldestAccess.get().isBefore(earliestApiHit))) {
+                    earliestApiHit = oldestAccess.get();
                 }
             }
             return this;
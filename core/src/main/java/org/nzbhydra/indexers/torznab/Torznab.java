@@ -93,6 +93,7 @@ public class Torznab extends Newznab {
         searchResultItem.setIndexerScore(config.getScore().orElse(0));
         searchResultItem.setDownloadType(DownloadType.TORRENT);
         searchResultItem.setGuid(SearchResultIdCalculator.calculateSearchResultId(searchResultItem));
+        searchResultItem.computeDuplicateKey();
         return searchResultItem;
     }
 
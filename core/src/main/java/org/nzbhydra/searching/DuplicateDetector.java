@@ -4,29 +4,31 @@ import com.google.common.base.Stopwatch;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.logging.LoggingMarkerFilter;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.searching.dtoseventsenums.DuplicateDetectionResult;
+import org.nzbhydra.searching.dtoseventsenums.DuplicateKey;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static com.google.common.collect.Lists.newArrayList;
-
 @Component
 public class DuplicateDetector {
 
@@ -37,53 +39,36 @@ public class DuplicateDetector {
 
     public DuplicateDetectionResult detectDuplicates(Set<SearchResultItem> results) {
         Stopwatch stopwatch = Stopwatch.createStarted();
-        Map<String, List<SearchResultItem>> groupedByTitle = results.stream().collect(Collectors.groupingBy(x -> x.getTitle().toLowerCase().replaceAll("[ .\\-_]", "")));
+        Map<Long, List<SearchResultItem>> groupedByTitle = results.stream().collect(Collectors.groupingBy(x -> x.getDuplicateKey().getTitleHash()));
+        float duplicateAgeThreshold = configProvider.getBaseConfig().getSearching().getDuplicateAgeThreshold();
+        float duplicateSizeThreshold = configProvider.getBaseConfig().getSearching().getDuplicateSizeThresholdInPercent();
+        Map<Indexer, Integer> indexerIds = new HashMap<>();
         Multiset<Indexer> countUniqueResultsPerIndexer = HashMultiset.create();
         List<LinkedHashSet<SearchResultItem>> duplicateGroups = new ArrayList<>();
 
         //In each list of searchResults with the same title we want to find the duplicates
         int countDetectedDuplicates = 0;
-        for (List<SearchResultItem> titleGroup : groupedByTitle.values()) {
-            titleGroup = titleGroup.stream().sorted(Comparator.comparing(SearchResultItem::getBestDate).reversed()).collect(Collectors.toList());
-            //So we start with a bucket with the first (later we have a list of buckets where all searchResults in a bucket are duplicates)
-            List<LinkedHashSet<SearchResultItem>> listOfBuckets = new ArrayList<>();
-            listOfBuckets.add(new LinkedHashSet<>(newArrayList(titleGroup.get(0))));
-            //And iterate over every other item in the list
-            for (int i = 1; i < titleGroup.size(); i++) {
-                SearchResultItem searchResultItem = titleGroup.get(i);
-                boolean foundBucket = false;
-                //Iterate over already existing buckets
-                for (LinkedHashSet<SearchResultItem> bucket : listOfBuckets) {
-                    if (bucket.stream().map(SearchResultItem::getIndexer).collect(Collectors.toList()).contains(searchResultItem.getIndexer())) {
-                        continue;
-                    }
-                    //And all searchResults in those buckets
-                    for (SearchResultItem other : bucket) {
-                        //Now we can check if the two searchResults are duplicates
-                        boolean same = testForSameness(searchResultItem, other);
-                        if (same) {
-                            //If they are the same we found a bucket for the result. We add it and continue
-                            foundBucket = true;
-                            bucket.add(searchResultItem);
-                            countDetectedDuplicates++;
-                            break;
-                        }
-                    }
-                    //If we already found a bucket for the result we can go on with the next
-                    if (foundBucket) {
-                        break;
-                    }
-                }
-                //If we didn't find a bucket for the result we start a new one
-                if (!foundBucket) {
-                    listOfBuckets.add(new LinkedHashSet<>(newArrayList(searchResultItem)));
+        for (List<SearchResultItem> titleGroupResults : groupedByTitle.values()) {
+            titleGroupResults = titleGroupResults.stream().sorted(Comparator.comparing(SearchResultItem::getBestDate).reversed()).collect(Collectors.toList());
+            //We end up with a list of buckets where all searchResults in a bucket are duplicates
+            DuplicateTitleGroup titleGroup = new DuplicateTitleGroup();
+            for (SearchResultItem searchResultItem : titleGroupResults) {
+                int indexerId = indexerIds.computeIfAbsent(searchResultItem.getIndexer(), x -> indexerIds.size());
+                int bucketIndex = findBucket(titleGroup, searchResultItem, indexerId, duplicateAgeThreshold, duplicateSizeThreshold);
+                if (bucketIndex >= 0) {
+                    //If they are the same we found a bucket for the result
+                    titleGroup.addToBucket(bucketIndex, searchResultItem, indexerId);
+                    countDetectedDuplicates++;
+                } else {
+                    //If we didn't find a bucket for the result we start a new one
+                    titleGroup.addToNewBucket(searchResultItem, indexerId);
                 }
             }
-            LinkedHashSet<SearchResultItem> lastBucket = Iterables.getLast(listOfBuckets);
-            if (lastBucket.size() == 1) {
-                countUniqueResultsPerIndexer.add(lastBucket.iterator().next().getIndexer());
+            Indexer uniqueIndexer = getIndexerOfUniqueLastBucket(titleGroup);
+            if (uniqueIndexer != null) {
+                countUniqueResultsPerIndexer.add(uniqueIndexer);
             }
-            duplicateGroups.addAll(listOfBuckets);
+            duplicateGroups.addAll(titleGroup.getBuckets());
         }
         int duplicateIdentifier = 0;
         for (LinkedHashSet<SearchResultItem> group : duplicateGroups) {
@@ -98,32 +83,116 @@ public class DuplicateDetector {
         return new DuplicateDetectionResult(duplicateGroups, countUniqueResultsPerIndexer);
     }
 
-    private boolean testForSameness(SearchResultItem result1, SearchResultItem result2) {
-        logger.debug(LoggingMarkers.DUPLICATES, "Comparing {} and {}", result1, result2);
+    /**
+     * Sorts the given new results into the duplicate groups of the index. Results which were already placed before are ignored, so the work
+     * done only depends on the number of new results. Duplicate identifiers of already placed results are not changed.
+     *
+     * @param duplicateIndex the index of the search the results belong to
+     * @param newResults     the results loaded since the last call
+     * @return the result for all results placed in the index so far. Backed by the index.
+     */
+    public DuplicateDetectionResult detectDuplicates(DuplicateIndex duplicateIndex, Collection<SearchResultItem> newResults) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<SearchResultItem> sortedNewResults = newResults.stream().sorted(Comparator.comparing(SearchResultItem::getBestDate).reversed()).collect(Collectors.toList());
+        float duplicateAgeThreshold = configProvider.getBaseConfig().getSearching().getDuplicateAgeThreshold();
+        float duplicateSizeThreshold = configProvider.getBaseConfig().getSearching().getDuplicateSizeThresholdInPercent();
+        Map<Indexer, Integer> indexerIds = duplicateIndex.getIndexerIds();
+        int countDetectedDuplicates = 0;
+        for (SearchResultItem searchResultItem : sortedNewResults) {
+            if (!duplicateIndex.getPlacedResults().add(searchResultItem)) {
+                continue;
+            }
+            DuplicateTitleGroup titleGroup = duplicateIndex.getTitleGroups().computeIfAbsent(searchResultItem.getDuplicateKey().getTitleHash(), x -> new DuplicateTitleGroup());
+            Indexer uniqueIndexerBefore = getIndexerOfUniqueLastBucket(titleGroup);
+
+            int indexerId = indexerIds.computeIfAbsent(searchResultItem.getIndexer(), x -> indexerIds.size());
+            int bucketIndex = findBucket(titleGroup, searchResultItem, indexerId, duplicateAgeThreshold, duplicateSizeThreshold);
+            if (bucketIndex >= 0) {
+                LinkedHashSet<SearchResultItem> bucket = titleGroup.addToBucket(bucketIndex, searchResultItem, indexerId);
+                searchResultItem.setDuplicateIdentifier(bucket.iterator().next().getDuplicateIdentifier());
+                countDetectedDuplicates++;
+            } else {
+                searchResultItem.setDuplicateIdentifier(duplicateIndex.getDuplicateGroups().size());
+                duplicateIndex.getDuplicateGroups().add(titleGroup.addToNewBucket(searchResultItem, indexerId));
+            }
+
+            //Same semantics as for the complete detection: Only the last bucket of a title group counts
+            Indexer uniqueIndexerAfter = getIndexerOfUniqueLastBucket(titleGroup);
+            if (uniqueIndexerBefore != null) {
+                duplicateIndex.getUniqueResultsPerIndexer().remove(uniqueIndexerBefore);
+            }
+            if (uniqueIndexerAfter != null) {
+                duplicateIndex.getUniqueResultsPerIndexer().add(uniqueIndexerAfter);
+            }
+        }
+
+        logger.debug(LoggingMarkers.PERFORMANCE, "Duplicate detection for {} new search results took {}ms. Found {} duplicates. {} results in index", sortedNewResults.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS), countDetectedDuplicates, duplicateIndex.getNumberOfPlacedResults());
+
+        return new DuplicateDetectionResult(Collections.unmodifiableList(duplicateIndex.getDuplicateGroups()), Multisets.unmodifiableMultiset(duplicateIndex.getUniqueResultsPerIndexer()));
+    }
+
+    private Indexer getIndexerOfUniqueLastBucket(DuplicateTitleGroup titleGroup) {
+        if (titleGroup.getBuckets().isEmpty()) {
+            return null;
+        }
+        LinkedHashSet<SearchResultItem> lastBucket = Iterables.getLast(titleGroup.getBuckets());
+        return lastBucket.size() == 1 ? lastBucket.iterator().next().getIndexer() : null;
+    }
+
+    /**
+     * Finds the first bucket (in the order of creation) which doesn't contain a result from the same indexer and contains at least one result
+     * which is a duplicate of the given one. Only results inside the maximum age and size windows are compared. Results outside of them can
+     * never be duplicates because the age or size check would fail, so the result is the same as if all results of all buckets were compared.
+     *
+     * @return the index of the bucket or -1 if none was found
+     */
+    private int findBucket(DuplicateTitleGroup titleGroup, SearchResultItem searchResultItem, int indexerId, float duplicateAgeThreshold, float duplicateSizeThreshold) {
+        DuplicateKey key = searchResultItem.getDuplicateKey();
+        if (!key.isDateKnown() || !key.isSizeKnown() || titleGroup.getBuckets().isEmpty()) {
+            return -1;
+        }
+        //The thresholds may be doubled (see testForSameness). The age difference is compared in full hours so add one hour to be safe
+        long maxDistanceInSeconds = ((long) Math.floor(Math.max(0, duplicateAgeThreshold) * 2D) + 2) * 60 * 60;
+        float maxSizeDifferenceInPercent = Math.max(0, duplicateSizeThreshold) * 2;
+        int foundBucketIndex = -1;
+        for (DuplicateTitleGroup.Candidate candidate : titleGroup.getCandidates(key.getEpochSecond(), maxDistanceInSeconds, key.getSize(), maxSizeDifferenceInPercent)) {
+            int bucketIndex = candidate.getBucketIndex();
+            if ((foundBucketIndex >= 0 && bucketIndex >= foundBucketIndex) || titleGroup.isIndexerInBucket(bucketIndex, indexerId)) {
+                continue;
+            }
+            if (testForSameness(searchResultItem, candidate.getSearchResultItem(), duplicateAgeThreshold, duplicateSizeThreshold)) {
+                foundBucketIndex = bucketIndex;
+            }
+        }
+        return foundBucketIndex;
+    }
+
+    private boolean testForSameness(SearchResultItem result1, SearchResultItem result2, float duplicateAgeThreshold, float duplicateSizeThreshold) {
         if (result1.getIndexer().equals(result2.getIndexer())) {
-            logger.debug(LoggingMarkers.DUPLICATES, "Same indexer");
             return false;
         }
+        boolean same = testForSameness(result1.getDuplicateKey(), result2.getDuplicateKey(), duplicateAgeThreshold, duplicateSizeThreshold);
+        //Checked explicitly because this is called very often and creating a logging event for every pair is expensive
+        if (LoggingMarkerFilter.isEnabled(LoggingMarkers.DUPLICATES)) {
+            logger.debug(LoggingMarkers.DUPLICATES, "Compared {} and {}. Duplicates: {}", result1, result2, same);
+        }
+        return same;
+    }
 
-        if (result1.getDownloadType() == SearchResultItem.DownloadType.TORRENT || result2.getDownloadType() == SearchResultItem.DownloadType.TORRENT) {
-            logger.debug(LoggingMarkers.DUPLICATES, "Torrent download type(s). Type 1: {}. Type 2: {}", result1.getDownloadType(), result2.getDownloadType());
+    protected boolean testForSameness(DuplicateKey key1, DuplicateKey key2, float duplicateAgeThreshold, float duplicateSizeThreshold) {
+        if (key1.isTorrent() || key2.isTorrent()) {
             return false;
         }
 
-        boolean groupKnown = result1.getGroup().isPresent() && result2.getGroup().isPresent();
-        boolean sameGroup = groupKnown && Objects.equals(result1.getGroup().get(), result2.getGroup().get());
-        boolean posterKnown = result1.getPoster().isPresent() && result2.getPoster().isPresent();
-        boolean samePoster = posterKnown && Objects.equals(result1.getPoster().get(), result2.getPoster().get());
-
-        float duplicateAgeThreshold = configProvider.getBaseConfig().getSearching().getDuplicateAgeThreshold();
-        float duplicateSizeThreshold = configProvider.getBaseConfig().getSearching().getDuplicateSizeThresholdInPercent();
+        boolean groupKnown = key1.isGroupKnown() && key2.isGroupKnown();
+        boolean sameGroup = groupKnown && key1.isSameGroup(key2);
+        boolean posterKnown = key1.isPosterKnown() && key2.isPosterKnown();
+        boolean samePoster = posterKnown && key1.isSamePoster(key2);
 
         if (groupKnown && !sameGroup) {
-            logger.debug(LoggingMarkers.DUPLICATES, "Not the same group: {} and {}", result1.getGroup().orElse(null), result2.getGroup().orElse(null));
             return false;
         }
         if (posterKnown && !samePoster) {
-            logger.debug(LoggingMarkers.DUPLICATES, "Not the same poster: {} and {}", result1.getPoster().orElse(null), result2.getPoster().orElse(null));
             return false;
         }
 
@@ -132,31 +201,29 @@ public class DuplicateDetector {
             duplicateSizeThreshold *= 2;
         }
 
-        return testForDuplicateAge(result1, result2, duplicateAgeThreshold) && testForDuplicateSize(result1, result2, duplicateSizeThreshold);
+        //Results are grouped by title hash so the titles only need to be compared to rule out hash collisions
+        return testForDuplicateAge(key1, key2, duplicateAgeThreshold) && testForDuplicateSize(key1, key2, duplicateSizeThreshold) && key1.isSameTitle(key2);
     }
 
     protected boolean testForDuplicateAge(SearchResultItem result1, SearchResultItem result2, float duplicateAgeThreshold) {
-        Instant date1 = result1.getBestDate();
-        Instant date2 = result2.getBestDate();
-        if (date1 == null || date2 == null) {
-            logger.debug(LoggingMarkers.DUPLICATES, "At least one result has no usenet date and no pub date");
+        return testForDuplicateAge(result1.getDuplicateKey(), result2.getDuplicateKey(), duplicateAgeThreshold);
+    }
+
+    private boolean testForDuplicateAge(DuplicateKey key1, DuplicateKey key2, float duplicateAgeThreshold) {
+        if (!key1.isDateKnown() || !key2.isDateKnown()) {
             return false;
         }
-        boolean isSameAge = Math.abs(date1.getEpochSecond() - date2.getEpochSecond()) / (60 * 60) <= duplicateAgeThreshold;
-        logger.debug(LoggingMarkers.DUPLICATES, "Same age: {}", isSameAge);
-        return isSameAge;
+        return Math.abs(key1.getEpochSecond() - key2.getEpochSecond()) / (60 * 60) <= duplicateAgeThreshold;
     }
 
-    private boolean testForDuplicateSize(SearchResultItem result1, SearchResultItem result2, float duplicateSizeDifference) {
-        if (result1.getSize() == null || result2.getSize() == null) {
+    private boolean testForDuplicateSize(DuplicateKey key1, DuplicateKey key2, float duplicateSizeDifference) {
+        if (!key1.isSizeKnown() || !key2.isSizeKnown()) {
             return false;
         }
-        long sizeDifference = Math.abs(result1.getSize() - result2.getSize());
-        float sizeAverage = (result1.getSize() + result2.getSize()) / 2F;
+        long sizeDifference = Math.abs(key1.getSize() - key2.getSize());
+        float sizeAverage = (key1.getSize() + key2.getSize()) / 2F;
         float sizeDiffPercent = Math.abs(sizeDifference / sizeAverage) * 100;
-        boolean sameSize = sizeDiffPercent <= duplicateSizeDifference;
-        logger.debug(LoggingMarkers.DUPLICATES, "Same size: {}", sameSize);
-        return sameSize;
+        return sizeDiffPercent <= duplicateSizeDifference;
     }
 
 
@@ -0,0 +1,59 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import lombok.Getter;
+import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the duplicate groups of one search across all loaded pages so that the results of new pages can be sorted into the existing groups
+ * without comparing all previously loaded results again. Filled by {@link DuplicateDetector#detectDuplicates(DuplicateIndex, java.util.Collection)}.
+ */
+@Getter
+public class DuplicateIndex {
+
+    /**
+     * Maps the hash of a normalized title (see {@link org.nzbhydra.searching.dtoseventsenums.DuplicateKey#getTitleHash()}) to the duplicate buckets of results with that title
+     */
+    private final Map<Long, DuplicateTitleGroup> titleGroups = new HashMap<>();
+    /**
+     * All duplicate groups, in the order they were created. The index of a group is its duplicate identifier
+     */
+    private final List<LinkedHashSet<SearchResultItem>> duplicateGroups = new ArrayList<>();
+    private final Multiset<Indexer> uniqueResultsPerIndexer = HashMultiset.create();
+    private final Set<SearchResultItem> placedResults = new HashSet<>();
+    /**
+     * Maps each indexer to a number used for the indexer bit sets of the buckets
+     */
+    private final Map<Indexer, Integer> indexerIds = new HashMap<>();
+
+    public int getNumberOfPlacedResults() {
+        return placedResults.size();
+    }
+
+}
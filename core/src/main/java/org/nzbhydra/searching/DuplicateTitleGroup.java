@@ -0,0 +1,133 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import com.google.common.collect.Iterables;
+import org.nzbhydra.searching.dtoseventsenums.DuplicateKey;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The duplicate buckets of all results with the same normalized title. Results are indexed by their size (in logarithmic size classes) and
+ * their age so that only results inside the configured size and age windows need to be compared when looking for a bucket for a new result.
+ * Each bucket knows which indexers' results it contains.
+ */
+public class DuplicateTitleGroup {
+
+    /**
+     * Each size class contains sizes differing by up to 10%
+     */
+    private static final double LOG_SIZE_CLASS_BASE = Math.log(1.1);
+
+    private final List<LinkedHashSet<SearchResultItem>> buckets = new ArrayList<>();
+    private final List<BitSet> indexersInBuckets = new ArrayList<>();
+    private final NavigableMap<Integer, NavigableMap<Long, List<Candidate>>> candidatesBySizeClassAndEpochSecond = new TreeMap<>();
+
+    public static class Candidate {
+        private final SearchResultItem searchResultItem;
+        private final int bucketIndex;
+
+        private Candidate(SearchResultItem searchResultItem, int bucketIndex) {
+            this.searchResultItem = searchResultItem;
+            this.bucketIndex = bucketIndex;
+        }
+
+        public SearchResultItem getSearchResultItem() {
+            return searchResultItem;
+        }
+
+        public int getBucketIndex() {
+            return bucketIndex;
+        }
+    }
+
+    /**
+     * @return the buckets in the order they were created
+     */
+    public List<LinkedHashSet<SearchResultItem>> getBuckets() {
+        return buckets;
+    }
+
+    public LinkedHashSet<SearchResultItem> getBucket(int bucketIndex) {
+        return buckets.get(bucketIndex);
+    }
+
+    public boolean isIndexerInBucket(int bucketIndex, int indexerId) {
+        return indexersInBuckets.get(bucketIndex).get(indexerId);
+    }
+
+    /**
+     * @return all results with a known date and size which are at most maxDistanceInSeconds older or newer than the given epoch second and
+     * whose size differs by at most maxSizeDifferenceInPercent from the given size (as computed by the duplicate detection, i.e. relative
+     * to the average of both sizes). Some results outside the size window may be returned as well.
+     */
+    public Iterable<Candidate> getCandidates(long epochSecond, long maxDistanceInSeconds, long size, float maxSizeDifferenceInPercent) {
+        Collection<NavigableMap<Long, List<Candidate>>> sizeClasses;
+        double halfDifference = maxSizeDifferenceInPercent / 200D;
+        if (halfDifference >= 1) {
+            sizeClasses = candidatesBySizeClassAndEpochSecond.values();
+        } else {
+            long minSize = (long) Math.floor(size * (1 - halfDifference) / (1 + halfDifference));
+            long maxSize = (long) Math.ceil(size * (1 + halfDifference) / (1 - halfDifference));
+            //Include the neighbouring size classes in case of rounding errors
+            sizeClasses = candidatesBySizeClassAndEpochSecond.subMap(getSizeClass(minSize) - 1, true, getSizeClass(maxSize) + 1, true).values();
+        }
+        List<Collection<List<Candidate>>> candidates = new ArrayList<>(sizeClasses.size());
+        for (NavigableMap<Long, List<Candidate>> candidatesByEpochSecond : sizeClasses) {
+            candidates.add(candidatesByEpochSecond.subMap(epochSecond - maxDistanceInSeconds, true, epochSecond + maxDistanceInSeconds, true).values());
+        }
+        return Iterables.concat(Iterables.concat(candidates));
+    }
+
+    public LinkedHashSet<SearchResultItem> addToBucket(int bucketIndex, SearchResultItem searchResultItem, int indexerId) {
+        LinkedHashSet<SearchResultItem> bucket = buckets.get(bucketIndex);
+        bucket.add(searchResultItem);
+        indexersInBuckets.get(bucketIndex).set(indexerId);
+        addCandidate(searchResultItem, bucketIndex);
+        return bucket;
+    }
+
+    public LinkedHashSet<SearchResultItem> addToNewBucket(SearchResultItem searchResultItem, int indexerId) {
+        LinkedHashSet<SearchResultItem> bucket = new LinkedHashSet<>();
+        buckets.add(bucket);
+        indexersInBuckets.add(new BitSet());
+        return addToBucket(buckets.size() - 1, searchResultItem, indexerId);
+    }
+
+    private void addCandidate(SearchResultItem searchResultItem, int bucketIndex) {
+        DuplicateKey key = searchResultItem.getDuplicateKey();
+        if (!key.isDateKnown() || !key.isSizeKnown()) {
+            //Can never be a duplicate of anything
+            return;
+        }
+        candidatesBySizeClassAndEpochSecond.computeIfAbsent(getSizeClass(key.getSize()), x -> new TreeMap<>())
+                .computeIfAbsent(key.getEpochSecond(), x -> new ArrayList<>(1))
+                .add(new Candidate(searchResultItem, bucketIndex));
+    }
+
+    private static int getSizeClass(long size) {
+        return size <= 0 ? -1 : (int) Math.floor(Math.log(size) / LOG_SIZE_CLASS_BASE);
+    }
+
+}
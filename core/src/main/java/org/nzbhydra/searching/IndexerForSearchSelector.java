@@ -2,7 +2,6 @@ package org.nzbhydra.searching;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Stopwatch;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -13,6 +12,8 @@ import org.nzbhydra.config.indexer.IndexerConfig;
 import org.nzbhydra.config.indexer.SearchModuleType;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerApiAccessType;
+import org.nzbhydra.indexers.IndexerLatencyTracker;
+import org.nzbhydra.indexers.status.IndexerHitCounter;
 import org.nzbhydra.indexers.status.IndexerLimit;
 import org.nzbhydra.indexers.status.IndexerLimitRepository;
 import org.nzbhydra.logging.LoggingMarkers;
@@ -30,10 +31,6 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.annotation.RequestScope;
 
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
-import java.sql.Timestamp;
 import java.time.Clock;
 import java.time.DayOfWeek;
 import java.time.Instant;
@@ -48,6 +45,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -70,10 +68,12 @@ public class IndexerForSearchSelector {
     private ConfigProvider configProvider;
     @Autowired
     private ApplicationEventPublisher eventPublisher;
-    @PersistenceContext
-    private EntityManager entityManager;
     @Autowired
     private IndexerLimitRepository indexerStatusRepository;
+    @Autowired
+    private IndexerHitCounter indexerHitCounter;
+    @Autowired
+    private IndexerLatencyTracker indexerLatencyTracker;
 
     protected Clock clock = Clock.systemDefaultZone();
 
@@ -134,6 +134,7 @@ public class IndexerForSearchSelector {
 
             selectedIndexers.add(indexer);
         }
+        selectedIndexers = deprioritizeDegradedIndexers(selectedIndexers);
         logger.debug(LoggingMarkers.PERFORMANCE, "Selection of indexers took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
         if (selectedIndexers.isEmpty()) {
             logger.warn("No indexers were selected for this search. You probably don't have any indexers configured which support the provided ID type or all of your indexers which do are currently disabled. You can enable query generation to work around this.");
@@ -146,6 +147,22 @@ public class IndexerForSearchSelector {
         return new IndexerForSearchSelection(notSelectedIndersWithReason, selectedIndexers);
     }
 
+    /**
+     * Moves indexers which currently respond much slower than usual to the end so that they're called last and are the first ones to be
+     * queued (or rejected) when too many indexer calls are running.
+     */
+    protected List<Indexer> deprioritizeDegradedIndexers(List<Indexer> selectedIndexers) {
+        List<Indexer> degradedIndexers = selectedIndexers.stream().filter(x -> indexerLatencyTracker.isDegraded(x.getName())).collect(Collectors.toList());
+        if (degradedIndexers.isEmpty()) {
+            return selectedIndexers;
+        }
+        logger.info("Indexers currently responding slower than usual will be called last: {}", Joiner.on(", ").join(degradedIndexers.stream().map(Indexer::getName).collect(Collectors.toList())));
+        List<Indexer> orderedIndexers = new ArrayList<>(selectedIndexers);
+        orderedIndexers.removeAll(degradedIndexers);
+        orderedIndexers.addAll(degradedIndexers);
+        return orderedIndexers;
+    }
+
     protected boolean checkIndexerConfigComplete(Indexer indexer) {
         if (!indexer.getConfig().isConfigComplete()) {
             String message = "Not using " + indexer.getName() + " because configuration is not complete. Please open it in the GUI and complete the config. Call the caps check manually to make sure everything is checked.";
@@ -319,11 +336,8 @@ public class IndexerForSearchSelector {
             }
 
             //Check from API short term storage for other indexers
-            Query query = entityManager.createNativeQuery("SELECT x.TIME FROM INDEXERAPIACCESS_SHORT x WHERE x.INDEXER_ID = (:indexerId) AND x.API_ACCESS_TYPE = (:accessType) ORDER BY TIME DESC LIMIT (:hitLimit)");
-            query.setParameter("indexerId", indexer.getIndexerEntity().getId());
-            query.setParameter("accessType", accessType.name());
-            query.setParameter("hitLimit", limit);
-            List resultList = query.getResultList();
+            int indexerId = indexer.getIndexerEntity().getId();
+            Optional<Instant> earliestAccessInLimit = indexerHitCounter.getNthNewest(indexerId, accessType, limit);
 
             int currentHits;
             //If possible use the hits from the indexer status
@@ -334,18 +348,18 @@ public class IndexerForSearchSelector {
                 currentHits = indexerStatus.getDownloads();
                 logger.debug(LoggingMarkers.LIMITS, "Indexer {}. Got current downloads ({}) from indexerstatus", indexer.getName(), currentHits);
             } else {
-                currentHits = resultList.size();
-                logger.debug(LoggingMarkers.LIMITS, "Indexer {}. Got current hits ({}) from indexerstatus", indexer.getName(), currentHits);
+                currentHits = indexerHitCounter.count(indexerId, accessType);
+                logger.debug(LoggingMarkers.LIMITS, "Indexer {}. Got current hits ({}) from short term storage", indexer.getName(), currentHits);
             }
             if (currentHits >= limit) { //Found as many as we want, so now we must check if they're all in the time window
-                if (resultList.isEmpty()) {
+                if (!earliestAccessInLimit.isPresent()) {
                     logger.debug(LoggingMarkers.LIMITS, "Indexer {}. Current hits {} exceeds limit {} but we have no results in list", indexer.getName(), currentHits, limit);
 
                     String message = String.format("Not using %s because all %d allowed " + type + "s were already made.", indexerConfig.getName(), limit);
                     return !handleIndexerNotSelected(indexer, message, type + " limit reached");
                 }
 
-                Instant earliestAccess = ((Timestamp) Iterables.getLast(resultList)).toInstant();
+                Instant earliestAccess = earliestAccessInLimit.get();
                 final Instant comparisonTimeUtc = comparisonTime.toInstant(ZoneOffset.UTC);
                 if (earliestAccess.isAfter(comparisonTimeUtc)) {
                     LocalDateTime nextPossibleHit = calculateNextPossibleHit(indexerConfig, earliestAccess);
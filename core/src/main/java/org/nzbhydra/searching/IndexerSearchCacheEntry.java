@@ -18,6 +18,8 @@ package org.nzbhydra.searching;
 
 import com.google.common.collect.Iterables;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerSearchEntity;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
@@ -27,15 +29,25 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Data
 public class IndexerSearchCacheEntry {
 
+    private static final Comparator<SearchResultItem> NEWEST_FIRST = Comparator.comparingLong((SearchResultItem x) -> x.getBestDate().getEpochSecond()).reversed();
+
     private Indexer indexer;
     private List<SearchResultItem> searchResultItems = new ArrayList<>();
     private IndexerSearchEntity indexerSearchEntity;
     private List<IndexerSearchResult> indexerSearchResults = new ArrayList<>();
     private int nextResultIndex = 0;
+    /**
+     * The indexer call which didn't finish before the search's deadline was reached. It's kept running and its result is used when
+     * more results are loaded for this search.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private CompletableFuture<IndexerSearchResult> pendingSearch;
 
     public IndexerSearchCacheEntry(Indexer indexer) {
         this.indexer = indexer;
@@ -52,13 +64,34 @@ public class IndexerSearchCacheEntry {
         return Collections.unmodifiableList(indexerSearchResults);
     }
 
+    /**
+     * Adds the results of a new page. The page's results are merged into the results which weren't popped yet so that the remaining results
+     * are popped newest first. Results which were already popped are not moved so that no result is popped twice or skipped.
+     */
     public void addIndexerSearchResult(IndexerSearchResult newIndexerSearchResult) {
         indexerSearchResults.add(newIndexerSearchResult);
-        searchResultItems.clear();
-        for (IndexerSearchResult indexerSearchResult : indexerSearchResults) {
-            searchResultItems.addAll(indexerSearchResult.getSearchResultItems());
+        if (newIndexerSearchResult.getSearchResultItems().isEmpty()) {
+            return;
+        }
+        //Returns a new list sorted by date (indexers don't necessarily sort their results)
+        List<SearchResultItem> newSearchResultItems = newIndexerSearchResult.getSearchResultItems();
+        if (!isMoreResultsInCache() || NEWEST_FIRST.compare(Iterables.getLast(searchResultItems), newSearchResultItems.get(0)) <= 0) {
+            //All new results are older than the cached ones
+            searchResultItems.addAll(newSearchResultItems);
+            return;
+        }
+        List<SearchResultItem> notPoppedItems = searchResultItems.subList(nextResultIndex, searchResultItems.size());
+        List<SearchResultItem> oldSearchResultItems = new ArrayList<>(notPoppedItems);
+        notPoppedItems.clear();
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldSearchResultItems.size() || newIndex < newSearchResultItems.size()) {
+            if (newIndex == newSearchResultItems.size() || (oldIndex < oldSearchResultItems.size() && NEWEST_FIRST.compare(oldSearchResultItems.get(oldIndex), newSearchResultItems.get(newIndex)) <= 0)) {
+                searchResultItems.add(oldSearchResultItems.get(oldIndex++));
+            } else {
+                searchResultItems.add(newSearchResultItems.get(newIndex++));
+            }
         }
-        searchResultItems.sort(Comparator.comparingLong(x -> ((SearchResultItem) x).getBestDate().getEpochSecond()).reversed());
     }
 
     public List<SearchResultItem> getSearchResultItems() {
@@ -84,6 +117,10 @@ public class IndexerSearchCacheEntry {
         return Iterables.getLast(indexerSearchResults).isHasMoreResults();
     }
 
+    public boolean isSearchPending() {
+        return pendingSearch != null && !pendingSearch.isDone();
+    }
+
     public boolean isAllPulled() {
         if (searchResultItems.isEmpty()) {
             return true;
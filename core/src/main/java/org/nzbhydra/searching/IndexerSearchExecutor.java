@@ -0,0 +1,325 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import com.google.common.base.Strings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.nzbhydra.ShutdownEvent;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.SearchingConfig;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.nzbhydra.logging.MdcThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Executes all indexer calls (including the parsing and persisting of their results) using one bounded executor shared by all searches.
+ * The number of calls running at the same time for any one indexer is capped so that a big search can't hammer a single indexer
+ * or block all threads.
+ */
+@Component
+public class IndexerSearchExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerSearchExecutor.class);
+
+    @Autowired
+    private ConfigProvider configProvider;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private ExecutorService executor;
+    private Semaphore admissions;
+    private int maxConcurrentCallsPerIndexer;
+    private final Map<String, IndexerQueue> indexerQueues = new ConcurrentHashMap<>();
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private final AtomicInteger callsWaitingForIndexer = new AtomicInteger();
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private Counter rejectedCallsCounter;
+
+    @PostConstruct
+    public void init() {
+        initialize(configProvider.getBaseConfig().getSearching());
+    }
+
+    public void initialize(SearchingConfig searchingConfig) {
+        maxConcurrentCallsPerIndexer = searchingConfig.getMaxConcurrentCallsPerIndexer();
+        ExecutorService virtualThreadExecutor = searchingConfig.isUseVirtualThreadsForIndexerCalls() ? createVirtualThreadExecutor() : null;
+        if (virtualThreadExecutor != null) {
+            executor = virtualThreadExecutor;
+            logger.info("Using virtual threads for indexer calls");
+        } else {
+            MdcThreadPoolExecutor threadPoolExecutor = MdcThreadPoolExecutor.newWithInheritedMdc(searchingConfig.getMaxConcurrentIndexerCalls(), searchingConfig.getMaxConcurrentIndexerCalls(), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(searchingConfig.getMaxQueuedIndexerCalls()));
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            threadPoolExecutor.setThreadFactory(new IndexerCallThreadFactory());
+            executor = threadPoolExecutor;
+        }
+        //Calls waiting for their indexer don't occupy the executor's queue so the number of admitted calls must be limited separately
+        admissions = new Semaphore(searchingConfig.getMaxConcurrentIndexerCalls() + searchingConfig.getMaxQueuedIndexerCalls());
+        if (meterRegistry != null) {
+            Gauge.builder("hydra.indexer.calls.queued", this, IndexerSearchExecutor::getNumberOfQueuedCalls).description("Indexer calls waiting for a thread or for their indexer's concurrency limit").register(meterRegistry);
+            Gauge.builder("hydra.indexer.calls.active", this, IndexerSearchExecutor::getNumberOfActiveCalls).description("Indexer calls currently being executed").register(meterRegistry);
+            rejectedCallsCounter = meterRegistry.counter("hydra.indexer.calls.rejected");
+        }
+    }
+
+    /**
+     * Submits a call for the given indexer. It will not be executed before fewer than the configured number of calls are running for that indexer.
+     * Until then it's kept in a queue for the indexer and doesn't occupy any thread. When a call finishes the next queued call of the same
+     * indexer is dispatched.
+     *
+     * @throws RejectedExecutionException if the executor is saturated
+     */
+    public <T> Future<T> submit(String indexerName, Callable<T> callable) {
+        return submitAsync(indexerName, stageExecutor -> {
+            try {
+                return CompletableFuture.completedFuture(callable.call());
+            } catch (Exception e) {
+                CompletableFuture<T> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+        });
+    }
+
+    /**
+     * Submits an asynchronous call for the given indexer. Like with {@link #submit(String, Callable)} the call is started (using a thread of
+     * the executor) when fewer than the configured number of calls are running for that indexer, but the call counts as running until the
+     * future returned by it is completed. That way an indexer's limit also applies to calls which don't block a thread while waiting for
+     * the indexer.
+     * <p>
+     * The call is given an executor for its later stages. It uses the threads of this executor without waiting for the indexer again and
+     * with the MDC of the thread submitting the call, as the stages are usually triggered by threads unrelated to the search (e.g. OkHttp's
+     * dispatcher threads).
+     *
+     * @throws RejectedExecutionException if the executor is saturated
+     */
+    public <T> CompletableFuture<T> submitAsync(String indexerName, Function<Executor, CompletableFuture<T>> callable) {
+        if (!admissions.tryAcquire()) {
+            throw reject(indexerName);
+        }
+        IndexerQueue indexerQueue = indexerQueues.computeIfAbsent(Strings.nullToEmpty(indexerName), x -> new IndexerQueue());
+        IndexerCall<T> call = new IndexerCall<>(indexerName, indexerQueue, callable, MDC.getCopyOfContextMap());
+        synchronized (indexerQueue) {
+            if (indexerQueue.running >= maxConcurrentCallsPerIndexer) {
+                indexerQueue.waiting.add(call);
+                callsWaitingForIndexer.incrementAndGet();
+                return call.result;
+            }
+            indexerQueue.running++;
+        }
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException e) {
+            admissions.release();
+            startNext(indexerQueue);
+            throw reject(indexerName);
+        }
+        return call.result;
+    }
+
+    public int getNumberOfActiveCalls() {
+        return activeCalls.get();
+    }
+
+    public int getNumberOfQueuedCalls() {
+        int queuedInExecutor = executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+        return queuedInExecutor + callsWaitingForIndexer.get();
+    }
+
+    public long getNumberOfRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    @EventListener
+    public void onShutdown(ShutdownEvent event) {
+        if (activeCalls.get() > 0) {
+            logger.debug("Waiting up to 10 seconds for {} indexer calls to finish", activeCalls.get());
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for indexer calls to finish");
+        }
+    }
+
+    /**
+     * Hands the slot of a finished call to the next call waiting for the same indexer or frees it if no call is waiting.
+     */
+    private void startNext(IndexerQueue indexerQueue) {
+        while (true) {
+            IndexerCall<?> next;
+            synchronized (indexerQueue) {
+                next = indexerQueue.waiting.poll();
+                if (next == null) {
+                    indexerQueue.running--;
+                    return;
+                }
+                callsWaitingForIndexer.decrementAndGet();
+            }
+            try {
+                executor.execute(next);
+                return;
+            } catch (RejectedExecutionException e) {
+                admissions.release();
+                next.reject(reject(next.indexerName));
+            }
+        }
+    }
+
+    private RejectedExecutionException reject(String indexerName) {
+        rejectedCalls.incrementAndGet();
+        if (rejectedCallsCounter != null) {
+            rejectedCallsCounter.increment();
+        }
+        logger.warn("Rejected call for indexer {} because too many indexer calls are running or queued ({} active, {} queued)", indexerName, getNumberOfActiveCalls(), getNumberOfQueuedCalls());
+        return new RejectedExecutionException("Too many indexer calls are running or queued");
+    }
+
+    private ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by the running java version. Will use a thread pool for indexer calls");
+            logger.debug(LoggingMarkers.PERFORMANCE, "Unable to create virtual thread executor", e);
+            return null;
+        }
+    }
+
+    private static class IndexerQueue {
+        private int running;
+        private final Queue<IndexerCall<?>> waiting = new ArrayDeque<>();
+    }
+
+    private class IndexerCall<T> implements Runnable {
+        private final String indexerName;
+        private final IndexerQueue indexerQueue;
+        private final Function<Executor, CompletableFuture<T>> callable;
+        private final Map<String, String> mdcContext;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        IndexerCall(String indexerName, IndexerQueue indexerQueue, Function<Executor, CompletableFuture<T>> callable, Map<String, String> mdcContext) {
+            this.indexerName = indexerName;
+            this.indexerQueue = indexerQueue;
+            this.callable = callable;
+            this.mdcContext = mdcContext;
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                //Cancelled while waiting for the indexer
+                finish();
+                return;
+            }
+            activeCalls.incrementAndGet();
+            CompletableFuture<T> future;
+            try {
+                future = callMdcAware();
+            } catch (Throwable e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((value, throwable) -> {
+                activeCalls.decrementAndGet();
+                finish();
+                if (throwable != null) {
+                    result.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }
+
+        private CompletableFuture<T> callMdcAware() {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            setMdc(mdcContext);
+            try {
+                return callable.apply(this::executeStage);
+            } finally {
+                setMdc(previous);
+            }
+        }
+
+        private void executeStage(Runnable runnable) {
+            Runnable wrapped = MdcThreadPoolExecutor.wrap(runnable, mdcContext);
+            try {
+                executor.execute(wrapped);
+            } catch (RejectedExecutionException e) {
+                //The indexer has already been called so its response must be handled, even if that blocks the calling thread
+                wrapped.run();
+            }
+        }
+
+        private void finish() {
+            admissions.release();
+            startNext(indexerQueue);
+        }
+
+        void reject(RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private static void setMdc(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+
+    private static class IndexerCallThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "indexer-call-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
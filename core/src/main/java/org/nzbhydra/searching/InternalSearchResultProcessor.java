@@ -6,6 +6,7 @@ import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.downloading.FileDownloadEntity;
 import org.nzbhydra.downloading.FileDownloadRepository;
 import org.nzbhydra.downloading.FileHandler;
+import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchMetaData;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
@@ -83,11 +84,25 @@ public class InternalSearchResultProcessor {
             indexerSearchMetaData.setWasSuccessful(indexerSearchResult.isWasSuccessful());
             indexerSearchMetaDatas.add(indexerSearchMetaData);
         }
+        for (Indexer cutOffIndexer : searchResult.getCutOffIndexers()) {
+            Optional<IndexerSearchMetaData> existingMetaData = indexerSearchMetaDatas.stream().filter(x -> x.getIndexerName().equals(cutOffIndexer.getName())).findFirst();
+            IndexerSearchMetaData indexerSearchMetaData;
+            if (existingMetaData.isPresent()) {
+                indexerSearchMetaData = existingMetaData.get();
+            } else {
+                indexerSearchMetaData = new IndexerSearchMetaData();
+                indexerSearchMetaData.setDidSearch(true);
+                indexerSearchMetaData.setIndexerName(cutOffIndexer.getName());
+                indexerSearchMetaData.setErrorMessage("Did not respond before the search deadline was reached. Its results will be available when loading more results");
+                indexerSearchMetaDatas.add(indexerSearchMetaData);
+            }
+            indexerSearchMetaData.setCutOff(true);
+        }
         indexerSearchMetaDatas.sort(Comparator.comparing(IndexerSearchMetaData::getIndexerName));
         return indexerSearchMetaDatas;
     }
 
-    private List<SearchResultWebTO> transformSearchResults(List<SearchResultItem> searchResultItems) {
+    List<SearchResultWebTO> transformSearchResults(List<SearchResultItem> searchResultItems) {
         List<SearchResultWebTO> transformedSearchResults = new ArrayList<>();
 
         final List<Long> guids = searchResultItems.stream().map(SearchResultItem::getGuid).collect(Collectors.toList());
@@ -0,0 +1,162 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.nzbhydra.config.ConfigChangedEvent;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.SearchingConfig;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the search cache entries of recent searches so that further pages can be loaded without searching again. Entries are weighed by
+ * the estimated memory retained by their search results so that one search which loaded thousands of results doesn't need the same
+ * share of the cache as a search with a handful of results. The least valuable entries (by frequency and recency) are evicted when the
+ * configured size is exceeded.
+ */
+@Component
+public class SearchCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchCache.class);
+
+    private static final int EXPIRATION_MINUTES = 5;
+    private static final int BYTES_PER_MB = 1024 * 1024;
+    //Object headers, references and the boxed numbers, instants and enums of a search result item
+    private static final int BYTES_PER_SEARCH_RESULT_ITEM = 500;
+    private static final int BYTES_PER_STRING = 40;
+    private static final int BYTES_PER_ATTRIBUTE = 80;
+
+    @Autowired
+    private ConfigProvider configProvider;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private Cache<SearchCacheKey, SearchCacheEntry> cache;
+
+    @PostConstruct
+    public void init() {
+        initialize(configProvider.getBaseConfig().getSearching());
+        if (meterRegistry != null) {
+            Gauge.builder("hydra.search.cache.hitratio", this, x -> x.getStats().hitRate()).description("Ratio of searches for further pages which found their search in the cache").register(meterRegistry);
+            Gauge.builder("hydra.search.cache.evictions", this, x -> x.getStats().evictionCount()).description("Searches removed from the cache because its size was exceeded").register(meterRegistry);
+            Gauge.builder("hydra.search.cache.size", this, SearchCache::getWeightedSize).description("Estimated memory used by the search cache").baseUnit("bytes").register(meterRegistry);
+        }
+    }
+
+    public void initialize(SearchingConfig searchingConfig) {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(getMaximumWeight(searchingConfig))
+                .weigher((SearchCacheKey key, SearchCacheEntry value) -> estimateSize(value))
+                .expireAfterAccess(EXPIRATION_MINUTES, TimeUnit.MINUTES)
+                .removalListener((SearchCacheKey key, SearchCacheEntry value, RemovalCause cause) -> logger.debug("Removing search cache entry for {} ({})", value == null ? key : value.getSearchRequest(), cause))
+                .recordStats()
+                .build();
+    }
+
+    public SearchCacheEntry get(SearchCacheKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Puts the entry into the cache. Must be called again after results were added to the entry so that its weight is updated.
+     */
+    public void put(SearchCacheKey key, SearchCacheEntry searchCacheEntry) {
+        cache.put(key, searchCacheEntry);
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getWeightedSize() {
+        return cache.policy().eviction().map(x -> x.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    public String getStatistics() {
+        CacheStats stats = getStats();
+        return String.format("%d searches using about %d KB of %d KB, hit ratio %.3f (%d hits, %d misses), %d evictions",
+                cache.estimatedSize(), getWeightedSize() / 1024, cache.policy().eviction().map(x -> x.getMaximum() / 1024).orElse(0L), stats.hitRate(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    @EventListener
+    public void handleNewConfig(ConfigChangedEvent configChangedEvent) {
+        long maximumWeight = getMaximumWeight(configChangedEvent.getNewConfig().getSearching());
+        cache.policy().eviction().ifPresent(x -> {
+            if (x.getMaximum() != maximumWeight) {
+                logger.info("Setting search cache size to {} MB", maximumWeight / BYTES_PER_MB);
+                x.setMaximum(maximumWeight);
+            }
+        });
+    }
+
+    private static long getMaximumWeight(SearchingConfig searchingConfig) {
+        return (long) Math.max(1, searchingConfig.getSearchCacheSizeMb()) * BYTES_PER_MB;
+    }
+
+    /**
+     * Estimates the memory retained by the search results of the entry. The results are referenced by multiple lists and the duplicate
+     * index but those references are negligible compared to the results themselves.
+     */
+    static int estimateSize(SearchCacheEntry searchCacheEntry) {
+        long size = 0;
+        for (IndexerSearchCacheEntry indexerSearchCacheEntry : searchCacheEntry.getIndexerCacheEntries().values()) {
+            for (SearchResultItem item : indexerSearchCacheEntry.getSearchResultItems()) {
+                size += estimateSize(item);
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    static long estimateSize(SearchResultItem item) {
+        long size = BYTES_PER_SEARCH_RESULT_ITEM
+                + estimateSize(item.getTitle())
+                + estimateSize(item.getLink())
+                + estimateSize(item.getDetails())
+                + estimateSize(item.getDescription())
+                + estimateSize(item.getIndexerGuid())
+                + estimateSize(item.getCommentsLink())
+                + estimateSize(item.getCover())
+                + estimateSize(item.getGroup().orElse(null))
+                + estimateSize(item.getPoster().orElse(null))
+                + estimateSize(item.getOriginalCategory())
+                + estimateSize(item.getSource().orElse(null));
+        for (Map.Entry<String, String> attribute : item.getAttributes().entrySet()) {
+            size += BYTES_PER_ATTRIBUTE + estimateSize(attribute.getKey()) + estimateSize(attribute.getValue());
+        }
+        return size;
+    }
+
+    private static long estimateSize(String string) {
+        //Assume two bytes per char (java 8 doesn't use compact strings)
+        return string == null ? 0 : BYTES_PER_STRING + 2L * string.length();
+    }
+
+}
@@ -29,6 +29,8 @@ public class SearchCacheEntry {
     private Multiset<String> reasonsForRejection = HashMultiset.create();
     private int numberOfRemovedDuplicates;
     private Integer numberOfAvailableResults = null;
+    private SearchResultMerger searchResultMerger = new SearchResultMerger();
+    private DuplicateIndex duplicateIndex = new DuplicateIndex();
 
 
     public SearchCacheEntry(SearchRequest searchRequest, IndexerForSearchSelection indexerSelectionResult, SearchEntity searchEntity) {
@@ -0,0 +1,74 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import lombok.Value;
+import org.nzbhydra.mediainfo.MediaIdType;
+import org.nzbhydra.searching.dtoseventsenums.DownloadType;
+import org.nzbhydra.searching.dtoseventsenums.SearchType;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Identifies searches with the same semantic fields as {@link SearchRequest#equals(Object)} plus the selected indexers and the download type
+ * (newznab or torznab API) which determine which indexers are searched. Unlike the search request itself it's not affected by changes made
+ * to the request during the search (e.g. when forbidden words are extracted from the query) and, unlike its hash code, it's unique.
+ */
+@Value
+public class SearchCacheKey {
+
+    SearchSource source;
+    SearchType searchType;
+    String category;
+    Integer minsize;
+    Integer maxsize;
+    Integer minage;
+    Integer maxage;
+    String query;
+    Map<MediaIdType, String> identifiers;
+    String title;
+    Integer season;
+    String episode;
+    String author;
+    Set<String> indexers;
+    DownloadType downloadType;
+
+    public static SearchCacheKey of(SearchRequest searchRequest) {
+        return new SearchCacheKey(
+                searchRequest.getSource(),
+                searchRequest.getSearchType(),
+                searchRequest.getCategory() == null ? null : searchRequest.getCategory().getName(),
+                searchRequest.getMinsize().orElse(null),
+                searchRequest.getMaxsize().orElse(null),
+                searchRequest.getMinage().orElse(null),
+                searchRequest.getMaxage().orElse(null),
+                searchRequest.getQuery().orElse(null),
+                new HashMap<>(searchRequest.getIdentifiers()),
+                searchRequest.getTitle().orElse(null),
+                searchRequest.getSeason().orElse(null),
+                searchRequest.getEpisode().orElse(null),
+                searchRequest.getAuthor().orElse(null),
+                searchRequest.getIndexers().map(HashSet::new).orElse(null),
+                searchRequest.getDownloadType());
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends search events to one client. The events are published from the threads executing the search, so they're only queued there and
+ * written to the client by the given executor. A client which doesn't read the events fast enough can't block the search: when the queue
+ * is full further events are dropped. That's fine because the state events contain the whole state and the final results are returned by
+ * the search request anyway.
+ */
+class SearchEventStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchEventStream.class);
+
+    static final int MAX_QUEUED_EVENTS = 100;
+
+    private final SseEmitter emitter;
+    private final Executor executor;
+    private final ArrayBlockingQueue<SseEventBuilder> events = new ArrayBlockingQueue<>(MAX_QUEUED_EVENTS);
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private volatile boolean completeWhenSent;
+    private volatile boolean completed;
+
+    SearchEventStream(SseEmitter emitter, Executor executor) {
+        this.emitter = emitter;
+        this.executor = executor;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    void send(String name, Object data) {
+        if (completed || completeWhenSent) {
+            return;
+        }
+        if (!events.offer(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON))) {
+            logger.debug("Client doesn't read search events fast enough. Dropping {} event", name);
+            return;
+        }
+        scheduleSending();
+    }
+
+    /**
+     * Completes the stream after all queued events were sent.
+     */
+    void complete() {
+        completeWhenSent = true;
+        scheduleSending();
+    }
+
+    private void scheduleSending() {
+        if (!completed && sending.compareAndSet(false, true)) {
+            executor.execute(this::sendQueuedEvents);
+        }
+    }
+
+    private void sendQueuedEvents() {
+        try {
+            SseEventBuilder event;
+            while (!completed && (event = events.poll()) != null) {
+                emitter.send(event);
+            }
+            if (completeWhenSent && !completed) {
+                completed = true;
+                emitter.complete();
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to send search event. The client probably closed the connection");
+            completed = true;
+            emitter.completeWithError(e);
+        } catch (IllegalStateException e) {
+            //Already completed
+            completed = true;
+        } finally {
+            sending.set(false);
+        }
+        if (completed) {
+            events.clear();
+        } else if (!events.isEmpty() || completeWhenSent) {
+            //Events may have been queued after the loop finished but before sending was reset
+            scheduleSending();
+        }
+    }
+
+}
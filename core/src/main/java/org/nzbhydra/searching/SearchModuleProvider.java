@@ -1,9 +1,9 @@
 package org.nzbhydra.searching;
 
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.database.WriteBehindPersister;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerApiAccessEntityShort;
-import org.nzbhydra.indexers.IndexerApiAccessEntityShortRepository;
 import org.nzbhydra.indexers.IndexerApiAccessType;
 import org.nzbhydra.indexers.IndexerEntity;
 import org.nzbhydra.indexers.IndexerHandlingStrategy;
@@ -36,7 +36,7 @@ public class SearchModuleProvider {
     @Autowired
     private IndexerRepository indexerRepository;
     @Autowired
-    private IndexerApiAccessEntityShortRepository shortRepository;
+    private WriteBehindPersister writeBehindPersister;
     @Autowired
     private IndexerLimitRepository indexerStatusRepository;
 
@@ -96,7 +96,8 @@ public class SearchModuleProvider {
                 }
                 if (apiHitsToStoreInitially.containsKey(config.getName())) {
                     IndexerEntity finalIndexerEntity = indexerEntity;
-                    shortRepository.saveAll(IntStream.range(0, apiHitsToStoreInitially.get(config.getName())).mapToObj(x -> new IndexerApiAccessEntityShort(finalIndexerEntity, true, IndexerApiAccessType.SEARCH)).collect(Collectors.toList()));
+                    //Saved like all other API accesses so that they're also counted for the hit limits
+                    IntStream.range(0, apiHitsToStoreInitially.get(config.getName())).forEach(x -> writeBehindPersister.saveApiAccess(new IndexerApiAccessEntityShort(finalIndexerEntity, true, IndexerApiAccessType.SEARCH)));
                     apiHitsToStoreInitially.remove(config.getName());
                 }
 
@@ -24,6 +24,10 @@ public class SearchResult {
     private Multiset<String> reasonsForRejection = HashMultiset.create();
     private IndexerForSearchSelection indexerSelectionResult;
     private Multiset<Indexer> uniqueResultsPerIndexer;
+    /**
+     * Indexers which didn't respond before the search's deadline was reached
+     */
+    private List<Indexer> cutOffIndexers = new ArrayList<>();
     private int numberOfTotalAvailableResults;
     private int numberOfRemovedDuplicates;
 
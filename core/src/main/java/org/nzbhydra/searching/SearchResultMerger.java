@@ -0,0 +1,89 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Merges the results of all indexers of one search into a single stream sorted by date, newest first. Each indexer's cached results are
+ * already sorted so a heap keyed on each indexer's next result is enough to find the next newest result without sorting everything again.
+ */
+public class SearchResultMerger {
+
+    private static final Comparator<IndexerSearchCacheEntry> NEWEST_HEAD_FIRST = Comparator.comparingLong((IndexerSearchCacheEntry x) -> x.peek().getBestDate().getEpochSecond()).reversed();
+
+    private final PriorityQueue<IndexerSearchCacheEntry> heap = new PriorityQueue<>(NEWEST_HEAD_FIRST);
+    private final Set<IndexerSearchCacheEntry> entriesInHeap = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long lastMergedEpochSecond = Long.MAX_VALUE;
+    private boolean mergedInOrder = true;
+
+    /**
+     * Must be called whenever an indexer's cache entry received new results.
+     */
+    public void offer(IndexerSearchCacheEntry indexerSearchCacheEntry) {
+        if (entriesInHeap.remove(indexerSearchCacheEntry)) {
+            //The head may have changed, so the entry's position in the heap is not valid anymore
+            heap.removeIf(x -> x == indexerSearchCacheEntry);
+        }
+        if (indexerSearchCacheEntry.isMoreResultsInCache()) {
+            heap.add(indexerSearchCacheEntry);
+            entriesInHeap.add(indexerSearchCacheEntry);
+        }
+    }
+
+    public boolean hasNext() {
+        return !heap.isEmpty();
+    }
+
+    /**
+     * @return the cache entry of the indexer which provides the next result
+     */
+    public IndexerSearchCacheEntry peekIndexer() {
+        return heap.peek();
+    }
+
+    public SearchResultItem next() {
+        IndexerSearchCacheEntry newestIndexerSearchCacheEntry = heap.poll();
+        entriesInHeap.remove(newestIndexerSearchCacheEntry);
+        SearchResultItem newestResult = newestIndexerSearchCacheEntry.pop();
+        if (newestIndexerSearchCacheEntry.isMoreResultsInCache()) {
+            heap.add(newestIndexerSearchCacheEntry);
+            entriesInHeap.add(newestIndexerSearchCacheEntry);
+        }
+        long epochSecond = newestResult.getBestDate().getEpochSecond();
+        if (epochSecond > lastMergedEpochSecond) {
+            //An indexer returned a page with results newer than ones we already merged
+            mergedInOrder = false;
+        }
+        lastMergedEpochSecond = epochSecond;
+        return newestResult;
+    }
+
+    /**
+     * @return true if all results merged so far were returned in descending date order, i.e. a list built from them doesn't need to be sorted again
+     */
+    public boolean isMergedInOrder() {
+        return mergedInOrder;
+    }
+
+}
@@ -3,6 +3,7 @@ package org.nzbhydra.searching;
 import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import net.jodah.expiringmap.ExpirationPolicy;
@@ -14,10 +15,13 @@ import org.nzbhydra.searching.dtoseventsenums.IndexerSearchFinishedEvent;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSelectionEvent;
 import org.nzbhydra.searching.dtoseventsenums.SearchMessageEvent;
 import org.nzbhydra.searching.dtoseventsenums.SearchRequestParameters;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultWebTO;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultsLoadedEvent;
 import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.nzbhydra.searching.searchrequests.SearchRequestFactory;
+import org.nzbhydra.web.AsyncRequestExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,13 +33,21 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 @RestController
 public class SearchWeb {
@@ -50,6 +62,12 @@ public class SearchWeb {
     private SearchRequestFactory searchRequestFactory;
     @Autowired
     private InternalSearchResultProcessor searchResultProcessor;
+    @Autowired
+    private AsyncRequestExecutor asyncRequestExecutor;
+
+    private static final long SEARCH_EVENTS_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final String STATE_EVENT = "state";
+    private static final String RESULTS_EVENT = "results";
 
     private Lock lock = new ReentrantLock();
 
@@ -58,22 +76,34 @@ public class SearchWeb {
             .expiration(5, TimeUnit.MINUTES) //This should be more than enough... Nobody will wait that long
             .expirationPolicy(ExpirationPolicy.ACCESSED)
             .build();
+    private final Map<Long, List<SearchEventStream>> searchEventStreams = new ConcurrentHashMap<>();
+    private final AtomicInteger searchEventsThreadNumber = new AtomicInteger(1);
+    private final ExecutorService searchEventsExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "searchEvents-" + searchEventsThreadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    });
 
 
     @Secured({"ROLE_USER"})
     @RequestMapping(value = "/internalapi/search", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public SearchResponse search(@RequestBody SearchRequestParameters parameters) {
+    public CompletableFuture<SearchResponse> search(@RequestBody SearchRequestParameters parameters) {
+        return asyncRequestExecutor.submit(() -> executeSearch(parameters));
+    }
+
+    private SearchResponse executeSearch(SearchRequestParameters parameters) {
         SearchRequest searchRequest = createSearchRequest(parameters);
         Stopwatch stopwatch = Stopwatch.createStarted();
         logger.info("New search request: " + searchRequest);
-        org.nzbhydra.searching.SearchResult searchResult = searcher.search(searchRequest);
-
-        SearchResponse searchResponse = searchResultProcessor.createSearchResponse(searchResult);
-
-        lock.lock();
-        SearchState searchState = searchStates.get(searchRequest.getSearchRequestId());
-        searchState.setSearchFinished(true);
-        lock.unlock();
+        SearchResponse searchResponse;
+        try {
+            org.nzbhydra.searching.SearchResult searchResult = searcher.search(searchRequest);
+            searchResponse = searchResultProcessor.createSearchResponse(searchResult);
+        } finally {
+            //Also when the search failed, otherwise the streams would stay open until they time out
+            updateSearchState(searchRequest.getSearchRequestId(), x -> x.setSearchFinished(true));
+            completeSearchEvents(searchRequest.getSearchRequestId());
+        }
 
         logger.info("Web search took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return searchResponse;
@@ -85,6 +115,35 @@ public class SearchWeb {
         return searchStates.getOrDefault(searchRequestId, new SearchState());
     }
 
+    /**
+     * Streams the progress of a search and the results of each indexer as soon as they're loaded, so that they don't have to be polled
+     * using {@link #getSearchState(long)}. Sends "state" events containing the search state whenever it changes and "results" events
+     * containing the (already duplicate-grouped) results of one indexer. The stream is completed when the search is finished.
+     */
+    @Secured({"ROLE_USER"})
+    @RequestMapping(value = "/internalapi/search/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getSearchEvents(@RequestParam("searchrequestid") long searchRequestId) {
+        SseEmitter emitter = new SseEmitter(SEARCH_EVENTS_TIMEOUT_MS);
+        SearchEventStream stream = new SearchEventStream(emitter, searchEventsExecutor);
+        emitter.onCompletion(() -> removeStream(searchRequestId, stream));
+        emitter.onTimeout(() -> removeStream(searchRequestId, stream));
+        searchEventStreams.computeIfAbsent(searchRequestId, x -> new CopyOnWriteArrayList<>()).add(stream);
+
+        //The stream may be opened before or after the search was started
+        SearchState searchState;
+        lock.lock();
+        try {
+            searchState = searchStates.getOrDefault(searchRequestId, new SearchState()).copy();
+        } finally {
+            lock.unlock();
+        }
+        stream.send(STATE_EVENT, searchState);
+        if (searchState.isSearchFinished()) {
+            stream.complete();
+        }
+        return emitter;
+    }
+
     private SearchRequest createSearchRequest(@RequestBody SearchRequestParameters parameters) {
         Category category = categoryProvider.getByInternalName(parameters.getCategory());
         SearchType searchType;
@@ -149,58 +208,107 @@ public class SearchWeb {
 
     @EventListener
     public void handleSearchMessageEvent(SearchMessageEvent event) {
-        if (searchStates.containsKey(event.getSearchRequest().getSearchRequestId())) {
-            lock.lock();
-            SearchState searchState = searchStates.get(event.getSearchRequest().getSearchRequestId());
+        updateSearchState(event.getSearchRequest().getSearchRequestId(), searchState -> {
             if (!searchState.getMessages().contains(event.getMessage())) {
                 searchState.getMessages().add(event.getMessage());
             }
-            lock.unlock();
-        }
+        });
     }
 
     @EventListener
     public void handleIndexerSelectionEvent(IndexerSelectionEvent event) {
-        if (searchStates.containsKey(event.getSearchRequest().getSearchRequestId())) {
-            lock.lock();
-            SearchState searchState = searchStates.get(event.getSearchRequest().getSearchRequestId());
+        updateSearchState(event.getSearchRequest().getSearchRequestId(), searchState -> {
             searchState.setIndexerSelectionFinished(true);
             searchState.setIndexersSelected(event.getIndexersSelected());
-            lock.unlock();
-        }
+        });
     }
 
     @EventListener
     public void handleFallbackSearchInitatedEvent(FallbackSearchInitiatedEvent event) {
         //An indexer will do a fallback search, meaning we'll have to wait for another indexer search. On the GUI side that's the same as if one more indexer had been selected
-        if (searchStates.containsKey(event.getSearchRequest().getSearchRequestId())) {
-            lock.lock();
-            SearchState searchState = searchStates.get(event.getSearchRequest().getSearchRequestId());
-            searchState.setIndexersSelected(searchState.getIndexersSelected() + 1);
-            lock.unlock();
-        }
+        updateSearchState(event.getSearchRequest().getSearchRequestId(), searchState -> searchState.setIndexersSelected(searchState.getIndexersSelected() + 1));
     }
 
     @EventListener
     public void handleIndexerSearchFinishedEvent(IndexerSearchFinishedEvent event) {
-        if (searchStates.containsKey(event.getSearchRequest().getSearchRequestId())) {
-            lock.lock();
-            SearchState searchState = searchStates.get(event.getSearchRequest().getSearchRequestId());
-            searchState.setIndexersFinished(searchState.getIndexersFinished() + 1);
+        updateSearchState(event.getSearchRequest().getSearchRequestId(), searchState -> searchState.setIndexersFinished(searchState.getIndexersFinished() + 1));
+    }
+
+    @EventListener
+    public void handleSearchResultsLoadedEvent(SearchResultsLoadedEvent event) {
+        long searchRequestId = event.getSearchRequest().getSearchRequestId();
+        updateSearchState(searchRequestId, searchState -> searchState.setNumberOfLoadedResults(searchState.getNumberOfLoadedResults() + event.getSearchResultItems().size()));
+        List<SearchEventStream> streams = searchEventStreams.get(searchRequestId);
+        if (streams == null) {
+            //Nobody's listening, no need to transform the results
+            return;
+        }
+        LoadedSearchResults loadedSearchResults = new LoadedSearchResults(event.getIndexerName(), searchResultProcessor.transformSearchResults(event.getSearchResultItems()));
+        for (SearchEventStream stream : streams) {
+            stream.send(RESULTS_EVENT, loadedSearchResults);
+        }
+    }
+
+    private void updateSearchState(long searchRequestId, Consumer<SearchState> update) {
+        SearchState searchStateCopy;
+        lock.lock();
+        try {
+            SearchState searchState = searchStates.get(searchRequestId);
+            if (searchState == null) {
+                return;
+            }
+            update.accept(searchState);
+            searchStateCopy = searchState.copy();
+        } finally {
             lock.unlock();
         }
+        List<SearchEventStream> streams = searchEventStreams.get(searchRequestId);
+        if (streams != null) {
+            for (SearchEventStream stream : streams) {
+                stream.send(STATE_EVENT, searchStateCopy);
+            }
+        }
+    }
+
+    private void completeSearchEvents(long searchRequestId) {
+        List<SearchEventStream> streams = searchEventStreams.remove(searchRequestId);
+        if (streams != null) {
+            streams.forEach(SearchEventStream::complete);
+        }
+    }
+
+    private void removeStream(long searchRequestId, SearchEventStream stream) {
+        searchEventStreams.computeIfPresent(searchRequestId, (x, streams) -> {
+            streams.remove(stream);
+            return streams.isEmpty() ? null : streams;
+        });
     }
 
     @Data
     @NoArgsConstructor
+    @AllArgsConstructor
     private static class SearchState {
 
         private boolean indexerSelectionFinished = false;
         private boolean searchFinished = false;
         private int indexersSelected = 0;
         private int indexersFinished = 0;
+        private int numberOfLoadedResults = 0;
         private List<String> messages = new ArrayList<>();
 
+        SearchState copy() {
+            return new SearchState(indexerSelectionFinished, searchFinished, indexersSelected, indexersFinished, numberOfLoadedResults, new ArrayList<>(messages));
+        }
+
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class LoadedSearchResults {
+
+        private String indexerName;
+        private List<SearchResultWebTO> searchResults;
+
     }
 
 }
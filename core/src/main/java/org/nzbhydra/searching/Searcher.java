@@ -1,27 +1,29 @@
 package org.nzbhydra.searching;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multiset;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
-import net.jodah.expiringmap.ExpirationPolicy;
-import net.jodah.expiringmap.ExpiringMap;
 import org.nzbhydra.ShutdownEvent;
 import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.database.WriteBehindPersister;
+import org.nzbhydra.historystats.StatsRollups;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerSearchEntity;
 import org.nzbhydra.indexers.IndexerSearchRepository;
 import org.nzbhydra.logging.LoggingMarkers;
-import org.nzbhydra.logging.MdcThreadPoolExecutor;
 import org.nzbhydra.searching.IndexerForSearchSelector.IndexerForSearchSelection;
 import org.nzbhydra.searching.db.IdentifierKeyValuePair;
 import org.nzbhydra.searching.db.SearchEntity;
 import org.nzbhydra.searching.db.SearchRepository;
 import org.nzbhydra.searching.db.SearchResultEntity;
-import org.nzbhydra.searching.db.SearchResultRepository;
 import org.nzbhydra.searching.dtoseventsenums.DuplicateDetectionResult;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultsLoadedEvent;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.slf4j.Logger;
@@ -31,21 +33,29 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Component
@@ -63,30 +73,128 @@ public class Searcher {
     @Autowired
     private SearchRepository searchRepository;
     @Autowired
-    private SearchResultRepository searchResultRepository;
+    private StatsRollups statsRollups;
+    @Autowired
+    private WriteBehindPersister writeBehindPersister;
     @Autowired
     protected IndexerForSearchSelector indexerSelector;
     @Autowired
     private ApplicationEventPublisher eventPublisher;
     @Autowired
     private ConfigProvider configProvider;
-    private final Set<ExecutorService> executors = Collections.synchronizedSet(new HashSet<>());
+    @Autowired
+    protected IndexerSearchExecutor searchExecutor;
+    @Autowired
+    protected SearchCache searchCache;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
     private boolean shutdownRequested = false;
 
     /**
-     * Maps a search request's hash to its cache entry
+     * Maps a search request's key to the search currently being executed for it. Identical searches (e.g. from *arr instances firing
+     * the same request at the same time) attach to the running search instead of calling all indexers again.
      */
-    private final Map<Integer, SearchCacheEntry> searchRequestCache = ExpiringMap.builder()
-            .maxSize(20)
-            .expirationPolicy(ExpirationPolicy.ACCESSED)
-            .expiration(5, TimeUnit.MINUTES)
-            .expirationListener((k, v) -> logger.debug("Removing expired search cache entry {}", ((SearchCacheEntry) v).getSearchRequest()))
-            .build();
+    private final Map<SearchCacheKey, InFlightSearch> inFlightSearches = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedSearches = new AtomicLong();
+    private final AtomicLong savedIndexerCalls = new AtomicLong();
+    private Counter coalescedSearchesCounter;
+    private Counter savedIndexerCallsCounter;
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry != null) {
+            coalescedSearchesCounter = meterRegistry.counter("hydra.search.coalesced");
+            savedIndexerCallsCounter = meterRegistry.counter("hydra.search.coalesced.savedindexercalls");
+        }
+    }
 
     public SearchResult search(SearchRequest searchRequest) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         eventPublisher.publishEvent(new SearchEvent(searchRequest));
-        SearchCacheEntry searchCacheEntry = getSearchCacheEntry(searchRequest);
+
+        //The key is determined before the search request is modified (forbidden words are extracted from the query)
+        SearchCacheKey searchCacheKey = SearchCacheKey.of(searchRequest);
+        InFlightSearch inFlightSearch = new InFlightSearch(searchRequest);
+        InFlightSearch runningSearch = inFlightSearches.putIfAbsent(searchCacheKey, inFlightSearch);
+        if (runningSearch != null) {
+            Optional<SearchResult> coalescedSearchResult = attachToRunningSearch(searchRequest, runningSearch);
+            if (coalescedSearchResult.isPresent()) {
+                logger.debug(LoggingMarkers.PERFORMANCE, "Waiting for identical running search took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
+                return coalescedSearchResult.get();
+            }
+            //Not registered as in-flight search, the running one will soon be finished anyway
+            inFlightSearch = new InFlightSearch(searchRequest);
+        }
+
+        try {
+            SearchResult allSearchResults = executeSearch(searchRequest, searchCacheKey, inFlightSearch);
+            inFlightSearch.getFuture().complete(allSearchResults);
+            SearchResult searchResult = createPage(searchRequest, allSearchResults);
+            logger.debug(LoggingMarkers.PERFORMANCE, "Internal search took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
+            return searchResult;
+        } catch (RuntimeException e) {
+            inFlightSearch.getFuture().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightSearches.remove(searchCacheKey, inFlightSearch);
+        }
+    }
+
+    /**
+     * Waits for the running search and returns its results sliced to the given search request's offset and limit. Returns an empty
+     * optional if the running search failed or didn't load enough results, in which case the caller should execute its own search.
+     */
+    private Optional<SearchResult> attachToRunningSearch(SearchRequest searchRequest, InFlightSearch runningSearch) {
+        SearchRequest runningSearchRequest = runningSearch.getSearchRequest();
+        logger.info("Identical search is already running. Waiting for its results");
+        SearchResult allSearchResults;
+        try {
+            allSearchResults = runningSearch.getFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            logger.info("Running identical search failed. Will execute search");
+            return Optional.empty();
+        }
+        boolean enoughResultsLoaded = runningSearchRequest.isLoadAll() || searchRequest.getOffset() + searchRequest.getLimit() <= runningSearchRequest.getOffset() + runningSearchRequest.getLimit();
+        if (searchRequest.isLoadAll() || !enoughResultsLoaded) {
+            logger.debug("Identical search didn't load the requested results. Will execute search");
+            return Optional.empty();
+        }
+
+        int numberOfIndexerCalls = runningSearch.getNumberOfIndexerCalls();
+        coalescedSearches.incrementAndGet();
+        savedIndexerCalls.addAndGet(numberOfIndexerCalls);
+        if (coalescedSearchesCounter != null) {
+            coalescedSearchesCounter.increment();
+            savedIndexerCallsCounter.increment(numberOfIndexerCalls);
+        }
+        logger.info("Using results of identical search. Saved {} indexer calls", numberOfIndexerCalls);
+        return Optional.of(createPage(searchRequest, allSearchResults));
+    }
+
+    /**
+     * Returns the number of searches which used the results of an identical search running at the same time.
+     */
+    public long getNumberOfCoalescedSearches() {
+        return coalescedSearches.get();
+    }
+
+    /**
+     * Returns the number of indexer calls which were not executed because identical searches were coalesced.
+     */
+    public long getNumberOfSavedIndexerCalls() {
+        return savedIndexerCalls.get();
+    }
+
+    /**
+     * Executes the search and returns a search result containing all loaded search result items. It's shared by all identical searches
+     * and must not be modified, see {@link #createPage(SearchRequest, SearchResult)}.
+     */
+    private SearchResult executeSearch(SearchRequest searchRequest, SearchCacheKey searchCacheKey, InFlightSearch inFlightSearch) {
+        SearchCacheEntry searchCacheEntry = getSearchCacheEntry(searchRequest, searchCacheKey);
+        SearchDeadline deadline = SearchDeadline.of(configProvider.getBaseConfig().getSearching().getSearchDeadlineSeconds());
 
         SearchResult searchResult = new SearchResult();
         int numberOfWantedResults = searchRequest.getOffset() + searchRequest.getLimit();
@@ -94,9 +202,9 @@ public class Searcher {
         searchResult.setNumberOfRemovedDuplicates(searchCacheEntry.getNumberOfRemovedDuplicates());
 
         List<IndexerSearchCacheEntry> indexersToSearch = getIndexersToSearch(searchCacheEntry);
-        List<IndexerSearchCacheEntry> indexersWithCachedResults = getIndexersWithCachedResults(searchCacheEntry);
+        SearchResultMerger searchResultMerger = searchCacheEntry.getSearchResultMerger();
         List<SearchResultItem> searchResultItems = searchCacheEntry.getSearchResultItems();
-        while ((!indexersToSearch.isEmpty() || !indexersWithCachedResults.isEmpty()) && (searchResultItems.size() < numberOfWantedResults || searchRequest.isLoadAll())) {
+        while ((!indexersToSearch.isEmpty() || searchResultMerger.hasNext()) && (searchResultItems.size() < numberOfWantedResults || searchRequest.isLoadAll())) {
             if (shutdownRequested) {
                 break;
             }
@@ -110,21 +218,24 @@ public class Searcher {
             }
 
             //Do the actual search
+            if (!indexersToSearch.isEmpty() && deadline.isReached()) {
+                logger.info("Search deadline reached. Will not call {} for more results", indexersToSearch.stream().map(x -> x.getIndexer().getName()).collect(Collectors.joining(", ")));
+                indexersToSearch = new ArrayList<>();
+            }
             if (!indexersToSearch.isEmpty()) {
-                callSearchModules(searchRequest, indexersToSearch, searchCacheEntry);
+                inFlightSearch.addIndexerCalls(indexersToSearch.size());
+                callSearchModules(searchRequest, indexersToSearch, searchCacheEntry, deadline);
                 //Update so indexers with errors are removed
                 indexersToSearch = getIndexersToSearch(searchCacheEntry);
             }
 
-            indexersWithCachedResults = getIndexersWithCachedResults(searchCacheEntry);
-            while (!indexersWithCachedResults.isEmpty()) {
-                List<SearchResultItem> newestItemsFromIndexers = indexersWithCachedResults.stream().map(IndexerSearchCacheEntry::peek).sorted(Comparator.comparingLong(x -> ((SearchResultItem) x).getBestDate().getEpochSecond()).reversed()).collect(Collectors.toList());
-                SearchResultItem newestResult = newestItemsFromIndexers.get(0);
-                Indexer newestResultIndexer = newestResult.getIndexer();
-                IndexerSearchCacheEntry newestIndexerSearchCacheEntry = searchCacheEntry.getIndexerCacheEntries().get(newestResultIndexer);
-                searchResultItems.add(newestIndexerSearchCacheEntry.pop());
+            List<SearchResultItem> newSearchResultItems = new ArrayList<>();
+            while (searchResultMerger.hasNext()) {
+                IndexerSearchCacheEntry newestIndexerSearchCacheEntry = searchResultMerger.peekIndexer();
+                SearchResultItem newestResult = searchResultMerger.next();
+                searchResultItems.add(newestResult);
+                newSearchResultItems.add(newestResult);
 
-                indexersWithCachedResults = getIndexersWithCachedResults(searchCacheEntry);
                 if (!newestIndexerSearchCacheEntry.isMoreResultsInCache() && newestIndexerSearchCacheEntry.isMoreResultsAvailable()) {
                     indexersToSearch.add(newestIndexerSearchCacheEntry);
                     //We need to make a new search for that indexer so we need to stop here. If we still haven't enough results the outer loop will cause more results to be loaded
@@ -132,12 +243,10 @@ public class Searcher {
                 }
             }
 
-            searchRequestCache.put(searchRequest.hashCode(), searchCacheEntry);
+            searchCache.put(searchCacheKey, searchCacheEntry);
 
-            //todo: Would be better if duplicate detection would be executed when each indexer's search result items are filled from the new indexerSearchResults
-            //That way they wouldn't be considered eligable and this loop wouldn't be executed as often
-
-            DuplicateDetectionResult duplicateDetectionResult = duplicateDetector.detectDuplicates(new HashSet<>(searchResultItems));
+            //Only the newly loaded results need to be sorted into the duplicate groups of the previous pages
+            DuplicateDetectionResult duplicateDetectionResult = duplicateDetector.detectDuplicates(searchCacheEntry.getDuplicateIndex(), newSearchResultItems);
 
             //Save to database
             createOrUpdateIndexerSearchEnties(searchCacheEntry);
@@ -167,22 +276,32 @@ public class Searcher {
                 .map(x -> Iterables.getLast(x.getIndexerSearchResults()))
                 .collect(Collectors.toList()));
         searchResult.setReasonsForRejection(searchCacheEntry.getReasonsForRejection());
+        searchResult.setCutOffIndexers(searchCacheEntry.getIndexerCacheEntries().values().stream()
+                .filter(IndexerSearchCacheEntry::isSearchPending)
+                .map(IndexerSearchCacheEntry::getIndexer)
+                .collect(Collectors.toList()));
         searchCacheEntry.setNumberOfRemovedDuplicates(searchResult.getNumberOfRemovedDuplicates());
 
+        //Copied so the cached results aren't referenced by the search result shared with identical searches
         List<SearchResultItem> searchResultItemsToReturn = new ArrayList<>(searchResultItems);
-        searchResultItemsToReturn.sort(Comparator.comparingLong(x -> ((SearchResultItem) x).getBestDate().getEpochSecond()).reversed());
-
-        spliceSearchResultItemsAccordingToOffsetAndLimit(searchRequest, searchResult, searchResultItemsToReturn);
+        if (!searchResultMerger.isMergedInOrder()) {
+            searchResultItemsToReturn.sort(Comparator.comparingLong(x -> ((SearchResultItem) x).getBestDate().getEpochSecond()).reversed());
+        }
 
-        logger.debug(LoggingMarkers.PERFORMANCE, "Internal search took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        searchResult.setSearchResultItems(searchResultItemsToReturn);
         return searchResult;
     }
 
-    private List<IndexerSearchCacheEntry> getIndexersWithCachedResults(SearchCacheEntry searchCacheEntry) {
-        List<IndexerSearchCacheEntry> indexerSearchCacheEntries = searchCacheEntry.getIndexerCacheEntries().values().stream()
-                .filter(IndexerSearchCacheEntry::isMoreResultsInCache)
-                .collect(Collectors.toList());
-        return indexerSearchCacheEntries;
+    private SearchResult createPage(SearchRequest searchRequest, SearchResult allSearchResults) {
+        SearchResult searchResult = new SearchResult();
+        searchResult.setIndexerSelectionResult(allSearchResults.getIndexerSelectionResult());
+        searchResult.setIndexerSearchResults(new ArrayList<>(allSearchResults.getIndexerSearchResults()));
+        searchResult.setReasonsForRejection(allSearchResults.getReasonsForRejection());
+        searchResult.setNumberOfTotalAvailableResults(allSearchResults.getNumberOfTotalAvailableResults());
+        searchResult.setNumberOfRemovedDuplicates(allSearchResults.getNumberOfRemovedDuplicates());
+        searchResult.setCutOffIndexers(allSearchResults.getCutOffIndexers());
+        spliceSearchResultItemsAccordingToOffsetAndLimit(searchRequest, searchResult, allSearchResults.getSearchResultItems());
+        return searchResult;
     }
 
     private void spliceSearchResultItemsAccordingToOffsetAndLimit(SearchRequest searchRequest, SearchResult searchResult, List<SearchResultItem> searchResultItems) {
@@ -204,7 +323,7 @@ public class Searcher {
 
         if (searchRequest.isLoadAll()) {
             logger.info("Returning all available search results");
-            searchResult.setSearchResultItems(searchResultItems);
+            searchResult.setSearchResultItems(new ArrayList<>(searchResultItems));
             return;
         }
 
@@ -226,7 +345,8 @@ public class Searcher {
                 andRemoved = " and " + searchResult.getNumberOfRemovedDuplicates() + " were removed as duplicates";
             }
             logger.info("Returning results {}-{} from {} results in cache. A total of {} results is available from indexers of which {} were already rejected" + andRemoved, offset + 1, offset + limit, searchResultItems.size(), searchResult.getNumberOfTotalAvailableResults(), searchResult.getNumberOfRejectedResults());
-            searchResult.setSearchResultItems(searchResultItems.subList(offset, offset + limit));
+            //Copy only the requested page so the cached results aren't referenced by the search result
+            searchResult.setSearchResultItems(new ArrayList<>(searchResultItems.subList(offset, offset + limit)));
         }
     }
 
@@ -252,33 +372,42 @@ public class Searcher {
 
         for (IndexerSearchCacheEntry indexerSearchCacheEntry : searchCacheEntry.getIndexerCacheEntries().values()) {
             for (IndexerSearchResult indexerSearchResult : indexerSearchCacheEntry.getIndexerSearchResults()) {
-                IndexerSearchEntity entity = indexerSearchCacheEntry.getIndexerSearchEntity();
-                if (entity == null) {
-                    entity = new IndexerSearchEntity();
-                    entity.setIndexerEntity(indexerSearchResult.getIndexer().getIndexerEntity());
-                    entity.setSearchEntity(searchCacheEntry.getSearchEntity());
-                    entity.setResultsCount(indexerSearchResult.getTotalResults());
-                    entity.setSuccessful(indexerSearchResult.isWasSuccessful());
-                    indexerSearchCacheEntry.setIndexerSearchEntity(entity);
-                }
-                if (configProvider.getBaseConfig().getMain().isKeepHistory()) {
-                    entity = indexerSearchRepository.save(entity);
-                    for (SearchResultEntity x : indexerSearchResult.getSearchResultEntities()) {
-                        x.setIndexerSearchEntity(entity);
-                    }
-                }
-                searchResultRepository.saveAll(indexerSearchResult.getSearchResultEntities());
-                searchCacheEntry.getIndexerCacheEntries().get(indexerSearchResult.getIndexer()).setIndexerSearchEntity(entity);
+                saveIndexerSearchResult(searchCacheEntry, indexerSearchCacheEntry, indexerSearchResult);
                 countEntities++;
             }
         }
         logger.debug(LoggingMarkers.PERFORMANCE, "Saving {} indexer search entities took {}ms", countEntities, stopwatch.elapsed(TimeUnit.MILLISECONDS));
     }
 
-    protected SearchCacheEntry getSearchCacheEntry(SearchRequest searchRequest) {
-        SearchCacheEntry searchCacheEntry;
+    private void saveIndexerSearchResult(SearchCacheEntry searchCacheEntry, IndexerSearchCacheEntry indexerSearchCacheEntry, IndexerSearchResult indexerSearchResult) {
+        IndexerSearchEntity entity = indexerSearchCacheEntry.getIndexerSearchEntity();
+        if (entity == null) {
+            entity = new IndexerSearchEntity();
+            entity.setIndexerEntity(indexerSearchResult.getIndexer().getIndexerEntity());
+            entity.setSearchEntity(searchCacheEntry.getSearchEntity());
+            entity.setResultsCount(indexerSearchResult.getTotalResults());
+            entity.setSuccessful(indexerSearchResult.isWasSuccessful());
+            indexerSearchCacheEntry.setIndexerSearchEntity(entity);
+        }
+        if (configProvider.getBaseConfig().getMain().isKeepHistory()) {
+            if (entity.getId() == 0) {
+                //Isn't changed when more results are loaded so it only needs to be saved once
+                entity = indexerSearchRepository.save(entity);
+            }
+            for (SearchResultEntity x : indexerSearchResult.getSearchResultEntities()) {
+                x.setIndexerSearchEntity(entity);
+            }
+        }
+        writeBehindPersister.saveSearchResults(indexerSearchResult.getSearchResultEntities());
+        //The search results are kept in the cache entry and handled again when more results are loaded
+        indexerSearchResult.setSearchResultEntities(new HashSet<>());
+        indexerSearchCacheEntry.setIndexerSearchEntity(entity);
+    }
+
+    protected SearchCacheEntry getSearchCacheEntry(SearchRequest searchRequest, SearchCacheKey searchCacheKey) {
+        SearchCacheEntry searchCacheEntry = searchRequest.getOffset() == 0 ? null : searchCache.get(searchCacheKey);
 
-        if (searchRequest.getOffset() == 0 || !searchRequestCache.containsKey(searchRequest.hashCode())) {
+        if (searchCacheEntry == null) {
             //New search
             SearchEntity searchEntity = new SearchEntity();
             searchEntity.setSource(searchRequest.getSource());
@@ -296,12 +425,12 @@ public class Searcher {
 
             if (configProvider.getBaseConfig().getMain().isKeepHistory()) {
                 searchRepository.save(searchEntity);
+                statsRollups.registerSearch(searchEntity);
             }
 
             IndexerForSearchSelection pickingResult = indexerSelector.pickIndexers(searchRequest);
             searchCacheEntry = new SearchCacheEntry(searchRequest, pickingResult, searchEntity);
         } else {
-            searchCacheEntry = searchRequestCache.get(searchRequest.hashCode());
             searchCacheEntry.setLastAccessed(Instant.now());
             searchCacheEntry.setSearchRequest(searchRequest); //Update to latest to keep offset and limit updated
         }
@@ -316,6 +445,10 @@ public class Searcher {
         }
 
         for (IndexerSearchCacheEntry indexerSearchCacheEntry : searchCacheEntry.getIndexerCacheEntries().values()) {
+            if (indexerSearchCacheEntry.isSearchPending()) {
+                logger.debug("Search of indexer {} which didn't finish before the deadline is still running", indexerSearchCacheEntry.getIndexer().getName());
+                continue;
+            }
             final int executedSearches = indexerSearchCacheEntry.getIndexerSearchResults().size();
             if (!searchCacheEntry.getSearchRequest().isLoadAll() && executedSearches >= MAX_QUERIES_UNTIL_BREAK) {
                 //Circuit breaker
@@ -345,37 +478,101 @@ public class Searcher {
     }
 
     protected void callSearchModules(SearchRequest searchRequest, List<IndexerSearchCacheEntry> indexersToSearch, SearchCacheEntry searchCacheEntry) {
+        callSearchModules(searchRequest, indexersToSearch, searchCacheEntry, SearchDeadline.NONE);
+    }
+
+    /**
+     * Calls the indexers and waits for their results until the deadline is reached. Indexers which haven't answered by then are kept
+     * running, their results will be used when more results are loaded (see {@link IndexerSearchCacheEntry#getPendingSearch()}).
+     */
+    protected void callSearchModules(SearchRequest searchRequest, List<IndexerSearchCacheEntry> indexersToSearch, SearchCacheEntry searchCacheEntry, SearchDeadline deadline) {
         Map<Indexer, List<IndexerSearchResult>> indexerSearchResults = new HashMap<>();
         for (IndexerSearchCacheEntry entry : indexersToSearch) {
             indexerSearchResults.put(entry.getIndexer(), entry.getIndexerSearchResults());
         }
 
-        ExecutorService executor = MdcThreadPoolExecutor.newWithInheritedMdc(indexersToSearch.size());
-        executors.add(executor);
-
-        List<Callable<IndexerSearchResult>> callables = getCallables(searchRequest, indexersToSearch);
+        //Indexers are called asynchronously using the search executor which takes care of the indexers' concurrency limits. No thread is blocked while waiting for an indexer
+        Map<IndexerSearchCacheEntry, CompletableFuture<IndexerSearchResult>> futures = new LinkedHashMap<>();
+        for (IndexerSearchCacheEntry toSearch : indexersToSearch) {
+            Indexer indexer = toSearch.getIndexer();
+            if (toSearch.getPendingSearch() != null) {
+                //Cut off by the deadline of a previous search and finished since then
+                futures.put(toSearch, toSearch.getPendingSearch());
+                toSearch.setPendingSearch(null);
+            } else {
+                int offset = getOffset(toSearch);
+                try {
+                    futures.put(toSearch, searchExecutor.submitAsync(indexer.getName(), executor -> indexer.searchAsync(searchRequest, offset, LOAD_LIMIT_API, executor)));
+                } catch (RejectedExecutionException e) {
+                    toSearch.addIndexerSearchResult(new IndexerSearchResult(indexer, "Too many searches are running. Please try again later."));
+                }
+            }
+        }
 
+        //Responses are handled in the order the indexers answer so that the results of fast indexers can be shown before slow ones are finished
+        BlockingQueue<Entry<IndexerSearchCacheEntry, CompletableFuture<IndexerSearchResult>>> completedSearches = new LinkedBlockingQueue<>();
+        for (Entry<IndexerSearchCacheEntry, CompletableFuture<IndexerSearchResult>> entry : futures.entrySet()) {
+            entry.getValue().whenComplete((result, throwable) -> completedSearches.add(entry));
+        }
+        Set<IndexerSearchCacheEntry> handledSearches = Collections.newSetFromMap(new IdentityHashMap<>());
         try {
-            List<Future<IndexerSearchResult>> futures = executor.invokeAll(callables);
-            for (Future<IndexerSearchResult> future : futures) {
+            while (handledSearches.size() < futures.size()) {
+                Entry<IndexerSearchCacheEntry, CompletableFuture<IndexerSearchResult>> entry = completedSearches.poll(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS);
+                if (entry == null) {
+                    cutOffPendingSearches(futures, handledSearches);
+                    break;
+                }
+                handledSearches.add(entry.getKey());
                 try {
-                    IndexerSearchResult indexerSearchResult = future.get();
-                    searchCacheEntry.getIndexerCacheEntries().get(indexerSearchResult.getIndexer()).addIndexerSearchResult(indexerSearchResult);
+                    IndexerSearchResult indexerSearchResult = entry.getValue().get();
+                    IndexerSearchCacheEntry indexerSearchCacheEntry = searchCacheEntry.getIndexerCacheEntries().get(indexerSearchResult.getIndexer());
+                    indexerSearchCacheEntry.addIndexerSearchResult(indexerSearchResult);
+                    searchCacheEntry.getSearchResultMerger().offer(indexerSearchCacheEntry);
                     indexerSearchResults.put(indexerSearchResult.getIndexer(), searchCacheEntry.getIndexerCacheEntries().get(indexerSearchResult.getIndexer()).getIndexerSearchResults());
+                    publishLoadedResults(searchRequest, searchCacheEntry, indexerSearchResult);
                 } catch (ExecutionException e) {
-                    logger.error("Unexpected error while searching", e);
+                    if (e.getCause() instanceof RejectedExecutionException) {
+                        entry.getKey().addIndexerSearchResult(new IndexerSearchResult(entry.getKey().getIndexer(), "Too many searches are running. Please try again later."));
+                    } else {
+                        logger.error("Unexpected error while searching", e);
+                    }
                 }
             }
         } catch (InterruptedException e) {
             logger.error("Unexpected error while searching", e);
-        } finally {
-            executor.shutdownNow(); //Need to explicitly shutdown executor for threads to be closed
-            executors.remove(executor);
+            futures.values().forEach(x -> x.cancel(true));
+            Thread.currentThread().interrupt();
         }
         handleIndexersWithFailedFutureExecutions(indexersToSearch, indexerSearchResults);
     }
 
 
+    private void cutOffPendingSearches(Map<IndexerSearchCacheEntry, CompletableFuture<IndexerSearchResult>> futures, Set<IndexerSearchCacheEntry> handledSearches) {
+        List<String> cutOffIndexers = new ArrayList<>();
+        for (Entry<IndexerSearchCacheEntry, CompletableFuture<IndexerSearchResult>> entry : futures.entrySet()) {
+            if (!handledSearches.contains(entry.getKey())) {
+                entry.getKey().setPendingSearch(entry.getValue());
+                cutOffIndexers.add(entry.getKey().getIndexer().getName());
+            }
+        }
+        logger.info("Search deadline reached. Returning results without waiting for {}. Their results will be available when loading more results", Joiner.on(", ").join(cutOffIndexers));
+    }
+
+    /**
+     * Makes the results of an indexer available to internal searches (see {@link SearchResultsLoadedEvent}) before all other indexers are
+     * finished. They're sorted into the duplicate groups right away so that the duplicate identifiers don't change afterwards.
+     */
+    private void publishLoadedResults(SearchRequest searchRequest, SearchCacheEntry searchCacheEntry, IndexerSearchResult indexerSearchResult) {
+        if (searchRequest.getSource() != SearchSource.INTERNAL || indexerSearchResult.getSearchResultItems().isEmpty()) {
+            return;
+        }
+        //Streamed results may be downloaded right away so their entities must be known to the persister before they're published
+        saveIndexerSearchResult(searchCacheEntry, searchCacheEntry.getIndexerCacheEntries().get(indexerSearchResult.getIndexer()), indexerSearchResult);
+        List<SearchResultItem> searchResultItems = indexerSearchResult.getSearchResultItems();
+        duplicateDetector.detectDuplicates(searchCacheEntry.getDuplicateIndex(), searchResultItems);
+        eventPublisher.publishEvent(new SearchResultsLoadedEvent(searchRequest, indexerSearchResult.getIndexer().getName(), searchResultItems));
+    }
+
     private void handleIndexersWithFailedFutureExecutions(List<IndexerSearchCacheEntry> indexerSearchCacheEntries, Map<Indexer, List<IndexerSearchResult>> indexerSearchResults) {
         for (IndexerSearchCacheEntry toSearch : indexerSearchCacheEntries) {
             if (!indexerSearchResults.containsKey(toSearch.getIndexer())) {
@@ -390,45 +587,59 @@ public class Searcher {
         }
     }
 
-    private List<Callable<IndexerSearchResult>> getCallables(SearchRequest searchRequest, List<IndexerSearchCacheEntry> indexersToSearch) {
-        List<Callable<IndexerSearchResult>> callables = new ArrayList<>();
-
-        for (IndexerSearchCacheEntry toSearch : indexersToSearch) {
-            Callable<IndexerSearchResult> callable = getIndexerCallable(searchRequest, toSearch);
-            callables.add(callable);
-        }
-
-        return callables;
-    }
-
-    private Callable<IndexerSearchResult> getIndexerCallable(SearchRequest searchRequest, IndexerSearchCacheEntry indexerSearchCacheEntry) {
-        int offset;
+    private int getOffset(IndexerSearchCacheEntry indexerSearchCacheEntry) {
         if (indexerSearchCacheEntry.getIndexerSearchResults().isEmpty()) {
-            offset = 0;
-        } else {
-            IndexerSearchResult indexerToSearch = Iterables.getLast(indexerSearchCacheEntry.getIndexerSearchResults());
-            offset = indexerToSearch.getOffset() + indexerToSearch.getLimit();
+            return 0;
         }
-        return () -> indexerSearchCacheEntry.getIndexer().search(searchRequest, offset, LOAD_LIMIT_API);
+        IndexerSearchResult indexerToSearch = Iterables.getLast(indexerSearchCacheEntry.getIndexerSearchResults());
+        return indexerToSearch.getOffset() + indexerToSearch.getLimit();
     }
 
     @SuppressWarnings("unused")
     @EventListener
     public void onShutdown(ShutdownEvent event) {
         shutdownRequested = true;
-        synchronized (executors) {
-            if (executors.size() > 0) {
-                logger.debug("Waiting up to 10 seconds for {} background tasks to finish", executors.size());
-            }
-            for (ExecutorService executorService : executors) {
-                executorService.shutdown();
-                try {
-                    executorService.awaitTermination(10, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {
-                    logger.warn("Waited too long for termination of task, interrupting");
-                    Thread.currentThread().interrupt();
-                }
-            }
+    }
+
+    /**
+     * The point in time after which a search doesn't wait for indexers anymore, see {@link org.nzbhydra.config.SearchingConfig#getSearchDeadlineSeconds()}
+     */
+    protected static class SearchDeadline {
+
+        static final SearchDeadline NONE = new SearchDeadline(null);
+
+        private final Long deadlineNanoTime;
+
+        private SearchDeadline(Long deadlineNanoTime) {
+            this.deadlineNanoTime = deadlineNanoTime;
+        }
+
+        static SearchDeadline of(Optional<Integer> seconds) {
+            return seconds.map(x -> new SearchDeadline(System.nanoTime() + TimeUnit.SECONDS.toNanos(x))).orElse(NONE);
+        }
+
+        long getRemainingNanos() {
+            return deadlineNanoTime == null ? Long.MAX_VALUE : Math.max(0, deadlineNanoTime - System.nanoTime());
+        }
+
+        boolean isReached() {
+            return getRemainingNanos() == 0;
+        }
+    }
+
+    @Getter
+    private static class InFlightSearch {
+
+        private final SearchRequest searchRequest;
+        private final CompletableFuture<SearchResult> future = new CompletableFuture<>();
+        private volatile int numberOfIndexerCalls;
+
+        InFlightSearch(SearchRequest searchRequest) {
+            this.searchRequest = searchRequest;
+        }
+
+        void addIndexerCalls(int numberOfIndexerCalls) {
+            this.numberOfIndexerCalls += numberOfIndexerCalls;
         }
     }
 
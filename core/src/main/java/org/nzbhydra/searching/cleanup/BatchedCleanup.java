@@ -0,0 +1,151 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching.cleanup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.nzbhydra.ShutdownEvent;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.nzbhydra.misc.Sleep;
+import org.nzbhydra.web.AsyncRequestExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Executes deletions of old entries in small batches so that the affected tables are never locked for long and searches running at the
+ * same time aren't stalled. Every batch is committed on its own. Between batches the cleanup pauses, longer the more searches and
+ * downloads are currently being executed.
+ * <p>
+ * A run stops after a while or on shutdown, even if not all entries were deleted. The batches must be written so that the next run
+ * continues where the previous one stopped, e.g. by deleting the entries with the lowest IDs first.
+ */
+@Component
+public class BatchedCleanup {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchedCleanup.class);
+
+    static final int BATCH_SIZE = 2000;
+    static final Duration MAX_RUN_DURATION = Duration.ofMinutes(10);
+    static final long PAUSE_MILLIS = 20;
+    static final long PAUSE_PER_ACTIVE_REQUEST_MILLIS = 250;
+    static final long MAX_PAUSE_MILLIS = 2000;
+
+    @Autowired
+    private AsyncRequestExecutor asyncRequestExecutor;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    protected Clock clock = Clock.systemUTC();
+    private volatile boolean shutdown;
+
+    /**
+     * Calls the given batch until it doesn't delete any more entries or the run takes too long.
+     *
+     * @param name       used for logging and metrics
+     * @param connection used for the batches, committed after every batch unless auto commit is enabled
+     * @param batch      deletes up to the given number of entries and returns the number of deleted entries
+     */
+    public Progress run(String name, Connection connection, Batch batch) throws SQLException {
+        return run(name, connection, batch, () -> {
+        });
+    }
+
+    /**
+     * Like {@link #run(String, Connection, Batch)} but calls the given callback after every batch was committed, e.g. to update caches
+     * which must not contain changes which may still be rolled back.
+     */
+    public Progress run(String name, Connection connection, Batch batch, Runnable afterCommit) throws SQLException {
+        Progress progress = new Progress(name, clock.millis());
+        long stopAt = progress.getStartedAt() + MAX_RUN_DURATION.toMillis();
+        while (!shutdown) {
+            int deleted = batch.delete(connection, BATCH_SIZE);
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            afterCommit.run();
+            progress.add(deleted, clock.millis());
+            if (meterRegistry != null && deleted > 0) {
+                meterRegistry.counter("hydra.cleanup.deleted", "cleanup", name).increment(deleted);
+            }
+            logger.debug(LoggingMarkers.HISTORY_CLEANUP, "{}: Deleted {} entries in {} batches ({} entries per second)", name, progress.getDeleted(), progress.getBatches(), progress.getEntriesPerSecond());
+            if (deleted == 0) {
+                progress.setFinished(true);
+                break;
+            }
+            if (clock.millis() > stopAt) {
+                logger.info("{}: Stopping after {}ms. Will continue with the next run", name, clock.millis() - progress.getStartedAt());
+                break;
+            }
+            Sleep.sleep(getPause());
+        }
+        if (progress.getDeleted() > 0) {
+            logger.info("{}: Deleted {} entries with {} entries per second", name, progress.getDeleted(), progress.getEntriesPerSecond());
+        }
+        return progress;
+    }
+
+    /**
+     * @return the time to wait before the next batch which is longer the more searches or downloads are running
+     */
+    protected long getPause() {
+        int activeRequests = asyncRequestExecutor.getNumberOfActiveRequests() + asyncRequestExecutor.getNumberOfQueuedRequests();
+        if (activeRequests == 0) {
+            return PAUSE_MILLIS;
+        }
+        return Math.min(MAX_PAUSE_MILLIS, activeRequests * PAUSE_PER_ACTIVE_REQUEST_MILLIS);
+    }
+
+    @EventListener
+    public void onShutdown(ShutdownEvent event) {
+        shutdown = true;
+    }
+
+    @FunctionalInterface
+    public interface Batch {
+        int delete(Connection connection, int batchSize) throws SQLException;
+    }
+
+    @Data
+    public static class Progress {
+        private final String name;
+        private final long startedAt;
+        private long lastBatchAt;
+        private int batches;
+        private long deleted;
+        private boolean finished;
+
+        void add(int deleted, long now) {
+            this.deleted += deleted;
+            batches++;
+            lastBatchAt = now;
+        }
+
+        public long getEntriesPerSecond() {
+            long millis = Math.max(1, lastBatchAt - startedAt);
+            return deleted * 1000 / millis;
+        }
+    }
+
+}
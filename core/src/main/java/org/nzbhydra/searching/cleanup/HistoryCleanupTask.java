@@ -18,8 +18,9 @@ package org.nzbhydra.searching.cleanup;
 
 import com.google.common.base.Stopwatch;
 import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.historystats.History;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
 import org.nzbhydra.logging.LoggingMarkers;
-import org.nzbhydra.misc.Sleep;
 import org.nzbhydra.tasks.HydraTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +50,12 @@ public class HistoryCleanupTask {
     private ConfigProvider configProvider;
     @Autowired
     private DataSource dataSource;
+    @Autowired
+    private History history;
+    @Autowired
+    private IndexerApiAccessStore indexerApiAccessStore;
+    @Autowired
+    private BatchedCleanup batchedCleanup;
 
     private static final Logger logger = LoggerFactory.getLogger(HistoryCleanupTask.class);
 
@@ -92,7 +99,8 @@ public class HistoryCleanupTask {
             } else {
                 deleteOlderThanStats = deleteOlderThanHistory;
             }
-            deleteOldIndexerApiAccesses(deleteOlderThanStats, connection);
+            deleteOldIndexerApiAccesses(deleteOlderThanStats);
+            deleteOldStatsRollups(deleteOlderThanStats, connection);
 
             if (optionalHighestId.isPresent()) {
                 deleteOldSearches(optionalHighestId.get(), connection);
@@ -105,18 +113,19 @@ public class HistoryCleanupTask {
         } catch (SQLException e) {
             logger.error("Error while executing SQL", e);
         }
+        history.invalidateCounts();
         logger.info("Deletion of old history entries finished");
         logger.debug(LoggingMarkers.PERFORMANCE, "Cleanup of history took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
     }
 
     public void deleteOldIndexerSearches(Integer searchId, Connection connection) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old indexer searches");
-        deleteOldEntries(searchId, "delete from INDEXERSEARCH where SEARCH_ENTITY_ID < ? and rownum() < 10000", "Deleted {} indexer searches from database", connection);
+        deleteOldEntries(searchId, "delete from INDEXERSEARCH where SEARCH_ENTITY_ID < ? and rownum() <= ?", "Indexer searches cleanup", connection);
     }
 
     public void deleteOldIdentifiers(Integer searchId, Connection connection) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old identifiers");
-        deleteOldEntries(searchId, "delete from SEARCH_IDENTIFIERS where SEARCH_ENTITY_ID < ? and rownum() < 10000", "Deleted {} search identifiers from database", connection);
+        deleteOldEntries(searchId, "delete from SEARCH_IDENTIFIERS where SEARCH_ENTITY_ID < ? and rownum() <= ?", "Search identifiers cleanup", connection);
         //Find the lowest searchIdentifierKey. All value pairs referencing a lower ID than that can be deleted
         int identifierId;
         try (PreparedStatement statement = connection.prepareStatement("select IDENTIFIERS_ID from SEARCH_IDENTIFIERS order by IDENTIFIERS_ID asc limit 1;")) {
@@ -133,28 +142,34 @@ public class HistoryCleanupTask {
         }
 
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old identifier key value pairs");
-        deleteOldEntries(identifierId, "delete from IDENTIFIER_KEY_VALUE_PAIR where ID < ? and rownum() < 10000", "Deleted {} identifier key value pairs from database", connection);
+        deleteOldEntries(identifierId, "delete from IDENTIFIER_KEY_VALUE_PAIR where ID < ? and rownum() <= ?", "Identifier key value pairs cleanup", connection);
     }
 
-    public void deleteOldIndexerApiAccesses(Instant deleteOlderThan, Connection connection) {
+    public void deleteOldIndexerApiAccesses(Instant deleteOlderThan) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old indexer API accesses");
-        Optional<Integer> optionalId = getIdBefore(deleteOlderThan, "INDEXERAPIACCESS", ASC_DESC.DESC, connection);
-        if (!optionalId.isPresent()) {
-            logger.debug(LoggingMarkers.HISTORY_CLEANUP, "No older indexer API accesses to delete");
-            return;
-        }
+        //Accesses are stored per day so only those of whole days are deleted
+        indexerApiAccessStore.deleteBefore(deleteOlderThan);
+    }
 
-        deleteOldEntries(optionalId.get(), "delete from INDEXERAPIACCESS where ID < ? and rownum() < 10000", "Deleted {} indexer API accesses from database", connection);
+    public void deleteOldStatsRollups(Instant deleteOlderThan, Connection connection) {
+        logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old stats rollups");
+        try (PreparedStatement statement = connection.prepareStatement("delete from STATS_ACTIVITY_HOURLY where HOUR_START < ?")) {
+            statement.setTimestamp(1, new Timestamp(deleteOlderThan.toEpochMilli()));
+            int deleted = statement.executeUpdate();
+            logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleted {} entries from STATS_ACTIVITY_HOURLY", deleted);
+        } catch (SQLException e) {
+            logger.error("Error while executing SQL", e);
+        }
     }
 
     public void deleteOldSearches(Integer searchId, Connection connection) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old searches");
-        deleteOldEntries(searchId, "delete from SEARCH where ID < ? and rownum() < 10000", "Deleted {} searches from database", connection);
+        deleteOldEntries(searchId, "delete from SEARCH where ID < ? and rownum() <= ?", "Searches cleanup", connection);
     }
 
     public void deleteOldDownloads(Integer downloadId, Connection connection) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old downloads");
-        deleteOldEntries(downloadId, "delete from indexernzbdownload where id < ? ", "Deleted {} downloads from database", connection);
+        deleteOldEntries(downloadId, "delete from INDEXERNZBDOWNLOAD where ID < ? and rownum() <= ?", "Downloads cleanup", connection);
         try (PreparedStatement statement = connection.prepareStatement("delete from INDEXERNZBDOWNLOAD where SEARCH_RESULT_ID is null")) {
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -178,21 +193,16 @@ public class HistoryCleanupTask {
         }
     }
 
-    public void deleteOldEntries(int lowerThan, String sql, String loggerMessage, Connection connection) {
-        try {
-            int deletedEntities = 0;
-            int lastDeletedEntities;
-            try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                do {
-                    statement.setInt(1, lowerThan);
-                    lastDeletedEntities = statement.executeUpdate();
-                    deletedEntities += lastDeletedEntities;
-                    //Commit and sleep a bit to release locks and give the rest of the program time to read or write from or to db
-                    connection.commit();
-                    Sleep.sleep(20);
-                    logger.debug(LoggingMarkers.HISTORY_CLEANUP, loggerMessage, deletedEntities);
-                } while (lastDeletedEntities > 0);
-            }
+    /**
+     * Deletes the entries matching the given SQL in batches. The SQL must have a parameter for the given ID and one for the batch size.
+     */
+    public void deleteOldEntries(int lowerThan, String sql, String name, Connection connection) {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            batchedCleanup.run(name, connection, (batchConnection, batchSize) -> {
+                statement.setInt(1, lowerThan);
+                statement.setInt(2, batchSize);
+                return statement.executeUpdate();
+            });
         } catch (SQLException e) {
             logger.error("Error while executing SQL", e);
         }
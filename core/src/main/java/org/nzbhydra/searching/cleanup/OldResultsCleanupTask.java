@@ -20,18 +20,25 @@ import com.google.common.base.Stopwatch;
 import org.nzbhydra.NzbHydra;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.logging.LoggingMarkers;
+import org.nzbhydra.searching.db.SearchResultIdCache;
 import org.nzbhydra.tasks.HydraTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityManager;
+import javax.sql.DataSource;
 import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
@@ -41,32 +48,107 @@ public class OldResultsCleanupTask {
     @Autowired
     private ConfigProvider configProvider;
     @Autowired
-    private EntityManager entityManager;
+    private DataSource dataSource;
+    @Autowired
+    private SearchResultIdCache searchResultIdCache;
+    @Autowired
+    private BatchedCleanup batchedCleanup;
 
     private static final Logger logger = LoggerFactory.getLogger(OldResultsCleanupTask.class);
 
     private static final long HOUR = 1000 * 60 * 60;
 
+    //Position after the last result read by the previous batch
+    private Timestamp lastFirstFound;
+    private Long lastId;
+
     @HydraTask(configId = "deleteOldSearchResults", name = "Delete old search results", interval = HOUR)
-    @Transactional
     public void deleteOldResults() {
         Stopwatch stopwatch = Stopwatch.createStarted();
         int keepSearchResultsForDays = configProvider.getBaseConfig().getSearching().getKeepSearchResultsForDays();
-        String sqlString = "delete from SEARCHRESULT where FIRST_FOUND "
-                + " < DATEADD('SECOND', :epochSecond, DATE '1970-01-01') " +
-                "AND ID not in (select SEARCH_RESULT_ID from INDEXERNZBDOWNLOAD where SEARCH_RESULT_ID is not null)";
-        sqlString = sqlString.replace(":epochSecond", String.valueOf(Instant.now().minus(keepSearchResultsForDays, ChronoUnit.DAYS).getEpochSecond()));
-        int deletedResults = entityManager.createNativeQuery(sqlString).executeUpdate();
-        if (deletedResults > 0) {
-            logger.debug("Deleted {} unused search results from database that were older than {} days", deletedResults, keepSearchResultsForDays);
-        } else {
-            logger.debug("No unused search results to delete");
+        Timestamp deleteOlderThan = Timestamp.from(Instant.now().minus(keepSearchResultsForDays, ChronoUnit.DAYS));
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            //The IDs are needed to keep the ID cache in sync. They may only be removed from it when the deletion was committed
+            List<Long> deletedIds = new ArrayList<>();
+            BatchedCleanup.Progress progress = batchedCleanup.run("Search results cleanup", connection, (batchConnection, batchSize) -> {
+                List<Long> batchDeletedIds = deleteBatch(batchConnection, batchSize, deleteOlderThan);
+                deletedIds.addAll(batchDeletedIds);
+                return batchDeletedIds.size();
+            }, () -> {
+                searchResultIdCache.removeAll(deletedIds);
+                deletedIds.clear();
+            });
+            if (progress.isFinished()) {
+                //Start from the oldest results again next time. Results may have become deletable because their downloads were deleted
+                lastFirstFound = null;
+                lastId = null;
+            }
+            if (progress.getDeleted() > 0) {
+                logger.debug("Deleted {} unused search results from database that were older than {} days", progress.getDeleted(), keepSearchResultsForDays);
+            } else {
+                logger.debug("No unused search results to delete");
+            }
+        } catch (SQLException e) {
+            logger.error("Error while executing SQL", e);
         }
+        searchResultIdCache.rebuildIfNeeded();
 
         cleanupGcLogs();
         logger.debug(LoggingMarkers.PERFORMANCE, "Cleanup of old results took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
     }
 
+    /**
+     * Deletes the next batch of old results which weren't downloaded. The results are read in the order of the index on FIRST_FOUND and ID
+     * starting after the last one of the previous batch, so results which are kept aren't read again and again.
+     *
+     * @return the IDs of the deleted results
+     */
+    protected List<Long> deleteBatch(Connection connection, int batchSize, Timestamp deleteOlderThan) throws SQLException {
+        String sql = "select ID, FIRST_FOUND from SEARCHRESULT r where r.FIRST_FOUND < ? " +
+                (lastFirstFound != null ? "and (r.FIRST_FOUND > ? or (r.FIRST_FOUND = ? and r.ID > ?)) " : "") +
+                "and not exists (select 1 from INDEXERNZBDOWNLOAD d where d.SEARCH_RESULT_ID = r.ID) " +
+                "order by r.FIRST_FOUND, r.ID limit ?";
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = 1;
+            statement.setTimestamp(index++, deleteOlderThan);
+            if (lastFirstFound != null) {
+                statement.setTimestamp(index++, lastFirstFound);
+                statement.setTimestamp(index++, lastFirstFound);
+                statement.setLong(index++, lastId);
+            }
+            statement.setInt(index, batchSize);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong(1));
+                    lastId = resultSet.getLong(1);
+                    lastFirstFound = resultSet.getTimestamp(2);
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return ids;
+        }
+
+        //A download might've been made in the meantime. The download would be deleted by the cascade
+        List<Long> deletedIds = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("delete from SEARCHRESULT where ID = ? and not exists (select 1 from INDEXERNZBDOWNLOAD where SEARCH_RESULT_ID = ?)")) {
+            for (Long id : ids) {
+                statement.setLong(1, id);
+                statement.setLong(2, id);
+                statement.addBatch();
+            }
+            int[] updateCounts = statement.executeBatch();
+            for (int i = 0; i < updateCounts.length; i++) {
+                if (updateCounts[i] > 0) {
+                    deletedIds.add(ids.get(i));
+                }
+            }
+        }
+        return deletedIds;
+    }
+
     protected void cleanupGcLogs() {
         File[] logFiles = new File(NzbHydra.getDataFolder(), "logs").listFiles((dir, name) -> name.toLowerCase().startsWith("gclog"));
         if (logFiles == null) {
@@ -17,15 +17,18 @@
 package org.nzbhydra.searching.cleanup;
 
 import com.google.common.base.Stopwatch;
-import org.nzbhydra.indexers.IndexerApiAccessEntityShortRepository;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.tasks.HydraTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.concurrent.TimeUnit;
@@ -34,19 +37,29 @@ import java.util.concurrent.TimeUnit;
 public class ShortIndexerApiAccessCleanup {
 
     @Autowired
-    private IndexerApiAccessEntityShortRepository repository;
+    private DataSource dataSource;
+    @Autowired
+    private BatchedCleanup batchedCleanup;
 
     private static final Logger logger = LoggerFactory.getLogger(ShortIndexerApiAccessCleanup.class);
 
     private static final long TWELVE_HOURS = 1000 * 60 * 60 * 12;
 
     @HydraTask(configId = "deletShortTermStorageResults", name = "Delete short term storage results", interval = TWELVE_HOURS)
-    @Transactional
     public void deleteOldResults() {
         Stopwatch stopwatch = Stopwatch.createStarted();
-        int deletedResults = repository.deleteByTimeBefore(Instant.now().minus(2, ChronoUnit.DAYS));
-        if (deletedResults > 0) {
-            logger.debug("Deleted {} indexer API accesses from short term storage", deletedResults);
+        Timestamp deleteOlderThan = Timestamp.from(Instant.now().minus(2, ChronoUnit.DAYS));
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement("delete from INDEXERAPIACCESS_SHORT where TIME < ? and rownum() <= ?")) {
+            BatchedCleanup.Progress progress = batchedCleanup.run("Short term storage cleanup", connection, (batchConnection, batchSize) -> {
+                statement.setTimestamp(1, deleteOlderThan);
+                statement.setInt(2, batchSize);
+                return statement.executeUpdate();
+            });
+            if (progress.getDeleted() > 0) {
+                logger.debug("Deleted {} indexer API accesses from short term storage", progress.getDeleted());
+            }
+        } catch (SQLException e) {
+            logger.error("Error while executing SQL", e);
         }
         logger.debug(LoggingMarkers.PERFORMANCE, "Deletion of short term storage took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
     }
@@ -0,0 +1,229 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching.db;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of which search result IDs exist in the database so that results which were already found don't need to be written again
+ * and new results can be inserted without checking the database first.
+ * <p>
+ * Recently written (or confirmed) IDs are kept in a size bounded cache; when an ID is contained in it the result definitely exists. All IDs
+ * in the database are contained in a bloom filter which is built on startup; when an ID is not contained in it the result definitely
+ * doesn't exist. Deleted IDs cannot be removed from the bloom filter which is why it's rebuilt once too many results were deleted.
+ */
+@Component
+public class SearchResultIdCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchResultIdCache.class);
+
+    static final int MAX_RECENT_IDS = 100_000;
+    private static final int MIN_EXPECTED_IDS = 500_000;
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    @Autowired
+    protected DataSource dataSource;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Cache<Long, Boolean> recentIds = CacheBuilder.newBuilder().maximumSize(MAX_RECENT_IDS).recordStats().build();
+    //Guava's bloom filter is not thread safe, all access must be synchronized
+    private BloomFilter<Long> bloomFilter;
+    private BloomFilter<Long> bloomFilterBeingBuilt;
+    private long expectedIds;
+    private long idsInBloomFilter;
+    private long idsRemovedSinceBuild;
+    private final AtomicLong definiteMisses = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Thread thread = new Thread(this::rebuild, "SearchResultIdCacheBuilder");
+        thread.setDaemon(true);
+        thread.start();
+        if (meterRegistry != null) {
+            Gauge.builder("hydra.searchresult.idcache.hitratio", this, x -> x.getRecentIdsStats().hitRate()).description("Ratio of search results found in the cache of recently written IDs").register(meterRegistry);
+            Gauge.builder("hydra.searchresult.idcache.falsepositiverate", this, SearchResultIdCache::getFalsePositiveRate).description("Ratio of new search results for which the bloom filter reported that they might exist").register(meterRegistry);
+        }
+    }
+
+    /**
+     * @return true if the search result with the given ID definitely exists in the database
+     */
+    public boolean isKnownToExist(long id) {
+        return recentIds.getIfPresent(id) != null;
+    }
+
+    /**
+     * @return false if the search result with the given ID definitely doesn't exist in the database. Always returns true until the bloom
+     * filter is built.
+     */
+    public synchronized boolean mightExist(long id) {
+        if (bloomFilter == null) {
+            return true;
+        }
+        if (bloomFilter.mightContain(id)) {
+            return true;
+        }
+        definiteMisses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Must be called with the IDs of search results after they were written to (or found in) the database.
+     */
+    public void addAll(Collection<Long> ids) {
+        synchronized (this) {
+            for (Long id : ids) {
+                if (bloomFilter != null && bloomFilter.put(id)) {
+                    idsInBloomFilter++;
+                }
+                if (bloomFilterBeingBuilt != null) {
+                    bloomFilterBeingBuilt.put(id);
+                }
+            }
+        }
+        for (Long id : ids) {
+            recentIds.put(id, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Must be called with the IDs of search results which were deleted from the database.
+     */
+    public void removeAll(Collection<Long> ids) {
+        recentIds.invalidateAll(ids);
+        synchronized (this) {
+            idsRemovedSinceBuild += ids.size();
+        }
+    }
+
+    /**
+     * Must be called when search results were deleted without knowing their IDs.
+     */
+    public void removeAllRecent() {
+        recentIds.invalidateAll();
+    }
+
+    /**
+     * Records that a search result which was reported by {@link #mightExist(long)} to might exist did not exist.
+     */
+    public synchronized void recordFalsePositives(int count) {
+        if (bloomFilter != null) {
+            falsePositives.addAndGet(count);
+        }
+    }
+
+    /**
+     * Rebuilds the bloom filter if it's saturated, either because more IDs were added than expected or too many were deleted.
+     */
+    public void rebuildIfNeeded() {
+        synchronized (this) {
+            if (bloomFilter != null && idsInBloomFilter < expectedIds && idsRemovedSinceBuild < expectedIds / 10) {
+                return;
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * Builds the bloom filter from all search result IDs in the database. IDs written while the database is read are added to the new
+     * filter as well.
+     */
+    public void rebuild() {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            long count;
+            try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM SEARCHRESULT")) {
+                resultSet.next();
+                count = resultSet.getLong(1);
+            }
+            long newExpectedIds = Math.max(MIN_EXPECTED_IDS, count * 2);
+            BloomFilter<Long> newBloomFilter = BloomFilter.create(Funnels.longFunnel(), newExpectedIds, FALSE_POSITIVE_PROBABILITY);
+            synchronized (this) {
+                bloomFilterBeingBuilt = newBloomFilter;
+            }
+            long newIdsInBloomFilter = 0;
+            try (ResultSet resultSet = statement.executeQuery("SELECT ID FROM SEARCHRESULT")) {
+                while (resultSet.next()) {
+                    long id = resultSet.getLong(1);
+                    synchronized (this) {
+                        newBloomFilter.put(id);
+                    }
+                    newIdsInBloomFilter++;
+                }
+            }
+            synchronized (this) {
+                bloomFilter = newBloomFilter;
+                bloomFilterBeingBuilt = null;
+                expectedIds = newExpectedIds;
+                idsInBloomFilter = newIdsInBloomFilter;
+                idsRemovedSinceBuild = 0;
+            }
+            logger.debug(LoggingMarkers.PERFORMANCE, "Building bloom filter for {} search result IDs took {}ms", newIdsInBloomFilter, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        } catch (SQLException e) {
+            synchronized (this) {
+                bloomFilterBeingBuilt = null;
+            }
+            logger.error("Error while reading search result IDs", e);
+        }
+    }
+
+    public CacheStats getRecentIdsStats() {
+        return recentIds.stats();
+    }
+
+    /**
+     * @return The ratio of new search results for which the bloom filter reported that they might exist
+     */
+    public double getFalsePositiveRate() {
+        long falsePositives = this.falsePositives.get();
+        long negatives = falsePositives + definiteMisses.get();
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+
+    public String getStatistics() {
+        CacheStats stats = getRecentIdsStats();
+        synchronized (this) {
+            return String.format("Recent IDs: %d cached, hit ratio %.3f (%d hits, %d misses). Bloom filter: %s, %d of %d expected IDs, %d removed since build, %d definite misses, false positive rate %.4f",
+                    recentIds.size(), stats.hitRate(), stats.hitCount(), stats.missCount(), bloomFilter == null ? "not built" : "built", idsInBloomFilter, expectedIds, idsRemovedSinceBuild, definiteMisses.get(), getFalsePositiveRate());
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching.dtoseventsenums;
+
+import lombok.Getter;
+
+/**
+ * Compact representation of the properties of a {@link SearchResultItem} which are relevant for duplicate detection. Computed once when the
+ * item is built so that comparing two items doesn't need any regex, string or {@link java.util.Optional} handling in most cases.
+ * <p>
+ * Titles, posters and groups are compared using their 64 bit hashes first. Only if the hashes are equal the actual strings are compared
+ * to rule out hash collisions.
+ */
+@Getter
+public class DuplicateKey {
+
+    public static final long UNKNOWN = 0;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Hash of the lower case title without spaces, dots, dashes and underscores
+     */
+    private final long titleHash;
+    /**
+     * 64 bit hash of the poster or {@link #UNKNOWN}
+     */
+    private final long posterHash;
+    /**
+     * 64 bit hash of the group or {@link #UNKNOWN}
+     */
+    private final long groupHash;
+    /**
+     * Epoch seconds of the usenet date or pub date, {@link Long#MIN_VALUE} if neither is known
+     */
+    private final long epochSecond;
+    /**
+     * Size in bytes or -1 if unknown
+     */
+    private final long size;
+    private final boolean torrent;
+
+    private final String title;
+    private final String poster;
+    private final String group;
+
+    public DuplicateKey(SearchResultItem item) {
+        title = item.getTitle();
+        poster = item.getPoster().orElse(null);
+        group = item.getGroup().orElse(null);
+        titleHash = hashNormalizedTitle(title);
+        posterHash = poster == null ? UNKNOWN : hash(poster);
+        groupHash = group == null ? UNKNOWN : hash(group);
+        epochSecond = item.getBestDate() == null ? Long.MIN_VALUE : item.getBestDate().getEpochSecond();
+        size = item.getSize() == null ? -1 : item.getSize();
+        torrent = item.getDownloadType() == SearchResultItem.DownloadType.TORRENT;
+    }
+
+    public boolean isPosterKnown() {
+        return posterHash != UNKNOWN;
+    }
+
+    public boolean isGroupKnown() {
+        return groupHash != UNKNOWN;
+    }
+
+    public boolean isDateKnown() {
+        return epochSecond != Long.MIN_VALUE;
+    }
+
+    public boolean isSizeKnown() {
+        return size >= 0;
+    }
+
+    /**
+     * @return true if both titles are the same when ignoring case, spaces, dots, dashes and underscores
+     */
+    public boolean isSameTitle(DuplicateKey other) {
+        return titleHash == other.titleHash && normalizedTitlesEqual(title, other.title);
+    }
+
+    /**
+     * @return true if both posters are known and the same
+     */
+    public boolean isSamePoster(DuplicateKey other) {
+        return isPosterKnown() && posterHash == other.posterHash && poster.equals(other.poster);
+    }
+
+    /**
+     * @return true if both groups are known and the same
+     */
+    public boolean isSameGroup(DuplicateKey other) {
+        return isGroupKnown() && groupHash == other.groupHash && group.equals(other.group);
+    }
+
+    /**
+     * Computes the hash of the title like it would be computed for title.toLowerCase().replaceAll("[ .\\-_]", "") but without creating any objects
+     */
+    static long hashNormalizedTitle(String title) {
+        long hash = FNV_OFFSET_BASIS;
+        if (title == null) {
+            return hash;
+        }
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (isIgnoredInTitle(c)) {
+                continue;
+            }
+            hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Compares the titles like title1.toLowerCase().replaceAll("[ .\\-_]", "").equals(title2.toLowerCase().replaceAll("[ .\\-_]", "")) but
+     * without creating any objects
+     */
+    static boolean normalizedTitlesEqual(String title1, String title2) {
+        if (title1 == null || title2 == null) {
+            return title1 == null && title2 == null;
+        }
+        int i = 0;
+        int j = 0;
+        while (true) {
+            while (i < title1.length() && isIgnoredInTitle(title1.charAt(i))) {
+                i++;
+            }
+            while (j < title2.length() && isIgnoredInTitle(title2.charAt(j))) {
+                j++;
+            }
+            if (i == title1.length() || j == title2.length()) {
+                return i == title1.length() && j == title2.length();
+            }
+            if (Character.toLowerCase(title1.charAt(i)) != Character.toLowerCase(title2.charAt(j))) {
+                return false;
+            }
+            i++;
+            j++;
+        }
+    }
+
+    private static boolean isIgnoredInTitle(char c) {
+        return c == ' ' || c == '.' || c == '-' || c == '_';
+    }
+
+    private static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        //Make sure a known value is never mistaken as unknown
+        return hash == UNKNOWN ? 1 : hash;
+    }
+
+}
@@ -21,6 +21,7 @@ import lombok.Data;
 @Data
 public class IndexerSearchMetaData {
 
+    private boolean cutOff;
     private boolean didSearch;
     private String errorMessage;
     private boolean hasMoreResults;
@@ -80,6 +80,59 @@ public class SearchResultItem  {
     @NotNull
     private String title;
     private Instant usenetDate;
+    /**
+     * Computed from the other properties when needed. Reset when any property relevant for duplicate detection is changed
+     */
+    private DuplicateKey duplicateKey;
+
+    public DuplicateKey getDuplicateKey() {
+        if (duplicateKey == null) {
+            duplicateKey = new DuplicateKey(this);
+        }
+        return duplicateKey;
+    }
+
+    /**
+     * Should be called by indexers when all properties of the item are set so that the key doesn't need to be computed during duplicate detection
+     */
+    public void computeDuplicateKey() {
+        duplicateKey = new DuplicateKey(this);
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+        duplicateKey = null;
+    }
+
+    public void setPoster(String poster) {
+        this.poster = poster;
+        duplicateKey = null;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+        duplicateKey = null;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+        duplicateKey = null;
+    }
+
+    public void setPubDate(Instant pubDate) {
+        this.pubDate = pubDate;
+        duplicateKey = null;
+    }
+
+    public void setUsenetDate(Instant usenetDate) {
+        this.usenetDate = usenetDate;
+        duplicateKey = null;
+    }
+
+    public void setDownloadType(DownloadType downloadType) {
+        this.downloadType = downloadType;
+        duplicateKey = null;
+    }
 
     public Optional<Instant> getUsenetDate() {
         return Optional.ofNullable(usenetDate);
@@ -0,0 +1,39 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching.dtoseventsenums;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+
+import java.util.List;
+
+/**
+ * Published for internal searches when an indexer's results were loaded, before the results of all other indexers are available. The
+ * results were already sorted into the search's duplicate groups.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchResultsLoadedEvent {
+
+    private SearchRequest searchRequest;
+    private String indexerName;
+    private List<SearchResultItem> searchResultItems;
+
+}
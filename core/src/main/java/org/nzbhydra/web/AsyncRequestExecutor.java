@@ -0,0 +1,149 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.nzbhydra.ShutdownEvent;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.SearchingConfig;
+import org.nzbhydra.logging.MdcThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes long running requests (searches and NZB downloads) outside of the servlet container's request threads. The controllers return
+ * the future so the request thread is released while the search is running and Spring writes the response when it's completed.
+ * <p>
+ * The number of requests executed at the same time is limited. Requests exceeding that limit wait in a bounded queue; when the queue is
+ * full they're rejected with a {@link TooManyRequestsException} so that clients can retry later instead of piling up.
+ */
+@Component
+public class AsyncRequestExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRequestExecutor.class);
+
+    static final int RETRY_AFTER_SECONDS = 30;
+
+    @Autowired
+    private ConfigProvider configProvider;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private MdcThreadPoolExecutor executor;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private Counter rejectedRequestsCounter;
+
+    @PostConstruct
+    public void init() {
+        initialize(configProvider.getBaseConfig().getSearching());
+    }
+
+    public void initialize(SearchingConfig searchingConfig) {
+        executor = MdcThreadPoolExecutor.newWithInheritedMdc(searchingConfig.getMaxConcurrentSearchRequests(), searchingConfig.getMaxConcurrentSearchRequests(), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(searchingConfig.getMaxQueuedSearchRequests()));
+        executor.allowCoreThreadTimeOut(true);
+        executor.setThreadFactory(new RequestThreadFactory());
+        if (meterRegistry != null) {
+            Gauge.builder("hydra.requests.queued", this, AsyncRequestExecutor::getNumberOfQueuedRequests).description("Searches and downloads waiting for a thread").register(meterRegistry);
+            Gauge.builder("hydra.requests.active", this, AsyncRequestExecutor::getNumberOfActiveRequests).description("Searches and downloads currently being executed").register(meterRegistry);
+            rejectedRequestsCounter = meterRegistry.counter("hydra.requests.rejected");
+        }
+    }
+
+    /**
+     * Executes the given callable using the MDC and session data of the calling thread.
+     *
+     * @throws TooManyRequestsException if too many requests are running or queued
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        //The request attributes of the calling thread are completed when the controller returns. Request scoped beans and the URL
+        //calculation need attributes which are active while the callable is executed
+        RequestAttributes callerAttributes = RequestContextHolder.getRequestAttributes();
+        Runnable runnable = SessionStorage.wrap(() -> {
+            activeRequests.incrementAndGet();
+            ServletRequestAttributes requestAttributes = null;
+            if (callerAttributes instanceof ServletRequestAttributes) {
+                requestAttributes = new ServletRequestAttributes(((ServletRequestAttributes) callerAttributes).getRequest(), ((ServletRequestAttributes) callerAttributes).getResponse());
+                RequestContextHolder.setRequestAttributes(requestAttributes);
+            }
+            try {
+                future.complete(callable.call());
+            } catch (Throwable e) {
+                //Complete with the original exception so that the controllers' exception handlers are used
+                future.completeExceptionally(e);
+            } finally {
+                if (requestAttributes != null) {
+                    requestAttributes.requestCompleted();
+                    RequestContextHolder.resetRequestAttributes();
+                }
+                activeRequests.decrementAndGet();
+            }
+        });
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            if (rejectedRequestsCounter != null) {
+                rejectedRequestsCounter.increment();
+            }
+            logger.warn("Rejected request because too many requests are running or queued ({} active, {} queued)", getNumberOfActiveRequests(), getNumberOfQueuedRequests());
+            throw new TooManyRequestsException("Too many requests are running or queued. Please try again later", RETRY_AFTER_SECONDS);
+        }
+        return future;
+    }
+
+    public int getNumberOfActiveRequests() {
+        return activeRequests.get();
+    }
+
+    public int getNumberOfQueuedRequests() {
+        return executor.getQueue().size();
+    }
+
+    @EventListener
+    public void onShutdown(ShutdownEvent event) {
+        executor.shutdownNow();
+    }
+
+    private static class RequestThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "request-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -130,6 +130,14 @@ public class ErrorHandler {
         return new ResponseEntity<>(bodyOfResponse, new HttpHeaders(), status);
     }
 
+    @ExceptionHandler(TooManyRequestsException.class)
+    @ResponseBody
+    public ResponseEntity<Object> handleTooManyRequests(TooManyRequestsException ex) {
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        return new ResponseEntity<>(ex.getMessage(), httpHeaders, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
     protected String getFormattedEntry(Entry<String, String[]> x) {
         return x.getKey() + "=" + (
                 x.getValue().length == 1
@@ -0,0 +1,72 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.nzbhydra.api.RenderedNewznabResponse;
+import org.nzbhydra.mapping.newznab.NewznabResponse;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Renders newznab responses the way they're written to API clients. Used by the message converter and to render responses once so
+ * they can be cached as bytes.
+ */
+public class NewznabResponseRenderer {
+
+    private final Jaxb2Marshaller marshaller;
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().indentOutput(true).build();
+
+    public NewznabResponseRenderer(Jaxb2Marshaller marshaller) {
+        this.marshaller = marshaller;
+    }
+
+    public byte[] render(NewznabResponse newznabResponse) throws IOException {
+        if (newznabResponse instanceof RenderedNewznabResponse) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ((RenderedNewznabResponse) newznabResponse).writeTo(bos);
+            return bos.toByteArray();
+        }
+        if (newznabResponse.getSearchType() == NewznabResponse.SearchType.JSON) {
+            return objectMapper.writeValueAsBytes(newznabResponse);
+        }
+        return renderXml(newznabResponse);
+    }
+
+    /**
+     * Marshals the response and removes the namespace and search type not needed for its type (newznab or torznab).
+     */
+    public byte[] renderXml(NewznabResponse newznabResponse) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        marshaller.marshal(newznabResponse, new StreamResult(bos));
+        String result;
+        String originalXml = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+        if (newznabResponse.getSearchType() == NewznabResponse.SearchType.TORZNAB) {
+            result = originalXml.replace("xmlns:newznab=\"http://www.newznab.com/DTD/2010/feeds/attributes/\"", "");
+        } else {
+            result = originalXml.replace("xmlns:torznab=\"http://torznab.com/schemas/2015/feed\"", "");
+        }
+        result = result.replace("<searchType>TORZNAB</searchType>", "").replace("<searchType>NEWZNAB</searchType>", "");
+        return result.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
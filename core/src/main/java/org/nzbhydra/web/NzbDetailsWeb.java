@@ -18,6 +18,7 @@ package org.nzbhydra.web;
 
 import com.google.common.base.Strings;
 import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.database.WriteBehindPersister;
 import org.nzbhydra.searching.db.SearchResultRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +39,8 @@ public class NzbDetailsWeb {
     private SearchResultRepository searchResultRepository;
     @Autowired
     private ConfigProvider configProvider;
+    @Autowired
+    private WriteBehindPersister writeBehindPersister;
 
     private static final Logger logger = LoggerFactory.getLogger(NzbDetailsWeb.class);
 
@@ -45,6 +48,7 @@ public class NzbDetailsWeb {
     @RequestMapping(value = "/details/{guid}", method = RequestMethod.GET)
     public RedirectView details(@PathVariable("guid") long guid) {
         RedirectView redirectView = new RedirectView();
+        writeBehindPersister.waitForSearchResult(guid);
         String url = searchResultRepository.findById(guid).get().getDetails();
         Optional<String> derefererOptional = configProvider.getBaseConfig().getMain().getDereferer();
         if (derefererOptional.isPresent() && !Strings.isNullOrEmpty(derefererOptional.get())) {
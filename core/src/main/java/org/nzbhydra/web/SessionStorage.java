@@ -18,5 +18,32 @@ public class SessionStorage {
     public static final ThreadLocal<String> requestUrl =
             ThreadLocal.withInitial(() -> null);
 
+    /**
+     * Returns a runnable which executes the given one with the session data of the calling thread. Used when requests are handled
+     * asynchronously.
+     */
+    public static Runnable wrap(Runnable runnable) {
+        String capturedUsername = username.get();
+        String capturedIp = IP.get();
+        String capturedOriginalIp = originalIp.get();
+        String capturedUserAgent = userAgent.get();
+        String capturedRequestUrl = requestUrl.get();
+        return () -> {
+            username.set(capturedUsername);
+            IP.set(capturedIp);
+            originalIp.set(capturedOriginalIp);
+            userAgent.set(capturedUserAgent);
+            requestUrl.set(capturedRequestUrl);
+            try {
+                runnable.run();
+            } finally {
+                username.remove();
+                IP.remove();
+                originalIp.remove();
+                userAgent.remove();
+                requestUrl.remove();
+            }
+        };
+    }
 
 }
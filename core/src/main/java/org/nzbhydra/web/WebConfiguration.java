@@ -1,6 +1,7 @@
 package org.nzbhydra.web;
 
 import org.nzbhydra.NzbHydra;
+import org.nzbhydra.api.RenderedNewznabResponse;
 import org.nzbhydra.api.stats.HistoryRequestConverter;
 import org.nzbhydra.api.stats.StatsRequestConverter;
 import org.nzbhydra.mapping.newznab.NewznabResponse;
@@ -31,12 +32,9 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandl
 import org.springframework.web.servlet.resource.ResourceUrlProvider;
 
 import javax.xml.bind.Marshaller;
-import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -121,6 +119,11 @@ public class WebConfiguration extends WebMvcConfigurationSupport {
         return marshaller;
     }
 
+    @Bean
+    public NewznabResponseRenderer newznabResponseRenderer() {
+        return new NewznabResponseRenderer(marshaller());
+    }
+
     /**
      * Enable pretty printing of returned JSON
      */
@@ -132,18 +135,18 @@ public class WebConfiguration extends WebMvcConfigurationSupport {
                 jacksonConverter.setPrettyPrint(true);
             }
         }
-        converters.add(0, new NewznabAndTorznabResponseNamespaceFixer(marshaller()));
+        converters.add(0, new NewznabAndTorznabResponseNamespaceFixer(newznabResponseRenderer()));
     }
 
 
     private static class NewznabAndTorznabResponseNamespaceFixer implements HttpMessageConverter<Object> {
 
-        private final Jaxb2Marshaller marshaller;
+        private final NewznabResponseRenderer renderer;
         private MappingJackson2HttpMessageConverter jacksonConverter = new MappingJackson2HttpMessageConverter();
 
 
-        public NewznabAndTorznabResponseNamespaceFixer(Jaxb2Marshaller marshaller) {
-            this.marshaller = marshaller;
+        public NewznabAndTorznabResponseNamespaceFixer(NewznabResponseRenderer renderer) {
+            this.renderer = renderer;
         }
 
         @Override
@@ -171,22 +174,15 @@ public class WebConfiguration extends WebMvcConfigurationSupport {
         public void write(Object o, MediaType contentType, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
             NewznabResponse newznabResponse = (NewznabResponse) o;
             NewznabResponse.SearchType searchType = ((NewznabResponse) o).getSearchType();
-            if (searchType == NewznabResponse.SearchType.JSON) {
+            if (o instanceof RenderedNewznabResponse) {
+                outputMessage.getHeaders().setContentType(searchType == NewznabResponse.SearchType.JSON ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML);
+                ((RenderedNewznabResponse) o).writeTo(outputMessage.getBody());
+            } else if (searchType == NewznabResponse.SearchType.JSON) {
                 jacksonConverter.setPrettyPrint(true);
                 jacksonConverter.write(o, MediaType.APPLICATION_JSON, outputMessage);
             } else {
                 outputMessage.getHeaders().setContentType(MediaType.APPLICATION_XML);
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                marshaller.marshal(newznabResponse, new StreamResult(bos));
-                String result;
-                String originalXml = bos.toString();
-                if (newznabResponse.getSearchType() == NewznabResponse.SearchType.TORZNAB) {
-                    result = originalXml.replace("xmlns:newznab=\"http://www.newznab.com/DTD/2010/feeds/attributes/\"", "");
-                } else {
-                    result = originalXml.replace("xmlns:torznab=\"http://torznab.com/schemas/2015/feed\"", "");
-                }
-                result = result.replace("<searchType>TORZNAB</searchType>", "").replace("<searchType>NEWZNAB</searchType>", "");
-                outputMessage.getBody().write(result.getBytes(StandardCharsets.UTF_8));
+                outputMessage.getBody().write(renderer.renderXml(newznabResponse));
             }
         }
 
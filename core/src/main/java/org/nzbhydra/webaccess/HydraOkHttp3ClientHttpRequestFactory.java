@@ -18,6 +18,8 @@ package org.nzbhydra.webaccess;
 
 import com.google.common.net.InetAddresses;
 import joptsimple.internal.Strings;
+import lombok.AllArgsConstructor;
+import lombok.Data;
 import okhttp3.ConnectionPool;
 import okhttp3.Credentials;
 import okhttp3.OkHttpClient;
@@ -30,6 +32,7 @@ import okhttp3.logging.HttpLoggingInterceptor;
 import org.nzbhydra.config.ConfigChangedEvent;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.MainConfig;
+import org.nzbhydra.config.SearchingConfig;
 import org.nzbhydra.config.downloading.ProxyType;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.slf4j.Logger;
@@ -65,6 +68,7 @@ import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import static org.nzbhydra.webaccess.Ssl.isSameHost;
@@ -83,6 +87,11 @@ public class HydraOkHttp3ClientHttpRequestFactory implements ClientHttpRequestFa
     private Ssl ssl;
 
     private final ConnectionPool connectionPool = new ConnectionPool(10, 5, TimeUnit.MINUTES);
+    /**
+     * All clients are derived from this one so that they share the connection pool and the dispatcher used for asynchronous calls
+     */
+    private final OkHttpClient baseClient = new OkHttpClient.Builder().connectionPool(connectionPool).build();
+    private final Map<ClientKey, OkHttpClient> clientCache = new ConcurrentHashMap<>();
     private HttpLoggingInterceptor httpLoggingInterceptor;
     private SocketFactory sockProxySocketFactory;
 
@@ -90,12 +99,16 @@ public class HydraOkHttp3ClientHttpRequestFactory implements ClientHttpRequestFa
     public void init() {
         MainConfig mainConfig = configProvider.getBaseConfig().getMain();
         sockProxySocketFactory = new SockProxySocketFactory(mainConfig.getProxyHost(), mainConfig.getProxyPort(), mainConfig.getProxyUsername(), mainConfig.getProxyPassword());
+        SearchingConfig searchingConfig = configProvider.getBaseConfig().getSearching();
+        baseClient.dispatcher().setMaxRequests(searchingConfig.getMaxConcurrentIndexerCalls());
+        baseClient.dispatcher().setMaxRequestsPerHost(searchingConfig.getMaxConcurrentCallsPerIndexer());
     }
 
     @EventListener
     public void handleConfigChangedEvent(ConfigChangedEvent event) {
         MainConfig mainConfig = event.getNewConfig().getMain();
         sockProxySocketFactory = new SockProxySocketFactory(mainConfig.getProxyHost(), mainConfig.getProxyPort(), mainConfig.getProxyUsername(), mainConfig.getProxyPassword());
+        clientCache.clear();
     }
 
 
@@ -133,18 +146,27 @@ public class HydraOkHttp3ClientHttpRequestFactory implements ClientHttpRequestFa
         return (StringUtils.hasText(rawContentType) ? okhttp3.MediaType.parse(rawContentType) : null);
     }
 
+    /**
+     * Returns a client for the given URI using the given timeout for connecting, reading and writing. The whole call may not take longer than
+     * one second more than the timeout. Clients are cached by their proxy and SSL settings so that no new client needs to be built for every call.
+     */
+    public OkHttpClient getOkHttpClient(URI requestUri, int timeoutInSeconds) {
+        ClientKey clientKey = new ClientKey(ssl.getVerificationStateForHost(requestUri.getHost()), isProxyUsed(requestUri), timeoutInSeconds, isHttpLoggingEnabled());
+        return clientCache.computeIfAbsent(clientKey, x -> getOkHttpClientBuilder(requestUri)
+                .connectTimeout(timeoutInSeconds, TimeUnit.SECONDS)
+                .readTimeout(timeoutInSeconds, TimeUnit.SECONDS)
+                .writeTimeout(timeoutInSeconds, TimeUnit.SECONDS)
+                .callTimeout(timeoutInSeconds + 1, TimeUnit.SECONDS)
+                .build());
+    }
+
     public Builder getOkHttpClientBuilder(URI requestUri) {
         Builder builder = getBaseBuilder();
 
         configureBuilderForSsl(requestUri, builder);
 
         MainConfig main = configProvider.getBaseConfig().getMain();
-        if (main.getProxyType() == ProxyType.NONE) {
-            return builder;
-        }
-
-        if (isUriToBeIgnoredByProxy(requestUri.getHost())) {
-            logger.debug("Not using proxy for request to {}", requestUri.getHost());
+        if (!isProxyUsed(requestUri)) {
             return builder;
         }
 
@@ -183,9 +205,24 @@ public class HydraOkHttp3ClientHttpRequestFactory implements ClientHttpRequestFa
         }
     }
 
+    private boolean isProxyUsed(URI requestUri) {
+        if (configProvider.getBaseConfig().getMain().getProxyType() == ProxyType.NONE) {
+            return false;
+        }
+        if (isUriToBeIgnoredByProxy(requestUri.getHost())) {
+            logger.debug("Not using proxy for request to {}", requestUri.getHost());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isHttpLoggingEnabled() {
+        return configProvider.getBaseConfig().getMain().getLogging().getMarkersToLog().contains(LoggingMarkers.HTTP.getName());
+    }
+
     protected Builder getBaseBuilder() {
-        Builder builder = new OkHttpClient().newBuilder().connectionPool(connectionPool).readTimeout(timeout, TimeUnit.SECONDS);
-        if (configProvider.getBaseConfig().getMain().getLogging().getMarkersToLog().contains(LoggingMarkers.HTTP.getName())) {
+        Builder builder = baseClient.newBuilder().readTimeout(timeout, TimeUnit.SECONDS);
+        if (isHttpLoggingEnabled()) {
             try {
                 if (httpLoggingInterceptor == null) {
                     HttpLoggingInterceptor.Logger httpLogger = message -> logger.debug(LoggingMarkers.HTTP, message);
@@ -254,6 +291,15 @@ public class HydraOkHttp3ClientHttpRequestFactory implements ClientHttpRequestFa
     }
 
 
+    @Data
+    @AllArgsConstructor
+    private static class ClientKey {
+        private Ssl.SslVerificationState sslVerificationState;
+        private boolean proxyUsed;
+        private int timeoutInSeconds;
+        private boolean httpLoggingEnabled;
+    }
+
     public static class SockProxySocketFactory extends SocketFactory {
 
         protected String host;
@@ -2,6 +2,8 @@ package org.nzbhydra.webaccess;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.base.Stopwatch;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Request.Builder;
@@ -11,8 +13,10 @@ import okio.BufferedSink;
 import okio.Okio;
 import org.nzbhydra.Jackson;
 import org.nzbhydra.logging.LoggingMarkers;
+import org.nzbhydra.logging.MdcThreadPoolExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -22,6 +26,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("ConstantConditions")
@@ -44,23 +49,58 @@ public class WebAccess {
     }
 
     public String callUrl(String url, Map<String, String> headers, int timeout) throws IOException {
+        Request request = buildRequest(url, headers);
+        OkHttpClient client = requestFactory.getOkHttpClient(request.url().uri(), timeout);
+        try (Response response = client.newCall(request).execute()) {
+            return getBodyAsString(url, response);
+        }
+    }
+
+    /**
+     * Calls the URL without blocking the calling thread. The response is read by OkHttp's dispatcher threads and the returned future is
+     * completed with the response body or an IOException. The timeout is enforced by the client.
+     */
+    public CompletableFuture<String> callUrlAsync(String url, Map<String, String> headers, int timeout) {
+        Request request = buildRequest(url, headers);
+        OkHttpClient client = requestFactory.getOkHttpClient(request.url().uri(), timeout);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                MdcThreadPoolExecutor.wrap(() -> {
+                    try (Response closeableResponse = response) {
+                        future.complete(getBodyAsString(url, closeableResponse));
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                }, mdcContext).run();
+            }
+        });
+        return future;
+    }
+
+    private Request buildRequest(String url, Map<String, String> headers) {
         Builder builder = new Builder().url(url);
         for (Entry<String, String> entry : headers.entrySet()) {
             builder.addHeader(entry.getKey(), entry.getValue());
         }
+        return builder.build();
+    }
 
-        Request request = builder.build();
-
-        OkHttpClient client = requestFactory.getOkHttpClientBuilder(request.url().uri()).readTimeout(timeout, TimeUnit.SECONDS).connectTimeout(timeout, TimeUnit.SECONDS).writeTimeout(timeout, TimeUnit.SECONDS).build();
-        String bodyAsString;
-        try (Response response = client.newCall(request).execute(); ResponseBody body = response.body()) {
+    private String getBodyAsString(String url, Response response) throws IOException {
+        try (ResponseBody body = response.body()) {
             if (!response.isSuccessful()) {
                 String error = String.format("URL call to %s returned %d: %s", url, response.code(), response.message());
                 logger.error(error + body == null ? "" : ("\n" + body.string()));
                 throw new IOException(error);
             }
-            bodyAsString = body.string();
-            return bodyAsString;
+            return body.string();
         }
     }
 
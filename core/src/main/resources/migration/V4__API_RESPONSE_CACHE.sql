@@ -0,0 +1,8 @@
+CREATE TABLE APIRESPONSECACHE
+(
+    CACHE_KEY    VARCHAR             PRIMARY KEY NOT NULL,
+    CONTENT_TYPE VARCHAR(255)        NOT NULL,
+    LAST_UPDATE  TIMESTAMP           NOT NULL,
+    BODY         BLOB                NOT NULL
+);
+CREATE INDEX APIRESPONSECACHE_LAST_UPDATE ON APIRESPONSECACHE (LAST_UPDATE);
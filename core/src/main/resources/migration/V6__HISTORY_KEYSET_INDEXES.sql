@@ -0,0 +1,2 @@
+CREATE INDEX SEARCH_TIME_ID_INDEX ON SEARCH (TIME DESC, ID DESC);
+CREATE INDEX INDEXERNZBDOWNLOAD_TIME_ID_INDEX ON INDEXERNZBDOWNLOAD (TIME DESC, ID DESC);
@@ -0,0 +1,66 @@
+CREATE TABLE STATS_ACTIVITY_HOURLY
+(
+  HOUR_START      TIMESTAMP     NOT NULL,
+  ACTIVITY        VARCHAR(20)   NOT NULL,
+  DIMENSION       VARCHAR(20)   NOT NULL,
+  DIMENSION_VALUE VARCHAR(4000) NOT NULL,
+  ACCESS_COUNT    BIGINT        NOT NULL,
+  PRIMARY KEY (HOUR_START, ACTIVITY, DIMENSION, DIMENSION_VALUE)
+);
+CREATE INDEX STATS_ACTIVITY_HOURLY_DIMENSION_INDEX ON STATS_ACTIVITY_HOURLY (ACTIVITY, DIMENSION, HOUR_START);
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', TIME), 'SEARCH', 'TOTAL', '', COUNT(*)
+FROM SEARCH
+WHERE TIME IS NOT NULL
+GROUP BY DATE_TRUNC('HOUR', TIME);
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', TIME), 'SEARCH', 'USERNAME', USERNAME, COUNT(*)
+FROM SEARCH
+WHERE TIME IS NOT NULL AND USERNAME IS NOT NULL AND USERNAME != ''
+GROUP BY DATE_TRUNC('HOUR', TIME), USERNAME;
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', TIME), 'SEARCH', 'IP', IP, COUNT(*)
+FROM SEARCH
+WHERE TIME IS NOT NULL AND IP IS NOT NULL AND IP != ''
+GROUP BY DATE_TRUNC('HOUR', TIME), IP;
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', TIME), 'SEARCH', 'USER_AGENT', USER_AGENT, COUNT(*)
+FROM SEARCH
+WHERE TIME IS NOT NULL AND USER_AGENT IS NOT NULL AND USER_AGENT != '' AND SOURCE = 'API'
+GROUP BY DATE_TRUNC('HOUR', TIME), USER_AGENT;
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', TIME), 'DOWNLOAD', 'TOTAL', '', COUNT(*)
+FROM INDEXERNZBDOWNLOAD
+WHERE TIME IS NOT NULL
+GROUP BY DATE_TRUNC('HOUR', TIME);
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', DL.TIME), 'DOWNLOAD', 'INDEXER', INDEXER.NAME, COUNT(*)
+FROM INDEXERNZBDOWNLOAD DL
+  JOIN SEARCHRESULT ON DL.SEARCH_RESULT_ID = SEARCHRESULT.ID
+  JOIN INDEXER ON SEARCHRESULT.INDEXER_ID = INDEXER.ID
+WHERE DL.TIME IS NOT NULL
+GROUP BY DATE_TRUNC('HOUR', DL.TIME), INDEXER.NAME;
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', TIME), 'DOWNLOAD', 'USERNAME', USERNAME, COUNT(*)
+FROM INDEXERNZBDOWNLOAD
+WHERE TIME IS NOT NULL AND USERNAME IS NOT NULL AND USERNAME != ''
+GROUP BY DATE_TRUNC('HOUR', TIME), USERNAME;
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', TIME), 'DOWNLOAD', 'IP', IP, COUNT(*)
+FROM INDEXERNZBDOWNLOAD
+WHERE TIME IS NOT NULL AND IP IS NOT NULL AND IP != ''
+GROUP BY DATE_TRUNC('HOUR', TIME), IP;
+
+INSERT INTO STATS_ACTIVITY_HOURLY
+SELECT DATE_TRUNC('HOUR', TIME), 'DOWNLOAD', 'USER_AGENT', USER_AGENT, COUNT(*)
+FROM INDEXERNZBDOWNLOAD
+WHERE TIME IS NOT NULL AND USER_AGENT IS NOT NULL AND USER_AGENT != '' AND ACCESS_SOURCE = 'API'
+GROUP BY DATE_TRUNC('HOUR', TIME), USER_AGENT;
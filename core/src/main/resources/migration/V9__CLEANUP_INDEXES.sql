@@ -0,0 +1,2 @@
+CREATE INDEX SEARCHRESULT_FIRST_FOUND_ID_INDEX ON SEARCHRESULT (FIRST_FOUND, ID);
+CREATE INDEX INDEXERAPIACCESS_SHORT_TIME_INDEX ON INDEXERAPIACCESS_SHORT (TIME);
@@ -3823,6 +3823,19 @@ function getIndexerBoxFields(indexerModel, parentModel, isInitial, CategoriesSer
                 }
             }
         );
+        if (indexerModel.searchModuleType === 'NEWZNAB') {
+            fieldset.push(
+                {
+                    key: 'jsonSupported',
+                    type: 'horizontalSwitch',
+                    templateOptions: {
+                        type: 'switch',
+                        label: 'Use JSON',
+                        help: 'Request search results as JSON which is usually smaller and faster to parse. Determined by the caps check. NZBHydra will switch back to XML if the indexer returns invalid JSON.'
+                    }
+                }
+            );
+        }
         fieldset.push(
             {
                 type: 'horizontalCheckCaps',
@@ -5051,6 +5064,7 @@ angular
             model.categoryMapping = indexerConfig.categoryMapping;
             model.configComplete = indexerConfig.configComplete;
             model.allCapsChecked = indexerConfig.allCapsChecked;
+            model.jsonSupported = indexerConfig.jsonSupported;
             model.hitLimit = indexerConfig.hitLimit;
             model.downloadLimit = indexerConfig.downloadLimit;
             model.state = indexerConfig.state;
@@ -6056,6 +6070,28 @@ function ConfigFields($injector) {
                                 }
                             }
                         },
+                        {
+                            key: 'adaptiveTimeouts',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Adaptive timeouts',
+                                help: 'Use shorter timeouts for indexers which usually respond quickly. The timeout is derived from the indexer\'s recent response times but never longer than the timeout above.'
+                            }
+                        },
+                        {
+                            key: 'searchDeadlineSeconds',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Search deadline',
+                                help: 'When set searches return the results found within this time instead of waiting for slow indexers. Indexers which have not responded yet keep running and their results are shown when more results are loaded.',
+                                min: 1,
+                                addonRight: {
+                                    text: 'seconds'
+                                }
+                            }
+                        },
                         {
                             key: 'userAgent',
                             type: 'horizontalInput',
@@ -6093,6 +6129,65 @@ function ConfigFields($injector) {
                                 label: 'Ignore temporary errors',
                                 tooltip: "By default if access to an indexer fails the indexer is disabled for a certain amount of time (for a short while first, then increasingly longer if the problems persist). Disable this and always try these indexers."
                             }
+                        },
+                        {
+                            key: 'maxConcurrentIndexerCalls',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max concurrent indexer calls',
+                                help: 'Number of indexer calls executed at the same time by all searches combined. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'maxConcurrentCallsPerIndexer',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max concurrent calls per indexer',
+                                help: 'Number of calls executed at the same time for any one indexer. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'maxQueuedIndexerCalls',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max queued indexer calls',
+                                help: 'Indexer calls exceeding this number while all others are busy will be rejected. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'maxConcurrentSearchRequests',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max concurrent searches',
+                                help: 'Number of API and web searches and API NZB downloads executed at the same time. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'maxQueuedSearchRequests',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max queued searches',
+                                help: 'Searches and downloads exceeding this number while all others are busy will be rejected with HTTP status 429 so the calling tool can retry later. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'useVirtualThreadsForIndexerCalls',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Use virtual threads',
+                                help: 'Execute indexer calls using virtual threads. Only has an effect when running with a java version supporting them. Requires restart.'
+                            }
                         }
                     ]
                 }, {
@@ -6685,6 +6780,19 @@ function ConfigFields($injector) {
                                 tooltip: 'Found results are stored in the database for this long until they\'re deleted. After that any links to Hydra results still stored elsewhere become invalid. You can increase the limit if you want, the disc space needed is negligible (about 75 MB for 7 days on my server).'
                             }
                         },
+                        {
+                            key: 'searchCacheSizeMb',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Search cache size',
+                                help: 'Memory used to keep the results of recent searches so that further pages can be loaded without searching again.',
+                                min: 1,
+                                addonRight: {
+                                    text: 'MB'
+                                }
+                            }
+                        },
                         {
                             key: 'globalCacheTimeMinutes',
                             type: 'horizontalInput',
@@ -8369,6 +8477,7 @@ function SearchService($http) {
     var lastExecutedQuery;
     var lastExecutedSearchRequestParameters;
     var lastResults;
+    var loadedResults = [];
     var modalInstance;
 
     return {
@@ -8376,6 +8485,8 @@ function SearchService($http) {
         getLastResults: getLastResults,
         loadMore: loadMore,
         getSearchState: getSearchState,
+        openSearchEvents: openSearchEvents,
+        getLoadedResults: getLoadedResults,
         getModalInstance: getModalInstance,
         setModalInstance: setModalInstance,
     };
@@ -8435,6 +8546,27 @@ function SearchService($http) {
         return $http.get("internalapi/search/state", {params: {searchrequestid: searchRequestId}});
     }
 
+    //Returns an event source to which the search state and the results of each indexer are pushed while searching. Returns undefined if the browser doesn't support server-sent events
+    function openSearchEvents(searchRequestId, onSearchState) {
+        if (typeof EventSource === "undefined") {
+            return undefined;
+        }
+        loadedResults = [];
+        var eventSource = new EventSource("internalapi/search/events?searchrequestid=" + searchRequestId);
+        eventSource.addEventListener("state", function (event) {
+            onSearchState(JSON.parse(event.data));
+        });
+        eventSource.addEventListener("results", function (event) {
+            loadedResults.push.apply(loadedResults, JSON.parse(event.data).searchResults);
+        });
+        return eventSource;
+    }
+
+    //Returns the results pushed by the server for the current search before it was finished
+    function getLoadedResults() {
+        return loadedResults;
+    }
+
     function processData(response) {
         var searchResults = response.data.searchResults;
         var indexerSearchMetaDatas = response.data.indexerSearchMetaDatas;
@@ -10091,49 +10223,74 @@ angular
 function SearchUpdateModalInstanceCtrl($scope, $interval, SearchService, $uibModalInstance, searchRequestId, onCancel) {
 
     var updateSearchMessagesInterval = undefined;
+    var searchEvents = undefined;
     var loggedSearchFinished = false;
     $scope.messages = [];
     $scope.indexerSelectionFinished = false;
     $scope.indexersSelected = 0;
     $scope.indexersFinished = 0;
+    $scope.numberOfLoadedResults = 0;
 
-    updateSearchMessagesInterval = $interval(function () {
-        SearchService.getSearchState(searchRequestId).then(function (response) {
-                $scope.indexerSelectionFinished = response.data.indexerSelectionFinished;
-                $scope.searchFinished = response.data.searchFinished;
-                $scope.indexersSelected = response.data.indexersSelected;
-                $scope.indexersFinished = response.data.indexersFinished;
-                $scope.progressMax = response.data.indexersSelected;
-                if ($scope.progressMax > response.data.indexersSelected) {
-                    $scope.progressMax = ">=" + response.data.indexersSelected;
-                }
-                if (response.data.messages) {
-                    $scope.messages = response.data.messages;
-                }
-                if ($scope.searchFinished && !loggedSearchFinished) {
-                    $scope.messages.push("Finished searching. Preparing results...");
-                    loggedSearchFinished = true;
-                }
-            },
-            function () {
-                $interval.cancel(updateSearchMessagesInterval);
-            }
-        );
-    }, 100);
+    function updateSearchState(searchState) {
+        $scope.indexerSelectionFinished = searchState.indexerSelectionFinished;
+        $scope.searchFinished = searchState.searchFinished;
+        $scope.indexersSelected = searchState.indexersSelected;
+        $scope.indexersFinished = searchState.indexersFinished;
+        $scope.numberOfLoadedResults = searchState.numberOfLoadedResults;
+        $scope.progressMax = searchState.indexersSelected;
+        if ($scope.progressMax > searchState.indexersSelected) {
+            $scope.progressMax = ">=" + searchState.indexersSelected;
+        }
+        if (searchState.messages) {
+            $scope.messages = searchState.messages;
+        }
+        if ($scope.searchFinished && !loggedSearchFinished) {
+            $scope.messages.push("Finished searching. Preparing results...");
+            loggedSearchFinished = true;
+        }
+    }
 
-    $scope.cancelSearch = function () {
+    function stopUpdates() {
         if (angular.isDefined(updateSearchMessagesInterval)) {
             $interval.cancel(updateSearchMessagesInterval);
         }
+        if (angular.isDefined(searchEvents)) {
+            searchEvents.close();
+        }
+    }
+
+    //The search state is pushed by the server. Only if the browser doesn't support that it's polled
+    searchEvents = SearchService.openSearchEvents(searchRequestId, function (searchState) {
+        $scope.$applyAsync(function () {
+            updateSearchState(searchState);
+        });
+        if (searchState.searchFinished) {
+            //Otherwise the browser would reconnect
+            searchEvents.close();
+        }
+    });
+
+    if (angular.isUndefined(searchEvents)) {
+        updateSearchMessagesInterval = $interval(function () {
+            SearchService.getSearchState(searchRequestId).then(function (response) {
+                    updateSearchState(response.data);
+                },
+                function () {
+                    $interval.cancel(updateSearchMessagesInterval);
+                }
+            );
+        }, 100);
+    }
+
+    $scope.cancelSearch = function () {
+        stopUpdates();
         onCancel();
         $uibModalInstance.dismiss();
     };
 
 
     $scope.$on('$destroy', function () {
-        if (angular.isDefined(updateSearchMessagesInterval)) {
-            $interval.cancel(updateSearchMessagesInterval);
-        }
+        stopUpdates();
     });
 }
 
@@ -1,5 +1,7 @@
 package org.nzbhydra.api;
 
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -10,11 +12,13 @@ import org.mockito.stubbing.Answer;
 import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.MainConfig;
+import org.nzbhydra.config.SearchingConfig;
 import org.nzbhydra.config.indexer.IndexerConfig;
 import org.nzbhydra.downloading.FileHandler;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.mapping.newznab.ActionAttribute;
 import org.nzbhydra.mapping.newznab.NewznabParameters;
+import org.nzbhydra.mapping.newznab.NewznabResponse;
 import org.nzbhydra.mapping.newznab.OutputType;
 import org.nzbhydra.mapping.newznab.json.NewznabJsonRoot;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
@@ -26,18 +30,36 @@ import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.nzbhydra.searching.searchrequests.SearchRequestFactory;
+import org.nzbhydra.web.AsyncRequestExecutor;
+import org.nzbhydra.web.NewznabResponseRenderer;
+import org.nzbhydra.web.WebConfiguration;
+import org.springframework.boot.convert.ApplicationConversionService;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.xml.transform.stream.StreamResult;
+import java.sql.Connection;
+import java.sql.Statement;
 import java.time.Clock;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
 public class ExternalApiTest {
@@ -70,10 +92,11 @@ public class ExternalApiTest {
     @Mock
     private Jaxb2Marshaller jaxb2MarshallerMock;
     IndexerConfig indexerConfig = new IndexerConfig();
+    private JdbcDataSource dataSource;
 
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
         when(configProvider.getBaseConfig()).thenReturn(baseConfig);
         baseConfig.setMain(new MainConfig());
@@ -97,7 +120,30 @@ public class ExternalApiTest {
         }).when(jaxb2MarshallerMock).marshal(any(), any());
         when(indexerMock.getConfig()).thenReturn(indexerConfig);
 
-        when(newznabXmlTransformerMock.getRssRoot(any(), anyInt(), anyInt(), any())).thenReturn(new NewznabXmlRoot());
+        when(newznabXmlTransformerMock.getRenderedRssRoot(any(), anyInt(), anyInt(), any())).thenReturn(new RenderedNewznabResponse(new NewznabXmlRoot(), Collections.emptyList()));
+
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:apiresponsecache;DB_CLOSE_DELAY=-1");
+        execute("RUNSCRIPT FROM 'classpath:migration/V4__API_RESPONSE_CACHE.sql'");
+        testee.apiResponseCache = createApiResponseCache();
+        testee.newznabResponseRenderer = new NewznabResponseRenderer(new WebConfiguration().marshaller());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        execute("DROP ALL OBJECTS");
+    }
+
+    private void execute(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private ApiResponseCache createApiResponseCache() {
+        ApiResponseCache apiResponseCache = new ApiResponseCache();
+        apiResponseCache.dataSource = dataSource;
+        return apiResponseCache;
     }
 
     @Test
@@ -108,10 +154,10 @@ public class ExternalApiTest {
         parameters.setT(ActionAttribute.SEARCH);
         parameters.setCachetime(5);
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher).search(any());
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher, times(1)).search(any());
     }
 
@@ -123,73 +169,113 @@ public class ExternalApiTest {
         parameters.setT(ActionAttribute.SEARCH);
         parameters.setCachetime(5);
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher).search(any());
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher, times(1)).search(any());
 
         testee.clock = Clock.fixed(testee.clock.instant().plus(6, ChronoUnit.MINUTES), ZoneId.of("UTC"));
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher, times(2)).search(any());
     }
 
     @Test
-    public void shouldCacheRemoveEntriesWhenLimitReached() throws Exception {
+    public void shouldKeepCachedResponseAfterRestart() throws Exception {
         NewznabParameters parameters = getNewznabParameters("q1");
 
-        testee.api(parameters);
+        ResponseEntity<?> responseEntity = testee.handleApiRequest(parameters);
         verify(searcher).search(any());
+        assertThat(responseEntity.getHeaders().getETag()).isNotNull();
 
-        testee.api(parameters);
+        //Cache with empty memory, only the database is kept
+        testee.apiResponseCache = createApiResponseCache();
+        ResponseEntity<?> cachedResponseEntity = testee.handleApiRequest(parameters);
         verify(searcher, times(1)).search(any());
+        assertThat(cachedResponseEntity.getHeaders().getETag()).isEqualTo(responseEntity.getHeaders().getETag());
+        assertThat((byte[]) cachedResponseEntity.getBody()).isEqualTo(responseEntity.getBody());
+        assertThat(cachedResponseEntity.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_XML);
 
-        parameters.setQ("q2");
-        testee.api(getNewznabParameters("q2"));
+        testee.handleApiRequest(getNewznabParameters("q2"));
         verify(searcher, times(2)).search(any());
-        parameters.setQ("q3");
-        testee.api(getNewznabParameters("q3"));
-        verify(searcher, times(3)).search(any());
-        parameters.setQ("q4");
-        testee.api(getNewznabParameters("q4"));
-        verify(searcher, times(4)).search(any());
-        parameters.setQ("q5");
-        testee.api(getNewznabParameters("q5"));
-        verify(searcher, times(5)).search(any());
-
-        //q1 is still cached
-        testee.api(getNewznabParameters("q1"));
-        verify(searcher, times(5)).search(any());
-
-        //now q1 is removed as oldest entry
-        testee.api(getNewznabParameters("q6"));
-        verify(searcher, times(6)).search(any());
-        //Not cached anymore, will do another search
-        testee.api(getNewznabParameters("q1"));
-        verify(searcher, times(7)).search(any());
     }
 
     @Test
     public void shouldUseCorrectHeaders() throws Exception {
         NewznabJsonRoot jsonRoot = new NewznabJsonRoot();
-        when(newznabJsonTransformerMock.transformToRoot(any(), any(), anyInt(), any())).thenReturn(jsonRoot);
+        when(newznabJsonTransformerMock.transformToRenderedRoot(any(), any(), anyInt(), any())).thenReturn(new RenderedNewznabResponse(jsonRoot, Collections.emptyList()));
         NewznabParameters parameters = new NewznabParameters();
         parameters.setQ("q1");
         parameters.setApikey("apikey");
         parameters.setT(ActionAttribute.SEARCH);
         parameters.setO(OutputType.JSON);
 
-        ResponseEntity<?> responseEntity = testee.api(parameters);
+        ResponseEntity<?> responseEntity = testee.handleApiRequest(parameters);
         assertThat(responseEntity.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON_UTF8);
 
         NewznabXmlRoot xmlRoot = new NewznabXmlRoot();
-        when(newznabXmlTransformerMock.getRssRoot(any(), any(), anyInt(), any())).thenReturn(xmlRoot);
+        when(newznabXmlTransformerMock.getRenderedRssRoot(any(), any(), anyInt(), any())).thenReturn(new RenderedNewznabResponse(xmlRoot, Collections.emptyList()));
 
         parameters.setO(OutputType.XML);
-        responseEntity = testee.api(parameters);
+        responseEntity = testee.handleApiRequest(parameters);
         assertThat(responseEntity.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_XML);
     }
 
+    @Test
+    public void shouldExecuteSearchAsynchronouslyWithRequestContext() throws Exception {
+        AsyncRequestExecutor asyncRequestExecutor = new AsyncRequestExecutor();
+        asyncRequestExecutor.initialize(new SearchingConfig());
+        testee.asyncRequestExecutor = asyncRequestExecutor;
+        AtomicReference<String> requestUriInSearch = new AtomicReference<>();
+        when(searcher.search(any())).thenAnswer(x -> {
+            //Like request scoped beans and the URL calculation
+            RequestContextHolder.currentRequestAttributes().setAttribute("attribute", "value", RequestAttributes.SCOPE_REQUEST);
+            requestUriInSearch.set(((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest().getRequestURI());
+            return searchResult;
+        });
+        //Same lenient conversion of the action attribute as in the application
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(testee).setConversionService(new ApplicationConversionService()).build();
+
+        try {
+            MvcResult mvcResult = mockMvc.perform(get("/api").param("t", "search").param("q", "q").param("apikey", "apikey").param("cachetime", "5"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isOk());
+        } finally {
+            asyncRequestExecutor.onShutdown(null);
+        }
+
+        verify(searcher).search(any());
+        assertThat(requestUriInSearch.get()).isEqualTo("/api");
+    }
+
+    @Test
+    public void shouldNotReturnCachedResponseOfParametersWithSameHash() throws Exception {
+        NewznabParameters parameters1 = getNewznabParameters("Aa");
+        NewznabParameters parameters2 = getNewznabParameters("BB");
+        assertThat(parameters1.cacheKey(NewznabResponse.SearchType.NEWZNAB)).isEqualTo(parameters2.cacheKey(NewznabResponse.SearchType.NEWZNAB));
+
+        testee.handleApiRequest(parameters1);
+        verify(searcher).search(any());
+
+        //Only the database is kept
+        testee.apiResponseCache = createApiResponseCache();
+        testee.handleApiRequest(parameters2);
+        verify(searcher, times(2)).search(any());
+    }
+
+    @Test
+    public void shouldNotReturnCachedResponseOfParametersWithDifferentFilters() throws Exception {
+        NewznabParameters parameters1 = getNewznabParameters("q");
+        NewznabParameters parameters2 = getNewznabParameters("q");
+        parameters2.setMinsize(100);
+
+        testee.handleApiRequest(parameters1);
+        verify(searcher).search(any());
+
+        testee.handleApiRequest(parameters2);
+        verify(searcher, times(2)).search(any());
+    }
 
     protected NewznabParameters getNewznabParameters(String q1) {
         NewznabParameters parameters = new NewznabParameters();
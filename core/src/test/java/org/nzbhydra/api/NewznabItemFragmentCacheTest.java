@@ -0,0 +1,26 @@
+package org.nzbhydra.api;
+
+import org.junit.Test;
+import org.nzbhydra.api.NewznabItemFragmentCache.Format;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NewznabItemFragmentCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final NewznabItemFragmentCache testee = new NewznabItemFragmentCache(nanos::get);
+
+    @Test
+    public void shouldRenderItemsAgainAfterExpiration() {
+        assertThat(testee.get(1L, Format.NEWZNAB_XML, "link", () -> "grabs1".getBytes())).isEqualTo("grabs1".getBytes());
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(4));
+        assertThat(testee.get(1L, Format.NEWZNAB_XML, "link", () -> "grabs2".getBytes())).isEqualTo("grabs1".getBytes());
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertThat(testee.get(1L, Format.NEWZNAB_XML, "link", () -> "grabs2".getBytes())).isEqualTo("grabs2".getBytes());
+    }
+
+}
@@ -36,6 +36,8 @@ import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 
+import java.util.Collections;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.when;
 
@@ -69,6 +71,7 @@ public class NewznabXmlTransformerTest {
 
         when(indexerMock.getConfig()).thenReturn(indexerConfig);
         indexerConfig.setHost("http://127.0.0.1");
+        testee.fragmentCache = new NewznabItemFragmentCache();
     }
 
     @InjectMocks
@@ -92,4 +95,28 @@ public class NewznabXmlTransformerTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldRenderItemsOnlyOnce() throws Exception {
+        SearchRequest searchRequest = new SearchRequest(SearchSource.API, SearchType.SEARCH, 0, 100);
+        searchRequest.setDownloadType(DownloadType.NZB);
+        SearchResultItem searchResultItem = new SearchResultItem();
+        searchResultItem.setIndexer(indexerMock);
+        searchResultItem.setCategory(new Category());
+        searchResultItem.setSearchResultId(123L);
+        searchResultItem.setTitle("title");
+
+        RenderedNewznabResponse response = testee.getRenderedRssRoot(Collections.singletonList(searchResultItem), 0, 1, searchRequest);
+        assertThat(response.getItemFragments()).hasSize(1);
+        assertThat(response.toXmlString()).contains("<title>title</title>");
+
+        searchResultItem.setTitle("changed");
+        response = testee.getRenderedRssRoot(Collections.singletonList(searchResultItem), 0, 1, searchRequest);
+        assertThat(response.toXmlString()).contains("<title>title</title>");
+        assertThat(testee.fragmentCache.getStats().hitCount()).isEqualTo(1);
+
+        testee.fragmentCache.handleNewConfig(null);
+        response = testee.getRenderedRssRoot(Collections.singletonList(searchResultItem), 0, 1, searchRequest);
+        assertThat(response.toXmlString()).contains("<title>changed</title>");
+    }
+
+}
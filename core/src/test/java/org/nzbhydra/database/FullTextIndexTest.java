@@ -0,0 +1,77 @@
+package org.nzbhydra.database;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FullTextIndexTest {
+
+    private FullTextIndex testee = new FullTextIndex();
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        //The full text settings are cached per database so every test needs its own
+        dataSource.setURL("jdbc:h2:mem:fulltext" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        connection = dataSource.getConnection();
+        execute("CREATE TABLE SEARCHRESULT (ID BIGINT PRIMARY KEY, TITLE VARCHAR(1000))");
+        execute("CREATE TABLE SEARCH (ID INTEGER PRIMARY KEY, QUERY VARCHAR(1000))");
+        execute("INSERT INTO SEARCH VALUES (1, 'Some.Movie.2020')");
+        testee.dataSource = dataSource;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        execute("SHUTDOWN");
+        connection.close();
+    }
+
+    @Test
+    public void shouldFallBackWithoutIndex() {
+        assertThat(testee.isIndexed(FullTextIndex.SEARCH)).isFalse();
+        //Can't be queried without the index
+        assertThat(testee.hasMatches(FullTextIndex.SEARCH, "movie")).isFalse();
+    }
+
+    @Test
+    public void shouldFindRowsAddedBeforeAndAfterCreatingIndex() throws Exception {
+        createIndex();
+        execute("INSERT INTO SEARCH VALUES (2, 'another show')");
+
+        assertThat(testee.isIndexed(FullTextIndex.SEARCH)).isTrue();
+        assertThat(testee.isIndexed("SEARCHRESULT")).isFalse();
+        assertThat(testee.hasMatches(FullTextIndex.SEARCH, "some movie")).isTrue();
+        assertThat(testee.hasMatches(FullTextIndex.SEARCH, "Another Show")).isTrue();
+        assertThat(testee.hasMatches(FullTextIndex.SEARCH, "mov")).isFalse();
+
+        execute("DELETE FROM SEARCH WHERE ID = 1");
+        assertThat(testee.hasMatches(FullTextIndex.SEARCH, "some movie")).isFalse();
+    }
+
+    private void createIndex() throws Exception {
+        String migration = Resources.toString(Resources.getResource("migration/V5__FULLTEXT_INDEX.sql"), Charsets.UTF_8);
+        for (String sql : Arrays.asList(migration.split(";"))) {
+            if (!sql.trim().isEmpty()) {
+                execute(sql);
+            }
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+package org.nzbhydra.database;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.ShutdownEvent;
+import org.nzbhydra.indexers.IndexerApiAccessEntityShort;
+import org.nzbhydra.indexers.IndexerApiAccessType;
+import org.nzbhydra.indexers.IndexerEntity;
+import org.nzbhydra.indexers.IndexerSearchEntity;
+import org.nzbhydra.indexers.status.IndexerHitCounter;
+import org.nzbhydra.searching.SearchResultIdCalculator;
+import org.nzbhydra.searching.db.SearchResultEntity;
+import org.nzbhydra.searching.db.SearchResultIdCache;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem.DownloadType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WriteBehindPersisterTest {
+
+    private WriteBehindPersister testee = new WriteBehindPersister();
+    private SearchResultIdCache searchResultIdCache = new SearchResultIdCache();
+    private IndexerHitCounter indexerHitCounter = new IndexerHitCounter();
+    private IndexerEntity indexerEntity = new IndexerEntity("indexer");
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:writebehind;DB_CLOSE_DELAY=-1");
+        connection = dataSource.getConnection();
+        execute("CREATE SEQUENCE HIBERNATE_SEQUENCE");
+        execute("CREATE TABLE INDEXER (ID INTEGER PRIMARY KEY, NAME VARCHAR(255))");
+        execute("CREATE TABLE INDEXERSEARCH (ID INTEGER PRIMARY KEY)");
+        execute("CREATE TABLE SEARCHRESULT (ID BIGINT PRIMARY KEY, DETAILS VARCHAR(4000), DOWNLOAD_TYPE VARCHAR(255), FIRST_FOUND TIMESTAMP, INDEXERGUID VARCHAR(255) NOT NULL, " +
+                "LINK VARCHAR(4000), PUB_DATE TIMESTAMP, TITLE VARCHAR(4000) NOT NULL, INDEXER_ID INTEGER NOT NULL REFERENCES INDEXER (ID), INDEXERSEARCHENTITY INTEGER)");
+        execute("CREATE TABLE INDEXERAPIACCESS_SHORT (ID INTEGER PRIMARY KEY, INDEXER_ID INTEGER REFERENCES INDEXER (ID), TIME TIMESTAMP, SUCCESSFUL BOOLEAN, API_ACCESS_TYPE VARCHAR2(255))");
+        execute("INSERT INTO INDEXER (ID, NAME) VALUES (1, 'indexer')");
+        indexerEntity.setId(1);
+
+        ReflectionTestUtils.setField(searchResultIdCache, "dataSource", dataSource);
+        ReflectionTestUtils.setField(indexerHitCounter, "dataSource", dataSource);
+        testee.dataSource = dataSource;
+        testee.searchResultIdCache = searchResultIdCache;
+        testee.indexerHitCounter = indexerHitCounter;
+        testee.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testee.onShutdown(new ShutdownEvent());
+        execute("DROP ALL OBJECTS");
+        connection.close();
+    }
+
+    @Test
+    public void shouldWriteSearchResultsOnce() throws Exception {
+        IndexerSearchEntity indexerSearchEntity = new IndexerSearchEntity();
+        indexerSearchEntity.setId(12);
+        SearchResultEntity result1 = createSearchResult("guid1");
+        result1.setIndexerSearchEntity(indexerSearchEntity);
+        SearchResultEntity result2 = createSearchResult("guid2");
+
+        testee.saveSearchResults(Arrays.asList(result1, result2));
+        testee.saveSearchResults(Collections.singletonList(createSearchResult("guid1")));
+        testee.flush();
+
+        assertThat(result1.getId()).isEqualTo(SearchResultIdCalculator.calculateSearchResultId(result1));
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT")).isEqualTo(2);
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT * FROM SEARCHRESULT WHERE ID = " + result1.getId())) {
+            assertThat(resultSet.next()).isTrue();
+            assertThat(resultSet.getString("TITLE")).isEqualTo("title guid1");
+            assertThat(resultSet.getString("DOWNLOAD_TYPE")).isEqualTo("NZB");
+            assertThat(resultSet.getTimestamp("PUB_DATE").toInstant()).isEqualTo(result1.getPubDate());
+            assertThat(resultSet.getInt("INDEXER_ID")).isEqualTo(1);
+            assertThat(resultSet.getInt("INDEXERSEARCHENTITY")).isEqualTo(12);
+        }
+    }
+
+    @Test
+    public void shouldNotChangeExistingSearchResults() throws Exception {
+        SearchResultEntity result = createSearchResult("guid");
+        long id = SearchResultIdCalculator.calculateSearchResultId(result);
+        Instant firstFound = Instant.now().minus(10, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS);
+        execute("INSERT INTO SEARCHRESULT (ID, INDEXERGUID, TITLE, INDEXER_ID, FIRST_FOUND) VALUES (" + id + ", 'guid', 'title guid', 1, '" + Timestamp.from(firstFound) + "')");
+
+        testee.saveSearchResults(Collections.singletonList(result));
+        testee.flush();
+
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT")).isEqualTo(1);
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT FIRST_FOUND FROM SEARCHRESULT")) {
+            resultSet.next();
+            assertThat(resultSet.getTimestamp(1).toInstant()).isEqualTo(firstFound);
+        }
+    }
+
+    @Test
+    public void shouldInsertNewSearchResultsWhenIdCacheIsBuilt() throws Exception {
+        SearchResultEntity existingResult = createSearchResult("existing");
+        long existingId = SearchResultIdCalculator.calculateSearchResultId(existingResult);
+        execute("INSERT INTO SEARCHRESULT (ID, INDEXERGUID, TITLE, INDEXER_ID) VALUES (" + existingId + ", 'existing', 'title existing', 1)");
+        searchResultIdCache.rebuild();
+        SearchResultEntity newResult = createSearchResult("new");
+
+        testee.saveSearchResults(Arrays.asList(existingResult, newResult));
+        testee.flush();
+
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT")).isEqualTo(2);
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT WHERE ID = " + newResult.getId() + " AND FIRST_FOUND IS NOT NULL")).isEqualTo(1);
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT WHERE ID = " + existingId + " AND FIRST_FOUND IS NULL")).isEqualTo(1);
+        assertThat(searchResultIdCache.getFalsePositiveRate()).isEqualTo(0);
+        assertThat(searchResultIdCache.isKnownToExist(existingId)).isTrue();
+        assertThat(searchResultIdCache.isKnownToExist(newResult.getId())).isTrue();
+    }
+
+    @Test
+    public void shouldNotWriteSearchResultsKnownToExist() throws Exception {
+        SearchResultEntity result = createSearchResult("guid");
+        testee.saveSearchResults(Collections.singletonList(result));
+        testee.flush();
+        execute("DELETE FROM SEARCHRESULT");
+
+        testee.saveSearchResults(Collections.singletonList(createSearchResult("guid")));
+        testee.flush();
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT")).isEqualTo(0);
+
+        searchResultIdCache.removeAll(Collections.singletonList(result.getId()));
+        testee.saveSearchResults(Collections.singletonList(createSearchResult("guid")));
+        testee.flush();
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWriteSearchResultWhenWaitedFor() throws Exception {
+        SearchResultEntity result = createSearchResult("guid");
+        testee.saveSearchResults(Collections.singletonList(result));
+
+        testee.waitForSearchResult(result.getId());
+
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT WHERE ID = " + result.getId())).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWriteApiAccesses() throws Exception {
+        testee.saveApiAccess(new IndexerApiAccessEntityShort(indexerEntity, true, IndexerApiAccessType.SEARCH));
+        testee.saveApiAccess(new IndexerApiAccessEntityShort(indexerEntity, false, IndexerApiAccessType.NZB));
+        testee.flush();
+
+        assertThat(count("SELECT COUNT(*) FROM INDEXERAPIACCESS_SHORT WHERE API_ACCESS_TYPE = 'SEARCH' AND SUCCESSFUL")).isEqualTo(1);
+        assertThat(count("SELECT COUNT(*) FROM INDEXERAPIACCESS_SHORT WHERE API_ACCESS_TYPE = 'NZB' AND NOT SUCCESSFUL")).isEqualTo(1);
+        assertThat(indexerHitCounter.count(1, IndexerApiAccessType.SEARCH)).isEqualTo(1);
+        assertThat(indexerHitCounter.count(1, IndexerApiAccessType.NZB)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWriteEntitiesOneByOneIfBatchFails() throws Exception {
+        IndexerEntity unknownIndexer = new IndexerEntity("unknown");
+        unknownIndexer.setId(2);
+        SearchResultEntity result1 = createSearchResult("guid1");
+        SearchResultEntity invalidResult = createSearchResult("invalid", unknownIndexer);
+        SearchResultEntity result2 = createSearchResult("guid2");
+
+        testee.saveSearchResults(Arrays.asList(result1, invalidResult, result2));
+        testee.saveApiAccess(new IndexerApiAccessEntityShort(indexerEntity, true, IndexerApiAccessType.SEARCH));
+        testee.flush();
+
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT")).isEqualTo(2);
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT WHERE ID IN (" + result1.getId() + ", " + result2.getId() + ")")).isEqualTo(2);
+        assertThat(count("SELECT COUNT(*) FROM INDEXERAPIACCESS_SHORT")).isEqualTo(1);
+        assertThat(searchResultIdCache.isKnownToExist(result1.getId())).isTrue();
+        assertThat(searchResultIdCache.isKnownToExist(invalidResult.getId())).isFalse();
+    }
+
+    @Test
+    public void shouldWriteEverythingOnShutdown() throws Exception {
+        for (int i = 0; i < WriteBehindPersister.BATCH_SIZE + 10; i++) {
+            testee.saveSearchResults(Collections.singletonList(createSearchResult("guid" + i)));
+        }
+        testee.saveApiAccess(new IndexerApiAccessEntityShort(indexerEntity, true, IndexerApiAccessType.SEARCH));
+
+        testee.onShutdown(new ShutdownEvent());
+
+        assertThat(testee.getNumberOfPendingEntities()).isEqualTo(0);
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT")).isEqualTo(WriteBehindPersister.BATCH_SIZE + 10);
+        assertThat(count("SELECT COUNT(*) FROM INDEXERAPIACCESS_SHORT")).isEqualTo(1);
+
+        //Written directly after shutdown
+        testee.saveSearchResults(Collections.singletonList(createSearchResult("afterShutdown")));
+        assertThat(count("SELECT COUNT(*) FROM SEARCHRESULT")).isEqualTo(WriteBehindPersister.BATCH_SIZE + 11);
+    }
+
+    private SearchResultEntity createSearchResult(String guid) {
+        return createSearchResult(guid, indexerEntity);
+    }
+
+    private SearchResultEntity createSearchResult(String guid, IndexerEntity indexerEntity) {
+        return new SearchResultEntity(indexerEntity, Instant.now(), "title " + guid, guid, "http://link/" + guid, "http://details/" + guid, DownloadType.NZB, Instant.now().minus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+}
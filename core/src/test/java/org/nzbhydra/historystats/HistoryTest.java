@@ -0,0 +1,106 @@
+package org.nzbhydra.historystats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.nzbhydra.historystats.stats.HistoryRequest;
+import org.nzbhydra.searching.db.SearchEntity;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HistoryTest {
+
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private Query fullCountQuery;
+    @Mock
+    private Query newRowsCountQuery;
+    @InjectMocks
+    private History testee = new History();
+
+    private Instant now = Instant.parse("2020-06-01T12:00:00Z");
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        testee.clock = Clock.fixed(now, ZoneOffset.UTC);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(fullCountQuery);
+        when(entityManager.createNativeQuery(contains(":countedMaxId"))).thenReturn(newRowsCountQuery);
+        when(fullCountQuery.getSingleResult()).thenReturn(new Object[]{BigInteger.valueOf(5), 10});
+    }
+
+    @Test
+    public void shouldOnlyCountNewRowsAfterFirstCount() {
+        assertThat(testee.getCount(History.SEARCH_TABLE, "", Collections.emptyMap(), Optional.of("SEARCH.ID"))).isEqualTo(5);
+
+        when(newRowsCountQuery.getSingleResult()).thenReturn(new Object[]{BigInteger.valueOf(2), 12});
+        assertThat(testee.getCount(History.SEARCH_TABLE, "", Collections.emptyMap(), Optional.of("SEARCH.ID"))).isEqualTo(7);
+        verify(newRowsCountQuery).setParameter("countedMaxId", 10);
+
+        when(newRowsCountQuery.getSingleResult()).thenReturn(new Object[]{BigInteger.valueOf(0), null});
+        assertThat(testee.getCount(History.SEARCH_TABLE, "", Collections.emptyMap(), Optional.of("SEARCH.ID"))).isEqualTo(7);
+        verify(newRowsCountQuery).setParameter("countedMaxId", 12);
+        verify(fullCountQuery, times(1)).getSingleResult();
+    }
+
+    @Test
+    public void shouldRecountAfterInvalidationOrWhenOutdated() {
+        testee.getCount(History.SEARCH_TABLE, "", Collections.emptyMap(), Optional.of("SEARCH.ID"));
+        testee.invalidateCounts();
+        testee.getCount(History.SEARCH_TABLE, "", Collections.emptyMap(), Optional.of("SEARCH.ID"));
+        verify(fullCountQuery, times(2)).getSingleResult();
+
+        testee.clock = Clock.fixed(now.plus(1, ChronoUnit.HOURS), ZoneOffset.UTC);
+        when(fullCountQuery.getSingleResult()).thenReturn(new Object[]{BigInteger.valueOf(3), 10});
+        assertThat(testee.getCount(History.SEARCH_TABLE, "", Collections.emptyMap(), Optional.of("SEARCH.ID"))).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNotUsePageCursorWhenNewerRowsExist() {
+        Query selectQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(anyString(), eq(SearchEntity.class))).thenReturn(selectQuery);
+        when(selectQuery.getResultList()).thenReturn(Arrays.asList(searchEntity(10), searchEntity(9)));
+        when(newRowsCountQuery.getSingleResult()).thenReturn(new Object[]{BigInteger.valueOf(0), null});
+        HistoryRequest request = new HistoryRequest();
+        request.setLimit(2);
+        request.setSortModel(new SortModel("time", 2));
+
+        testee.getHistory(request, History.SEARCH_TABLE, SearchEntity.class);
+        request.setPage(2);
+        testee.getHistory(request, History.SEARCH_TABLE, SearchEntity.class);
+        verify(entityManager).createNativeQuery(contains(":cursorId"), eq(SearchEntity.class));
+
+        when(newRowsCountQuery.getSingleResult()).thenReturn(new Object[]{BigInteger.valueOf(1), 11});
+        testee.getHistory(request, History.SEARCH_TABLE, SearchEntity.class);
+        verify(entityManager).createNativeQuery(contains("OFFSET 2"), eq(SearchEntity.class));
+    }
+
+    private SearchEntity searchEntity(int id) {
+        SearchEntity searchEntity = new SearchEntity();
+        searchEntity.setId(id);
+        searchEntity.setTime(now.minusSeconds(100 - id));
+        return searchEntity;
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.nzbhydra.historystats;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.tools.RunScript;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.downloading.FileDownloadEntity;
+import org.nzbhydra.indexers.IndexerEntity;
+import org.nzbhydra.searching.db.SearchEntity;
+import org.nzbhydra.searching.db.SearchResultEntity;
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatsRollupsTest {
+
+    private StatsRollups testee = new StatsRollups();
+    private Connection connection;
+    private Instant hour10 = LocalDateTime.parse("2020-06-01T10:15:00").atZone(ZoneId.systemDefault()).toInstant();
+
+    @Before
+    public void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:statsrollups;DB_CLOSE_DELAY=-1");
+        connection = dataSource.getConnection();
+        execute("CREATE TABLE INDEXER (ID INTEGER PRIMARY KEY, NAME VARCHAR(255))");
+        execute("CREATE TABLE SEARCH (ID INTEGER PRIMARY KEY AUTO_INCREMENT, TIME TIMESTAMP, SOURCE VARCHAR(255), USERNAME VARCHAR(255), IP VARCHAR(255), USER_AGENT VARCHAR(255))");
+        execute("CREATE TABLE SEARCHRESULT (ID BIGINT PRIMARY KEY, INDEXER_ID INTEGER)");
+        execute("CREATE TABLE INDEXERNZBDOWNLOAD (ID INTEGER PRIMARY KEY AUTO_INCREMENT, TIME TIMESTAMP, SEARCH_RESULT_ID BIGINT, ACCESS_SOURCE VARCHAR(255), USERNAME VARCHAR(255), IP VARCHAR(255), USER_AGENT VARCHAR(4000))");
+        execute("INSERT INTO INDEXER VALUES (1, 'indexer1')");
+        execute("INSERT INTO SEARCH (TIME, SOURCE, USERNAME, IP, USER_AGENT) VALUES ('2020-06-01 10:20:00', 'API', 'user', '1.2.3.4', 'sonarr'), ('2020-06-01 11:20:00', 'INTERNAL', NULL, '', 'browser')");
+        execute("INSERT INTO SEARCHRESULT VALUES (100, 1)");
+        execute("INSERT INTO INDEXERNZBDOWNLOAD (TIME, SEARCH_RESULT_ID, ACCESS_SOURCE, USERNAME) VALUES ('2020-06-01 10:20:00', 100, 'INTERNAL', 'user'), ('2020-06-01 10:30:00', NULL, 'API', NULL)");
+        RunScript.execute(connection, new InputStreamReader(getClass().getResourceAsStream("/migration/V7__STATS_ROLLUPS.sql")));
+        testee.dataSource = dataSource;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        execute("DROP ALL OBJECTS");
+        connection.close();
+    }
+
+    @Test
+    public void shouldBackfillRollupsFromHistory() throws Exception {
+        assertThat(queryLong("SELECT SUM(ACCESS_COUNT) FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = 'SEARCH' AND DIMENSION = 'TOTAL'")).isEqualTo(2);
+        assertThat(queryLong("SELECT COUNT(*) FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = 'SEARCH' AND DIMENSION = 'IP'")).isEqualTo(1);
+        assertThat(queryLong("SELECT COUNT(*) FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = 'SEARCH' AND DIMENSION = 'USER_AGENT'")).isEqualTo(1);
+        assertThat(queryLong("SELECT ACCESS_COUNT FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = 'DOWNLOAD' AND DIMENSION = 'TOTAL'")).isEqualTo(2);
+        assertThat(queryLong("SELECT ACCESS_COUNT FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = 'DOWNLOAD' AND DIMENSION = 'INDEXER' AND DIMENSION_VALUE = 'indexer1'")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldAddNewSearchesAndDownloads() throws Exception {
+        IndexerEntity indexer = new IndexerEntity("indexer1");
+        indexer.setId(1);
+
+        SearchEntity search = new SearchEntity();
+        search.setTime(hour10);
+        search.setSource(SearchSource.API);
+        search.setUsername("user");
+        testee.registerSearch(search);
+
+        SearchResultEntity searchResult = new SearchResultEntity();
+        searchResult.setIndexer(indexer);
+        FileDownloadEntity download = new FileDownloadEntity();
+        download.setTime(hour10.plusSeconds(3600));
+        download.setSearchResult(searchResult);
+        testee.registerDownload(download);
+
+        testee.flush();
+
+        assertThat(queryLong("SELECT ACCESS_COUNT FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = 'SEARCH' AND DIMENSION = 'USERNAME' AND DIMENSION_VALUE = 'user'")).isEqualTo(2);
+        assertThat(queryLong("SELECT SUM(ACCESS_COUNT) FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = 'DOWNLOAD' AND DIMENSION = 'INDEXER' AND DIMENSION_VALUE = 'indexer1'")).isEqualTo(2);
+        assertThat(queryLong("SELECT COUNT(*) FROM STATS_ACTIVITY_HOURLY WHERE ACTIVITY = 'DOWNLOAD' AND DIMENSION = 'TOTAL'")).isEqualTo(2);
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            assertThat(resultSet.next()).isTrue();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
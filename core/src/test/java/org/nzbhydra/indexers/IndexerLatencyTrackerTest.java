@@ -0,0 +1,95 @@
+package org.nzbhydra.indexers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexerLatencyTrackerTest {
+
+    private IndexerLatencyTracker testee = new IndexerLatencyTracker();
+    private Instant now = Instant.parse("2020-06-01T12:00:00Z");
+
+    @Before
+    public void setUp() {
+        testee.clock = Clock.fixed(now, ZoneOffset.UTC);
+    }
+
+    @Test
+    public void shouldUseConfiguredTimeoutUntilEnoughResponseTimesAreKnown() {
+        record("indexer", IndexerLatencyTracker.MIN_SAMPLES - 1, 1000);
+        assertThat(testee.getTimeout("indexer", 30)).isEqualTo(30);
+        assertThat(testee.getTimeout("unknown", 30)).isEqualTo(30);
+
+        record("indexer", 1, 1000);
+        assertThat(testee.getTimeout("indexer", 30)).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldDeriveTimeoutFromPercentile() {
+        record("indexer", 99, 1000);
+        record("indexer", 1, 4000);
+
+        //99th percentile is 1000ms
+        assertThat(testee.getTimeout("indexer", 30)).isEqualTo(IndexerLatencyTracker.MIN_TIMEOUT_SECONDS);
+
+        record("indexer", 10, 4000);
+        assertThat(testee.getTimeout("indexer", 30)).isBetween(12, 13);
+        assertThat(testee.getTimeout("indexer", 10)).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldRecognizeDegradedIndexer() {
+        record("indexer", 50, 500);
+        assertThat(testee.isDegraded("indexer")).isFalse();
+
+        record("indexer", IndexerLatencyTracker.RECENT_RESPONSES / 2, 5000);
+        assertThat(testee.isDegraded("indexer")).isFalse();
+
+        record("indexer", 1, 5000);
+        assertThat(testee.isDegraded("indexer")).isTrue();
+
+        record("indexer", IndexerLatencyTracker.RECENT_RESPONSES, 500);
+        assertThat(testee.isDegraded("indexer")).isFalse();
+    }
+
+    @Test
+    public void shouldNotConsiderFastIndexerDegraded() {
+        record("indexer", 50, 100);
+        record("indexer", IndexerLatencyTracker.RECENT_RESPONSES, 800);
+
+        assertThat(testee.isDegraded("indexer")).isFalse();
+    }
+
+    @Test
+    public void shouldForgetOldResponseTimes() {
+        record("indexer", 50, 1000);
+        assertThat(testee.getSummary("indexer", 30).getSamples()).isEqualTo(50);
+
+        testee.clock = Clock.fixed(now.plus(IndexerLatencyTracker.WINDOW), ZoneOffset.UTC);
+        record("indexer", 10, 2000);
+        IndexerLatencyTracker.LatencySummary summary = testee.getSummary("indexer", 30);
+        assertThat(summary.getSamples()).isEqualTo(60);
+        assertThat(summary.getMax()).isBetween(1990L, 2010L);
+
+        testee.clock = Clock.fixed(now.plus(IndexerLatencyTracker.WINDOW.multipliedBy(2)), ZoneOffset.UTC);
+        assertThat(testee.getSummary("indexer", 30).getSamples()).isEqualTo(10);
+
+        testee.clock = Clock.fixed(now.plus(IndexerLatencyTracker.WINDOW.multipliedBy(5)), ZoneOffset.UTC);
+        summary = testee.getSummary("indexer", 30);
+        assertThat(summary.getSamples()).isEqualTo(0);
+        assertThat(summary.getMedian()).isNull();
+        assertThat(summary.getTimeout()).isEqualTo(30);
+    }
+
+    private void record(String indexerName, int count, long responseTime) {
+        for (int i = 0; i < count; i++) {
+            testee.recordResponseTime(indexerName, responseTime);
+        }
+    }
+
+}
@@ -25,12 +25,14 @@ import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.ConfigReaderWriter;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.status.IndexerStateStore;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class IndexerStatusesCleanupTaskTest {
@@ -41,6 +43,8 @@ public class IndexerStatusesCleanupTaskTest {
     private BaseConfig baseConfig;
     @Mock
     private ConfigReaderWriter configReaderWriterMock;
+    @Mock
+    private IndexerStateStore indexerStateStore;
 
     IndexerConfig indexerConfigEnabled = new IndexerConfig();
     IndexerConfig indexerConfigDisabledSystem = new IndexerConfig();
@@ -55,7 +59,7 @@ public class IndexerStatusesCleanupTaskTest {
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
-        testee = new IndexerStatusesCleanupTask(configProvider);
+        testee = new IndexerStatusesCleanupTask(configProvider, indexerStateStore);
         indexerConfigEnabled.setState(IndexerConfig.State.ENABLED);
         indexerConfigUserDisabled.setState(IndexerConfig.State.DISABLED_USER);
         indexerConfigDisabledSystem.setState(IndexerConfig.State.DISABLED_SYSTEM);
@@ -92,5 +96,6 @@ public class IndexerStatusesCleanupTaskTest {
         assertThat(indexerConfigEnabled.getState()).isEqualTo(IndexerConfig.State.ENABLED);
         assertThat(indexerConfigUserDisabled.getState()).isEqualTo(IndexerConfig.State.DISABLED_USER);
         assertThat(indexerConfigDisabledSystem.getState()).isEqualTo(IndexerConfig.State.DISABLED_SYSTEM);
+        verify(indexerStateStore).markDirty();
     }
 }
\ No newline at end of file
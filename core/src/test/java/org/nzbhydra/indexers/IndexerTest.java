@@ -2,7 +2,6 @@ package org.nzbhydra.indexers;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -16,11 +15,14 @@ import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.SearchSourceRestriction;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.database.WriteBehindPersister;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
 import org.nzbhydra.indexers.exceptions.IndexerAccessException;
 import org.nzbhydra.indexers.exceptions.IndexerAuthException;
 import org.nzbhydra.indexers.exceptions.IndexerErrorCodeException;
 import org.nzbhydra.indexers.exceptions.IndexerSearchAbortedException;
 import org.nzbhydra.indexers.exceptions.IndexerUnreachableException;
+import org.nzbhydra.indexers.status.IndexerStateStore;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlError;
 import org.nzbhydra.mediainfo.InfoProvider;
 import org.nzbhydra.mediainfo.MediaIdType;
@@ -29,7 +31,6 @@ import org.nzbhydra.mediainfo.TvInfo;
 import org.nzbhydra.searching.SearchResultAcceptor;
 import org.nzbhydra.searching.SearchResultAcceptor.AcceptorResult;
 import org.nzbhydra.searching.db.SearchResultEntity;
-import org.nzbhydra.searching.db.SearchResultRepository;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
 import org.nzbhydra.searching.dtoseventsenums.SearchType;
@@ -75,11 +76,13 @@ public class IndexerTest {
     @Mock
     private IndexerApiAccessRepository indexerApiAccessRepositoryMock;
     @Mock
-    private IndexerApiAccessEntityShortRepository shortRepositoryMock;
+    private WriteBehindPersister writeBehindPersisterMock;
     @Mock
-    private SearchResultRepository searchResultRepositoryMock;
-    @Captor
-    private ArgumentCaptor<List<SearchResultEntity>> searchResultEntitiesCaptor;
+    private IndexerLatencyTracker indexerLatencyTrackerMock;
+    @Mock
+    private IndexerStateStore indexerStateStoreMock;
+    @Mock
+    private IndexerApiAccessStore indexerApiAccessStoreMock;
     @Captor
     private ArgumentCaptor<String> errorMessageCaptor;
     @Captor
@@ -184,11 +187,10 @@ public class IndexerTest {
         item.setDetails("details");
         item.setIndexerGuid("guid");
 
-        testee.persistSearchResults(Collections.singletonList(item), new IndexerSearchResult());
-
-        verify(searchResultRepositoryMock).saveAll(searchResultEntitiesCaptor.capture());
+        IndexerSearchResult indexerSearchResult = new IndexerSearchResult();
+        testee.persistSearchResults(Collections.singletonList(item), indexerSearchResult);
 
-        List<SearchResultEntity> persistedEntities = searchResultEntitiesCaptor.getValue();
+        List<SearchResultEntity> persistedEntities = new ArrayList<>(indexerSearchResult.getSearchResultEntities());
         assertThat(persistedEntities.size(), is(1));
         assertThat(persistedEntities.get(0).getTitle(), is("title"));
         assertThat(persistedEntities.get(0).getDetails(), is("details"));
@@ -196,19 +198,21 @@ public class IndexerTest {
     }
 
     @Test
-    public void shouldNotCreateNewSearchResultEntityWhenOneExists() throws Exception {
+    public void shouldCreateOneSearchResultEntityPerSearchResultId() throws Exception {
         SearchResultItem item = new SearchResultItem();
         item.setIndexerGuid("guid");
         item.setIndexer(indexerMock);
-        when(searchResultEntityMock.getIndexerGuid()).thenReturn("guid");
-        when(searchResultRepositoryMock.findAllIdsByIdIn(anyList())).thenReturn(Sets.newHashSet(299225959498991027L));
+        SearchResultItem sameItem = new SearchResultItem();
+        sameItem.setIndexerGuid("guid");
+        sameItem.setIndexer(indexerMock);
 
-        testee.persistSearchResults(Collections.singletonList(item), new IndexerSearchResult());
+        IndexerSearchResult indexerSearchResult = new IndexerSearchResult();
+        testee.persistSearchResults(Arrays.asList(item, sameItem), indexerSearchResult);
 
-        verify(searchResultRepositoryMock).saveAll(searchResultEntitiesCaptor.capture());
-
-        List<SearchResultEntity> persistedEntities = searchResultEntitiesCaptor.getValue();
-        assertThat(persistedEntities.size(), is(0));
+        assertThat(indexerSearchResult.getSearchResultEntities().size(), is(1));
+        assertThat(indexerSearchResult.getSearchResultEntities().iterator().next().getId(), is(299225959498991027L));
+        assertThat(item.getSearchResultId(), is(299225959498991027L));
+        assertThat(sameItem.getSearchResultId(), is(299225959498991027L));
     }
 
 
@@ -223,6 +227,19 @@ public class IndexerTest {
         assertThat(indexerConfig.getState(), is(IndexerConfig.State.ENABLED));
         assertThat(indexerConfig.getDisabledLevel(), is(0));
         assertThat(indexerConfig.getDisabledUntil(), is(nullValue()));
+        verify(indexerStateStoreMock).markDirty();
+    }
+
+    @Test
+    public void shouldNotMarkStateDirtyIfAlreadyEnabled() throws Exception {
+        indexerConfig.setState(IndexerConfig.State.ENABLED);
+        indexerConfig.setDisabledLevel(0);
+        indexerConfig.setDisabledUntil(null);
+        indexerConfig.setLastError(null);
+
+        testee.handleSuccess(IndexerApiAccessType.SEARCH, 0L);
+
+        verify(indexerStateStoreMock, never()).markDirty();
     }
 
     @Test
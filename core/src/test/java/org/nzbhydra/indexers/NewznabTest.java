@@ -20,12 +20,16 @@ import org.nzbhydra.config.category.Category.Subtype;
 import org.nzbhydra.config.indexer.IndexerCategoryConfig.MainCategory;
 import org.nzbhydra.config.indexer.IndexerCategoryConfig.SubCategory;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.database.WriteBehindPersister;
+import org.nzbhydra.indexers.apiaccess.IndexerApiAccessStore;
 import org.nzbhydra.indexers.Indexer.BackendType;
 import org.nzbhydra.indexers.exceptions.IndexerAccessException;
 import org.nzbhydra.indexers.exceptions.IndexerAuthException;
 import org.nzbhydra.indexers.exceptions.IndexerErrorCodeException;
+import org.nzbhydra.indexers.exceptions.IndexerParsingException;
 import org.nzbhydra.indexers.exceptions.IndexerProgramErrorException;
 import org.nzbhydra.indexers.exceptions.IndexerSearchAbortedException;
+import org.nzbhydra.indexers.status.IndexerStateStore;
 import org.nzbhydra.mapping.newznab.ActionAttribute;
 import org.nzbhydra.mapping.newznab.builder.RssBuilder;
 import org.nzbhydra.mapping.newznab.builder.RssItemBuilder;
@@ -45,7 +49,6 @@ import org.nzbhydra.mediainfo.MediaInfo;
 import org.nzbhydra.searching.CategoryProvider;
 import org.nzbhydra.searching.SearchResultAcceptor;
 import org.nzbhydra.searching.SearchResultAcceptor.AcceptorResult;
-import org.nzbhydra.searching.db.SearchResultRepository;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem.DownloadType;
@@ -54,6 +57,7 @@ import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.InternalData.FallbackState;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.oxm.Unmarshaller;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -64,6 +68,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
@@ -87,9 +93,13 @@ public class NewznabTest {
     @Mock
     private IndexerSearchRepository indexerSearchRepositoryMock;
     @Mock
-    private IndexerApiAccessEntityShortRepository shortRepositoryMock;
+    private WriteBehindPersister writeBehindPersisterMock;
     @Mock
-    private SearchResultRepository searchResultRepositoryMock;
+    private IndexerLatencyTracker indexerLatencyTrackerMock;
+    @Mock
+    private IndexerStateStore indexerStateStoreMock;
+    @Mock
+    private IndexerApiAccessStore indexerApiAccessStoreMock;
     @Mock
     private IndexerRepository indexerRepositoryMock;
     @Mock
@@ -117,6 +127,8 @@ public class NewznabTest {
     Category otherCategory = new Category("other");
     @Mock
     private ConfigProvider configProviderMock;
+    @Mock
+    private ApplicationEventPublisher eventPublisherMock;
 
     @InjectMocks
     private Newznab testee = new Newznab();
@@ -186,6 +198,47 @@ public class NewznabTest {
         assertThat(indexerSearchResult.isTotalResultsKnown(), is(true));
     }
 
+    @Test
+    public void shouldFallBackToXmlIfJsonCannotBeParsed() throws Exception {
+        testee.config.setJsonSupported(true);
+        NewznabXmlRoot root = RssBuilder.builder().items(Arrays.asList(RssItemBuilder.builder("title").build())).newznabResponse(0, 1).build();
+        when(indexerWebAccessMock.get(argThat(x -> x != null && x.getQuery().contains("o=json")), eq(testee.config), any())).thenThrow(new IndexerParsingException("Unable to parse indexer JSON output"));
+        when(indexerWebAccessMock.get(argThat(x -> x != null && !x.getQuery().contains("o=json")), eq(testee.config), any())).thenReturn(root);
+
+        IndexerSearchResult indexerSearchResult = testee.searchInternal(new SearchRequest(SearchSource.INTERNAL, SearchType.SEARCH, 0, 100), 0, 100);
+
+        assertThat(indexerSearchResult.getSearchResultItems().size(), is(1));
+        assertThat(testee.config.isJsonSupported(), is(false));
+        verify(indexerStateStoreMock).markDirty();
+    }
+
+    @Test
+    public void shouldSearchAsynchronously() throws Exception {
+        NewznabXmlRoot root = RssBuilder.builder().items(Arrays.asList(RssItemBuilder.builder("title").build())).newznabResponse(0, 1).build();
+        doReturn(CompletableFuture.completedFuture(root)).when(indexerWebAccessMock).getAsync(any(), eq(testee.config), any());
+
+        IndexerSearchResult indexerSearchResult = testee.searchAsync(new SearchRequest(SearchSource.INTERNAL, SearchType.SEARCH, 0, 100), 0, 100, Runnable::run).get();
+
+        assertThat(indexerSearchResult.getSearchResultItems().size(), is(1));
+        verify(indexerWebAccessMock, times(1)).getAsync(any(), any(), any());
+        verify(indexerWebAccessMock, never()).get(any(), any(), any());
+    }
+
+    @Test
+    public void shouldFallBackToXmlIfJsonCannotBeParsedWhenSearchingAsynchronously() throws Exception {
+        testee.config.setJsonSupported(true);
+        NewznabXmlRoot root = RssBuilder.builder().items(Arrays.asList(RssItemBuilder.builder("title").build())).newznabResponse(0, 1).build();
+        CompletableFuture<Object> jsonResponse = new CompletableFuture<>();
+        jsonResponse.completeExceptionally(new CompletionException(new IndexerParsingException("Unable to parse indexer JSON output")));
+        doReturn(jsonResponse).when(indexerWebAccessMock).getAsync(argThat(x -> x != null && x.getQuery().contains("o=json")), eq(testee.config), any());
+        doReturn(CompletableFuture.completedFuture(root)).when(indexerWebAccessMock).getAsync(argThat(x -> x != null && !x.getQuery().contains("o=json")), eq(testee.config), any());
+
+        IndexerSearchResult indexerSearchResult = testee.searchAsync(new SearchRequest(SearchSource.INTERNAL, SearchType.SEARCH, 0, 100), 0, 100, Runnable::run).get();
+
+        assertThat(indexerSearchResult.getSearchResultItems().size(), is(1));
+        assertThat(testee.config.isJsonSupported(), is(false));
+    }
+
     @Test
     public void shouldAccountForRejectedResults() throws Exception {
         List<NewznabXmlItem> items = Arrays.asList(
@@ -0,0 +1,146 @@
+package org.nzbhydra.indexers.apiaccess;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class IndexerApiAccessStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private IndexerApiAccessStore testee;
+    private Instant day1 = Instant.parse("2020-06-01T10:00:00Z");
+    private Instant day2 = Instant.parse("2020-06-02T10:00:00Z");
+
+    @Before
+    public void setUp() {
+        testee = new IndexerApiAccessStore(temporaryFolder.getRoot());
+        testee.zoneId = ZoneOffset.UTC;
+    }
+
+    @Test
+    public void shouldCalculateStatsFromSegments() {
+        testee.append(day1, 1, "SUCCESSFUL", "SEARCH", 100L);
+        testee.append(day1.plusSeconds(10), 1, "SUCCESSFUL", "NZB", 300L);
+        testee.append(day1.plusSeconds(5), 1, "CONNECTION_ERROR", "SEARCH", null);
+        testee.append(day1, 2, "SUCCESSFUL", "SEARCH", 1000L);
+        testee.append(day2, 1, "SUCCESSFUL", "SEARCH", 500L);
+        testee.flush();
+
+        assertThat(new File(temporaryFolder.getRoot(), "2020-06-01.seg")).exists();
+        assertThat(new File(temporaryFolder.getRoot(), "2020-06-02.seg")).exists();
+
+        assertThat(testee.getAverageResponseTimes(null, null)).containsOnly(entry(1, 300L), entry(2, 1000L));
+        assertThat(testee.getAverageResponseTimes(day1.minusSeconds(1), day2.minusSeconds(1))).containsOnly(entry(1, 200L), entry(2, 1000L));
+
+        Map<Integer, Map<String, Integer>> countsPerResult = testee.getCountsPerResult(day1.plusSeconds(1), null);
+        assertThat(countsPerResult.get(1)).containsOnly(entry("SUCCESSFUL", 2), entry("CONNECTION_ERROR", 1));
+        assertThat(countsPerResult).doesNotContainKey(2);
+
+        assertThat(testee.getCountsPerDay(null, null).get(1)).containsOnly(entry(LocalDate.parse("2020-06-01"), 3), entry(LocalDate.parse("2020-06-02"), 1));
+
+        List<Long> responseTimes = new ArrayList<>();
+        testee.scanSuccessfulResponseTimes(day1.plusSeconds(1), (indexerId, responseTime) -> responseTimes.add(responseTime));
+        assertThat(responseTimes).containsExactlyInAnyOrder(300L, 500L);
+    }
+
+    @Test
+    public void shouldWriteFullBlocksAndAppendFurtherBlocks() {
+        for (int i = 0; i < IndexerApiAccessStore.BLOCK_SIZE; i++) {
+            testee.append(day1.plusMillis(i), 1, "SUCCESSFUL", "SEARCH", (long) i);
+        }
+        //Written without flush
+        assertThat(testee.getCountsPerDay(null, null).get(1)).containsOnly(entry(LocalDate.parse("2020-06-01"), IndexerApiAccessStore.BLOCK_SIZE));
+
+        testee.append(day1.minus(1, ChronoUnit.HOURS), 1, "SUCCESSFUL", "SEARCH", 10_000L);
+        testee.flush();
+        assertThat(testee.getCountsPerDay(null, null).get(1)).containsOnly(entry(LocalDate.parse("2020-06-01"), IndexerApiAccessStore.BLOCK_SIZE + 1));
+    }
+
+    @Test
+    public void shouldIgnoreAndRemoveIncompleteBlock() throws Exception {
+        testee.append(day1, 1, "SUCCESSFUL", "SEARCH", 100L);
+        testee.flush();
+        File segment = new File(temporaryFolder.getRoot(), "2020-06-01.seg");
+        long completeLength = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            //Length of a block which was not written completely
+            file.seek(completeLength);
+            file.writeInt(1000);
+            file.write(new byte[10]);
+        }
+        assertThat(testee.getCountsPerDay(null, null).get(1)).containsOnly(entry(LocalDate.parse("2020-06-01"), 1));
+
+        //Store is opened again after a restart
+        testee = new IndexerApiAccessStore(temporaryFolder.getRoot());
+        testee.zoneId = ZoneOffset.UTC;
+        testee.append(day1, 1, "SUCCESSFUL", "SEARCH", 200L);
+        testee.flush();
+        assertThat(testee.getAverageResponseTimes(null, null)).containsOnly(entry(1, 150L));
+    }
+
+    @Test
+    public void shouldDeleteWholeDays() {
+        testee.append(day1, 1, "SUCCESSFUL", "SEARCH", 100L);
+        testee.append(day2, 1, "SUCCESSFUL", "SEARCH", 100L);
+        testee.flush();
+        testee.append(day1, 1, "SUCCESSFUL", "SEARCH", 100L);
+
+        testee.deleteBefore(day2.plus(1, ChronoUnit.HOURS));
+        testee.flush();
+
+        assertThat(new File(temporaryFolder.getRoot(), "2020-06-01.seg")).doesNotExist();
+        assertThat(testee.getCountsPerDay(null, null).get(1)).containsOnly(entry(LocalDate.parse("2020-06-02"), 1));
+        assertThat(testee.getSegmentsCountAndSize()[0]).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldBackupAndRestoreSegments() throws Exception {
+        testee.append(day1, 1, "SUCCESSFUL", "SEARCH", 100L);
+        testee.flush();
+        testee.append(day2, 1, "SUCCESSFUL", "SEARCH", 100L);
+
+        File backupZip = new File(temporaryFolder.newFolder("backup"), "backup.zip");
+        try (FileSystem fileSystem = FileSystems.newFileSystem(URI.create("jar:" + backupZip.toPath().toUri()), Collections.singletonMap("create", "true"))) {
+            testee.copySegmentsTo(Files.createDirectory(fileSystem.getPath("apiaccess")));
+        }
+
+        testee.append(day2, 1, "SUCCESSFUL", "SEARCH", 100L);
+        testee.flush();
+
+        File restoreFolder = temporaryFolder.newFolder("restore");
+        try (FileSystem fileSystem = FileSystems.newFileSystem(URI.create("jar:" + backupZip.toPath().toUri()), Collections.emptyMap())) {
+            try (DirectoryStream<Path> segments = Files.newDirectoryStream(fileSystem.getPath("apiaccess"))) {
+                for (Path segment : segments) {
+                    Files.copy(segment, restoreFolder.toPath().resolve(segment.getFileName().toString()));
+                }
+            }
+        }
+        testee.restoreSegmentsFrom(restoreFolder);
+
+        assertThat(testee.getCountsPerDay(null, null).get(1)).containsOnly(entry(LocalDate.parse("2020-06-01"), 1), entry(LocalDate.parse("2020-06-02"), 1));
+    }
+
+}
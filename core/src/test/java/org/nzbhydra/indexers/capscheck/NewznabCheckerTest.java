@@ -47,6 +47,7 @@ import org.springframework.oxm.Unmarshaller;
 import javax.xml.transform.stream.StreamSource;
 import java.io.StringReader;
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.*;
@@ -102,20 +103,20 @@ public class NewznabCheckerTest {
         NewznabResponseBuilder builder = new NewznabResponseBuilder();
         NewznabXmlRoot thronesResult = builder.getTestResult(1, 100, "Thrones", 0, 100);
         thronesResult.getRssChannel().setGenerator("nzedb");
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvdbid=121361"), indexerConfig))
-                .thenReturn(thronesResult);
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&rid=24493"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvmazeid=82"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&imdbid=0944947"), indexerConfig))
-            .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&traktid=1390"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "GOT", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&tmdbid=24428"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Avengers", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&imdbid=0848228"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Avengers", 0, 100));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvdbid=121361"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(thronesResult));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&rid=24493"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvmazeid=82"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&imdbid=0944947"), indexerConfig))
+            .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&traktid=1390"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "GOT", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&tmdbid=24428"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Avengers", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&imdbid=0848228"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Avengers", 0, 100)));
 
         capsRoot.getSearching().setAudioSearch(new CapsXmlSearch("yes", "q"));
 
@@ -138,7 +139,8 @@ public class NewznabCheckerTest {
 
         assertTrue(checkCapsRespone.isAllCapsChecked());
 
-        verify(indexerWebAccess, times(8)).get(any(), eq(indexerConfig));
+        verify(indexerWebAccess, times(1)).get(any(), eq(indexerConfig));
+        verify(indexerWebAccess, times(7)).getAsync(any(), eq(indexerConfig));
     }
 
     @Test
@@ -172,50 +174,67 @@ public class NewznabCheckerTest {
     @Test
     public void shouldCheckCapsWithoutSupport() throws Exception {
         NewznabResponseBuilder builder = new NewznabResponseBuilder();
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvdbid=121361"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "somethingElse", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&rid=24493"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "somethingElse", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvmazeid=82"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "somethingElse", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&traktid=1390"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "somethingElse", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&tmdbid=24428"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "somethingElse", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&imdbid=0848228"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "somethingElse", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&imdbid=0944947"), indexerConfig))
-            .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvdbid=121361"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "somethingElse", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&rid=24493"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "somethingElse", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvmazeid=82"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "somethingElse", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&traktid=1390"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "somethingElse", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&tmdbid=24428"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "somethingElse", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&imdbid=0848228"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "somethingElse", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&imdbid=0944947"), indexerConfig))
+            .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
 
         CheckCapsResponse checkCapsRespone = testee.checkCaps(indexerConfig);
         assertEquals(1, checkCapsRespone.getIndexerConfig().getSupportedSearchIds().size());
-        verify(indexerWebAccess, times(8)).get(any(), eq(indexerConfig));
+        verify(indexerWebAccess, times(1)).get(any(), eq(indexerConfig));
+        verify(indexerWebAccess, times(7)).getAsync(any(), eq(indexerConfig));
     }
 
     @Test
     public void shouldSaySoIfNotAllWereChecked() throws Exception {
         NewznabResponseBuilder builder = new NewznabResponseBuilder();
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvdbid=121361"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&rid=24493"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvmazeid=82"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&traktid=1390"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&imdbid=0944947"), indexerConfig))
-            .thenReturn(builder.getTestResult(1, 100, "Thrones", 0, 100));
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&tmdbid=24428"), indexerConfig))
-                .thenReturn(builder.getTestResult(1, 100, "Avengers", 0, 100));
-
-        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&imdbid=0848228"), indexerConfig))
-                .thenThrow(new IndexerAccessException("some error"));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvdbid=121361"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&rid=24493"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvmazeid=82"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&traktid=1390"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&imdbid=0944947"), indexerConfig))
+            .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Thrones", 0, 100)));
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&tmdbid=24428"), indexerConfig))
+                .thenReturn(CompletableFuture.completedFuture(builder.getTestResult(1, 100, "Avengers", 0, 100)));
+
+        when(indexerWebAccess.getAsync(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=movie&imdbid=0848228"), indexerConfig))
+                .thenReturn(failedFuture(new IndexerAccessException("some error")));
 
         CheckCapsResponse checkCapsRespone = testee.checkCaps(indexerConfig);
         assertEquals(6, checkCapsRespone.getIndexerConfig().getSupportedSearchIds().size());
         assertFalse(checkCapsRespone.isAllCapsChecked());
-        verify(indexerWebAccess, times(8)).get(any(), eq(indexerConfig));
+        verify(indexerWebAccess, times(1)).get(any(), eq(indexerConfig));
+        verify(indexerWebAccess, times(7)).getAsync(any(), eq(indexerConfig));
     }
 
+    @Test
+    public void shouldRegisterApiHitOfJsonCheck() throws Exception {
+        indexerConfig.setName("indexer");
+        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=search&o=json"), indexerConfig, String.class)).thenReturn("");
+
+        testee.isJsonSupported(indexerConfig);
+
+        verify(searchModuleProviderMock).registerApiHitLimits("indexer", 1);
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
 
 }
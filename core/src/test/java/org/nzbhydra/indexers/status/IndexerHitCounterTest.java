@@ -0,0 +1,103 @@
+package org.nzbhydra.indexers.status;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.indexers.IndexerApiAccessType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexerHitCounterTest {
+
+    private IndexerHitCounter testee = new IndexerHitCounter();
+    private Instant now = Instant.parse("2020-06-01T12:00:00Z");
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:hitcounter;DB_CLOSE_DELAY=-1");
+        connection = dataSource.getConnection();
+        execute("CREATE TABLE INDEXERAPIACCESS_SHORT (ID INTEGER PRIMARY KEY AUTO_INCREMENT, INDEXER_ID INTEGER, TIME TIMESTAMP, SUCCESSFUL BOOLEAN, API_ACCESS_TYPE VARCHAR2(255))");
+        testee.dataSource = dataSource;
+        testee.clock = Clock.fixed(now, ZoneOffset.UTC);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        execute("DROP ALL OBJECTS");
+        connection.close();
+    }
+
+    @Test
+    public void shouldLoadAccessesOfLastDayFromDatabase() throws Exception {
+        insert(1, IndexerApiAccessType.SEARCH, now.minus(25, ChronoUnit.HOURS));
+        insert(1, IndexerApiAccessType.SEARCH, now.minus(2, ChronoUnit.HOURS));
+        insert(1, IndexerApiAccessType.SEARCH, now.minus(1, ChronoUnit.HOURS));
+        insert(1, IndexerApiAccessType.NZB, now.minus(1, ChronoUnit.HOURS));
+        insert(2, IndexerApiAccessType.SEARCH, now.minus(1, ChronoUnit.HOURS));
+
+        assertThat(testee.count(1, IndexerApiAccessType.SEARCH)).isEqualTo(2);
+        assertThat(testee.count(1, IndexerApiAccessType.NZB)).isEqualTo(1);
+        assertThat(testee.count(1, IndexerApiAccessType.NFO)).isEqualTo(0);
+        assertThat(testee.count(2, IndexerApiAccessType.SEARCH)).isEqualTo(1);
+        assertThat(testee.count(3, IndexerApiAccessType.SEARCH)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCountAccessesInWindow() {
+        for (int i = 20; i > 0; i--) {
+            testee.register(1, IndexerApiAccessType.SEARCH, now.minus(i, ChronoUnit.HOURS));
+        }
+        //Registered out of order
+        testee.register(1, IndexerApiAccessType.SEARCH, now.minus(90, ChronoUnit.MINUTES));
+
+        assertThat(testee.count(1, IndexerApiAccessType.SEARCH)).isEqualTo(21);
+        assertThat(testee.countSince(1, IndexerApiAccessType.SEARCH, now.minus(2, ChronoUnit.HOURS))).isEqualTo(3);
+        assertThat(testee.getOldestSince(1, IndexerApiAccessType.SEARCH, now.minus(2, ChronoUnit.HOURS))).contains(now.minus(2, ChronoUnit.HOURS));
+        assertThat(testee.getOldestSince(1, IndexerApiAccessType.SEARCH, now.plus(1, ChronoUnit.HOURS))).isEmpty();
+        assertThat(testee.getNthNewest(1, IndexerApiAccessType.SEARCH, 2)).contains(now.minus(90, ChronoUnit.MINUTES));
+        assertThat(testee.getNthNewest(1, IndexerApiAccessType.SEARCH, 100)).contains(now.minus(20, ChronoUnit.HOURS));
+        assertThat(testee.getNthNewest(1, IndexerApiAccessType.NZB, 1)).isEmpty();
+
+        testee.clock = Clock.fixed(now.plus(10, ChronoUnit.HOURS), ZoneOffset.UTC);
+        assertThat(testee.count(1, IndexerApiAccessType.SEARCH)).isEqualTo(14);
+        assertThat(testee.getNthNewest(1, IndexerApiAccessType.SEARCH, 100)).contains(now.minus(13, ChronoUnit.HOURS));
+        for (int i = 5; i < 10; i++) {
+            testee.register(1, IndexerApiAccessType.SEARCH, now.plus(i, ChronoUnit.HOURS));
+        }
+        assertThat(testee.count(1, IndexerApiAccessType.SEARCH)).isEqualTo(19);
+        assertThat(testee.getNthNewest(1, IndexerApiAccessType.SEARCH, 1)).contains(now.plus(9, ChronoUnit.HOURS));
+        assertThat(testee.getNthNewest(1, IndexerApiAccessType.SEARCH, 100)).contains(now.minus(13, ChronoUnit.HOURS));
+
+        testee.clock = Clock.fixed(now.plus(2, ChronoUnit.DAYS), ZoneOffset.UTC);
+        assertThat(testee.count(1, IndexerApiAccessType.SEARCH)).isEqualTo(0);
+    }
+
+    private void insert(int indexerId, IndexerApiAccessType accessType, Instant time) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO INDEXERAPIACCESS_SHORT (INDEXER_ID, TIME, SUCCESSFUL, API_ACCESS_TYPE) VALUES (?, ?, TRUE, ?)")) {
+            statement.setInt(1, indexerId);
+            statement.setTimestamp(2, Timestamp.from(time));
+            statement.setString(3, accessType.name());
+            statement.execute();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.nzbhydra.indexers.status;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.indexer.IndexerConfig;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class IndexerStateStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private ConfigProvider configProvider;
+    @InjectMocks
+    private IndexerStateStore testee = new IndexerStateStore();
+
+    private BaseConfig baseConfig = new BaseConfig();
+    private IndexerConfig indexer1 = new IndexerConfig();
+    private IndexerConfig indexer2 = new IndexerConfig();
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(configProvider.getBaseConfig()).thenReturn(baseConfig);
+        indexer1.setName("indexer1");
+        indexer2.setName("indexer2");
+        baseConfig.setIndexers(Arrays.asList(indexer1, indexer2));
+        testee.stateFile = new File(temporaryFolder.getRoot(), "indexerStates.json");
+    }
+
+    @Test
+    public void shouldOnlySaveWhenDirty() {
+        testee.saveIfDirty();
+        assertThat(testee.stateFile).doesNotExist();
+
+        testee.markDirty();
+        testee.saveIfDirty();
+        assertThat(testee.stateFile).exists();
+    }
+
+    @Test
+    public void shouldRestoreSavedStates() {
+        indexer1.setState(IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY);
+        indexer1.setDisabledUntil(1000L);
+        indexer1.setDisabledLevel(2);
+        indexer1.setLastError("error");
+        indexer1.setJsonSupported(true);
+        indexer2.setState(IndexerConfig.State.DISABLED_SYSTEM);
+        testee.markDirty();
+        testee.saveIfDirty();
+
+        IndexerConfig loaded1 = new IndexerConfig();
+        loaded1.setName("indexer1");
+        IndexerConfig loaded2 = new IndexerConfig();
+        loaded2.setName("indexer2");
+        //User disabled the indexer in the meantime
+        loaded2.setState(IndexerConfig.State.DISABLED_USER);
+        baseConfig.setIndexers(Arrays.asList(loaded1, loaded2));
+        testee.load();
+
+        assertThat(loaded1.getState()).isEqualTo(IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY);
+        assertThat(loaded1.getDisabledUntil()).isEqualTo(1000L);
+        assertThat(loaded1.getDisabledLevel()).isEqualTo(2);
+        assertThat(loaded1.getLastError()).isEqualTo("error");
+        assertThat(loaded1.isJsonSupported()).isTrue();
+        assertThat(loaded2.getState()).isEqualTo(IndexerConfig.State.DISABLED_USER);
+    }
+
+    @Test
+    public void shouldRestoreJsonFallback() {
+        indexer1.setJsonSupported(false);
+        testee.markDirty();
+        testee.saveIfDirty();
+
+        IndexerConfig loaded1 = new IndexerConfig();
+        loaded1.setName("indexer1");
+        loaded1.setJsonSupported(true);
+        baseConfig.setIndexers(Arrays.asList(loaded1));
+        testee.load();
+
+        assertThat(loaded1.isJsonSupported()).isFalse();
+    }
+
+}
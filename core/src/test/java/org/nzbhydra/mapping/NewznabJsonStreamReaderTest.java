@@ -0,0 +1,65 @@
+package org.nzbhydra.mapping;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.junit.Test;
+import org.nzbhydra.mapping.newznab.json.NewznabJsonStreamReader;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlChannel;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlError;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlItem;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.mapping.newznab.xml.Xml;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NewznabJsonStreamReaderTest {
+
+    @Test
+    public void shouldReadJson() throws Exception {
+        Xml xml = NewznabJsonStreamReader.read(Resources.toString(Resources.getResource(NewznabJsonStreamReaderTest.class, "newznab_2results.json"), Charsets.UTF_8));
+
+        assertThat(xml).isInstanceOf(NewznabXmlRoot.class);
+        NewznabXmlChannel channel = ((NewznabXmlRoot) xml).getRssChannel();
+        assertThat(channel.getDescription()).isEqualTo("indexerName(dot)com Feed");
+        assertThat(channel.getNewznabResponse().getOffset()).isEqualTo(0);
+        assertThat(channel.getNewznabResponse().getTotal()).isEqualTo(1000);
+        assertThat(channel.getItems()).hasSize(2);
+
+        NewznabXmlItem item = channel.getItems().get(0);
+        assertThat(item.getTitle()).isEqualTo("testtitle1");
+        assertThat(item.getRssGuid().getGuid()).isEqualTo("eff551fbdb69d6777d5030c209ee5d4b");
+        assertThat(item.getLink()).isEqualTo("https://indexerName.com/getnzb/eff551fbdb69d6777d5030c209ee5d4b.nzb&i=1692&r=apikey");
+        assertThat(item.getPubDate()).isEqualTo(Instant.ofEpochSecond(1444584857));
+        assertThat(item.getEnclosure().getLength()).isEqualTo(2893890900L);
+        assertThat(item.getEnclosure().getType()).isEqualTo("application/x-nzb");
+        assertThat(item.getNewznabAttributes()).hasSize(6);
+        assertThat(item.getNewznabAttributes().get(4).getName()).isEqualTo("poster");
+        assertThat(item.getNewznabAttributes().get(4).getValue()).isEqualTo("chuck@norris.com");
+
+        item = channel.getItems().get(1);
+        assertThat(item.getDescription()).isEqualTo("");
+        assertThat(item.getNewznabAttributes()).hasSize(1);
+        assertThat(item.getNewznabAttributes().get(0).getValue()).isEqualTo("2000");
+    }
+
+    @Test
+    public void shouldReadError() throws Exception {
+        Xml xml = NewznabJsonStreamReader.read("{\"error\":{\"@attributes\":{\"code\":\"100\",\"description\":\"Incorrect user credentials\"}}}");
+
+        assertThat(xml).isEqualTo(new NewznabXmlError("100", "Incorrect user credentials"));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailForUnexpectedStructure() throws Exception {
+        NewznabJsonStreamReader.read("{\"channel\":{\"item\":[{\"title\":[\"a\",\"b\"]}]}}");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailForXml() throws Exception {
+        NewznabJsonStreamReader.read("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<error code=\"100\" description=\"Incorrect user credentials\"/>");
+    }
+
+}
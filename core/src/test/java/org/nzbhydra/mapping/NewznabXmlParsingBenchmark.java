@@ -0,0 +1,99 @@
+package org.nzbhydra.mapping;
+
+import com.google.common.base.Strings;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlStreamReader;
+import org.nzbhydra.mapping.newznab.xml.Xml;
+import org.nzbhydra.web.WebConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.oxm.Unmarshaller;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading a newznab result page using JAXB with the {@link NewznabXmlStreamReader}. Run {@link #main(String[])}, the GC profiler
+ * reports the allocation per page as "gc.alloc.rate.norm".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NewznabXmlParsingBenchmark {
+
+    @Param({"100"})
+    private int numberOfItems;
+    @Param({"100", "5000"})
+    private int descriptionLength;
+
+    private Unmarshaller unmarshaller;
+    private String xml;
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(NewznabXmlParsingBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+
+    @Setup
+    public void setUp() {
+        unmarshaller = new WebConfiguration().marshaller();
+        xml = createXml(numberOfItems, descriptionLength);
+    }
+
+    @Benchmark
+    public Object jaxb() throws Exception {
+        return unmarshaller.unmarshal(new StreamSource(new StringReader(xml)));
+    }
+
+    @Benchmark
+    public Xml stax() throws Exception {
+        return NewznabXmlStreamReader.read(xml).get();
+    }
+
+    private static String createXml(int numberOfItems, int descriptionLength) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        builder.append("<rss version=\"2.0\" xmlns:atom=\"http://www.w3.org/2005/Atom\" xmlns:newznab=\"http://www.newznab.com/DTD/2010/feeds/attributes/\">\n");
+        builder.append("<channel>\n");
+        builder.append("<atom:link href=\"https://indexer.com/api\" rel=\"self\" type=\"application/rss+xml\"/>\n");
+        builder.append("<title>indexer</title>\n<description>indexer feed</description>\n<link>https://indexer.com/</link>\n<language>en-gb</language>\n");
+        builder.append("<newznab:response offset=\"0\" total=\"").append(numberOfItems * 10).append("\"/>\n");
+        String description = Strings.repeat("x", descriptionLength);
+        for (int i = 0; i < numberOfItems; i++) {
+            builder.append("<item>\n");
+            builder.append("<title>Some.Show.S01E").append(i).append(".1080p.WEB.x264-GROUP</title>\n");
+            builder.append("<guid isPermaLink=\"true\">https://indexer.com/details/").append(i).append("</guid>\n");
+            builder.append("<link>https://indexer.com/getnzb/").append(i).append(".nzb&amp;i=1&amp;r=apikey</link>\n");
+            builder.append("<comments>https://indexer.com/details/").append(i).append("#comments</comments>\n");
+            builder.append("<pubDate>Sun, 11 Oct 2015 17:34:17 +0000</pubDate>\n");
+            builder.append("<category>TV &gt; HD</category>\n");
+            builder.append("<description><![CDATA[").append(description).append("]]></description>\n");
+            builder.append("<enclosure url=\"https://indexer.com/getnzb/").append(i).append(".nzb\" length=\"2893890900\" type=\"application/x-nzb\"/>\n");
+            builder.append("<newznab:attr name=\"category\" value=\"5000\"/>\n");
+            builder.append("<newznab:attr name=\"category\" value=\"5040\"/>\n");
+            builder.append("<newznab:attr name=\"size\" value=\"2893890900\"/>\n");
+            builder.append("<newznab:attr name=\"guid\" value=\"").append(i).append("\"/>\n");
+            builder.append("<newznab:attr name=\"poster\" value=\"poster@example.com\"/>\n");
+            builder.append("<newznab:attr name=\"group\" value=\"alt.binaries.teevee\"/>\n");
+            builder.append("<newznab:attr name=\"grabs\" value=\"").append(i).append("\"/>\n");
+            builder.append("</item>\n");
+        }
+        builder.append("</channel>\n</rss>");
+        return builder.toString();
+    }
+
+}
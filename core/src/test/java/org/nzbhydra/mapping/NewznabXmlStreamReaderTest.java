@@ -0,0 +1,64 @@
+package org.nzbhydra.mapping;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.junit.Test;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlError;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlStreamReader;
+import org.nzbhydra.mapping.newznab.xml.Xml;
+import org.nzbhydra.web.WebConfiguration;
+import org.springframework.oxm.Unmarshaller;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NewznabXmlStreamReaderTest {
+
+    private Unmarshaller unmarshaller = new WebConfiguration().marshaller();
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldReadSameAsJaxb() throws Exception {
+        for (String fileName : new String[]{"newznab_3results.xml", "nzbsOrgResponse.xml", "omgwtfResponse.xml", "nzbAgResponse.xml", "tabulaRasaResponse.xml", "nzbCatResponse.xml",
+                "drunkenSlugResponse.xml", "drunkenSlug_withSomeLimits.xml", "drunkenSlug_withLimits.xml", "tabluaRasa_withSomeLimits.xml", "nzbFinderResponse.xml", "newztownResponse.xml",
+                "nzbSuResponse.xml", "btnJackettResponse.xml", "nzbIndexResponse.xml", "anizbResponse.xml", "animetosho_direct.xml", "cardigann.xml", "nfo.xml"}) {
+            String xml = getXml(fileName);
+            Xml jaxbResult = (Xml) unmarshaller.unmarshal(new StreamSource(new StringReader(xml)));
+
+            Optional<Xml> staxResult = NewznabXmlStreamReader.read(xml);
+
+            assertThat(staxResult).as(fileName).isPresent();
+            assertThat(staxResult.get()).as(fileName).isInstanceOf(NewznabXmlRoot.class);
+            assertThat(objectMapper.writeValueAsString(staxResult.get())).as(fileName).isEqualTo(objectMapper.writeValueAsString(jaxbResult));
+        }
+    }
+
+    @Test
+    public void shouldReadError() throws Exception {
+        Optional<Xml> result = NewznabXmlStreamReader.read("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<error code=\"100\" description=\"Incorrect user credentials\"/>");
+
+        assertThat(result).isPresent();
+        assertThat(result.get()).isEqualTo(new NewznabXmlError("100", "Incorrect user credentials"));
+    }
+
+    @Test
+    public void shouldNotReadOtherResponses() throws Exception {
+        assertThat(NewznabXmlStreamReader.read(getXml("dognzbCapsResponse.xml"))).isEmpty();
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void shouldFailForUnparseableValues() throws Exception {
+        NewznabXmlStreamReader.read(getXml("invalidResponseWeirdDateFormat.xml"));
+    }
+
+    private String getXml(String fileName) throws Exception {
+        return Resources.toString(Resources.getResource(NewznabXmlStreamReaderTest.class, fileName), Charsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.nzbhydra.mapping;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.junit.Test;
+import org.nzbhydra.mapping.newznab.NewznabResponse;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlItem;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlStreamWriter;
+import org.nzbhydra.web.WebConfiguration;
+import org.springframework.oxm.Unmarshaller;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NewznabXmlStreamWriterTest {
+
+    private Unmarshaller unmarshaller = new WebConfiguration().marshaller();
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldWriteSameAsRead() throws Exception {
+        for (String fileName : new String[]{"newznab_3results.xml", "nzbsOrgResponse.xml", "omgwtfResponse.xml", "nzbFinderResponse.xml", "nfo.xml"}) {
+            NewznabXmlRoot root = read(fileName);
+            root.setSearchType(NewznabResponse.SearchType.NEWZNAB);
+
+            String written = write(root);
+
+            assertThat(written).as(fileName).contains("xmlns:newznab=\"http://www.newznab.com/DTD/2010/feeds/attributes/\"").doesNotContain("xmlns:torznab");
+            NewznabXmlRoot writtenRoot = (NewznabXmlRoot) unmarshaller.unmarshal(new StreamSource(new StringReader(written)));
+            writtenRoot.setSearchType(NewznabResponse.SearchType.NEWZNAB);
+            //Not written because hydra's own responses don't contain any
+            root.getRssChannel().setApiLimits(null);
+            assertThat(objectMapper.writeValueAsString(writtenRoot)).as(fileName).isEqualTo(objectMapper.writeValueAsString(root));
+        }
+    }
+
+    @Test
+    public void shouldWriteTorznab() throws Exception {
+        NewznabXmlRoot root = read("btnJackettResponse.xml");
+        root.setSearchType(NewznabResponse.SearchType.TORZNAB);
+
+        String written = write(root);
+
+        assertThat(written).contains("xmlns:torznab=\"http://torznab.com/schemas/2015/feed\"").doesNotContain("xmlns:newznab");
+        NewznabXmlRoot writtenRoot = (NewznabXmlRoot) unmarshaller.unmarshal(new StreamSource(new StringReader(written)));
+        assertThat(writtenRoot.getRssChannel().getItems()).hasSameSizeAs(root.getRssChannel().getItems());
+        assertThat(writtenRoot.getRssChannel().getItems().get(0).getTorznabAttributes()).isEqualTo(root.getRssChannel().getItems().get(0).getTorznabAttributes());
+    }
+
+    private String write(NewznabXmlRoot root) throws Exception {
+        List<byte[]> itemFragments = new ArrayList<>();
+        for (NewznabXmlItem item : root.getRssChannel().getItems()) {
+            itemFragments.add(NewznabXmlStreamWriter.writeItem(item));
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        NewznabXmlStreamWriter.write(root, itemFragments, bos);
+        return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private NewznabXmlRoot read(String fileName) throws Exception {
+        byte[] xml = Resources.toString(Resources.getResource(NewznabXmlStreamWriterTest.class, fileName), Charsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+        return (NewznabXmlRoot) unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(xml)));
+    }
+
+}
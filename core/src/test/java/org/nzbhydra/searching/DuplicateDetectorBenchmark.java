@@ -0,0 +1,79 @@
+package org.nzbhydra.searching;
+
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.searching.dtoseventsenums.DuplicateDetectionResult;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the duplicate detection using precomputed {@link org.nzbhydra.searching.dtoseventsenums.DuplicateKey}s with the previous
+ * implementation (see {@link DuplicateDetectorTestHelper}). Run {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuplicateDetectorBenchmark {
+
+    @Param({"10000"})
+    private int numberOfResults;
+    @Param({"500", "5000"})
+    private int numberOfTitles;
+
+    private DuplicateDetector duplicateDetector;
+    private ConfigProvider configProvider;
+    private Set<SearchResultItem> results;
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(DuplicateDetectorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setUp() {
+        BaseConfig baseConfig = new BaseConfig();
+        baseConfig.getSearching().setDuplicateAgeThreshold(2F);
+        baseConfig.getSearching().setDuplicateSizeThresholdInPercent(1F);
+        configProvider = new ConfigProvider() {
+            @Override
+            public BaseConfig getBaseConfig() {
+                return baseConfig;
+            }
+        };
+        duplicateDetector = new DuplicateDetector();
+        duplicateDetector.configProvider = configProvider;
+
+        results = DuplicateDetectorTestHelper.createResults(numberOfResults, numberOfTitles, new Random(1));
+    }
+
+    @Benchmark
+    public DuplicateDetectionResult duplicateKeys() {
+        return duplicateDetector.detectDuplicates(results);
+    }
+
+    @Benchmark
+    public List<LinkedHashSet<SearchResultItem>> previousImplementation() {
+        return DuplicateDetectorTestHelper.detectDuplicatesUsingPreviousImplementation(results, configProvider);
+    }
+
+}
@@ -18,9 +18,12 @@ import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.when;
@@ -123,6 +126,59 @@ public class DuplicateDetectorTest {
         assertThat(items.get(0).getDuplicateIdentifier()).isEqualTo(items.get(1).getDuplicateIdentifier()).as("Duplicates should have the same duplicate identifiers");
     }
 
+    @Test
+    public void shouldDetectDuplicatesIncrementally() throws Exception {
+        SearchResultItem item1 = new SearchResultItem();
+        setValues(item1, "1", "poster1", "group", Instant.now());
+        SearchResultItem item2 = new SearchResultItem();
+        setValues(item2, "2", "poster2", "group", Instant.now());
+        SearchResultItem item3 = new SearchResultItem();
+        setValues(item3, "2", "poster1", "group", Instant.now());
+        SearchResultItem item4 = new SearchResultItem();
+        setValues(item4, "3", "poster2", "group", Instant.now());
+
+        DuplicateIndex duplicateIndex = new DuplicateIndex();
+        DuplicateDetectionResult result = testee.detectDuplicates(duplicateIndex, Arrays.asList(item1, item2));
+        assertThat(result.getDuplicateGroups().size()).isEqualTo(2);
+        int identifier1 = item1.getDuplicateIdentifier();
+        int identifier2 = item2.getDuplicateIdentifier();
+        assertThat(identifier1).isNotEqualTo(identifier2);
+
+        result = testee.detectDuplicates(duplicateIndex, Arrays.asList(item3, item4, item1));
+        assertThat(result.getDuplicateGroups().size()).isEqualTo(2);
+        assertThat(duplicateIndex.getNumberOfPlacedResults()).isEqualTo(4);
+        assertThat(item1.getDuplicateIdentifier()).isEqualTo(identifier1).isEqualTo(item3.getDuplicateIdentifier());
+        assertThat(item2.getDuplicateIdentifier()).isEqualTo(identifier2).isEqualTo(item4.getDuplicateIdentifier());
+    }
+
+    @Test
+    public void shouldFindSameGroupsAsWhenComparingAllResults() throws Exception {
+        for (int numberOfTitles : Arrays.asList(5, 50, 500)) {
+            Set<SearchResultItem> results = DuplicateDetectorTestHelper.createResults(2000, numberOfTitles, new Random(numberOfTitles));
+
+            Set<List<SearchResultItem>> expectedGroups = DuplicateDetectorTestHelper.detectDuplicatesUsingPreviousImplementation(results, configProviderMock).stream().map(ArrayList::new).collect(Collectors.toSet());
+            Set<List<SearchResultItem>> actualGroups = testee.detectDuplicates(results).getDuplicateGroups().stream().map(ArrayList::new).collect(Collectors.toSet());
+
+            assertThat(actualGroups).isEqualTo(expectedGroups);
+        }
+    }
+
+    @Test
+    public void shouldFindSameGroupsAsWhenComparingAllResultsWithDifferentSizes() throws Exception {
+        for (int maxSizeDifference : Arrays.asList(1_000_000, 50_000_000, 2_000_000_000)) {
+            Random random = new Random(maxSizeDifference);
+            Set<SearchResultItem> results = DuplicateDetectorTestHelper.createResults(2000, 20, random);
+            for (SearchResultItem result : results) {
+                result.setSize(100_000_000L + random.nextInt(maxSizeDifference));
+            }
+
+            Set<List<SearchResultItem>> expectedGroups = DuplicateDetectorTestHelper.detectDuplicatesUsingPreviousImplementation(results, configProviderMock).stream().map(ArrayList::new).collect(Collectors.toSet());
+            Set<List<SearchResultItem>> actualGroups = testee.detectDuplicates(results).getDuplicateGroups().stream().map(ArrayList::new).collect(Collectors.toSet());
+
+            assertThat(actualGroups).isEqualTo(expectedGroups);
+        }
+    }
+
     @Test
     public void shouldUseUsenetDateForComparison() throws Exception {
         SearchResultItem item1 = new SearchResultItem();
@@ -0,0 +1,123 @@
+package org.nzbhydra.searching;
+
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.indexers.IndexerEntity;
+import org.nzbhydra.indexers.Newznab;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Creates random search results and groups them using the previous implementation of the duplicate detection which normalized titles
+ * using a regex and compared the items' properties directly. Used to verify and benchmark the {@link DuplicateDetector}.
+ */
+class DuplicateDetectorTestHelper {
+
+    static Set<SearchResultItem> createResults(int numberOfResults, int numberOfTitles, Random random) {
+        List<Indexer> indexers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Newznab indexer = new Newznab();
+            IndexerConfig config = new IndexerConfig();
+            config.setName("indexer" + i);
+            IndexerEntity indexerEntity = new IndexerEntity();
+            indexerEntity.setName("indexer" + i);
+            indexer.initialize(config, indexerEntity);
+            indexers.add(indexer);
+        }
+        long now = Instant.now().getEpochSecond();
+        Set<SearchResultItem> results = new HashSet<>();
+        for (int i = 0; i < numberOfResults; i++) {
+            int titleIndex = random.nextInt(numberOfTitles);
+            SearchResultItem item = new SearchResultItem();
+            item.setTitle("Some.Show.S01E" + titleIndex + "-1080p_WEB DL");
+            item.setIndexer(indexers.get(random.nextInt(indexers.size())));
+            item.setIndexerGuid(String.valueOf(i));
+            item.setLink("http://some.indexer/" + i);
+            item.setPoster(random.nextBoolean() ? "poster" + titleIndex % 5 : null);
+            item.setGroup(random.nextBoolean() ? "alt.binaries.group" + titleIndex % 3 : null);
+            item.setPubDate(Instant.ofEpochSecond(now - (titleIndex * 3600L) - random.nextInt(4 * 3600)));
+            item.setSize(1_000_000_000L + titleIndex * 1000L + random.nextInt(5_000_000));
+            item.setDownloadType(SearchResultItem.DownloadType.NZB);
+            //Computed by the indexers when the item is created
+            item.computeDuplicateKey();
+            results.add(item);
+        }
+        return results;
+    }
+
+    static List<LinkedHashSet<SearchResultItem>> detectDuplicatesUsingPreviousImplementation(Set<SearchResultItem> results, ConfigProvider configProvider) {
+        Map<String, List<SearchResultItem>> groupedByTitle = results.stream().collect(Collectors.groupingBy(x -> x.getTitle().toLowerCase().replaceAll("[ .\\-_]", "")));
+        List<LinkedHashSet<SearchResultItem>> duplicateGroups = new ArrayList<>();
+        for (List<SearchResultItem> titleGroup : groupedByTitle.values()) {
+            titleGroup = titleGroup.stream().sorted(Comparator.comparing(SearchResultItem::getBestDate).reversed()).collect(Collectors.toList());
+            List<LinkedHashSet<SearchResultItem>> listOfBuckets = new ArrayList<>();
+            listOfBuckets.add(new LinkedHashSet<>(newArrayList(titleGroup.get(0))));
+            for (int i = 1; i < titleGroup.size(); i++) {
+                SearchResultItem searchResultItem = titleGroup.get(i);
+                boolean foundBucket = false;
+                for (LinkedHashSet<SearchResultItem> bucket : listOfBuckets) {
+                    if (bucket.stream().map(SearchResultItem::getIndexer).collect(Collectors.toList()).contains(searchResultItem.getIndexer())) {
+                        continue;
+                    }
+                    for (SearchResultItem other : bucket) {
+                        if (testForSamenessUsingPreviousImplementation(searchResultItem, other, configProvider)) {
+                            foundBucket = true;
+                            bucket.add(searchResultItem);
+                            break;
+                        }
+                    }
+                    if (foundBucket) {
+                        break;
+                    }
+                }
+                if (!foundBucket) {
+                    listOfBuckets.add(new LinkedHashSet<>(newArrayList(searchResultItem)));
+                }
+            }
+            duplicateGroups.addAll(listOfBuckets);
+        }
+        return duplicateGroups;
+    }
+
+    private static boolean testForSamenessUsingPreviousImplementation(SearchResultItem result1, SearchResultItem result2, ConfigProvider configProvider) {
+        if (result1.getIndexer().equals(result2.getIndexer())) {
+            return false;
+        }
+        if (result1.getDownloadType() == SearchResultItem.DownloadType.TORRENT || result2.getDownloadType() == SearchResultItem.DownloadType.TORRENT) {
+            return false;
+        }
+        boolean groupKnown = result1.getGroup().isPresent() && result2.getGroup().isPresent();
+        boolean sameGroup = groupKnown && Objects.equals(result1.getGroup().get(), result2.getGroup().get());
+        boolean posterKnown = result1.getPoster().isPresent() && result2.getPoster().isPresent();
+        boolean samePoster = posterKnown && Objects.equals(result1.getPoster().get(), result2.getPoster().get());
+        float duplicateAgeThreshold = configProvider.getBaseConfig().getSearching().getDuplicateAgeThreshold();
+        float duplicateSizeThreshold = configProvider.getBaseConfig().getSearching().getDuplicateSizeThresholdInPercent();
+        if ((groupKnown && !sameGroup) || (posterKnown && !samePoster)) {
+            return false;
+        }
+        if ((sameGroup && !posterKnown) || (samePoster && !groupKnown)) {
+            duplicateAgeThreshold *= 2;
+            duplicateSizeThreshold *= 2;
+        }
+        boolean sameAge = Math.abs(result1.getBestDate().getEpochSecond() - result2.getBestDate().getEpochSecond()) / (60 * 60) <= duplicateAgeThreshold;
+        long sizeDifference = Math.abs(result1.getSize() - result2.getSize());
+        float sizeAverage = (result1.getSize() + result2.getSize()) / 2F;
+        boolean sameSize = Math.abs(sizeDifference / sizeAverage) * 100 <= duplicateSizeThreshold;
+        return sameAge && sameSize;
+    }
+
+}
@@ -17,7 +17,10 @@ import org.nzbhydra.config.indexer.SearchModuleType;
 import org.nzbhydra.downloading.FileDownloadRepository;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerApiAccessRepository;
+import org.nzbhydra.indexers.IndexerApiAccessType;
 import org.nzbhydra.indexers.IndexerEntity;
+import org.nzbhydra.indexers.IndexerLatencyTracker;
+import org.nzbhydra.indexers.status.IndexerHitCounter;
 import org.nzbhydra.indexers.status.IndexerLimit;
 import org.nzbhydra.indexers.status.IndexerLimitRepository;
 import org.nzbhydra.mediainfo.InfoProvider;
@@ -27,9 +30,6 @@ import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.springframework.context.ApplicationEventPublisher;
 
-import javax.persistence.EntityManager;
-import javax.persistence.Query;
-import java.sql.Timestamp;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -41,6 +41,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -48,7 +49,6 @@ import java.util.Set;
 import static junit.framework.TestCase.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 public class IndexerForSearchSelectorTest {
@@ -79,11 +79,11 @@ public class IndexerForSearchSelectorTest {
     @Mock
     private Category category;
     @Mock
-    private EntityManager entityManagerMock;
+    private IndexerLimitRepository indexerLimitRepositoryMock;
     @Mock
-    private Query queryMock;
+    private IndexerLatencyTracker indexerLatencyTrackerMock;
     @Mock
-    private IndexerLimitRepository indexerLimitRepositoryMock;
+    private IndexerHitCounter indexerHitCounterMock;
 
     private Map<Indexer, String> count;
 
@@ -102,7 +102,6 @@ public class IndexerForSearchSelectorTest {
         when(baseConfig.getSearching()).thenReturn(searchingConfig);
         when(category.getName()).thenReturn("category");
         when(category.getSubtype()).thenReturn(Subtype.NONE);
-        when(entityManagerMock.createNativeQuery(anyString())).thenReturn(queryMock);
         when(indexerLimitRepositoryMock.findByIndexer(any())).thenReturn(new IndexerLimit());
     }
 
@@ -127,6 +126,19 @@ public class IndexerForSearchSelectorTest {
         assertTrue(testee.checkIndexerSelectedByUser(indexer));
     }
 
+    @Test
+    public void shouldCallDegradedIndexersLast() {
+        Indexer indexer2 = mock(Indexer.class);
+        when(indexer2.getName()).thenReturn("indexer2");
+        Indexer indexer3 = mock(Indexer.class);
+        when(indexer3.getName()).thenReturn("indexer3");
+        when(indexerLatencyTrackerMock.isDegraded("indexer")).thenReturn(true);
+
+        List<Indexer> indexers = testee.deprioritizeDegradedIndexers(Arrays.asList(indexer, indexer2, indexer3));
+
+        assertThat(indexers).containsExactly(indexer2, indexer3, indexer);
+    }
+
     @Test
     public void shouldCheckIfDisabledBySystem() {
         when(searchingConfig.isIgnoreTemporarilyDisabled()).thenReturn(false);
@@ -221,25 +233,35 @@ public class IndexerForSearchSelectorTest {
     @Test
     public void shouldIgnoreHitLimitIfNotYetReached() {
         indexerConfigMock.setHitLimit(10);
-        when(queryMock.getResultList()).thenReturn(Collections.emptyList());
+        when(indexerHitCounterMock.getNthNewest(anyInt(), eq(IndexerApiAccessType.SEARCH), eq(10))).thenReturn(Optional.empty());
         boolean result = testee.checkIndexerHitLimit(indexer);
         assertTrue(result);
-        verify(entityManagerMock).createNativeQuery(anyString());
+        verify(indexerHitCounterMock).count(anyInt(), eq(IndexerApiAccessType.SEARCH));
     }
 
     @Test
     public void shouldFollowApiHitLimit() {
         indexerConfigMock.setHitLimit(1);
-        when(queryMock.getResultList()).thenReturn(Arrays.asList(Timestamp.from(Instant.now().minus(10, ChronoUnit.MILLIS))));
+        when(indexerHitCounterMock.getNthNewest(anyInt(), eq(IndexerApiAccessType.SEARCH), eq(1))).thenReturn(Optional.of(Instant.now().minus(10, ChronoUnit.MILLIS)));
+        when(indexerHitCounterMock.count(anyInt(), eq(IndexerApiAccessType.SEARCH))).thenReturn(1);
         boolean result = testee.checkIndexerHitLimit(indexer);
         assertFalse(result);
-        verify(entityManagerMock).createNativeQuery(anyString());
+    }
+
+    @Test
+    public void shouldIgnoreApiHitLimitIfOldestHitIsBeforeWindow() {
+        indexerConfigMock.setHitLimit(1);
+        when(indexerHitCounterMock.getNthNewest(anyInt(), eq(IndexerApiAccessType.SEARCH), eq(1))).thenReturn(Optional.of(Instant.now().minus(48, ChronoUnit.HOURS)));
+        when(indexerHitCounterMock.count(anyInt(), eq(IndexerApiAccessType.SEARCH))).thenReturn(1);
+        boolean result = testee.checkIndexerHitLimit(indexer);
+        assertTrue(result);
     }
 
     @Test
     public void shouldIgnoreDownloadLimitIfNotYetReached() {
         indexerConfigMock.setDownloadLimit(10);
-        when(queryMock.getResultList()).thenReturn(Arrays.asList(Timestamp.from(Instant.now().minus(10, ChronoUnit.MILLIS))));
+        when(indexerHitCounterMock.getNthNewest(anyInt(), eq(IndexerApiAccessType.NZB), eq(10))).thenReturn(Optional.of(Instant.now().minus(10, ChronoUnit.MILLIS)));
+        when(indexerHitCounterMock.count(anyInt(), eq(IndexerApiAccessType.NZB))).thenReturn(1);
         boolean result = testee.checkIndexerHitLimit(indexer);
         assertTrue(result);
     }
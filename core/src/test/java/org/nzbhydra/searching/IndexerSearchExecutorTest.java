@@ -0,0 +1,131 @@
+package org.nzbhydra.searching;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.config.SearchingConfig;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class IndexerSearchExecutorTest {
+
+    private IndexerSearchExecutor testee = new IndexerSearchExecutor();
+
+    @Before
+    public void setUp() {
+        SearchingConfig searchingConfig = new SearchingConfig();
+        searchingConfig.setMaxConcurrentIndexerCalls(4);
+        searchingConfig.setMaxConcurrentCallsPerIndexer(2);
+        searchingConfig.setMaxQueuedIndexerCalls(2);
+        testee.initialize(searchingConfig);
+    }
+
+    @Test
+    public void shouldLimitConcurrentCallsPerIndexer() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(testee.submit("indexer", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return 1;
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(maxRunning.get()).isEqualTo(2);
+        assertThat(testee.getNumberOfActiveCalls()).isEqualTo(0);
+        assertThat(testee.getNumberOfQueuedCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotBlockThreadsWithCallsWaitingForTheirIndexer() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(testee.submit("indexer", () -> {
+                latch.await();
+                return null;
+            }));
+        }
+        try {
+            assertThat(testee.submit("otherIndexer", () -> "value").get(5, TimeUnit.SECONDS)).isEqualTo("value");
+            assertThat(testee.getNumberOfQueuedCalls()).isEqualTo(2);
+        } finally {
+            latch.countDown();
+        }
+        for (Future<Object> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(testee.getNumberOfQueuedCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectCallsWhenSaturated() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        for (int i = 0; i < 6; i++) {
+            testee.submit("indexer" + i, () -> {
+                latch.await();
+                return null;
+            });
+        }
+        try {
+            testee.submit("indexer", () -> null);
+            fail("Call should've been rejected");
+        } catch (RejectedExecutionException e) {
+            assertThat(testee.getNumberOfRejectedCalls()).isEqualTo(1);
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void shouldCountAsyncCallsAsRunningUntilTheirFutureIsCompleted() throws Exception {
+        List<CompletableFuture<Integer>> responses = new ArrayList<>();
+        AtomicInteger startedCalls = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            CompletableFuture<Integer> response = new CompletableFuture<>();
+            responses.add(response);
+            futures.add(testee.submitAsync("indexer", executor -> {
+                startedCalls.incrementAndGet();
+                return response;
+            }));
+        }
+
+        Thread.sleep(100);
+        assertThat(startedCalls.get()).isEqualTo(2);
+        assertThat(testee.getNumberOfQueuedCalls()).isEqualTo(1);
+
+        responses.forEach(x -> x.complete(1));
+        for (Future<Integer> future : futures) {
+            assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        }
+        assertThat(startedCalls.get()).isEqualTo(3);
+        assertThat(testee.getNumberOfActiveCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldUseMdcOfCallingThreadForAsyncStages() throws Exception {
+        MDC.put("SEARCH", "1");
+        CompletableFuture<String> future = testee.submitAsync("indexer", executor -> CompletableFuture.supplyAsync(() -> "value").thenApplyAsync(x -> MDC.get("SEARCH"), executor));
+        MDC.clear();
+
+        assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo("1");
+    }
+
+}
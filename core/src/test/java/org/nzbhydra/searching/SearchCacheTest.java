@@ -0,0 +1,75 @@
+package org.nzbhydra.searching;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+import org.nzbhydra.config.SearchingConfig;
+import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.searching.IndexerForSearchSelector.IndexerForSearchSelection;
+import org.nzbhydra.searching.db.SearchEntity;
+import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.nzbhydra.searching.dtoseventsenums.SearchType;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class SearchCacheTest {
+
+    @Test
+    public void shouldWeighEntriesByTheirResults() {
+        SearchCacheEntry searchCacheEntry = createSearchCacheEntry(10, 100);
+        int sizeWith10Results = SearchCache.estimateSize(searchCacheEntry);
+
+        assertThat(SearchCache.estimateSize(createSearchCacheEntry(0, 100))).isEqualTo(0);
+        assertThat(SearchCache.estimateSize(createSearchCacheEntry(100, 100))).isEqualTo(sizeWith10Results * 10);
+        assertThat(SearchCache.estimateSize(createSearchCacheEntry(10, 1000))).isGreaterThan(sizeWith10Results + 10 * 1000);
+    }
+
+    @Test
+    public void shouldFindEntryForSearchRequestModifiedDuringSearch() {
+        SearchCache searchCache = new SearchCache();
+        searchCache.initialize(new SearchingConfig());
+        SearchRequest searchRequest = new SearchRequest(SearchSource.API, SearchType.SEARCH, 0, 100);
+        searchRequest.setQuery("some query --excluded");
+        SearchCacheKey key = SearchCacheKey.of(searchRequest);
+        SearchCacheEntry searchCacheEntry = createSearchCacheEntry(10, 100);
+
+        searchRequest.extractForbiddenWords();
+        searchCache.put(key, searchCacheEntry);
+
+        SearchRequest nextPageSearchRequest = new SearchRequest(SearchSource.API, SearchType.SEARCH, 100, 100);
+        nextPageSearchRequest.setQuery("some query --excluded");
+        assertThat(searchCache.get(SearchCacheKey.of(nextPageSearchRequest))).isSameAs(searchCacheEntry);
+        nextPageSearchRequest.setSource(SearchSource.INTERNAL);
+        assertThat(searchCache.get(SearchCacheKey.of(nextPageSearchRequest))).isNull();
+        assertThat(searchCache.getStats().hitCount()).isEqualTo(1);
+    }
+
+    private SearchCacheEntry createSearchCacheEntry(int numberOfResults, int descriptionLength) {
+        IndexerForSearchSelection indexerSelection = new IndexerForSearchSelection();
+        SearchCacheEntry searchCacheEntry = new SearchCacheEntry(new SearchRequest(), indexerSelection, new SearchEntity());
+        Indexer indexer = mock(Indexer.class);
+        List<SearchResultItem> items = new ArrayList<>();
+        for (int i = 0; i < numberOfResults; i++) {
+            SearchResultItem item = new SearchResultItem();
+            item.setTitle("title");
+            item.setDescription(Strings.repeat("x", descriptionLength));
+            item.getAttributes().put("size", "1000");
+            item.setPubDate(Instant.now());
+            items.add(item);
+        }
+        IndexerSearchResult indexerSearchResult = new IndexerSearchResult();
+        indexerSearchResult.setSearchResultItems(items);
+        IndexerSearchCacheEntry indexerSearchCacheEntry = new IndexerSearchCacheEntry(indexer);
+        indexerSearchCacheEntry.addIndexerSearchResult(indexerSearchResult);
+        searchCacheEntry.getIndexerCacheEntries().put(indexer, indexerSearchCacheEntry);
+        return searchCacheEntry;
+    }
+
+}
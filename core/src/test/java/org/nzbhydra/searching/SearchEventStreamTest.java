@@ -0,0 +1,73 @@
+package org.nzbhydra.searching;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SearchEventStreamTest {
+
+    @Mock
+    private SseEmitter emitter;
+
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private SearchEventStream testee;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        testee = new SearchEventStream(emitter, scheduled::add);
+    }
+
+    @Test
+    public void shouldSendEventsOutsideOfCallingThread() throws Exception {
+        testee.send("state", "a");
+        testee.send("state", "b");
+        testee.complete();
+
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+        assertThat(scheduled).hasSize(1);
+
+        scheduled.get(0).run();
+
+        verify(emitter, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(emitter).complete();
+    }
+
+    @Test
+    public void shouldDropEventsWhenQueueIsFull() throws Exception {
+        for (int i = 0; i < SearchEventStream.MAX_QUEUED_EVENTS + 10; i++) {
+            testee.send("results", i);
+        }
+
+        scheduled.get(0).run();
+
+        verify(emitter, times(SearchEventStream.MAX_QUEUED_EVENTS)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    public void shouldStopSendingWhenClientIsGone() throws Exception {
+        doThrow(new IOException("Broken pipe")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        testee.send("state", "a");
+        testee.send("state", "b");
+
+        scheduled.get(0).run();
+        testee.send("state", "c");
+        testee.complete();
+
+        verify(emitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(emitter).completeWithError(any());
+        verify(emitter, never()).complete();
+        assertThat(scheduled).hasSize(1);
+    }
+
+}
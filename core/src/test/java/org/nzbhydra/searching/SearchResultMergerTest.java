@@ -0,0 +1,112 @@
+package org.nzbhydra.searching;
+
+import org.junit.Test;
+import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class SearchResultMergerTest {
+
+    private SearchResultMerger testee = new SearchResultMerger();
+
+    @Test
+    public void shouldMergeNewestFirst() {
+        IndexerSearchCacheEntry entry1 = createEntry("indexer1", 100, 80, 20);
+        IndexerSearchCacheEntry entry2 = createEntry("indexer2", 90, 85, 10);
+        testee.offer(entry1);
+        testee.offer(entry2);
+
+        List<String> titles = new ArrayList<>();
+        while (testee.hasNext()) {
+            titles.add(testee.next().getTitle());
+        }
+
+        assertThat(titles).containsExactly("indexer1-100", "indexer2-90", "indexer2-85", "indexer1-80", "indexer1-20", "indexer2-10");
+        assertThat(testee.isMergedInOrder()).isTrue();
+    }
+
+    @Test
+    public void shouldContinueWithNewPageOfIndexer() {
+        IndexerSearchCacheEntry entry1 = createEntry("indexer1", 100);
+        IndexerSearchCacheEntry entry2 = createEntry("indexer2", 90, 10);
+        testee.offer(entry1);
+        testee.offer(entry2);
+
+        assertThat(testee.peekIndexer()).isSameAs(entry1);
+        assertThat(testee.next().getTitle()).isEqualTo("indexer1-100");
+        assertThat(testee.next().getTitle()).isEqualTo("indexer2-90");
+
+        entry1.addIndexerSearchResult(createIndexerSearchResult("indexer1", entry1.getIndexer(), 50));
+        testee.offer(entry1);
+
+        assertThat(testee.next().getTitle()).isEqualTo("indexer1-50");
+        assertThat(testee.next().getTitle()).isEqualTo("indexer2-10");
+        assertThat(testee.hasNext()).isFalse();
+        assertThat(testee.isMergedInOrder()).isTrue();
+    }
+
+    @Test
+    public void shouldMergeNewPageIntoResultsNotPoppedYet() {
+        IndexerSearchCacheEntry entry1 = createEntry("indexer1", 20, 100, 80);
+        testee.offer(entry1);
+        assertThat(testee.next().getTitle()).isEqualTo("indexer1-100");
+
+        entry1.addIndexerSearchResult(createIndexerSearchResult("indexer1", entry1.getIndexer(), 10, 90, 50));
+        testee.offer(entry1);
+        assertThat(testee.next().getTitle()).isEqualTo("indexer1-90");
+        assertThat(testee.next().getTitle()).isEqualTo("indexer1-80");
+
+        //Newer than all results popped so far
+        entry1.addIndexerSearchResult(createIndexerSearchResult("indexer1", entry1.getIndexer(), 200, 30));
+        testee.offer(entry1);
+
+        List<String> titles = new ArrayList<>();
+        while (testee.hasNext()) {
+            titles.add(testee.next().getTitle());
+        }
+        assertThat(titles).containsExactly("indexer1-200", "indexer1-50", "indexer1-30", "indexer1-20", "indexer1-10");
+        assertThat(testee.isMergedInOrder()).isFalse();
+    }
+
+    @Test
+    public void shouldRecognizeResultsMergedOutOfOrder() {
+        IndexerSearchCacheEntry entry1 = createEntry("indexer1", 100);
+        testee.offer(entry1);
+        testee.next();
+
+        IndexerSearchCacheEntry entry2 = createEntry("indexer2", 200);
+        testee.offer(entry2);
+        testee.next();
+
+        assertThat(testee.isMergedInOrder()).isFalse();
+    }
+
+    private IndexerSearchCacheEntry createEntry(String indexerName, long... epochSeconds) {
+        Indexer indexer = mock(Indexer.class);
+        IndexerSearchCacheEntry entry = new IndexerSearchCacheEntry(indexer);
+        entry.addIndexerSearchResult(createIndexerSearchResult(indexerName, indexer, epochSeconds));
+        return entry;
+    }
+
+    private IndexerSearchResult createIndexerSearchResult(String indexerName, Indexer indexer, long... epochSeconds) {
+        IndexerSearchResult indexerSearchResult = new IndexerSearchResult(indexer, true);
+        List<SearchResultItem> items = new ArrayList<>();
+        for (long epochSecond : epochSeconds) {
+            SearchResultItem item = new SearchResultItem();
+            item.setIndexer(indexer);
+            item.setPubDate(Instant.ofEpochSecond(epochSecond));
+            item.setTitle(indexerName + "-" + epochSecond);
+            items.add(item);
+        }
+        indexerSearchResult.setSearchResultItems(items);
+        return indexerSearchResult;
+    }
+
+}
@@ -9,6 +9,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -16,8 +17,11 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.SearchingConfig;
 import org.nzbhydra.config.category.Category;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.database.WriteBehindPersister;
+import org.nzbhydra.historystats.StatsRollups;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerEntity;
 import org.nzbhydra.indexers.IndexerSearchEntity;
@@ -26,10 +30,10 @@ import org.nzbhydra.mediainfo.InfoProvider;
 import org.nzbhydra.searching.IndexerForSearchSelector.IndexerForSearchSelection;
 import org.nzbhydra.searching.db.SearchRepository;
 import org.nzbhydra.searching.db.SearchResultEntity;
-import org.nzbhydra.searching.db.SearchResultRepository;
 import org.nzbhydra.searching.dtoseventsenums.DuplicateDetectionResult;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultsLoadedEvent;
 import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.InternalData;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
@@ -40,14 +44,24 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -65,6 +79,8 @@ public class SearcherUnitTest {
     @Mock
     private DuplicateDetector duplicateDetector;
     @Mock
+    private StatsRollups statsRollupsMock;
+    @Mock
     private Indexer indexer1;
     @Mock
     private Indexer indexer2;
@@ -77,7 +93,7 @@ public class SearcherUnitTest {
     @Mock
     private IndexerEntity indexerEntity;
     @Mock
-    private SearchResultRepository searchResultRepositoryMock;
+    private WriteBehindPersister writeBehindPersisterMock;
     @Mock
     private SearchResultEntity searchResultEntityMock;
     @Mock
@@ -108,6 +124,10 @@ public class SearcherUnitTest {
         MockitoAnnotations.initMocks(this);
         when(searchResultEntityMock.getIndexer()).thenReturn(indexerEntity);
         searcher.duplicateDetector = duplicateDetector;
+        searcher.searchExecutor = new IndexerSearchExecutor();
+        searcher.searchExecutor.initialize(new SearchingConfig());
+        searcher.searchCache = new SearchCache();
+        searcher.searchCache.initialize(new SearchingConfig());
 
         when(indexer1.getName()).thenReturn("indexer1");
         when(indexer1.getConfig()).thenReturn(indexerConfigMock);
@@ -115,6 +135,9 @@ public class SearcherUnitTest {
 
         when(indexer2.getName()).thenReturn("indexer2");
         when(indexer2.getConfig()).thenReturn(indexerConfigMock);
+        for (Indexer indexer : Arrays.asList(indexer1, indexer2)) {
+            when(indexer.searchAsync(any(), anyInt(), any(), any())).thenAnswer(invocation -> CompletableFuture.completedFuture(indexer.search(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2))));
+        }
         Category category = new Category();
         category.setName("cat");
         when(searchRequestMock.getCategory()).thenReturn(category);
@@ -135,6 +158,18 @@ public class SearcherUnitTest {
             }
         });
 
+        when(duplicateDetector.detectDuplicates(any(), any())).thenAnswer(new Answer<DuplicateDetectionResult>() {
+            @Override
+            public DuplicateDetectionResult answer(InvocationOnMock invocation) throws Throwable {
+                DuplicateIndex duplicateIndex = invocation.getArgument(0);
+                Collection<SearchResultItem> items = invocation.getArgument(1);
+                for (SearchResultItem item : items) {
+                    duplicateIndex.getDuplicateGroups().add(Sets.newLinkedHashSet(Arrays.asList(item)));
+                }
+                return new DuplicateDetectionResult(duplicateIndex.getDuplicateGroups(), HashMultiset.create());
+            }
+        });
+
         BaseConfig value = new BaseConfig();
         value.getSearching().setLoadAllCachedOnInternal(false);
         when(configProviderMock.getBaseConfig()).thenReturn(value);
@@ -245,6 +280,140 @@ public class SearcherUnitTest {
 
     }
 
+    @Test
+    public void shouldCoalesceIdenticalConcurrentSearches() throws Exception {
+        CountDownLatch indexerCalled = new CountDownLatch(1);
+        CountDownLatch releaseIndexer = new CountDownLatch(1);
+        when(indexer1.search(any(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            indexerCalled.countDown();
+            releaseIndexer.await(10, TimeUnit.SECONDS);
+            return mockIndexerSearchResult(0, 20, false, 20, indexer1);
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<SearchResult> firstSearch = executorService.submit(() -> searcher.search(createApiSearchRequest(0, 10)));
+            assertThat(indexerCalled.await(10, TimeUnit.SECONDS), is(true));
+            Future<SearchResult> secondSearch = executorService.submit(() -> searcher.search(createApiSearchRequest(5, 5)));
+            //Give the second search time to attach to the first one
+            Thread.sleep(500);
+            releaseIndexer.countDown();
+
+            assertThat(firstSearch.get(10, TimeUnit.SECONDS).getSearchResultItems().size(), is(10));
+            List<SearchResultItem> secondResults = secondSearch.get(10, TimeUnit.SECONDS).getSearchResultItems();
+            assertThat(secondResults.size(), is(5));
+            assertThat(secondResults.get(0).getTitle(), is("item5"));
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        verify(indexer1, times(1)).search(any(), anyInt(), any());
+        assertThat(searcher.getNumberOfCoalescedSearches(), is(1L));
+        assertThat(searcher.getNumberOfSavedIndexerCalls(), is(1L));
+    }
+
+    @Test
+    public void shouldNotCoalesceConcurrentSearchesForDifferentIndexers() throws Exception {
+        CountDownLatch indexerCalled = new CountDownLatch(1);
+        CountDownLatch releaseIndexer = new CountDownLatch(1);
+        when(indexer1.search(any(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            indexerCalled.countDown();
+            releaseIndexer.await(10, TimeUnit.SECONDS);
+            return mockIndexerSearchResult(0, 20, false, 20, indexer1);
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            SearchRequest firstSearchRequest = createApiSearchRequest(0, 10);
+            firstSearchRequest.setIndexers(Sets.newHashSet("indexer1"));
+            Future<SearchResult> firstSearch = executorService.submit(() -> searcher.search(firstSearchRequest));
+            assertThat(indexerCalled.await(10, TimeUnit.SECONDS), is(true));
+            SearchRequest secondSearchRequest = createApiSearchRequest(0, 10);
+            secondSearchRequest.setIndexers(Sets.newHashSet("indexer1", "indexer2"));
+            Future<SearchResult> secondSearch = executorService.submit(() -> searcher.search(secondSearchRequest));
+            Thread.sleep(500);
+            releaseIndexer.countDown();
+
+            firstSearch.get(10, TimeUnit.SECONDS);
+            secondSearch.get(10, TimeUnit.SECONDS);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        verify(indexer1, times(2)).search(any(), anyInt(), any());
+        assertThat(searcher.getNumberOfCoalescedSearches(), is(0L));
+    }
+
+    @Test
+    public void shouldPublishResultsInOrderOfIndexerResponses() throws Exception {
+        when(indexer1.search(any(), anyInt(), anyInt())).thenReturn(mockIndexerSearchResult(0, 10, false, 10, indexer1));
+        CompletableFuture<IndexerSearchResult> slowIndexerFuture = new CompletableFuture<>();
+        doReturn(slowIndexerFuture).when(indexer2).searchAsync(any(), anyInt(), any(), any());
+        when(pickingResultMock.getSelectedIndexers()).thenReturn(Arrays.asList(indexer2, indexer1));
+        List<String> indexersWithPublishedResults = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) instanceof SearchResultsLoadedEvent) {
+                indexersWithPublishedResults.add(((SearchResultsLoadedEvent) invocation.getArgument(0)).getIndexerName());
+            }
+            return null;
+        }).when(applicationEventPublisherMock).publishEvent(any(Object.class));
+
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        try {
+            executorService.schedule(() -> slowIndexerFuture.complete(mockIndexerSearchResult(0, 10, false, 10, indexer2)), 500, TimeUnit.MILLISECONDS);
+            SearchResult searchResult = searcher.search(new SearchRequest(SearchSource.INTERNAL, SearchType.SEARCH, 0, 100));
+
+            assertThat(searchResult.getSearchResultItems().size(), is(20));
+            assertThat(indexersWithPublishedResults, contains("indexer1", "indexer2"));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldSaveResultsBeforePublishingThem() throws Exception {
+        IndexerSearchResult indexerSearchResult = mockIndexerSearchResult(0, 10, false, 10, indexer1);
+        indexerSearchResult.setSearchResultEntities(Sets.newHashSet(searchResultEntityMock));
+        when(indexer1.search(any(), anyInt(), anyInt())).thenReturn(indexerSearchResult);
+        when(indexerSearchRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        searcher.search(new SearchRequest(SearchSource.INTERNAL, SearchType.SEARCH, 0, 100));
+
+        InOrder inOrder = inOrder(writeBehindPersisterMock, applicationEventPublisherMock);
+        inOrder.verify(writeBehindPersisterMock).saveSearchResults(argThat(x -> x.contains(searchResultEntityMock)));
+        inOrder.verify(applicationEventPublisherMock).publishEvent(any(SearchResultsLoadedEvent.class));
+        verify(writeBehindPersisterMock, times(1)).saveSearchResults(argThat(x -> x.contains(searchResultEntityMock)));
+    }
+
+    @Test
+    public void shouldReturnResultsWhenDeadlineIsReachedAndUseSlowResultsForNextPage() throws Exception {
+        configProviderMock.getBaseConfig().getSearching().setSearchDeadlineSeconds(1);
+        when(indexer1.search(any(), anyInt(), anyInt())).thenReturn(mockIndexerSearchResult(0, 10, false, 10, indexer1));
+        CompletableFuture<IndexerSearchResult> slowIndexerFuture = new CompletableFuture<>();
+        doReturn(slowIndexerFuture).when(indexer2).searchAsync(any(), anyInt(), any(), any());
+        when(pickingResultMock.getSelectedIndexers()).thenReturn(Arrays.asList(indexer1, indexer2));
+
+        SearchRequest searchRequest = new SearchRequest(SearchSource.INTERNAL, SearchType.SEARCH, 0, 100);
+        searchRequest.setTitle("some title so it will be found in the search request cache");
+        SearchResult searchResult = searcher.search(searchRequest);
+        assertThat(searchResult.getSearchResultItems().size(), is(10));
+        assertThat(searchResult.getCutOffIndexers(), contains(indexer2));
+
+        slowIndexerFuture.complete(mockIndexerSearchResult(0, 10, false, 10, indexer2));
+        searchRequest = new SearchRequest(SearchSource.INTERNAL, SearchType.SEARCH, 10, 100);
+        searchRequest.setTitle("some title so it will be found in the search request cache");
+        searchResult = searcher.search(searchRequest);
+        assertThat(searchResult.getSearchResultItems().size(), is(10));
+        assertThat(searchResult.getCutOffIndexers().isEmpty(), is(true));
+        verify(indexer2, times(1)).searchAsync(any(), anyInt(), any(), any());
+    }
+
+    private SearchRequest createApiSearchRequest(int offset, int limit) {
+        SearchRequest searchRequest = new SearchRequest(SearchSource.API, SearchType.TVSEARCH, offset, limit);
+        searchRequest.setTitle("some title");
+        return searchRequest;
+    }
+
     private void setResultsPerDay(int offset, IndexerSearchResult result1) {
         int resultsPerDay = 100;
         List<List<SearchResultItem>> partitions = Lists.partition(result1.getSearchResultItems(), resultsPerDay);
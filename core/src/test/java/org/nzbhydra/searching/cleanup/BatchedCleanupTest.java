@@ -0,0 +1,78 @@
+package org.nzbhydra.searching.cleanup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.nzbhydra.web.AsyncRequestExecutor;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchedCleanupTest {
+
+    @Mock
+    private AsyncRequestExecutor asyncRequestExecutor;
+    @Mock
+    private Connection connection;
+    @InjectMocks
+    private BatchedCleanup testee = new BatchedCleanup();
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(connection.getAutoCommit()).thenReturn(false);
+    }
+
+    @Test
+    public void shouldDeleteInBatchesUntilNothingIsLeft() throws Exception {
+        AtomicInteger remaining = new AtomicInteger(2 * BatchedCleanup.BATCH_SIZE + 10);
+
+        BatchedCleanup.Progress progress = testee.run("test", connection, (batchConnection, batchSize) -> {
+            int deleted = Math.min(batchSize, remaining.get());
+            remaining.addAndGet(-deleted);
+            return deleted;
+        });
+
+        assertThat(progress.isFinished()).isTrue();
+        assertThat(progress.getDeleted()).isEqualTo(2 * BatchedCleanup.BATCH_SIZE + 10);
+        assertThat(progress.getBatches()).isEqualTo(4);
+        verify(connection, times(4)).commit();
+    }
+
+    @Test
+    public void shouldCallbackAfterCommit() throws Exception {
+        AtomicInteger remaining = new AtomicInteger(10);
+        List<String> calls = new ArrayList<>();
+        doAnswer(invocation -> calls.add("commit")).when(connection).commit();
+
+        testee.run("test", connection, (batchConnection, batchSize) -> {
+            calls.add("batch");
+            return remaining.getAndSet(0);
+        }, () -> calls.add("afterCommit"));
+
+        assertThat(calls).containsExactly("batch", "commit", "afterCommit", "batch", "commit", "afterCommit");
+    }
+
+    @Test
+    public void shouldPauseLongerWhileRequestsAreRunning() {
+        assertThat(testee.getPause()).isEqualTo(BatchedCleanup.PAUSE_MILLIS);
+
+        when(asyncRequestExecutor.getNumberOfActiveRequests()).thenReturn(2);
+        when(asyncRequestExecutor.getNumberOfQueuedRequests()).thenReturn(1);
+        assertThat(testee.getPause()).isEqualTo(3 * BatchedCleanup.PAUSE_PER_ACTIVE_REQUEST_MILLIS);
+
+        when(asyncRequestExecutor.getNumberOfQueuedRequests()).thenReturn(50);
+        assertThat(testee.getPause()).isEqualTo(BatchedCleanup.MAX_PAUSE_MILLIS);
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.nzbhydra.searching.cleanup;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OldResultsCleanupTaskTest {
+
+    private OldResultsCleanupTask testee = new OldResultsCleanupTask();
+
+    private Connection connection;
+    private Timestamp deleteOlderThan = Timestamp.valueOf("2020-06-10 00:00:00");
+
+    @Before
+    public void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:oldresultscleanup;DB_CLOSE_DELAY=-1");
+        connection = dataSource.getConnection();
+        execute("CREATE TABLE SEARCHRESULT (ID BIGINT PRIMARY KEY, FIRST_FOUND TIMESTAMP)");
+        execute("CREATE TABLE INDEXERNZBDOWNLOAD (ID INTEGER PRIMARY KEY AUTO_INCREMENT, SEARCH_RESULT_ID BIGINT)");
+        execute("CREATE INDEX SEARCHRESULT_FIRST_FOUND_ID_INDEX ON SEARCHRESULT (FIRST_FOUND, ID)");
+        execute("INSERT INTO SEARCHRESULT VALUES (5, '2020-06-01 00:00:00'), (3, '2020-06-01 00:00:00'), (-7, '2020-06-02 00:00:00'), (1, '2020-06-03 00:00:00'), (2, '2020-06-11 00:00:00')");
+        execute("INSERT INTO INDEXERNZBDOWNLOAD (SEARCH_RESULT_ID) VALUES (3)");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        execute("DROP ALL OBJECTS");
+        connection.close();
+    }
+
+    @Test
+    public void shouldDeleteOldResultsWithoutDownloadsInBatches() throws Exception {
+        assertThat(testee.deleteBatch(connection, 2, deleteOlderThan)).containsExactly(5L, -7L);
+        assertThat(testee.deleteBatch(connection, 2, deleteOlderThan)).containsExactly(1L);
+        assertThat(testee.deleteBatch(connection, 2, deleteOlderThan)).isEmpty();
+
+        assertThat(getIds()).containsExactlyInAnyOrder(3L, 2L);
+    }
+
+    private List<Long> getIds() throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT ID FROM SEARCHRESULT")) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.nzbhydra.searching.dtoseventsenums;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DuplicateKeyTest {
+
+    @Test
+    public void shouldCompareNormalizedTitles() {
+        List<String> titles = Arrays.asList("", "-", "a", "A", "a.b", "a b", "ab", "ab_", "abc", "A.B-C_", ".a..b", "a-b-c-d", "abcd", "abd");
+        for (String title1 : titles) {
+            for (String title2 : titles) {
+                boolean expected = normalize(title1).equals(normalize(title2));
+                assertThat(DuplicateKey.normalizedTitlesEqual(title1, title2)).as("%s and %s", title1, title2).isEqualTo(expected);
+                if (expected) {
+                    assertThat(DuplicateKey.hashNormalizedTitle(title1)).isEqualTo(DuplicateKey.hashNormalizedTitle(title2));
+                }
+            }
+        }
+        assertThat(DuplicateKey.normalizedTitlesEqual(null, null)).isTrue();
+        assertThat(DuplicateKey.normalizedTitlesEqual("a", null)).isFalse();
+    }
+
+    @Test
+    public void shouldComparePostersAndGroups() {
+        DuplicateKey key1 = createKey("title", "poster", "group");
+        DuplicateKey key2 = createKey("Title", "poster", "group");
+        DuplicateKey key3 = createKey("title", "otherPoster", null);
+        DuplicateKey key4 = createKey("title", null, null);
+
+        assertThat(key1.isSameTitle(key2)).isTrue();
+        assertThat(key1.isSamePoster(key2)).isTrue();
+        assertThat(key1.isSameGroup(key2)).isTrue();
+        assertThat(key1.isSamePoster(key3)).isFalse();
+        assertThat(key1.isSameGroup(key3)).isFalse();
+        assertThat(key4.isSamePoster(key4)).isFalse();
+        assertThat(key4.isSameGroup(key4)).isFalse();
+    }
+
+    private DuplicateKey createKey(String title, String poster, String group) {
+        SearchResultItem item = new SearchResultItem();
+        item.setTitle(title);
+        item.setPoster(poster);
+        item.setGroup(group);
+        return item.getDuplicateKey();
+    }
+
+    private static String normalize(String title) {
+        return title.toLowerCase().replaceAll("[ .\\-_]", "");
+    }
+
+}
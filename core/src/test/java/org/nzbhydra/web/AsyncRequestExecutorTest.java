@@ -0,0 +1,71 @@
+package org.nzbhydra.web;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.config.SearchingConfig;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class AsyncRequestExecutorTest {
+
+    private AsyncRequestExecutor testee = new AsyncRequestExecutor();
+
+    @Before
+    public void setUp() {
+        SearchingConfig searchingConfig = new SearchingConfig();
+        searchingConfig.setMaxConcurrentSearchRequests(1);
+        searchingConfig.setMaxQueuedSearchRequests(1);
+        testee.initialize(searchingConfig);
+    }
+
+    @After
+    public void tearDown() {
+        SessionStorage.username.remove();
+        testee.onShutdown(null);
+    }
+
+    @Test
+    public void shouldRejectRequestsWhenQueueIsFull() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        CompletableFuture<String> running = testee.submit(() -> {
+            latch.await(10, TimeUnit.SECONDS);
+            return "running";
+        });
+        CompletableFuture<String> queued = testee.submit(() -> "queued");
+
+        Throwable throwable = catchThrowable(() -> testee.submit(() -> "rejected"));
+        assertThat(throwable).isInstanceOf(TooManyRequestsException.class);
+        assertThat(((TooManyRequestsException) throwable).getRetryAfterSeconds()).isEqualTo(AsyncRequestExecutor.RETRY_AFTER_SECONDS);
+
+        latch.countDown();
+        assertThat(running.get(10, TimeUnit.SECONDS)).isEqualTo("running");
+        assertThat(queued.get(10, TimeUnit.SECONDS)).isEqualTo("queued");
+        assertThat(testee.submit(() -> "accepted").get(10, TimeUnit.SECONDS)).isEqualTo("accepted");
+    }
+
+    @Test
+    public void shouldUseSessionDataOfCallingThread() throws Exception {
+        SessionStorage.username.set("user");
+
+        assertThat(testee.submit(SessionStorage.username::get).get(10, TimeUnit.SECONDS)).isEqualTo("user");
+    }
+
+    @Test
+    public void shouldCompleteWithOriginalException() {
+        CompletableFuture<Object> future = testee.submit(() -> {
+            throw new IOException("error");
+        });
+
+        Throwable throwable = catchThrowable(() -> future.get(10, TimeUnit.SECONDS));
+        assertThat(throwable).isInstanceOf(ExecutionException.class).hasCauseExactlyInstanceOf(IOException.class);
+    }
+
+}
@@ -668,6 +668,28 @@ function ConfigFields($injector) {
                                 }
                             }
                         },
+                        {
+                            key: 'adaptiveTimeouts',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Adaptive timeouts',
+                                help: 'Use shorter timeouts for indexers which usually respond quickly. The timeout is derived from the indexer\'s recent response times but never longer than the timeout above.'
+                            }
+                        },
+                        {
+                            key: 'searchDeadlineSeconds',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Search deadline',
+                                help: 'When set searches return the results found within this time instead of waiting for slow indexers. Indexers which have not responded yet keep running and their results are shown when more results are loaded.',
+                                min: 1,
+                                addonRight: {
+                                    text: 'seconds'
+                                }
+                            }
+                        },
                         {
                             key: 'userAgent',
                             type: 'horizontalInput',
@@ -705,6 +727,65 @@ function ConfigFields($injector) {
                                 label: 'Ignore temporary errors',
                                 tooltip: "By default if access to an indexer fails the indexer is disabled for a certain amount of time (for a short while first, then increasingly longer if the problems persist). Disable this and always try these indexers."
                             }
+                        },
+                        {
+                            key: 'maxConcurrentIndexerCalls',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max concurrent indexer calls',
+                                help: 'Number of indexer calls executed at the same time by all searches combined. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'maxConcurrentCallsPerIndexer',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max concurrent calls per indexer',
+                                help: 'Number of calls executed at the same time for any one indexer. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'maxQueuedIndexerCalls',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max queued indexer calls',
+                                help: 'Indexer calls exceeding this number while all others are busy will be rejected. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'maxConcurrentSearchRequests',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max concurrent searches',
+                                help: 'Number of API and web searches and API NZB downloads executed at the same time. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'maxQueuedSearchRequests',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Max queued searches',
+                                help: 'Searches and downloads exceeding this number while all others are busy will be rejected with HTTP status 429 so the calling tool can retry later. Requires restart.',
+                                min: 1
+                            }
+                        },
+                        {
+                            key: 'useVirtualThreadsForIndexerCalls',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Use virtual threads',
+                                help: 'Execute indexer calls using virtual threads. Only has an effect when running with a java version supporting them. Requires restart.'
+                            }
                         }
                     ]
                 }, {
@@ -1297,6 +1378,19 @@ function ConfigFields($injector) {
                                 tooltip: 'Found results are stored in the database for this long until they\'re deleted. After that any links to Hydra results still stored elsewhere become invalid. You can increase the limit if you want, the disc space needed is negligible (about 75 MB for 7 days on my server).'
                             }
                         },
+                        {
+                            key: 'searchCacheSizeMb',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'Search cache size',
+                                help: 'Memory used to keep the results of recent searches so that further pages can be loaded without searching again.',
+                                min: 1,
+                                addonRight: {
+                                    text: 'MB'
+                                }
+                            }
+                        },
                         {
                             key: 'globalCacheTimeMinutes',
                             type: 'horizontalInput',
@@ -197,6 +197,7 @@ angular
             model.categoryMapping = indexerConfig.categoryMapping;
             model.configComplete = indexerConfig.configComplete;
             model.allCapsChecked = indexerConfig.allCapsChecked;
+            model.jsonSupported = indexerConfig.jsonSupported;
             model.hitLimit = indexerConfig.hitLimit;
             model.downloadLimit = indexerConfig.downloadLimit;
             model.state = indexerConfig.state;
@@ -462,6 +462,19 @@ function getIndexerBoxFields(indexerModel, parentModel, isInitial, CategoriesSer
                 }
             }
         );
+        if (indexerModel.searchModuleType === 'NEWZNAB') {
+            fieldset.push(
+                {
+                    key: 'jsonSupported',
+                    type: 'horizontalSwitch',
+                    templateOptions: {
+                        type: 'switch',
+                        label: 'Use JSON',
+                        help: 'Request search results as JSON which is usually smaller and faster to parse. Determined by the caps check. NZBHydra will switch back to XML if the indexer returns invalid JSON.'
+                    }
+                }
+            );
+        }
         fieldset.push(
             {
                 type: 'horizontalCheckCaps',
@@ -382,48 +382,73 @@ angular
 function SearchUpdateModalInstanceCtrl($scope, $interval, SearchService, $uibModalInstance, searchRequestId, onCancel) {
 
     var updateSearchMessagesInterval = undefined;
+    var searchEvents = undefined;
     var loggedSearchFinished = false;
     $scope.messages = [];
     $scope.indexerSelectionFinished = false;
     $scope.indexersSelected = 0;
     $scope.indexersFinished = 0;
+    $scope.numberOfLoadedResults = 0;
+
+    function updateSearchState(searchState) {
+        $scope.indexerSelectionFinished = searchState.indexerSelectionFinished;
+        $scope.searchFinished = searchState.searchFinished;
+        $scope.indexersSelected = searchState.indexersSelected;
+        $scope.indexersFinished = searchState.indexersFinished;
+        $scope.numberOfLoadedResults = searchState.numberOfLoadedResults;
+        $scope.progressMax = searchState.indexersSelected;
+        if ($scope.progressMax > searchState.indexersSelected) {
+            $scope.progressMax = ">=" + searchState.indexersSelected;
+        }
+        if (searchState.messages) {
+            $scope.messages = searchState.messages;
+        }
+        if ($scope.searchFinished && !loggedSearchFinished) {
+            $scope.messages.push("Finished searching. Preparing results...");
+            loggedSearchFinished = true;
+        }
+    }
 
-    updateSearchMessagesInterval = $interval(function () {
-        SearchService.getSearchState(searchRequestId).then(function (response) {
-                $scope.indexerSelectionFinished = response.data.indexerSelectionFinished;
-                $scope.searchFinished = response.data.searchFinished;
-                $scope.indexersSelected = response.data.indexersSelected;
-                $scope.indexersFinished = response.data.indexersFinished;
-                $scope.progressMax = response.data.indexersSelected;
-                if ($scope.progressMax > response.data.indexersSelected) {
-                    $scope.progressMax = ">=" + response.data.indexersSelected;
-                }
-                if (response.data.messages) {
-                    $scope.messages = response.data.messages;
-                }
-                if ($scope.searchFinished && !loggedSearchFinished) {
-                    $scope.messages.push("Finished searching. Preparing results...");
-                    loggedSearchFinished = true;
-                }
-            },
-            function () {
-                $interval.cancel(updateSearchMessagesInterval);
-            }
-        );
-    }, 100);
-
-    $scope.cancelSearch = function () {
+    function stopUpdates() {
         if (angular.isDefined(updateSearchMessagesInterval)) {
             $interval.cancel(updateSearchMessagesInterval);
         }
+        if (angular.isDefined(searchEvents)) {
+            searchEvents.close();
+        }
+    }
+
+    //The search state is pushed by the server. Only if the browser doesn't support that it's polled
+    searchEvents = SearchService.openSearchEvents(searchRequestId, function (searchState) {
+        $scope.$applyAsync(function () {
+            updateSearchState(searchState);
+        });
+        if (searchState.searchFinished) {
+            //Otherwise the browser would reconnect
+            searchEvents.close();
+        }
+    });
+
+    if (angular.isUndefined(searchEvents)) {
+        updateSearchMessagesInterval = $interval(function () {
+            SearchService.getSearchState(searchRequestId).then(function (response) {
+                    updateSearchState(response.data);
+                },
+                function () {
+                    $interval.cancel(updateSearchMessagesInterval);
+                }
+            );
+        }, 100);
+    }
+
+    $scope.cancelSearch = function () {
+        stopUpdates();
         onCancel();
         $uibModalInstance.dismiss();
     };
 
 
     $scope.$on('$destroy', function () {
-        if (angular.isDefined(updateSearchMessagesInterval)) {
-            $interval.cancel(updateSearchMessagesInterval);
-        }
+        stopUpdates();
     });
 }
@@ -9,6 +9,7 @@ function SearchService($http) {
     var lastExecutedQuery;
     var lastExecutedSearchRequestParameters;
     var lastResults;
+    var loadedResults = [];
     var modalInstance;
 
     return {
@@ -16,6 +17,8 @@ function SearchService($http) {
         getLastResults: getLastResults,
         loadMore: loadMore,
         getSearchState: getSearchState,
+        openSearchEvents: openSearchEvents,
+        getLoadedResults: getLoadedResults,
         getModalInstance: getModalInstance,
         setModalInstance: setModalInstance,
     };
@@ -75,6 +78,27 @@ function SearchService($http) {
         return $http.get("internalapi/search/state", {params: {searchrequestid: searchRequestId}});
     }
 
+    //Returns an event source to which the search state and the results of each indexer are pushed while searching. Returns undefined if the browser doesn't support server-sent events
+    function openSearchEvents(searchRequestId, onSearchState) {
+        if (typeof EventSource === "undefined") {
+            return undefined;
+        }
+        loadedResults = [];
+        var eventSource = new EventSource("internalapi/search/events?searchrequestid=" + searchRequestId);
+        eventSource.addEventListener("state", function (event) {
+            onSearchState(JSON.parse(event.data));
+        });
+        eventSource.addEventListener("results", function (event) {
+            loadedResults.push.apply(loadedResults, JSON.parse(event.data).searchResults);
+        });
+        return eventSource;
+    }
+
+    //Returns the results pushed by the server for the current search before it was finished
+    function getLoadedResults() {
+        return loadedResults;
+    }
+
     function processData(response) {
         var searchResults = response.data.searchResults;
         var indexerSearchMetaDatas = response.data.indexerSearchMetaDatas;
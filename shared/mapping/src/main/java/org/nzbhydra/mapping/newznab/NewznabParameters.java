@@ -8,9 +8,11 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 @Data
 @Builder
@@ -147,4 +149,23 @@ public class NewznabParameters {
     public int cacheKey(NewznabResponse.SearchType searchType) {
         return Objects.hashCode(toString() + searchType);
     }
+
+    /**
+     * Unlike {@link #cacheKey(NewznabResponse.SearchType)} the key contains all parameters (including the API key and the selected indexers)
+     * so that two different requests never have the same key. Every value is prefixed with its length so that values containing separators
+     * can't be mistaken for other parameters.
+     */
+    public String fullCacheKey(NewznabResponse.SearchType searchType) {
+        StringBuilder key = new StringBuilder();
+        for (Object value : Arrays.asList(apikey, t, q, cat, rid, tvdbid, tvmazeid, traktId, imdbid, tmdbid, season, ep, author, title, offset, limit, minage, maxage,
+                minsize, maxsize, id, raw, o, cachetime, password, genre, attrs, extended, indexers == null ? null : new TreeSet<>(indexers), searchType)) {
+            if (value == null) {
+                key.append('-');
+            } else {
+                String string = value.toString();
+                key.append(string.length()).append(':').append(string);
+            }
+        }
+        return key.toString();
+    }
 }
@@ -0,0 +1,322 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.mapping.newznab.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.nzbhydra.mapping.newznab.xml.NewznabAttribute;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlApilimits;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlChannel;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlEnclosure;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlError;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlGuid;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlItem;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlResponse;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.mapping.newznab.xml.Xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads newznab JSON responses (<tt>o=json</tt>) using Jackson's streaming parser. The result is mapped to the same classes as XML
+ * responses so that indexers don't need to care about which format was used.
+ * <p>
+ * The JSON is created by the indexers from their XML output, so XML attributes are contained in "@attributes" objects, empty elements
+ * are empty objects and lists with only one entry (items, attributes) may be written as a single object. Any response which doesn't
+ * match the expected structure results in an {@link IOException}.
+ */
+public class NewznabJsonStreamReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final DateTimeFormatter FORMAT_STRING_TO_INSTANT = DateTimeFormatter.RFC_1123_DATE_TIME;
+    private static final String ATTRIBUTES = "@attributes";
+
+    public static Xml read(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return read(parser);
+        }
+    }
+
+    public static Xml read(InputStream inputStream) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            return read(parser);
+        }
+    }
+
+    private static Xml read(JsonParser parser) throws IOException {
+        try {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            NewznabXmlRoot root = new NewznabXmlRoot();
+            boolean channelFound = false;
+            NewznabXmlError error = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (name.equals(ATTRIBUTES)) {
+                    String version = readScalarObject(parser).get("version");
+                    if (version != null) {
+                        root.setVersion(version);
+                    }
+                } else if (name.equals("channel")) {
+                    root.setRssChannel(readChannel(parser));
+                    channelFound = true;
+                } else if (name.equals("error")) {
+                    error = readError(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!channelFound) {
+                if (error != null) {
+                    return error;
+                }
+                throw new JsonParseException(parser, "Response contains neither channel nor error");
+            }
+            root.setError(error);
+            return root;
+        } catch (RuntimeException e) {
+            throw new JsonParseException(parser, "Unable to convert value: " + e.getMessage(), e);
+        }
+    }
+
+    private static NewznabXmlChannel readChannel(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        NewznabXmlChannel channel = new NewznabXmlChannel();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "item":
+                    if (parser.currentToken() == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            channel.getItems().add(readItem(parser));
+                        }
+                    } else {
+                        channel.getItems().add(readItem(parser));
+                    }
+                    break;
+                case "title":
+                    channel.setTitle(readText(parser));
+                    break;
+                case "description":
+                    channel.setDescription(readText(parser));
+                    break;
+                case "link":
+                    channel.setLink(readText(parser));
+                    break;
+                case "language":
+                    channel.setLanguage(readText(parser));
+                    break;
+                case "webMaster":
+                    channel.setWebMaster(readText(parser));
+                    break;
+                case "generator":
+                    channel.setGenerator(readText(parser));
+                    break;
+                case "response":
+                case "newznab:response":
+                    Map<String, String> responseAttributes = readElementAttributes(parser);
+                    NewznabXmlResponse response = new NewznabXmlResponse();
+                    response.setOffset(parseInteger(responseAttributes.get("offset")));
+                    response.setTotal(parseInteger(responseAttributes.get("total")));
+                    channel.setNewznabResponse(response);
+                    break;
+                case "apilimits":
+                case "newznab:apilimits":
+                    channel.setApiLimits(readApiLimits(readElementAttributes(parser)));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return channel;
+    }
+
+    private static NewznabXmlItem readItem(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        NewznabXmlItem item = new NewznabXmlItem();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "attr":
+                case "newznab:attr":
+                    if (parser.currentToken() == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            item.getNewznabAttributes().add(readAttribute(parser));
+                        }
+                    } else {
+                        item.getNewznabAttributes().add(readAttribute(parser));
+                    }
+                    break;
+                case "title":
+                    item.setTitle(readText(parser));
+                    break;
+                case "link":
+                    item.setLink(readText(parser));
+                    break;
+                case "enclosure":
+                    Map<String, String> enclosureAttributes = readElementAttributes(parser);
+                    item.setEnclosure(new NewznabXmlEnclosure(enclosureAttributes.get("url"), parseLong(enclosureAttributes.get("length")), enclosureAttributes.get("type")));
+                    break;
+                case "pubDate":
+                    String pubDate = readText(parser);
+                    item.setPubDate(pubDate == null ? null : OffsetDateTime.parse(pubDate.trim(), FORMAT_STRING_TO_INSTANT).toInstant());
+                    break;
+                case "guid":
+                    item.setRssGuid(readGuid(parser));
+                    break;
+                case "description":
+                    item.setDescription(readText(parser));
+                    break;
+                case "comments":
+                    item.setComments(readText(parser));
+                    break;
+                case "category":
+                    item.setCategory(readText(parser));
+                    break;
+                case "grabs":
+                    item.setGrabs(parseInteger(readText(parser)));
+                    break;
+                case "size":
+                    item.setSize(parseLong(readText(parser)));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return item;
+    }
+
+    private static NewznabXmlGuid readGuid(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return new NewznabXmlGuid(readText(parser), false);
+        }
+        NewznabXmlGuid guid = new NewznabXmlGuid();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (name.equals(ATTRIBUTES)) {
+                guid.setPermaLink("true".equals(readScalarObject(parser).get("isPermaLink")));
+            } else {
+                guid.setGuid(readText(parser));
+            }
+        }
+        return guid;
+    }
+
+    private static NewznabAttribute readAttribute(JsonParser parser) throws IOException {
+        Map<String, String> attributes = readElementAttributes(parser);
+        return new NewznabAttribute(attributes.get("name"), attributes.get("value"));
+    }
+
+    private static NewznabXmlError readError(JsonParser parser) throws IOException {
+        Map<String, String> attributes = readElementAttributes(parser);
+        return new NewznabXmlError(attributes.get("code"), attributes.get("description"));
+    }
+
+    private static NewznabXmlApilimits readApiLimits(Map<String, String> attributes) {
+        NewznabXmlApilimits apiLimits = new NewznabXmlApilimits(
+                parseInteger(attributes.get("apiCurrent")),
+                parseInteger(attributes.get("apiMax")),
+                parseInteger(attributes.get("grabCurrent")),
+                parseInteger(attributes.get("grabMax")),
+                parseApiLimitsTime(attributes.get("apioldesttime")),
+                parseApiLimitsTime(attributes.get("graboldesttime")));
+        apiLimits.setApicurrent(parseInteger(attributes.get("apicurrent")));
+        apiLimits.setApimax(parseInteger(attributes.get("apimax")));
+        apiLimits.setGrabcurrent(parseInteger(attributes.get("grabcurrent")));
+        apiLimits.setGrabmax(parseInteger(attributes.get("grabmax")));
+        return apiLimits;
+    }
+
+    /**
+     * Reads the attributes of an element. They're either contained in an "@attributes" object or (for some indexers) written directly into
+     * the element's object.
+     */
+    private static Map<String, String> readElementAttributes(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        Map<String, String> attributes = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (name.equals(ATTRIBUTES)) {
+                attributes.putAll(readScalarObject(parser));
+            } else if (token.isScalarValue()) {
+                attributes.put(name, parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return attributes;
+    }
+
+    private static Map<String, String> readScalarObject(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        Map<String, String> values = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            values.put(name, readText(parser));
+        }
+        return values;
+    }
+
+    /**
+     * Reads a scalar value as text. Empty elements are written as empty objects and are read as empty strings like JAXB does.
+     */
+    private static String readText(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return parser.getValueAsString();
+        }
+        if (token == JsonToken.START_OBJECT && parser.nextToken() == JsonToken.END_OBJECT) {
+            return "";
+        }
+        throw new JsonParseException(parser, "Expected a text value but found " + token);
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+
+    private static Integer parseInteger(String value) {
+        return value == null ? null : Integer.valueOf(value.trim());
+    }
+
+    private static Long parseLong(String value) {
+        return value == null ? null : Long.valueOf(value.trim());
+    }
+
+    private static Instant parseApiLimitsTime(String value) {
+        return value == null ? null : OffsetDateTime.parse(value.trim(), FORMAT_STRING_TO_INSTANT).toInstant();
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.mapping.newznab.xml;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Optional;
+
+/**
+ * Reads newznab and torznab RSS responses (and error responses) using StAX instead of JAXB. Items and their attributes are read
+ * directly from the stream into the mapping classes, without JAXB's reflection and intermediate events.
+ * <p>
+ * Only the elements known to the mapping classes are read, everything else is skipped. Responses with another root element (e.g. caps)
+ * result in an empty optional. Any value which cannot be converted results in an {@link XMLStreamException}; callers are expected to
+ * fall back to JAXB in both cases, which then handles all the edge cases exactly as before.
+ */
+public class NewznabXmlStreamReader {
+
+    private static final String NEWZNAB_NAMESPACE = "http://www.newznab.com/DTD/2010/feeds/attributes/";
+    private static final String TORZNAB_NAMESPACE = "http://torznab.com/schemas/2015/feed";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final JaxbPubdateAdapter PUBDATE_ADAPTER = new JaxbPubdateAdapter();
+
+    public static Optional<Xml> read(String xml) throws XMLStreamException {
+        return read(new StringReader(xml));
+    }
+
+    public static Optional<Xml> read(Reader reader) throws XMLStreamException {
+        return read(INPUT_FACTORY.createXMLStreamReader(reader));
+    }
+
+    public static Optional<Xml> read(InputStream inputStream) throws XMLStreamException {
+        return read(INPUT_FACTORY.createXMLStreamReader(inputStream));
+    }
+
+    private static Optional<Xml> read(XMLStreamReader reader) throws XMLStreamException {
+        try {
+            reader.nextTag();
+            if (isElement(reader, "rss")) {
+                return Optional.of(readRoot(reader));
+            }
+            if (isElement(reader, "error")) {
+                return Optional.of(readError(reader));
+            }
+            return Optional.empty();
+        } catch (RuntimeException e) {
+            throw new XMLStreamException("Unable to convert value: " + e.getMessage(), reader.getLocation(), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static NewznabXmlRoot readRoot(XMLStreamReader reader) throws XMLStreamException {
+        NewznabXmlRoot root = new NewznabXmlRoot();
+        //Not set if the attribute is missing, like JAXB
+        String version = reader.getAttributeValue(null, "version");
+        if (version != null) {
+            root.setVersion(version);
+        }
+        while (nextChild(reader)) {
+            if (isElement(reader, "channel")) {
+                root.setRssChannel(readChannel(reader));
+            } else if (isElement(reader, "error")) {
+                root.setError(readError(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return root;
+    }
+
+    private static NewznabXmlChannel readChannel(XMLStreamReader reader) throws XMLStreamException {
+        NewznabXmlChannel channel = new NewznabXmlChannel();
+        while (nextChild(reader)) {
+            if (isElement(reader, "item")) {
+                channel.getItems().add(readItem(reader));
+            } else if (isElement(reader, "title")) {
+                channel.setTitle(readText(reader));
+            } else if (isElement(reader, "description")) {
+                channel.setDescription(readText(reader));
+            } else if (isElement(reader, "link")) {
+                channel.setLink(readText(reader));
+            } else if (isElement(reader, "language")) {
+                channel.setLanguage(readText(reader));
+            } else if (isElement(reader, "webMaster")) {
+                channel.setWebMaster(readText(reader));
+            } else if (isElement(reader, "generator")) {
+                channel.setGenerator(readText(reader));
+            } else if (isElement(reader, NEWZNAB_NAMESPACE, "response")) {
+                NewznabXmlResponse response = new NewznabXmlResponse();
+                response.setOffset(parseInteger(reader.getAttributeValue(null, "offset")));
+                response.setTotal(parseInteger(reader.getAttributeValue(null, "total")));
+                channel.setNewznabResponse(response);
+                skipElement(reader);
+            } else if (isElement(reader, NEWZNAB_NAMESPACE, "apilimits")) {
+                channel.setApiLimits(readApiLimits(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return channel;
+    }
+
+    private static NewznabXmlItem readItem(XMLStreamReader reader) throws XMLStreamException {
+        NewznabXmlItem item = new NewznabXmlItem();
+        while (nextChild(reader)) {
+            if (isElement(reader, NEWZNAB_NAMESPACE, "attr")) {
+                item.getNewznabAttributes().add(readAttribute(reader));
+            } else if (isElement(reader, TORZNAB_NAMESPACE, "attr")) {
+                item.getTorznabAttributes().add(readAttribute(reader));
+            } else if (isElement(reader, "title")) {
+                item.setTitle(readText(reader));
+            } else if (isElement(reader, "link")) {
+                item.setLink(readText(reader));
+            } else if (isElement(reader, "enclosure")) {
+                if (item.getEnclosures() == null) {
+                    item.setEnclosures(new ArrayList<>());
+                }
+                item.getEnclosures().add(new NewznabXmlEnclosure(reader.getAttributeValue(null, "url"), parseLong(reader.getAttributeValue(null, "length")), reader.getAttributeValue(null, "type")));
+                skipElement(reader);
+            } else if (isElement(reader, "pubDate")) {
+                item.setPubDate(parseInstant(readText(reader)));
+            } else if (isElement(reader, "guid")) {
+                NewznabXmlGuid guid = new NewznabXmlGuid();
+                guid.setPermaLink(parseBoolean(reader.getAttributeValue(null, "isPermaLink")));
+                guid.setGuid(readText(reader));
+                item.setRssGuid(guid);
+            } else if (isElement(reader, "description")) {
+                item.setDescription(readText(reader));
+            } else if (isElement(reader, "comments")) {
+                item.setComments(readText(reader));
+            } else if (isElement(reader, "category")) {
+                item.setCategory(readText(reader));
+            } else if (isElement(reader, "grabs")) {
+                item.setGrabs(parseInteger(readText(reader)));
+            } else if (isElement(reader, "size")) {
+                item.setSize(parseLong(readText(reader)));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return item;
+    }
+
+    private static NewznabAttribute readAttribute(XMLStreamReader reader) throws XMLStreamException {
+        NewznabAttribute attribute = new NewznabAttribute(reader.getAttributeValue(null, "name"), reader.getAttributeValue(null, "value"));
+        skipElement(reader);
+        return attribute;
+    }
+
+    private static NewznabXmlApilimits readApiLimits(XMLStreamReader reader) throws XMLStreamException {
+        NewznabXmlApilimits apiLimits = new NewznabXmlApilimits(
+                parseInteger(reader.getAttributeValue(null, "apiCurrent")),
+                parseInteger(reader.getAttributeValue(null, "apiMax")),
+                parseInteger(reader.getAttributeValue(null, "grabCurrent")),
+                parseInteger(reader.getAttributeValue(null, "grabMax")),
+                parseInstant(reader.getAttributeValue(null, "apioldesttime")),
+                parseInstant(reader.getAttributeValue(null, "graboldesttime")));
+        apiLimits.setApicurrent(parseInteger(reader.getAttributeValue(null, "apicurrent")));
+        apiLimits.setApimax(parseInteger(reader.getAttributeValue(null, "apimax")));
+        apiLimits.setGrabcurrent(parseInteger(reader.getAttributeValue(null, "grabcurrent")));
+        apiLimits.setGrabmax(parseInteger(reader.getAttributeValue(null, "grabmax")));
+        skipElement(reader);
+        return apiLimits;
+    }
+
+    private static NewznabXmlError readError(XMLStreamReader reader) throws XMLStreamException {
+        NewznabXmlError error = new NewznabXmlError(reader.getAttributeValue(null, "code"), reader.getAttributeValue(null, "description"));
+        skipElement(reader);
+        return error;
+    }
+
+    /**
+     * Moves to the next child element of the current element. Returns false when the end of the current element is reached. Text between
+     * elements (which JAXB ignores as well) is skipped.
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+    }
+
+    /**
+     * Like {@link XMLStreamReader#getElementText()} but without copying the text to a buffer when it's contained in one event (which, due
+     * to coalescing, is almost always the case).
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        String text = null;
+        StringBuilder builder = null;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE) {
+                if (text == null) {
+                    text = reader.getText();
+                } else {
+                    if (builder == null) {
+                        builder = new StringBuilder(text);
+                    }
+                    builder.append(reader.getText());
+                }
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Unexpected element " + reader.getLocalName() + " in text", reader.getLocation());
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+            }
+        }
+        if (builder != null) {
+            return builder.toString();
+        }
+        return text == null ? "" : text;
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isElement(XMLStreamReader reader, String localName) {
+        return isElement(reader, "", localName);
+    }
+
+    private static boolean isElement(XMLStreamReader reader, String namespace, String localName) {
+        String elementNamespace = reader.getNamespaceURI();
+        return localName.equals(reader.getLocalName()) && namespace.equals(elementNamespace == null ? "" : elementNamespace);
+    }
+
+    private static Integer parseInteger(String value) {
+        return value == null ? null : Integer.valueOf(value.trim());
+    }
+
+    private static Long parseLong(String value) {
+        return value == null ? null : Long.valueOf(value.trim());
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (value == null) {
+            return false;
+        }
+        value = value.trim();
+        if (value.equals("true") || value.equals("1")) {
+            return true;
+        }
+        if (value.equals("false") || value.equals("0")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Invalid boolean " + value);
+    }
+
+    private static Instant parseInstant(String value) {
+        return value == null ? null : PUBDATE_ADAPTER.unmarshal(value.trim());
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ *  (C) Copyright 2020 TheOtherP (theotherp@posteo.net)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.mapping.newznab.xml;
+
+import org.nzbhydra.mapping.newznab.NewznabResponse;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes newznab and torznab RSS responses using StAX instead of JAXB. Items are written as separate fragments which can be cached and
+ * are then copied into the document as they are.
+ * <p>
+ * The output is equivalent to JAXB's: same elements and attributes in the same order, indented by four spaces. The namespace not needed
+ * for the response's search type is not declared (like in the response written by the message converter) and item fragments use the
+ * namespace prefixes declared by the root element.
+ */
+public class NewznabXmlStreamWriter {
+
+    private static final String NEWZNAB_NAMESPACE = "http://www.newznab.com/DTD/2010/feeds/attributes/";
+    private static final String TORZNAB_NAMESPACE = "http://torznab.com/schemas/2015/feed";
+    private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+    private static final String ENCODING = "UTF-8";
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final JaxbPubdateAdapter PUBDATE_ADAPTER = new JaxbPubdateAdapter();
+
+    /**
+     * Writes the item as a fragment to be used in a document written by {@link #write(NewznabXmlRoot, List, OutputStream)}.
+     */
+    public static byte[] writeItem(NewznabXmlItem item) throws XMLStreamException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(bos, ENCODING);
+        writer.writeStartElement("item");
+        writeTextElement(writer, "title", item.getTitle());
+        writeTextElement(writer, "link", item.getLink());
+        if (item.getEnclosures() != null) {
+            for (NewznabXmlEnclosure enclosure : item.getEnclosures()) {
+                indent(writer, 3);
+                writer.writeEmptyElement("enclosure");
+                writeAttribute(writer, "url", enclosure.getUrl());
+                writeAttribute(writer, "length", enclosure.getLength());
+                writeAttribute(writer, "type", enclosure.getType());
+            }
+        }
+        writeTextElement(writer, "pubDate", PUBDATE_ADAPTER.marshal(item.getPubDate()));
+        if (item.getRssGuid() != null) {
+            indent(writer, 3);
+            writer.writeStartElement("guid");
+            writer.writeAttribute("isPermaLink", String.valueOf(item.getRssGuid().isPermaLink()));
+            if (item.getRssGuid().getGuid() != null) {
+                writer.writeCharacters(item.getRssGuid().getGuid());
+            }
+            writer.writeEndElement();
+        }
+        writeTextElement(writer, "description", item.getDescription());
+        writeTextElement(writer, "comments", item.getComments());
+        writeTextElement(writer, "category", item.getCategory());
+        writeTextElement(writer, "grabs", item.getGrabs());
+        writeTextElement(writer, "size", item.getSize());
+        writeAttributes(writer, "newznab", NEWZNAB_NAMESPACE, item.getNewznabAttributes());
+        writeAttributes(writer, "torznab", TORZNAB_NAMESPACE, item.getTorznabAttributes());
+        indent(writer, 2);
+        writer.writeEndElement();
+        writer.close();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Writes the document. The items of the root's channel are ignored, the given item fragments are written instead.
+     */
+    public static void write(NewznabXmlRoot root, List<byte[]> itemFragments, OutputStream outputStream) throws XMLStreamException, IOException {
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, ENCODING);
+        writer.writeStartDocument(ENCODING, "1.0");
+        writer.writeCharacters("\n");
+        writer.writeStartElement("rss");
+        if (root.getSearchType() == NewznabResponse.SearchType.TORZNAB) {
+            writer.writeNamespace("torznab", TORZNAB_NAMESPACE);
+        } else {
+            writer.writeNamespace("newznab", NEWZNAB_NAMESPACE);
+        }
+        writer.writeNamespace("atom", ATOM_NAMESPACE);
+        writeAttribute(writer, "version", root.getVersion());
+        NewznabXmlChannel channel = root.getRssChannel();
+        if (channel != null) {
+            indent(writer, 1);
+            writer.writeStartElement("channel");
+            writeTextElement(writer, 2, "title", channel.getTitle());
+            writeTextElement(writer, 2, "description", channel.getDescription());
+            writeTextElement(writer, 2, "link", channel.getLink());
+            writeTextElement(writer, 2, "language", channel.getLanguage());
+            writeTextElement(writer, 2, "webMaster", channel.getWebMaster());
+            writeTextElement(writer, 2, "generator", channel.getGenerator());
+            if (channel.getNewznabResponse() != null) {
+                indent(writer, 2);
+                writer.writeEmptyElement("newznab", "response", NEWZNAB_NAMESPACE);
+                writeAttribute(writer, "offset", channel.getNewznabResponse().getOffset());
+                writeAttribute(writer, "total", channel.getNewznabResponse().getTotal());
+            }
+            for (byte[] itemFragment : itemFragments) {
+                indent(writer, 2);
+                //Make sure everything written so far is in the stream before the fragment is copied into it
+                writer.flush();
+                outputStream.write(itemFragment);
+            }
+            indent(writer, 1);
+            writer.writeEndElement();
+        }
+        if (root.getError() != null) {
+            indent(writer, 1);
+            writer.writeEmptyElement("error");
+            writeAttribute(writer, "code", root.getError().getCode());
+            writeAttribute(writer, "description", root.getError().getDescription());
+        }
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+        writer.close();
+        outputStream.flush();
+    }
+
+    private static void writeAttributes(XMLStreamWriter writer, String prefix, String namespace, List<NewznabAttribute> attributes) throws XMLStreamException {
+        if (attributes == null) {
+            return;
+        }
+        for (NewznabAttribute attribute : attributes) {
+            indent(writer, 3);
+            writer.writeEmptyElement(prefix, "attr", namespace);
+            writeAttribute(writer, "name", attribute.getName());
+            writeAttribute(writer, "value", attribute.getValue());
+        }
+    }
+
+    private static void writeTextElement(XMLStreamWriter writer, String name, Object value) throws XMLStreamException {
+        writeTextElement(writer, 3, name, value);
+    }
+
+    private static void writeTextElement(XMLStreamWriter writer, int depth, String name, Object value) throws XMLStreamException {
+        if (value == null) {
+            return;
+        }
+        indent(writer, depth);
+        writer.writeStartElement(name);
+        writer.writeCharacters(value.toString());
+        writer.writeEndElement();
+    }
+
+    private static void writeAttribute(XMLStreamWriter writer, String name, Object value) throws XMLStreamException {
+        if (value != null) {
+            writer.writeAttribute(name, value.toString());
+        }
+    }
+
+    private static void indent(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        StringBuilder builder = new StringBuilder(1 + depth * 4).append('\n');
+        for (int i = 0; i < depth; i++) {
+            builder.append("    ");
+        }
+        writer.writeCharacters(builder.toString());
+    }
+
+}
@@ -1,7 +1,10 @@
 package org.nzbhydra.mapping.newznab;
 
+import com.google.common.collect.Sets;
 import org.junit.Test;
 
+import java.util.HashSet;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
@@ -23,5 +26,31 @@ public class NewznabParametersTest {
         assertNotEquals(testee1.cacheKey(NewznabResponse.SearchType.TORZNAB), testee2.cacheKey(NewznabResponse.SearchType.TORZNAB));
     }
 
+    @Test
+    public void shouldUseAllParametersForFullCacheKey() throws Exception {
+        NewznabParameters testee1 = new NewznabParameters();
+        testee1.setQ("q");
+        NewznabParameters testee2 = new NewznabParameters();
+        testee2.setQ("q");
+        assertEquals(testee1.fullCacheKey(NewznabResponse.SearchType.TORZNAB), testee2.fullCacheKey(NewznabResponse.SearchType.TORZNAB));
+        assertNotEquals(testee1.fullCacheKey(NewznabResponse.SearchType.TORZNAB), testee2.fullCacheKey(NewznabResponse.SearchType.NEWZNAB));
+
+        testee2.setMinsize(100);
+        assertNotEquals(testee1.fullCacheKey(NewznabResponse.SearchType.TORZNAB), testee2.fullCacheKey(NewznabResponse.SearchType.TORZNAB));
+        testee2.setMinsize(null);
+        testee2.setIndexers(Sets.newHashSet("indexer"));
+        assertNotEquals(testee1.fullCacheKey(NewznabResponse.SearchType.TORZNAB), testee2.fullCacheKey(NewznabResponse.SearchType.TORZNAB));
+        testee2.setIndexers(new HashSet<>());
+        testee2.setApikey("apikey");
+        assertNotEquals(testee1.fullCacheKey(NewznabResponse.SearchType.TORZNAB), testee2.fullCacheKey(NewznabResponse.SearchType.TORZNAB));
+
+        //Values which would be the same when just concatenated
+        testee1.setQ("q5");
+        testee2.setApikey(null);
+        testee2.setQ("q");
+        testee2.setRid("5");
+        assertNotEquals(testee1.fullCacheKey(NewznabResponse.SearchType.TORZNAB), testee2.fullCacheKey(NewznabResponse.SearchType.TORZNAB));
+    }
+
 
 }